@@ -26,6 +26,9 @@ import android.widget.ImageView;
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityManagerCompat;
 
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
 import java.util.Objects;
 
 /**
@@ -81,6 +84,7 @@ public class BitmapCachingAsset extends Asset {
 
     private final boolean mIsLowRam;
     private final Asset mOriginalAsset;
+    private final PerformanceMonitor mPerformanceMonitor;
 
     public BitmapCachingAsset(Context context, Asset originalAsset) {
         mOriginalAsset = originalAsset instanceof BitmapCachingAsset
@@ -88,6 +92,8 @@ public class BitmapCachingAsset extends Asset {
         mIsLowRam = ActivityManagerCompat.isLowRamDevice(
                 (ActivityManager) context.getApplicationContext().getSystemService(
                         Context.ACTIVITY_SERVICE));
+        mPerformanceMonitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
     }
 
     @Override
@@ -99,6 +105,8 @@ public class BitmapCachingAsset extends Asset {
         }
         CacheKey key = new CacheKey(mOriginalAsset, targetWidth, targetHeight);
         Bitmap cached = sCache.get(key);
+        mPerformanceMonitor.recordCacheLookup(PerformanceMonitor.CACHE_BITMAP_CACHING_ASSET,
+                cached != null);
         if (cached != null) {
             receiver.onBitmapDecoded(cached);
         } else {
@@ -123,6 +131,8 @@ public class BitmapCachingAsset extends Asset {
         CacheKey key = new CacheKey(mOriginalAsset, targetWidth, targetHeight, shouldAdjustForRtl,
                 rect);
         Bitmap cached = sCache.get(key);
+        mPerformanceMonitor.recordCacheLookup(PerformanceMonitor.CACHE_BITMAP_CACHING_ASSET,
+                cached != null);
         if (cached != null) {
             receiver.onBitmapDecoded(cached);
         } else {
@@ -16,109 +16,64 @@
 package com.android.wallpaper.asset;
 
 import android.annotation.TargetApi;
-import android.app.Activity;
 import android.app.WallpaperManager;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Point;
-import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
-import android.os.Handler;
-import android.os.Looper;
 import android.widget.ImageView;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
 import com.bumptech.glide.request.RequestOptions;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.InputStream;
 
 /**
  * Asset representing the system's built-in wallpaper.
  * NOTE: This is only used for KitKat and newer devices. On older versions of Android, the
  * built-in wallpaper is accessed via the system Resources object, and is thus be represented
  * by a {@code ResourceAsset} instead.
+ * <p>
+ * The wallpaper is read from the system's default wallpaper stream rather than through
+ * {@link WallpaperManager#getBuiltInDrawable()}, so that its dimensions come from the image header
+ * and scaled or region requests are decoded with a sample size, without ever holding the
+ * full-size bitmap.
  */
 @TargetApi(Build.VERSION_CODES.KITKAT)
-public final class BuiltInWallpaperAsset extends Asset {
-    private static final ExecutorService sExecutorService = Executors.newCachedThreadPool();
-    private static final boolean SCALE_TO_FIT = true;
-    private static final boolean CROP_TO_FIT = false;
-    private static final float HORIZONTAL_CENTER_ALIGNED = 0.5f;
-    private static final float VERTICAL_CENTER_ALIGNED = 0.5f;
+public final class BuiltInWallpaperAsset extends StreamableAsset {
+
+    /** Opens the encoded built-in wallpaper. */
+    @VisibleForTesting
+    interface StreamOpener {
+        @Nullable
+        InputStream open();
+    }
 
-    private final Context mContext;
+    private final StreamOpener mStreamOpener;
 
-    private Point mDimensions;
     private WallpaperModel mBuiltInWallpaperModel;
 
     /**
      * @param context The application's context.
      */
     public BuiltInWallpaperAsset(Context context) {
+        this(() -> WallpaperManager.openDefaultWallpaper(context.getApplicationContext(),
+                WallpaperManager.FLAG_SYSTEM));
+    }
+
+    @VisibleForTesting
+    BuiltInWallpaperAsset(StreamOpener streamOpener) {
         if (VERSION.SDK_INT < VERSION_CODES.KITKAT) {
             throw new AssertionError("BuiltInWallpaperAsset should not be instantiated on a pre-KitKat"
                     + " build");
         }
 
-        mContext = context.getApplicationContext();
-    }
-
-    @Override
-    public void decodeBitmapRegion(Rect rect, int targetWidth, int targetHeight,
-            boolean shouldAdjustForRtl, BitmapReceiver receiver) {
-        sExecutorService.execute(() -> {
-            Point dimensions = calculateRawDimensions();
-
-            float horizontalCenter = BitmapUtils.calculateHorizontalAlignment(dimensions, rect);
-            float verticalCenter = BitmapUtils.calculateVerticalAlignment(dimensions, rect);
-
-            Drawable drawable = WallpaperManager.getInstance(mContext).getBuiltInDrawable(
-                    rect.width(),
-                    rect.height(),
-                    CROP_TO_FIT,
-                    horizontalCenter,
-                    verticalCenter);
-            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-            decodeBitmapCompleted(receiver, bitmap);
-        });
-    }
-
-    @Override
-    public void decodeRawDimensions(Activity unused, DimensionsReceiver receiver) {
-        sExecutorService.execute(() -> {
-            Point dimensions = calculateRawDimensions();
-            new Handler(Looper.getMainLooper()).post(
-                    () -> receiver.onDimensionsDecoded(dimensions));
-        });
-    }
-
-    @Override
-    public void decodeBitmap(int targetWidth, int targetHeight,
-                             BitmapReceiver receiver) {
-        sExecutorService.execute(() -> {
-            final WallpaperManager wallpaperManager = WallpaperManager.getInstance(mContext);
-
-            Drawable drawable = wallpaperManager.getBuiltInDrawable(
-                    targetWidth,
-                    targetHeight,
-                    SCALE_TO_FIT,
-                    HORIZONTAL_CENTER_ALIGNED,
-                    VERTICAL_CENTER_ALIGNED);
-
-            // Manually request that WallpaperManager loses its reference to the built-in wallpaper
-            // bitmap, which can occupy a large memory allocation for the lifetime of the app.
-            wallpaperManager.forgetLoadedWallpaper();
-
-            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-            decodeBitmapCompleted(receiver, bitmap);
-        });
+        mStreamOpener = streamOpener;
     }
 
     @Override
@@ -126,21 +81,10 @@ public final class BuiltInWallpaperAsset extends Asset {
         return false;
     }
 
-    /**
-     * Calculates the raw dimensions of the built-in drawable. This method should not be called from
-     * the main UI thread.
-     *
-     * @return Raw dimensions of the built-in wallpaper drawable.
-     */
-    private Point calculateRawDimensions() {
-        if (mDimensions != null) {
-            return mDimensions;
-        }
-
-        Drawable builtInDrawable = WallpaperManager.getInstance(mContext).getBuiltInDrawable();
-        Bitmap builtInBitmap = ((BitmapDrawable) builtInDrawable).getBitmap();
-        mDimensions = new Point(builtInBitmap.getWidth(), builtInBitmap.getHeight());
-        return mDimensions;
+    @Override
+    @Nullable
+    protected InputStream openInputStream() {
+        return mStreamOpener.open();
     }
 
     @Override
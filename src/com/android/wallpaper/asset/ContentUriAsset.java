@@ -17,17 +17,25 @@ package com.android.wallpaper.asset;
 
 import android.app.Activity;
 import android.content.Context;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
 import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
 import android.util.Log;
+import android.util.LruCache;
 import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.MultiTransformation;
@@ -41,7 +49,6 @@ import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
 
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -54,13 +61,27 @@ public final class ContentUriAsset extends StreamableAsset {
     private static final String TAG = "ContentUriAsset";
     private static final String JPEG_MIME_TYPE = "image/jpeg";
     private static final String PNG_MIME_TYPE = "image/png";
+    private static final String[] STAMP_PROJECTION =
+            {OpenableColumns.SIZE, MediaStore.MediaColumns.DATE_MODIFIED};
+    private static final String[] SIZE_PROJECTION = {OpenableColumns.SIZE};
+
+    // Probes of recently previewed images, keyed by URI and by size and modification date so that
+    // an image replaced under the same URI is probed again.
+    private static final LruCache<String, ContentUriProbe> sProbeCache = new LruCache<>(16);
 
     private final Context mContext;
     private final Uri mUri;
     private final RequestOptions mRequestOptions;
+    private final PerformanceMonitor mPerformanceMonitor;
 
-    private ExifInterfaceCompat mExifCompat;
-    private int mExifOrientation;
+    // Separate locks, so that a MIME type check on the main thread doesn't wait for a probe.
+    private final Object mProbeLock = new Object();
+    private final Object mMimeTypeLock = new Object();
+    // Written under mProbeLock.
+    private volatile ContentUriProbe mProbe;
+    // Written under mMimeTypeLock, before mMimeTypeResolved.
+    private String mMimeType;
+    private volatile boolean mMimeTypeResolved;
 
     /**
      * @param context The application's context.
@@ -72,9 +93,10 @@ public final class ContentUriAsset extends StreamableAsset {
      */
     public ContentUriAsset(Context context, Uri uri, RequestOptions requestOptions,
                            boolean uncached) {
-        mExifOrientation = ExifInterfaceCompat.EXIF_ORIENTATION_UNKNOWN;
         mContext = context.getApplicationContext();
         mUri = uri;
+        mPerformanceMonitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
 
         if (uncached) {
             mRequestOptions = requestOptions.apply(RequestOptions
@@ -159,16 +181,29 @@ public final class ContentUriAsset extends StreamableAsset {
      * Returns whether this image is encoded in the JPEG file format.
      */
     public boolean isJpeg() {
-        String mimeType = mContext.getContentResolver().getType(mUri);
-        return mimeType != null && mimeType.equals(JPEG_MIME_TYPE);
+        return JPEG_MIME_TYPE.equals(getMimeType());
     }
 
     /**
      * Returns whether this image is encoded in the PNG file format.
      */
     public boolean isPng() {
-        String mimeType = mContext.getContentResolver().getType(mUri);
-        return mimeType != null && mimeType.equals(PNG_MIME_TYPE);
+        return PNG_MIME_TYPE.equals(getMimeType());
+    }
+
+    /**
+     * Returns the MIME type reported by the content provider, which is only asked once.
+     */
+    private String getMimeType() {
+        if (!mMimeTypeResolved) {
+            synchronized (mMimeTypeLock) {
+                if (!mMimeTypeResolved) {
+                    mMimeType = mContext.getContentResolver().getType(mUri);
+                    mMimeTypeResolved = true;
+                }
+            }
+        }
+        return mMimeType;
     }
 
     /**
@@ -179,14 +214,13 @@ public final class ContentUriAsset extends StreamableAsset {
      * empty (i.e., only whitespace).
      */
     public String readExifTag(String tagId) {
-        ensureExifInterface();
-        if (mExifCompat == null) {
+        ContentUriProbe probe = getProbe();
+        if (probe == null || probe.mExif == null) {
             Log.w(TAG, "Unable to read EXIF tags for content URI asset");
             return null;
         }
 
-
-        String attribute = mExifCompat.getAttribute(tagId);
+        String attribute = probe.mExif.getAttribute(tagId);
         if (attribute == null || attribute.trim().isEmpty()) {
             return null;
         }
@@ -194,17 +228,82 @@ public final class ContentUriAsset extends StreamableAsset {
         return attribute.trim();
     }
 
-    private void ensureExifInterface() {
-        if (mExifCompat == null) {
-            try (InputStream inputStream = openInputStream()) {
-                if (inputStream != null) {
-                    mExifCompat = new ExifInterfaceCompat(inputStream);
-                }
-            } catch (IOException e) {
-                Log.w(TAG, "Couldn't read stream for " + mUri, e);
+    /**
+     * Returns the dimensions and EXIF metadata of the image, reading them from a single
+     * stream the first time they're needed by this asset or any other asset for the same unchanged
+     * image. Returns null if the stream couldn't be opened. This method should only be called off
+     * the main UI thread.
+     */
+    @Nullable
+    private ContentUriProbe getProbe() {
+        ContentUriProbe probe = mProbe;
+        if (probe != null) {
+            return probe;
+        }
+        synchronized (mProbeLock) {
+            if (mProbe == null) {
+                mProbe = readProbe();
+            }
+            return mProbe;
+        }
+    }
+
+    @Nullable
+    private ContentUriProbe readProbe() {
+        String cacheKey = getProbeCacheKey();
+        if (cacheKey != null) {
+            ContentUriProbe probe = sProbeCache.get(cacheKey);
+            mPerformanceMonitor.recordCacheLookup(
+                    PerformanceMonitor.CACHE_CONTENT_URI_PROBE, probe != null);
+            if (probe != null) {
+                return probe;
             }
         }
 
+        ContentUriProbe probe = ContentUriProbe.read(this::openInputStream);
+        if (probe == null) {
+            Log.w(TAG, "Couldn't read stream for " + mUri);
+        } else if (cacheKey != null) {
+            sProbeCache.put(cacheKey, probe);
+        }
+        return probe;
+    }
+
+    /**
+     * Returns the key of the image in the process-wide probe cache, or null if the provider doesn't
+     * report anything that would tell a changed image apart.
+     */
+    @Nullable
+    private String getProbeCacheKey() {
+        String stamp;
+        try {
+            stamp = queryStamp(STAMP_PROJECTION);
+        } catch (IllegalArgumentException e) {
+            // Not every provider has a modification date column.
+            stamp = queryStamp(SIZE_PROJECTION);
+        }
+        return stamp == null ? null : mUri + "#" + stamp;
+    }
+
+    @Nullable
+    private String queryStamp(String[] projection) {
+        try (Cursor cursor = mContext.getContentResolver().query(mUri, projection,
+                /* selection= */ null, /* selectionArgs= */ null, /* sortOrder= */ null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            StringBuilder stamp = new StringBuilder();
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                if (cursor.isNull(i)) {
+                    return null;
+                }
+                stamp.append(cursor.getLong(i)).append('/');
+            }
+            return stamp.toString();
+        } catch (SecurityException e) {
+            Log.w(TAG, "Couldn't query metadata of " + mUri, e);
+            return null;
+        }
     }
 
     @Override
@@ -217,30 +316,36 @@ public final class ContentUriAsset extends StreamableAsset {
         }
     }
 
-    @Override
-    protected int getExifOrientation() {
-        if (mExifOrientation != ExifInterfaceCompat.EXIF_ORIENTATION_UNKNOWN) {
-            return mExifOrientation;
-        }
-
-        mExifOrientation = readExifOrientation();
-        return mExifOrientation;
-    }
-
     /**
      * Returns the EXIF rotation for the content URI asset. This method should only be called off
      * the main UI thread.
      */
-    private int readExifOrientation() {
-        ensureExifInterface();
-        if (mExifCompat == null) {
+    @Override
+    protected int getExifOrientation() {
+        ContentUriProbe probe = getProbe();
+        if (probe == null) {
             Log.w(TAG, "Unable to read EXIF rotation for content URI asset with content URI: "
                     + mUri);
             return ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL;
         }
+        return probe.getExifOrientation();
+    }
 
-        return mExifCompat.getAttributeInt(ExifInterfaceCompat.TAG_ORIENTATION,
-                ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL);
+    @Nullable
+    @Override
+    public Point calculateRawDimensions() {
+        ContentUriProbe probe = getProbe();
+        if (probe == null) {
+            return null;
+        }
+
+        int exifOrientation = probe.getExifOrientation();
+        // Swap height and width if image is rotated 90 or 270 degrees.
+        if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_90
+                || exifOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
+            return new Point(probe.mRawDimensions.y, probe.mRawDimensions.x);
+        }
+        return new Point(probe.mRawDimensions);
     }
 
     @Override
@@ -289,6 +394,8 @@ public final class ContentUriAsset extends StreamableAsset {
                     public boolean onResourceReady(Drawable resource, Object model,
                             Target<Drawable> target, DataSource dataSource,
                             boolean isFirstResource) {
+                        mPerformanceMonitor.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE,
+                                dataSource == DataSource.MEMORY_CACHE);
                         if (drawableLoadedListener != null) {
                             drawableLoadedListener.onDrawableLoaded();
                         }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * What a single pass over an image stream reveals about it: its raw dimensions and its EXIF
+ * metadata.
+ */
+final class ContentUriProbe {
+
+    private static final String TAG = "ContentUriProbe";
+
+    /**
+     * How far into the stream the probe may read while still being able to rewind. Image headers
+     * and EXIF segments are nearly always much smaller.
+     */
+    @VisibleForTesting
+    static final int MARK_LIMIT = 1024 * 1024;
+
+    /** Dimensions before any EXIF rotation, as reported by the decoder. */
+    final Point mRawDimensions;
+    /** The EXIF metadata, or null if the image has none that could be read. */
+    @Nullable
+    final ExifInterfaceCompat mExif;
+
+    @VisibleForTesting
+    ContentUriProbe(Point rawDimensions, @Nullable ExifInterfaceCompat exif) {
+        mRawDimensions = rawDimensions;
+        mExif = exif;
+    }
+
+    /** Opens a new stream over the image, or returns null if it can't be opened. */
+    interface StreamOpener {
+        @Nullable
+        InputStream open();
+    }
+
+    /**
+     * Reads the bounds and EXIF metadata of the image from a single stream, rewinding in between
+     * instead of opening it again. Only if the decoder read past {@link #MARK_LIMIT} is a second
+     * stream opened for the EXIF metadata.
+     *
+     * @return the probe, or null if the stream couldn't be opened
+     */
+    @Nullable
+    @WorkerThread
+    static ContentUriProbe read(StreamOpener opener) {
+        InputStream inputStream = opener.open();
+        if (inputStream == null) {
+            return null;
+        }
+        try (BufferedInputStream in = new BufferedInputStream(inputStream)) {
+            in.mark(MARK_LIMIT);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(in, null, options);
+            Point rawDimensions = new Point(options.outWidth, options.outHeight);
+
+            ExifInterfaceCompat exif;
+            try {
+                in.reset();
+                exif = readExif(in);
+            } catch (IOException e) {
+                // The decoder read past the mark, so read the metadata from a fresh stream.
+                try (InputStream exifStream = opener.open()) {
+                    exif = readExif(exifStream);
+                }
+            }
+            return new ContentUriProbe(rawDimensions, exif);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't close image stream", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static ExifInterfaceCompat readExif(@Nullable InputStream in) {
+        if (in == null) {
+            return null;
+        }
+        try {
+            return new ExifInterfaceCompat(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read EXIF metadata", e);
+            return null;
+        }
+    }
+
+    /** Returns the EXIF orientation, defaulting to normal if unknown. */
+    int getExifOrientation() {
+        return mExif == null
+                ? ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL
+                : mExif.getAttributeInt(ExifInterfaceCompat.TAG_ORIENTATION,
+                        ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL);
+    }
+}
@@ -16,7 +16,6 @@
 package com.android.wallpaper.asset;
 
 import android.app.Activity;
-import android.app.WallpaperManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Point;
@@ -27,6 +26,7 @@ import android.os.ParcelFileDescriptor.AutoCloseInputStream;
 import android.util.Log;
 import android.widget.ImageView;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.android.wallpaper.compat.WallpaperManagerCompat;
@@ -53,16 +53,16 @@ public class CurrentWallpaperAssetVN extends StreamableAsset {
 
     private static final String TAG = "CurrentWallpaperAssetVN";
     int mWallpaperId;
-    private WallpaperManager mWallpaperManager;
+    private WallpaperIdSnapshot mWallpaperIdSnapshot;
     private WallpaperManagerCompat mWallpaperManagerCompat;
     @WallpaperLocation
     private int mWallpaperManagerFlag;
 
     public CurrentWallpaperAssetVN(Context context, @WallpaperLocation int wallpaperManagerFlag) {
-        mWallpaperManager = WallpaperManager.getInstance(context);
+        mWallpaperIdSnapshot = WallpaperIdSnapshot.getInstance(context);
         mWallpaperManagerCompat = WallpaperManagerCompat.getInstance(context);
         mWallpaperManagerFlag = wallpaperManagerFlag;
-        mWallpaperId = mWallpaperManagerCompat.getWallpaperId(mWallpaperManagerFlag);
+        mWallpaperId = mWallpaperIdSnapshot.getWallpaperId(mWallpaperManagerFlag);
     }
 
     @Override
@@ -147,7 +147,8 @@ public class CurrentWallpaperAssetVN extends StreamableAsset {
     }
 
     public Key getKey() {
-        return new CurrentWallpaperVNKey(mWallpaperManager, mWallpaperManagerFlag);
+        return new CurrentWallpaperVNKey(mWallpaperManagerFlag,
+                mWallpaperIdSnapshot.getWallpaperId(mWallpaperManagerFlag));
     }
 
     ParcelFileDescriptor getWallpaperPfd() {
@@ -156,33 +157,35 @@ public class CurrentWallpaperAssetVN extends StreamableAsset {
 
     /**
      * Glide caching key for currently-set wallpapers on Android N or later using wallpaper IDs
-     * provided by WallpaperManager.
+     * provided by WallpaperManager. The ID is captured when the key is created, so comparing and
+     * hashing keys doesn't involve any IPC.
      */
-    private static final class CurrentWallpaperVNKey implements Key {
-        private WallpaperManager mWallpaperManager;
-        private int mWallpaperFlag;
-
-        public CurrentWallpaperVNKey(WallpaperManager wallpaperManager,
-                                     @WallpaperLocation int wallpaperFlag) {
-            mWallpaperManager = wallpaperManager;
-            mWallpaperFlag = wallpaperFlag;
+    @VisibleForTesting
+    static final class CurrentWallpaperVNKey implements Key {
+        private final String mCacheKey;
+
+        CurrentWallpaperVNKey(@WallpaperLocation int wallpaperFlag, int wallpaperId) {
+            mCacheKey = "CurrentWallpaperVNKey{"
+                    + "flag=" + wallpaperFlag
+                    + ",id=" + wallpaperId
+                    + '}';
         }
 
         @Override
         public String toString() {
-            return getCacheKey();
+            return mCacheKey;
         }
 
         @Override
         public int hashCode() {
-            return getCacheKey().hashCode();
+            return mCacheKey.hashCode();
         }
 
         @Override
         public boolean equals(Object object) {
             if (object instanceof CurrentWallpaperVNKey) {
                 CurrentWallpaperVNKey otherKey = (CurrentWallpaperVNKey) object;
-                return getCacheKey().equals(otherKey.getCacheKey());
+                return mCacheKey.equals(otherKey.mCacheKey);
 
             }
             return false;
@@ -190,17 +193,7 @@ public class CurrentWallpaperAssetVN extends StreamableAsset {
 
         @Override
         public void updateDiskCacheKey(MessageDigest messageDigest) {
-            messageDigest.update(getCacheKey().getBytes(CHARSET));
-        }
-
-        /**
-         * Returns an inexpensively calculated {@link String} suitable for use as a disk cache key.
-         */
-        private String getCacheKey() {
-            return "CurrentWallpaperVNKey{"
-                    + "flag=" + mWallpaperFlag
-                    + ",id=" + mWallpaperManager.getWallpaperId(mWallpaperFlag)
-                    + '}';
+            messageDigest.update(mCacheKey.getBytes(CHARSET));
         }
     }
 }
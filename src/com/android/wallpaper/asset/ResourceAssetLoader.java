@@ -15,8 +15,8 @@
  */
 package com.android.wallpaper.asset;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.Resources;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 
@@ -28,8 +28,7 @@ import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.load.model.MultiModelLoaderFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -69,11 +68,17 @@ public class ResourceAssetLoader implements ModelLoader<ResourceAsset, InputStre
     }
 
     /**
-     * Glide DataFetcher for ResourceAsset.
+     * Glide DataFetcher for ResourceAsset. Hands Glide the encoded resource as is, so that Glide's
+     * {@link com.bumptech.glide.load.resource.bitmap.Downsampler} decodes it once, sampled down to
+     * the size of the request.
      */
     protected static class ResourceAssetFetcher implements DataFetcher<InputStream> {
 
-        private ResourceAsset mResourceAsset;
+        private static final String TAG = "ResourceAssetFetcher";
+
+        private final ResourceAsset mResourceAsset;
+        private volatile boolean mIsCancelled;
+        private InputStream mInputStream;
 
         public ResourceAssetFetcher(ResourceAsset resourceAsset) {
             mResourceAsset = resourceAsset;
@@ -81,13 +86,19 @@ public class ResourceAssetLoader implements ModelLoader<ResourceAsset, InputStre
 
         @Override
         public void loadData(Priority priority, final DataCallback<? super InputStream> callback) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = 8;
-            Bitmap bitmap = BitmapFactory.decodeResource(mResourceAsset.getResources(),
-                    mResourceAsset.getResId(), options);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            callback.onDataReady(new ByteArrayInputStream(baos.toByteArray()));
+            if (mIsCancelled) {
+                callback.onLoadFailed(new IOException("Load of " + mResourceAsset.getResId()
+                        + " was cancelled"));
+                return;
+            }
+            try {
+                mInputStream = mResourceAsset.getResources().openRawResource(
+                        mResourceAsset.getResId());
+            } catch (Resources.NotFoundException e) {
+                callback.onLoadFailed(e);
+                return;
+            }
+            callback.onDataReady(mInputStream);
         }
 
         @Override
@@ -97,12 +108,18 @@ public class ResourceAssetLoader implements ModelLoader<ResourceAsset, InputStre
 
         @Override
         public void cancel() {
-            // no op
+            mIsCancelled = true;
         }
 
         @Override
         public void cleanup() {
-            // no op
+            if (mInputStream != null) {
+                try {
+                    mInputStream.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't close resource stream", e);
+                }
+            }
         }
 
         @Override
@@ -30,6 +30,9 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
@@ -79,7 +82,11 @@ public abstract class StreamableAsset extends Asset {
     @Override
     public void decodeBitmap(int targetWidth, int targetHeight,
                              BitmapReceiver receiver) {
+        PerformanceMonitor monitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
+        monitor.recordTaskQueued(PerformanceMonitor.EXECUTOR_ASSET_DECODE);
         sExecutorService.execute(() -> {
+            monitor.recordTaskStarted(PerformanceMonitor.EXECUTOR_ASSET_DECODE);
             int newTargetWidth = targetWidth;
             int newTargetHeight = targetHeight;
             int exifOrientation = getExifOrientation();
@@ -116,6 +123,9 @@ public abstract class StreamableAsset extends Asset {
                 bitmap = Bitmap.createBitmap(
                         bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), rotateMatrix, false);
             }
+            if (bitmap != null) {
+                monitor.recordBitmapAllocated(bitmap.getAllocationByteCount());
+            }
             decodeBitmapCompleted(receiver, bitmap);
         });
     }
@@ -182,7 +192,11 @@ public abstract class StreamableAsset extends Asset {
      */
     public void runDecodeBitmapRegionTask(Rect rect, int targetWidth, int targetHeight,
             boolean isRtl, BitmapReceiver receiver) {
+        PerformanceMonitor monitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
+        monitor.recordTaskQueued(PerformanceMonitor.EXECUTOR_ASSET_DECODE);
         sExecutorService.execute(() -> {
+            monitor.recordTaskStarted(PerformanceMonitor.EXECUTOR_ASSET_DECODE);
             int newTargetWidth = targetWidth;
             int newTargetHeight = targetHeight;
             Rect cropRect = rect;
@@ -229,6 +243,9 @@ public abstract class StreamableAsset extends Asset {
                                 bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), rotateMatrix,
                                 false);
                     }
+                    if (bitmap != null) {
+                        monitor.recordBitmapAllocated(bitmap.getAllocationByteCount());
+                    }
                     decodeBitmapCompleted(receiver, bitmap);
                     return;
                 } catch (OutOfMemoryError e) {
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import android.app.WallpaperManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.wallpaper.compat.WallpaperManagerCompat;
+import com.android.wallpaper.compat.WallpaperManagerCompat.WallpaperLocation;
+
+/**
+ * Snapshot of the IDs of the current home and lock screen wallpapers, so that cache keys for the
+ * current wallpaper don't need a binder call to {@link WallpaperManager#getWallpaperId} on every
+ * lookup.
+ * <p>
+ * Both IDs are fetched together on first use, and fetched again after {@link #invalidate()}, which
+ * happens whenever the wallpaper colors change or the app sets a wallpaper.
+ */
+public class WallpaperIdSnapshot {
+
+    /** Source of the current wallpaper IDs. */
+    @VisibleForTesting
+    interface IdSource {
+        int getWallpaperId(@WallpaperLocation int whichWallpaper);
+    }
+
+    private static WallpaperIdSnapshot sInstance;
+
+    private final IdSource mIdSource;
+
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private boolean mValid;
+    // Guarded by mLock.
+    private int mHomeId;
+    // Guarded by mLock.
+    private int mLockId;
+
+    /** Returns the snapshot shared by the whole process. */
+    public static synchronized WallpaperIdSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            WallpaperManagerCompat wallpaperManagerCompat =
+                    WallpaperManagerCompat.getInstance(appContext);
+            sInstance = new WallpaperIdSnapshot(wallpaperManagerCompat::getWallpaperId);
+            // Colors change whenever any app sets a new home or lock screen wallpaper.
+            WallpaperManager.getInstance(appContext).addOnColorsChangedListener(
+                    (colors, which) -> sInstance.invalidate(),
+                    new Handler(Looper.getMainLooper()));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    WallpaperIdSnapshot(IdSource idSource) {
+        mIdSource = idSource;
+    }
+
+    /** Returns the ID of the current wallpaper at the given location. */
+    public int getWallpaperId(@WallpaperLocation int whichWallpaper) {
+        synchronized (mLock) {
+            if (!mValid) {
+                mHomeId = mIdSource.getWallpaperId(WallpaperManagerCompat.FLAG_SYSTEM);
+                mLockId = mIdSource.getWallpaperId(WallpaperManagerCompat.FLAG_LOCK);
+                mValid = true;
+            }
+            return whichWallpaper == WallpaperManagerCompat.FLAG_LOCK ? mLockId : mHomeId;
+        }
+    }
+
+    /** Makes the next {@link #getWallpaperId} call fetch the IDs again. */
+    public void invalidate() {
+        synchronized (mLock) {
+            mValid = false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import android.util.Log;
 import com.android.wallpaper.R;
 import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.ResourceAsset;
+import com.android.wallpaper.module.ResourceIndex;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -86,11 +87,13 @@ public class AppResourceWallpaperInfo extends WallpaperInfo {
         try {
             Resources resources = context.getPackageManager().getResourcesForApplication(appInfo);
 
+            ResourceIndex resourceIndex =
+                    ResourceIndex.get(context, appInfo.packageName, resources);
             final String[] wallpaperResNames = resources.getStringArray(listResId);
             for (String name : wallpaperResNames) {
-                final int fullRes = resources.getIdentifier(name, DRAWABLE_DEF_TYPE, appInfo.packageName);
-                final int thumbRes = resources.getIdentifier(
-                        name + "_small", DRAWABLE_DEF_TYPE, appInfo.packageName);
+                final int fullRes = resourceIndex.getIdentifier(name, DRAWABLE_DEF_TYPE);
+                final int thumbRes =
+                        resourceIndex.getIdentifier(name + "_small", DRAWABLE_DEF_TYPE);
                 if (fullRes != 0 && thumbRes != 0) {
                     WallpaperInfo wallpaperInfo = new AppResourceWallpaperInfo(
                             appInfo.packageName, thumbRes, fullRes);
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.model;
+
+/**
+ * Receives the changes that a {@link CategoryProvider} made to its categories in response to a
+ * single package change. All methods are called on the main thread.
+ */
+public interface CategoryDeltaReceiver {
+    /** Called when a category was added, e.g. for a newly installed third-party app. */
+    void onCategoryAdded(Category category);
+
+    /** Called when the contents of an existing category changed. */
+    void onCategoryUpdated(Category category);
+
+    /** Called when a category was removed, e.g. because its app was uninstalled. */
+    void onCategoryRemoved(Category category);
+}
@@ -19,6 +19,8 @@ import android.content.Context;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.module.PackageStatusNotifier.PackageStatus;
+
 /**
  * Fetches and provides wallpaper categories to any registered {@link CategoryReceiver}s.
  */
@@ -79,6 +81,20 @@ public interface CategoryProvider {
      */
     boolean isFeaturedCollectionAvailable();
 
+    /**
+     * Updates the fetched categories for a change to a single package, resolving only that package
+     * rather than rediscovering every category, and reports the resulting changes to the receiver.
+     *
+     * @param packageName the package that was added, changed or removed
+     * @param status      the {@link PackageStatus} of the package
+     * @return whether the change is being applied; if {@code false}, callers should refetch the
+     * categories instead
+     */
+    default boolean applyPackageChange(String packageName, @PackageStatus int status,
+            CategoryDeltaReceiver receiver) {
+        return false;
+    }
+
     /**
      * Checks if should force reload.
      */
@@ -16,24 +16,23 @@
 package com.android.wallpaper.model;
 
 
-import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_CLEAR_URI;
-import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_CURRENT_ID;
-import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_SECTION_SUBTITLE;
-import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_SECTION_TITLE;
-
 import android.annotation.Nullable;
 import android.content.ContentProviderClient;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.text.TextUtils;
+import android.os.CancellationSignal;
 import android.util.Log;
 
+import androidx.annotation.WorkerThread;
+
 import com.android.wallpaper.asset.CreativeWallpaperThumbAsset;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** The {@link WallpaperCategory} implements category for user created wallpapers. */
 public class CreativeCategory extends WallpaperCategory {
@@ -49,6 +48,10 @@ public class CreativeCategory extends WallpaperCategory {
 
     public final android.app.WallpaperInfo mWallpaperInfo;
 
+    // Only accessed on the main thread. The read in progress for each receiver, so that fetching
+    // for one screen doesn't cancel the read of another showing the same category.
+    private final Map<WallpaperReceiver, CancellationSignal> mPendingReads = new HashMap<>();
+
     public static final String KEY_WALLPAPER_SAVE_CREATIVE_CATEGORY_WALLPAPER =
             "android.service.wallpaper.savewallpaper";
 
@@ -115,77 +118,86 @@ public class CreativeCategory extends WallpaperCategory {
             super.fetchWallpapers(context, receiver, forceReload);
             return;
         }
-        List<WallpaperInfo> wallpapers = readCreativeWallpapers(
-                context, getCollectionId(), mWallpaperInfo);
+        cancelFetch(receiver);
+        Bundle metaData = mWallpaperInfo.getServiceInfo().metaData;
+        Uri wallpapersUri = Uri.parse((String) metaData.get(KEY_WALLPAPER_CREATIVE_WALLPAPERS));
+        CreativeWallpaperReader reader = CreativeWallpaperReader.getInstance();
+
+        // The cache is dropped as soon as the provider reports a change.
+        List<WallpaperInfo> cached = reader.getCached(wallpapersUri, getCollectionId());
+        if (cached != null) {
+            setWallpapers(cached);
+            if (receiver != null) {
+                receiver.onWallpapersReceived(cached);
+            }
+            return;
+        }
+        List<WallpaperInfo> received = new ArrayList<>();
+        mPendingReads.put(receiver, reader.read(context, wallpapersUri, getEffectsUri(metaData),
+                getCollectionId(), mWallpaperInfo, CreativeWallpaperReader.DEFAULT_PAGE_SIZE,
+                new CreativeWallpaperReader.Callback() {
+                    @Override
+                    public void onPageRead(List<WallpaperInfo> page) {
+                        received.addAll(page);
+                        setWallpapers(received);
+                        if (receiver != null) {
+                            receiver.onWallpapersPartiallyReceived(new ArrayList<>(received));
+                        }
+                    }
+
+                    @Override
+                    public void onReadFinished(List<WallpaperInfo> wallpapers) {
+                        mPendingReads.remove(receiver);
+                        setWallpapers(wallpapers);
+                        if (receiver != null) {
+                            receiver.onWallpapersReceived(new ArrayList<>(wallpapers));
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Stops reading wallpapers for the given receiver, if a read started by
+     * {@link #fetchWallpapers} for it is in progress.
+     */
+    public void cancelFetch(@Nullable WallpaperReceiver receiver) {
+        CancellationSignal pendingRead = mPendingReads.remove(receiver);
+        if (pendingRead != null) {
+            pendingRead.cancel();
+        }
+    }
+
+    private void setWallpapers(List<WallpaperInfo> wallpapers) {
         synchronized (this) {
             getMutableWallpapers().clear();
             getMutableWallpapers().addAll(wallpapers);
         }
-        if (receiver != null) {
-            receiver.onWallpapersReceived(wallpapers);
-        }
     }
 
     /**
      * Returns a list of [CreativeWallpaperInfo] objects by creating them using the relevant
-     * info. obtained from creative-category APK on device.
+     * info. obtained from creative-category APK on device. This reads the provider on the calling
+     * thread; {@link #fetchWallpapers} reads it in the background instead.
      *
      * @param context context of the hosting activity
      * @param collectionId ID of the collection to which these wallpapers belong to
      * @param wallpaperInfo contains relevant metadata information about creative-category wallpaper
      * @return list of CreativeWallpaperInfo objects
      */
+    @WorkerThread
     public static List<WallpaperInfo> readCreativeWallpapers(Context context,
             String collectionId, android.app.WallpaperInfo wallpaperInfo) {
-        List<WallpaperInfo> wallpapers = new ArrayList<>();
         Bundle metaData = wallpaperInfo.getServiceInfo().metaData;
         Uri wallpapersUri = Uri.parse((String) metaData.get(KEY_WALLPAPER_CREATIVE_WALLPAPERS));
-        try (ContentProviderClient client =
-                     context.getContentResolver().acquireContentProviderClient(
-                             wallpapersUri.getAuthority())) {
-            try (Cursor cursor = client.query(wallpapersUri, /* projection= */ null,
-                    /* selection= */ null, /* selectionArgs= */ null, /* sortOrder= */ null)) {
-                if (cursor == null || !cursor.moveToFirst()) {
-                    return wallpapers;
-                }
-                do {
-                    String categoryId = cursor.getString(
-                            cursor.getColumnIndex(WallpaperInfoContract.CATEGORY_ID));
-                    if (!TextUtils.equals(categoryId, collectionId)) {
-                        continue;
-                    }
-                    CreativeWallpaperInfo creativeWallpaperInfo =
-                            CreativeWallpaperInfo.buildFromCursor(wallpaperInfo, cursor);
-                    // If the meta data for wallpaper actions exists, only then can we query the
-                    // action fields and action table.
-                    if (metaData.get(KEY_WALLPAPER_CREATIVE_WALLPAPER_EFFECTS) != null) {
-                        String effectsBottomSheetTitle = cursor.getString(
-                                cursor.getColumnIndex(WALLPAPER_EFFECTS_SECTION_TITLE));
-                        String effectsBottomSheetSubtitle = cursor.getString(
-                                cursor.getColumnIndex(WALLPAPER_EFFECTS_SECTION_SUBTITLE));
-                        String currentEffectId = cursor.getString(
-                                cursor.getColumnIndex(WALLPAPER_EFFECTS_CURRENT_ID));
-                        Uri clearActionUri = Uri.parse(cursor.getString(
-                                cursor.getColumnIndex(WALLPAPER_EFFECTS_CLEAR_URI)));
-
-                        creativeWallpaperInfo.setEffectsBottomSheetTitle(
-                                effectsBottomSheetTitle);
-                        creativeWallpaperInfo.setEffectsBottomSheetSubtitle(
-                                effectsBottomSheetSubtitle);
-                        creativeWallpaperInfo.setClearActionsUri(clearActionUri);
-                        creativeWallpaperInfo.setCurrentlyAppliedEffectId(currentEffectId);
-
-                        Uri effectsUri = Uri.parse((String) metaData.get(
-                                KEY_WALLPAPER_CREATIVE_WALLPAPER_EFFECTS));
-                        creativeWallpaperInfo.setEffectsUri(effectsUri);
-                    }
-                    wallpapers.add(creativeWallpaperInfo);
-                } while (cursor.moveToNext());
-            }
-        } catch (Throwable e) {
-            Log.e(TAG, "Exception reading creative wallpapers", e);
-        }
-        return wallpapers;
+        return CreativeWallpaperReader.readWallpapers(context, wallpapersUri,
+                getEffectsUri(metaData), collectionId, wallpaperInfo, Integer.MAX_VALUE,
+                /* signal= */ null, /* pageConsumer= */ null);
+    }
+
+    @Nullable
+    private static Uri getEffectsUri(Bundle metaData) {
+        Object effectsUri = metaData.get(KEY_WALLPAPER_CREATIVE_WALLPAPER_EFFECTS);
+        return effectsUri == null ? null : Uri.parse((String) effectsUri);
     }
 
     @Override
@@ -387,34 +387,59 @@ public class CreativeWallpaperInfo extends LiveWallpaperInfo {
     @NonNull
     public static CreativeWallpaperInfo buildFromCursor(
             android.app.WallpaperInfo wallpaperInfo, Cursor cursor) {
-        String wallpaperTitle = cursor.getString(
-                cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_TITLE));
+        return buildFromCursor(wallpaperInfo, cursor, new ColumnIndices(cursor));
+    }
+
+    /**
+     * Creates an object of CreativeWallpaperInfo from the current row of the given cursor, using
+     * column indices resolved once for the whole cursor.
+     */
+    @NonNull
+    public static CreativeWallpaperInfo buildFromCursor(
+            android.app.WallpaperInfo wallpaperInfo, Cursor cursor, ColumnIndices columns) {
         String wallpaperContentDescription = null;
-        int wallpaperContentDescriptionIndex = cursor.getColumnIndex(
-                WallpaperInfoContract.WALLPAPER_CONTENT_DESCRIPTION);
-        if (wallpaperContentDescriptionIndex >= 0) {
-            wallpaperContentDescription = cursor.getString(
-                    wallpaperContentDescriptionIndex);
+        if (columns.mContentDescription >= 0) {
+            wallpaperContentDescription = cursor.getString(columns.mContentDescription);
         }
-        Uri thumbnailUri = Uri.parse(cursor.getString(cursor.getColumnIndex(
-                WallpaperInfoContract.WALLPAPER_THUMBNAIL)));
-        Uri configPreviewUri = Uri.parse(cursor.getString(cursor.getColumnIndex(
-                WallpaperInfoContract.WALLPAPER_CONFIG_PREVIEW_URI)));
-        Uri cleanPreviewUri = Uri.parse(cursor.getString(cursor.getColumnIndex(
-                WallpaperInfoContract.WALLPAPER_CLEAN_PREVIEW_URI)));
-        Uri deleteUri = Uri.parse(cursor.getString(
-                cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_DELETE_URI)));
-        Uri shareUri = Uri.parse(cursor.getString(cursor.getColumnIndex(
-                WallpaperInfoContract.WALLPAPER_SHARE_URI)));
-        String groupName = cursor.getString(
-                cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_GROUP_NAME));
-        int isCurrentApplied = cursor.getInt(
-                cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_IS_APPLIED));
-
         return new CreativeWallpaperInfo(
-                wallpaperInfo, wallpaperTitle, wallpaperContentDescription,
-                configPreviewUri, cleanPreviewUri, deleteUri, thumbnailUri, shareUri,
-                groupName, /* isCurrent= */(isCurrentApplied == 1));
+                wallpaperInfo,
+                cursor.getString(columns.mTitle),
+                wallpaperContentDescription,
+                Uri.parse(cursor.getString(columns.mConfigPreviewUri)),
+                Uri.parse(cursor.getString(columns.mCleanPreviewUri)),
+                Uri.parse(cursor.getString(columns.mDeleteUri)),
+                Uri.parse(cursor.getString(columns.mThumbnail)),
+                Uri.parse(cursor.getString(columns.mShareUri)),
+                cursor.getString(columns.mGroupName),
+                /* isCurrent= */ cursor.getInt(columns.mIsApplied) == 1);
+    }
+
+    /** The indices of the {@link WallpaperInfoContract} columns of a creative wallpapers cursor. */
+    public static class ColumnIndices {
+        private final int mTitle;
+        private final int mContentDescription;
+        private final int mThumbnail;
+        private final int mConfigPreviewUri;
+        private final int mCleanPreviewUri;
+        private final int mDeleteUri;
+        private final int mShareUri;
+        private final int mGroupName;
+        private final int mIsApplied;
+
+        public ColumnIndices(Cursor cursor) {
+            mTitle = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_TITLE);
+            mContentDescription =
+                    cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_CONTENT_DESCRIPTION);
+            mThumbnail = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_THUMBNAIL);
+            mConfigPreviewUri =
+                    cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_CONFIG_PREVIEW_URI);
+            mCleanPreviewUri =
+                    cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_CLEAN_PREVIEW_URI);
+            mDeleteUri = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_DELETE_URI);
+            mShareUri = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_SHARE_URI);
+            mGroupName = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_GROUP_NAME);
+            mIsApplied = cursor.getColumnIndex(WallpaperInfoContract.WALLPAPER_IS_APPLIED);
+        }
     }
 
     /**
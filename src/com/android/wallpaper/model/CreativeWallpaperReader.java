@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.model;
+
+import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_CLEAR_URI;
+import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_CURRENT_ID;
+import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_SECTION_SUBTITLE;
+import static com.android.wallpaper.model.WallpaperInfoContract.WALLPAPER_EFFECTS_SECTION_TITLE;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Parcel;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the wallpapers of a creative category from its provider on a background thread, handing
+ * them out in pages as the cursor is read so that the first tiles can render before the whole
+ * cursor is drained.
+ * <p>
+ * Results are cached per provider authority until a {@link ContentObserver} reports a change to
+ * any of the authority's URIs. The wallpapers are mutable, so the cache keeps its own copies and
+ * hands out new ones.
+ */
+public class CreativeWallpaperReader {
+
+    private static final String TAG = "CreativeWallpaperReader";
+
+    /** Number of wallpapers per page, roughly what fits on screen at once. */
+    public static final int DEFAULT_PAGE_SIZE = 24;
+
+    /** Receives the wallpapers being read. All methods are called on the main thread. */
+    public interface Callback {
+        /** Called with the wallpapers read since the previous page. */
+        void onPageRead(List<WallpaperInfo> page);
+
+        /** Called with all the wallpapers once the cursor has been read. */
+        void onReadFinished(List<WallpaperInfo> wallpapers);
+    }
+
+    private static CreativeWallpaperReader sInstance;
+
+    private final Executor mExecutor;
+    private final Handler mMainHandler;
+
+    private final Object mCacheLock = new Object();
+    // Guarded by mCacheLock. Authority -> wallpapers URI and collection ID -> wallpapers.
+    private final Map<String, Map<String, List<WallpaperInfo>>> mCache = new HashMap<>();
+    // Guarded by mCacheLock. Authority -> generation, incremented whenever the authority changes.
+    private final Map<String, Integer> mGenerations = new HashMap<>();
+
+    /** Returns the shared reader. */
+    public static synchronized CreativeWallpaperReader getInstance() {
+        if (sInstance == null) {
+            sInstance = new CreativeWallpaperReader(Executors.newSingleThreadExecutor(),
+                    new Handler(Looper.getMainLooper()));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CreativeWallpaperReader(Executor executor, Handler mainHandler) {
+        mExecutor = executor;
+        mMainHandler = mainHandler;
+    }
+
+    /**
+     * Returns the cached wallpapers of the given collection, or null if they need to be read.
+     */
+    @Nullable
+    public List<WallpaperInfo> getCached(Uri wallpapersUri, String collectionId) {
+        synchronized (mCacheLock) {
+            Map<String, List<WallpaperInfo>> entries = mCache.get(wallpapersUri.getAuthority());
+            List<WallpaperInfo> wallpapers =
+                    entries == null ? null : entries.get(getCacheKey(wallpapersUri, collectionId));
+            return wallpapers == null ? null : copyOf(wallpapers);
+        }
+    }
+
+    /**
+     * Starts reading the wallpapers of the given collection in the background, skipping the cache.
+     *
+     * @param wallpaperInfo the creative wallpaper service the wallpapers belong to
+     * @param effectsUri    the URI of the wallpaper effects, or null if there aren't any
+     * @param pageSize      the number of wallpapers per {@link Callback#onPageRead} call
+     * @return a signal that cancels the read; once canceled, the callback isn't called any more
+     */
+    @MainThread
+    public CancellationSignal read(Context context, Uri wallpapersUri, @Nullable Uri effectsUri,
+            String collectionId, @Nullable android.app.WallpaperInfo wallpaperInfo, int pageSize,
+            Callback callback) {
+        Context appContext = context.getApplicationContext();
+        String authority = wallpapersUri.getAuthority();
+        int generation = observe(appContext.getContentResolver(), authority);
+        CancellationSignal signal = new CancellationSignal();
+        mExecutor.execute(() -> {
+            if (signal.isCanceled()) {
+                return;
+            }
+            List<WallpaperInfo> wallpapers;
+            try {
+                wallpapers = readWallpapers(appContext, wallpapersUri, effectsUri, collectionId,
+                        wallpaperInfo, pageSize, signal,
+                        page -> postIfNotCanceled(signal, () -> callback.onPageRead(page)));
+            } catch (OperationCanceledException e) {
+                return;
+            }
+            synchronized (mCacheLock) {
+                // Don't cache a result the provider may have changed while it was being read.
+                if (mGenerations.get(authority) == generation) {
+                    mCache.computeIfAbsent(authority, key -> new HashMap<>())
+                            .put(getCacheKey(wallpapersUri, collectionId), copyOf(wallpapers));
+                }
+            }
+            List<WallpaperInfo> result = Collections.unmodifiableList(wallpapers);
+            postIfNotCanceled(signal, () -> callback.onReadFinished(result));
+        });
+        return signal;
+    }
+
+    /**
+     * Reads the wallpapers of the given collection on the calling thread.
+     *
+     * @param pageConsumer called with each page of wallpapers, on the calling thread, or null
+     * @throws OperationCanceledException if the signal is canceled during the read
+     */
+    @WorkerThread
+    static List<WallpaperInfo> readWallpapers(Context context, Uri wallpapersUri,
+            @Nullable Uri effectsUri, String collectionId,
+            @Nullable android.app.WallpaperInfo wallpaperInfo, int pageSize,
+            @Nullable CancellationSignal signal, @Nullable PageConsumer pageConsumer) {
+        List<WallpaperInfo> wallpapers = new ArrayList<>();
+        try (ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(wallpapersUri.getAuthority())) {
+            if (client == null) {
+                Log.w(TAG, "Couldn't resolve content provider for " + wallpapersUri);
+                return wallpapers;
+            }
+            try (Cursor cursor = client.query(wallpapersUri, /* projection= */ null,
+                    /* selection= */ null, /* selectionArgs= */ null, /* sortOrder= */ null,
+                    signal)) {
+                if (cursor == null) {
+                    return wallpapers;
+                }
+                // Resolve the columns once rather than by name for every row.
+                CreativeWallpaperInfo.ColumnIndices columns =
+                        new CreativeWallpaperInfo.ColumnIndices(cursor);
+                int categoryIdColumn = cursor.getColumnIndex(WallpaperInfoContract.CATEGORY_ID);
+                int effectsTitleColumn = cursor.getColumnIndex(WALLPAPER_EFFECTS_SECTION_TITLE);
+                int effectsSubtitleColumn =
+                        cursor.getColumnIndex(WALLPAPER_EFFECTS_SECTION_SUBTITLE);
+                int currentEffectIdColumn = cursor.getColumnIndex(WALLPAPER_EFFECTS_CURRENT_ID);
+                int clearEffectsUriColumn = cursor.getColumnIndex(WALLPAPER_EFFECTS_CLEAR_URI);
+
+                int pageStart = 0;
+                while (cursor.moveToNext()) {
+                    if (signal != null) {
+                        signal.throwIfCanceled();
+                    }
+                    if (!TextUtils.equals(cursor.getString(categoryIdColumn), collectionId)) {
+                        continue;
+                    }
+                    CreativeWallpaperInfo creativeWallpaperInfo =
+                            CreativeWallpaperInfo.buildFromCursor(wallpaperInfo, cursor, columns);
+                    // If the meta data for wallpaper actions exists, only then can we query the
+                    // action fields and action table.
+                    if (effectsUri != null) {
+                        creativeWallpaperInfo.setEffectsBottomSheetTitle(
+                                cursor.getString(effectsTitleColumn));
+                        creativeWallpaperInfo.setEffectsBottomSheetSubtitle(
+                                cursor.getString(effectsSubtitleColumn));
+                        creativeWallpaperInfo.setClearActionsUri(
+                                Uri.parse(cursor.getString(clearEffectsUriColumn)));
+                        creativeWallpaperInfo.setCurrentlyAppliedEffectId(
+                                cursor.getString(currentEffectIdColumn));
+                        creativeWallpaperInfo.setEffectsUri(effectsUri);
+                    }
+                    wallpapers.add(creativeWallpaperInfo);
+                    if (pageConsumer != null && wallpapers.size() - pageStart >= pageSize) {
+                        pageConsumer.accept(new ArrayList<>(
+                                wallpapers.subList(pageStart, wallpapers.size())));
+                        pageStart = wallpapers.size();
+                    }
+                }
+                if (pageConsumer != null && pageStart < wallpapers.size()) {
+                    pageConsumer.accept(new ArrayList<>(
+                            wallpapers.subList(pageStart, wallpapers.size())));
+                }
+            }
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Throwable e) {
+            Log.e(TAG, "Exception reading creative wallpapers", e);
+        }
+        return wallpapers;
+    }
+
+    /** Consumes a page of wallpapers as it is read. */
+    interface PageConsumer {
+        void accept(List<WallpaperInfo> page);
+    }
+
+    /**
+     * Starts observing the given authority if needed, and returns its current generation.
+     */
+    private int observe(ContentResolver resolver, String authority) {
+        synchronized (mCacheLock) {
+            Integer generation = mGenerations.get(authority);
+            if (generation != null) {
+                return generation;
+            }
+            mGenerations.put(authority, 0);
+        }
+        resolver.registerContentObserver(
+                new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(authority)
+                        .build(),
+                /* notifyForDescendants= */ true,
+                new ContentObserver(/* handler= */ null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate(authority);
+                    }
+                });
+        return 0;
+    }
+
+    /** Drops the cached wallpapers of the given authority. */
+    @VisibleForTesting
+    void invalidate(String authority) {
+        synchronized (mCacheLock) {
+            mCache.remove(authority);
+            mGenerations.computeIfPresent(authority, (key, generation) -> generation + 1);
+        }
+    }
+
+    private void postIfNotCanceled(CancellationSignal signal, Runnable runnable) {
+        mMainHandler.post(() -> {
+            if (!signal.isCanceled()) {
+                runnable.run();
+            }
+        });
+    }
+
+    /** Returns copies of the given wallpapers, made by parceling them. */
+    private static List<WallpaperInfo> copyOf(List<WallpaperInfo> wallpapers) {
+        List<WallpaperInfo> copies = new ArrayList<>(wallpapers.size());
+        for (WallpaperInfo wallpaper : wallpapers) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeParcelable(wallpaper, /* flags= */ 0);
+                parcel.setDataPosition(0);
+                copies.add(parcel.readParcelable(WallpaperInfo.class.getClassLoader(),
+                        WallpaperInfo.class));
+            } finally {
+                parcel.recycle();
+            }
+        }
+        return copies;
+    }
+
+    private static String getCacheKey(Uri wallpapersUri, String collectionId) {
+        return wallpapersUri + "#" + collectionId;
+    }
+}
@@ -19,20 +19,31 @@ import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.os.Parcel;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.android.wallpaper.R;
 import com.android.wallpaper.asset.Asset;
+import com.android.wallpaper.asset.BitmapUtils;
 import com.android.wallpaper.asset.FileAsset;
+import com.android.wallpaper.asset.StreamableAsset;
 import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.module.LegacyPartnerWallpaperIndex;
 import com.android.wallpaper.module.PartnerProvider;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Represents a wallpaper from the "partner customization" APK installed on the system.
@@ -50,12 +61,24 @@ public class LegacyPartnerWallpaperInfo extends WallpaperInfo {
                     return new LegacyPartnerWallpaperInfo[size];
                 }
             };
+
+    private static final String TAG = "LegacyPartnerWallpaper";
+    private static final ExecutorService sThumbnailExecutor = Executors.newSingleThreadExecutor();
+    private static final int THUMBNAIL_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final LruCache<String, Bitmap> sThumbnailCache =
+            new LruCache<String, Bitmap>(THUMBNAIL_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+            };
+
     private String mThumbName;
     private String mFullName;
     private File mSystemLegacyDir;
     private boolean mFetchedSystemLegacyDir;
     private FileAsset mAsset;
-    private FileAsset mThumbAsset;
+    private ThumbAsset mThumbAsset;
 
     public LegacyPartnerWallpaperInfo(String thumbName, String fullName) {
         mThumbName = thumbName;
@@ -85,26 +108,9 @@ public class LegacyPartnerWallpaperInfo extends WallpaperInfo {
             return wallpaperInfos;
         }
 
-        for (File file : systemDir.listFiles()) {
-            if (!file.isFile()) {
-                continue;
-            }
-            String fullName = file.getName();
-            String name = file.getName();
-            int dotPos = name.lastIndexOf('.');
-            String extension = "";
-            if (dotPos > -1) {
-                extension = name.substring(dotPos);
-                name = name.substring(0, dotPos);
-            }
-
-            if (name.endsWith("_small")) {
-                // Skip thumbnails as they are handled when we iterate over the full size counterpart.
-                continue;
-            }
-
-            String thumbName = name + "_small" + extension;
-            wallpaperInfos.add(new LegacyPartnerWallpaperInfo(thumbName, fullName));
+        for (String fullName : LegacyPartnerWallpaperIndex.get(ctx, systemDir).getFullNames()) {
+            wallpaperInfos.add(new LegacyPartnerWallpaperInfo(
+                    LegacyPartnerWallpaperIndex.getThumbnailName(fullName), fullName));
         }
 
         return wallpaperInfos;
@@ -124,15 +130,45 @@ public class LegacyPartnerWallpaperInfo extends WallpaperInfo {
         return mSystemLegacyDir;
     }
 
-    public Drawable getThumbnail(Context context) {
+    /**
+     * Returns the thumbnail, decoded at about the given size in pixels. Decoded thumbnails are
+     * shared between instances and keyed by that size, which depends on the screen's density and
+     * orientation, so this only reads the file the first time a tile of that size shows it.
+     */
+    @Nullable
+    @WorkerThread
+    public Bitmap getThumbnail(Context context, int targetWidth, int targetHeight) {
         final File systemDir = getSystemLegacyDir(context);
         if (systemDir == null) {
             return null;
         }
 
         File thumbnail = new File(systemDir, mThumbName);
-        Bitmap thumbBitmap = BitmapFactory.decodeFile(thumbnail.getAbsolutePath());
-        return new BitmapDrawable(context.getResources(), thumbBitmap);
+        String key = thumbnail.getAbsolutePath() + ":" + thumbnail.lastModified() + ":"
+                + targetWidth + "x" + targetHeight;
+        Bitmap thumbBitmap = sThumbnailCache.get(key);
+        if (thumbBitmap == null) {
+            thumbBitmap = decodeSampledThumbnail(thumbnail, targetWidth, targetHeight);
+            if (thumbBitmap != null) {
+                sThumbnailCache.put(key, thumbBitmap);
+            }
+        }
+        return thumbBitmap;
+    }
+
+    @Nullable
+    private static Bitmap decodeSampledThumbnail(File thumbnail, int targetWidth,
+            int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(thumbnail.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = BitmapUtils.calculateInSampleSize(
+                options.outWidth, options.outHeight, targetWidth, targetHeight);
+        return BitmapFactory.decodeFile(thumbnail.getAbsolutePath(), options);
     }
 
     @Override
@@ -155,7 +191,7 @@ public class LegacyPartnerWallpaperInfo extends WallpaperInfo {
         if (mThumbAsset == null) {
             final File systemDir = getSystemLegacyDir(context);
             File thumbnail = (systemDir == null) ? null : new File(systemDir, mThumbName);
-            mThumbAsset = new FileAsset(thumbnail);
+            mThumbAsset = new ThumbAsset(context.getApplicationContext(), thumbnail);
         }
         return mThumbAsset;
     }
@@ -184,4 +220,42 @@ public class LegacyPartnerWallpaperInfo extends WallpaperInfo {
         parcel.writeString(mFullName);
     }
 
+    /**
+     * The thumbnail file, decoded through {@link #getThumbnail} so that tiles share the thumbnails
+     * sampled at their size.
+     */
+    private class ThumbAsset extends StreamableAsset {
+        private final Context mAppContext;
+        @Nullable
+        private final File mFile;
+
+        ThumbAsset(Context appContext, @Nullable File file) {
+            mAppContext = appContext;
+            mFile = file;
+        }
+
+        @Override
+        public void decodeBitmap(int targetWidth, int targetHeight, BitmapReceiver receiver) {
+            if (targetWidth <= 0 || targetHeight <= 0) {
+                super.decodeBitmap(targetWidth, targetHeight, receiver);
+                return;
+            }
+            sThumbnailExecutor.execute(() -> decodeBitmapCompleted(receiver,
+                    getThumbnail(mAppContext, targetWidth, targetHeight)));
+        }
+
+        @Nullable
+        @Override
+        protected InputStream openInputStream() {
+            if (mFile == null) {
+                return null;
+            }
+            try {
+                return new FileInputStream(mFile);
+            } catch (FileNotFoundException e) {
+                Log.w(TAG, "Thumbnail file not found", e);
+                return null;
+            }
+        }
+    }
 }
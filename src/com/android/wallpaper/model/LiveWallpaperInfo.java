@@ -203,6 +203,37 @@ public class LiveWallpaperInfo extends WallpaperInfo {
         return wallpaperInfos;
     }
 
+    /**
+     * Returns all live wallpapers provided by the package with the given name, resolving only that
+     * package's services rather than every live wallpaper on the device.
+     */
+    public static List<WallpaperInfo> getFromPackage(Context context, String packageName) {
+        List<WallpaperInfo> wallpaperInfos = new ArrayList<>();
+        // The "Rotating Image Wallpaper" is owned by this package and never listed.
+        if (packageName.equals(context.getPackageName())) {
+            return wallpaperInfos;
+        }
+
+        List<ResolveInfo> resolveInfos = context.getPackageManager().queryIntentServices(
+                new Intent(WallpaperService.SERVICE_INTERFACE).setPackage(packageName),
+                PackageManager.GET_META_DATA);
+        LiveWallpaperInfoFactory factory =
+                InjectorProvider.getInjector().getLiveWallpaperInfoFactory(context);
+        for (int i = 0; i < resolveInfos.size(); i++) {
+            ResolveInfo resolveInfo = resolveInfos.get(i);
+            android.app.WallpaperInfo wallpaperInfo;
+            try {
+                wallpaperInfo = new android.app.WallpaperInfo(context, resolveInfo);
+            } catch (XmlPullParserException | IOException e) {
+                Log.w(TAG, "Skipping wallpaper " + resolveInfo.serviceInfo, e);
+                continue;
+            }
+            wallpaperInfos.add(factory.getLiveWallpaperInfo(wallpaperInfo));
+        }
+
+        return wallpaperInfos;
+    }
+
     /**
      * Returns the live wallpapers having the given service names, found within the APK with the
      * given package name.
@@ -26,6 +26,7 @@ import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.ResourceAsset;
 import com.android.wallpaper.module.InjectorProvider;
 import com.android.wallpaper.module.PartnerProvider;
+import com.android.wallpaper.module.ResourceIndex;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -80,8 +81,9 @@ public class PartnerWallpaperInfo extends DefaultWallpaperInfo {
             return wallpaperInfos;
         }
 
-        final int resId = partnerRes.getIdentifier(PartnerProvider.LEGACY_WALLPAPER_RES_ID, "array",
-                packageName);
+        final ResourceIndex resourceIndex = ResourceIndex.get(ctx, packageName, partnerRes);
+        final int resId = resourceIndex.getIdentifier(PartnerProvider.LEGACY_WALLPAPER_RES_ID,
+                "array");
         // Certain partner configurations don't have wallpapers provided, so need to check; return
         // early if they are missing.
         if (resId == 0) {
@@ -90,13 +92,12 @@ public class PartnerWallpaperInfo extends DefaultWallpaperInfo {
 
         final String[] extras = partnerRes.getStringArray(resId);
         for (String extra : extras) {
-            int wpResId = partnerRes.getIdentifier(extra, "drawable", packageName);
+            int wpResId = resourceIndex.getIdentifier(extra, "drawable");
             if (wpResId != 0) {
-                final int thumbRes = partnerRes.getIdentifier(extra + "_small", "drawable", packageName);
+                final int thumbRes = resourceIndex.getIdentifier(extra + "_small", "drawable");
 
                 if (thumbRes != 0) {
-                    final int fullRes = partnerRes.getIdentifier(extra, "drawable", packageName);
-                    WallpaperInfo wallpaperInfo = new PartnerWallpaperInfo(thumbRes, fullRes);
+                    WallpaperInfo wallpaperInfo = new PartnerWallpaperInfo(thumbRes, wpResId);
                     wallpaperInfos.add(wallpaperInfo);
                 }
             } else {
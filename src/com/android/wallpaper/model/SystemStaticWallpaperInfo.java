@@ -29,6 +29,7 @@ import androidx.annotation.Nullable;
 import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.ResourceAsset;
 import com.android.wallpaper.asset.SystemStaticAsset;
+import com.android.wallpaper.module.ResourceIndex;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -104,34 +105,51 @@ public class SystemStaticWallpaperInfo extends WallpaperInfo {
      * Read from the given stub apk the available static categories and wallpapers
      * @deprecated this is left for backwards compatibility with legacy stub format,
      * use {@link #fromAttributeSet(String, String, AttributeSet)} instead for
-     * the new stub format.
+     * the new stub format. Callers that have a {@link Context} should use
+     * {@link #getAll(Context, String, Resources, String)}, which doesn't resolve every resource
+     * name again on each load.
      */
     @Deprecated
     public static List<WallpaperInfo> getAll(String partnerStubPackageName,
             Resources stubApkResources, String categoryId) {
+        return getAll(partnerStubPackageName, stubApkResources, categoryId,
+                ResourceIndex.unpersisted(partnerStubPackageName, stubApkResources));
+    }
+
+    /**
+     * Read from the given stub apk the available static categories and wallpapers, resolving
+     * resource names through the persisted {@link ResourceIndex} of the stub apk.
+     * @deprecated this is left for backwards compatibility with legacy stub format,
+     * use {@link #fromAttributeSet(String, String, AttributeSet)} instead for
+     * the new stub format.
+     */
+    @Deprecated
+    public static List<WallpaperInfo> getAll(Context context, String partnerStubPackageName,
+            Resources stubApkResources, String categoryId) {
+        return getAll(partnerStubPackageName, stubApkResources, categoryId,
+                ResourceIndex.get(context, partnerStubPackageName, stubApkResources));
+    }
+
+    private static List<WallpaperInfo> getAll(String partnerStubPackageName,
+            Resources stubApkResources, String categoryId, ResourceIndex resourceIndex) {
         ArrayList<WallpaperInfo> wallpapers = new ArrayList<>();
 
-        int listResId = stubApkResources.getIdentifier(categoryId + WALLPAPERS_RES_SUFFIX,
-                ARRAY_DEF_TYPE, partnerStubPackageName);
+        int listResId = resourceIndex.getIdentifier(categoryId + WALLPAPERS_RES_SUFFIX,
+                ARRAY_DEF_TYPE);
         String[] wallpaperResNames = stubApkResources.getStringArray(listResId);
 
         for (String wallpaperResName : wallpaperResNames) {
-            int drawableResId = stubApkResources.getIdentifier(wallpaperResName, DRAWABLE_DEF_TYPE,
-                    partnerStubPackageName);
-            int wallpaperTitleResId = stubApkResources.getIdentifier(
-                    wallpaperResName + TITLE_RES_SUFFIX, STRING_DEF_TYPE, partnerStubPackageName);
-            int wallpaperSubtitle1ResId = stubApkResources.getIdentifier(
-                    wallpaperResName + SUBTITLE1_RES_SUFFIX, STRING_DEF_TYPE,
-                    partnerStubPackageName);
-            int wallpaperSubtitle2ResId = stubApkResources.getIdentifier(
-                    wallpaperResName + SUBTITLE2_RES_SUFFIX, STRING_DEF_TYPE,
-                    partnerStubPackageName);
-            int actionTypeResId = stubApkResources.getIdentifier(
-                    wallpaperResName + ACTION_TYPE_RES_SUFFIX, INTEGER_DEF_TYPE,
-                    partnerStubPackageName);
-            int actionUrlResId = stubApkResources.getIdentifier(
-                    wallpaperResName + ACTION_URL_RES_SUFFIX, STRING_DEF_TYPE,
-                    partnerStubPackageName);
+            int drawableResId = resourceIndex.getIdentifier(wallpaperResName, DRAWABLE_DEF_TYPE);
+            int wallpaperTitleResId = resourceIndex.getIdentifier(
+                    wallpaperResName + TITLE_RES_SUFFIX, STRING_DEF_TYPE);
+            int wallpaperSubtitle1ResId = resourceIndex.getIdentifier(
+                    wallpaperResName + SUBTITLE1_RES_SUFFIX, STRING_DEF_TYPE);
+            int wallpaperSubtitle2ResId = resourceIndex.getIdentifier(
+                    wallpaperResName + SUBTITLE2_RES_SUFFIX, STRING_DEF_TYPE);
+            int actionTypeResId = resourceIndex.getIdentifier(
+                    wallpaperResName + ACTION_TYPE_RES_SUFFIX, INTEGER_DEF_TYPE);
+            int actionUrlResId = resourceIndex.getIdentifier(
+                    wallpaperResName + ACTION_URL_RES_SUFFIX, STRING_DEF_TYPE);
 
             SystemStaticWallpaperInfo wallpaperInfo = new SystemStaticWallpaperInfo(
                     partnerStubPackageName, wallpaperResName, categoryId,
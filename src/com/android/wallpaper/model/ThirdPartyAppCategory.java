@@ -23,31 +23,44 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Drawable;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
 import com.android.wallpaper.R;
 import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.util.ActivityUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a third party wallpaper "provider" (app) from the system.
  */
 public class ThirdPartyAppCategory extends Category {
     private final ResolveInfo mResolveInfo;
+    // The app's icon, decoded the first time the category is bound.
+    private Drawable.ConstantState mIconState;
 
     public ThirdPartyAppCategory(Context context, ResolveInfo resolveInfo, String collectionId,
                                  int priority) {
-        super(
-                resolveInfo.loadLabel(context.getPackageManager()).toString() /* title */,
-                collectionId,
-                priority);
+        this(resolveInfo, resolveInfo.loadLabel(context.getPackageManager()).toString(),
+                collectionId, priority);
+    }
+
+    private ThirdPartyAppCategory(ResolveInfo resolveInfo, String title, String collectionId,
+            int priority) {
+        super(title, collectionId, priority);
         mResolveInfo = resolveInfo;
     }
 
     /**
      * Returns a list of all third-party wallpaper apps found on the device.
      */
+    @WorkerThread
     public static List<ThirdPartyAppCategory> getAll(Context context, int priority,
                                                      List<String> excludedPackageNames) {
         final PackageManager pm = context.getPackageManager();
@@ -55,46 +68,93 @@ public class ThirdPartyAppCategory extends Category {
         final Intent pickWallpaperIntent = new Intent(Intent.ACTION_SET_WALLPAPER);
         final List<ResolveInfo> apps = pm.queryIntentActivities(pickWallpaperIntent, 0);
 
-        List<ThirdPartyAppCategory> thirdPartyApps = new ArrayList<ThirdPartyAppCategory>();
-
         // Get list of image picker intents.
         Intent pickImageIntent = new Intent(Intent.ACTION_GET_CONTENT);
         pickImageIntent.setType("image/*");
         final List<ResolveInfo> imagePickerActivities =
-                context.getPackageManager().queryIntentActivities(pickImageIntent, 0);
+                pm.queryIntentActivities(pickImageIntent, 0);
 
-        outerLoop:
-        for (int i = 0; i < apps.size(); i++) {
-            ResolveInfo info = apps.get(i);
+        ThirdPartyAppLabelCache labelCache = ThirdPartyAppLabelCache.getInstance(context);
+        List<ThirdPartyAppCategory> thirdPartyApps = new ArrayList<ThirdPartyAppCategory>();
+        for (ResolveInfo info : filterApps(apps, imagePickerActivities, excludedPackageNames,
+                context.getPackageName())) {
+            String packageName = info.activityInfo.packageName;
+            thirdPartyApps.add(new ThirdPartyAppCategory(
+                    info,
+                    labelCache.getLabel(pm, info),
+                    getCollectionId(context, packageName),
+                    priority));
+        }
 
-            final ComponentName itemComponentName =
-                    new ComponentName(info.activityInfo.packageName, info.activityInfo.name);
-            final String itemPackageName = itemComponentName.getPackageName();
+        return thirdPartyApps;
+    }
 
-            if (excludedPackageNames.contains(itemPackageName)
-                    || itemPackageName.equals(context.getPackageName())) {
-                continue;
-            }
+    /**
+     * Returns the apps that are neither excluded, this app itself, nor an image picker, in their
+     * original order.
+     */
+    @VisibleForTesting
+    public static List<ResolveInfo> filterApps(List<ResolveInfo> apps,
+            List<ResolveInfo> imagePickerActivities, Collection<String> excludedPackageNames,
+            String ownPackageName) {
+        Set<String> skippedPackages = new HashSet<>(excludedPackageNames);
+        skippedPackages.add(ownPackageName);
+        // Exclude any package that already responds to the image picker intent.
+        for (ResolveInfo imagePickerActivityInfo : imagePickerActivities) {
+            skippedPackages.add(imagePickerActivityInfo.activityInfo.packageName);
+        }
 
-            // Exclude any package that already responds to the image picker intent.
-            for (ResolveInfo imagePickerActivityInfo : imagePickerActivities) {
-                if (itemPackageName.equals(imagePickerActivityInfo.activityInfo.packageName)) {
-                    continue outerLoop;
-                }
+        List<ResolveInfo> filtered = new ArrayList<>(apps.size());
+        for (ResolveInfo info : apps) {
+            if (!skippedPackages.contains(info.activityInfo.packageName)) {
+                filtered.add(info);
             }
+        }
+        return filtered;
+    }
 
-            ThirdPartyAppCategory category = new ThirdPartyAppCategory(
-                    context,
-                    info,
-                    context.getString(R.string.third_party_app_wallpaper_collection_id) + "_"
-                            + itemPackageName,
-                    priority);
-            thirdPartyApps.add(category);
+    /**
+     * Returns the categories of the third-party wallpaper app with the given package name, one per
+     * activity as in {@link #getAll}, or an empty list if that package isn't one, resolving only
+     * that package rather than every app on the device.
+     */
+    @WorkerThread
+    public static List<ThirdPartyAppCategory> getFromPackage(Context context, String packageName,
+            int priority, List<String> excludedPackageNames) {
+        if (excludedPackageNames.contains(packageName)
+                || packageName.equals(context.getPackageName())) {
+            return Collections.emptyList();
         }
 
+        final PackageManager pm = context.getPackageManager();
+        final List<ResolveInfo> apps = pm.queryIntentActivities(
+                new Intent(Intent.ACTION_SET_WALLPAPER).setPackage(packageName), 0);
+        if (apps.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Exclude the package if it also responds to the image picker intent.
+        Intent pickImageIntent = new Intent(Intent.ACTION_GET_CONTENT).setPackage(packageName);
+        pickImageIntent.setType("image/*");
+        if (!pm.queryIntentActivities(pickImageIntent, 0).isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ThirdPartyAppLabelCache labelCache = ThirdPartyAppLabelCache.getInstance(context);
+        String collectionId = getCollectionId(context, packageName);
+        List<ThirdPartyAppCategory> thirdPartyApps = new ArrayList<>(apps.size());
+        for (ResolveInfo info : apps) {
+            thirdPartyApps.add(new ThirdPartyAppCategory(info, labelCache.getLabel(pm, info),
+                    collectionId, priority));
+        }
         return thirdPartyApps;
     }
 
+    private static String getCollectionId(Context context, String packageName) {
+        return context.getString(R.string.third_party_app_wallpaper_collection_id) + "_"
+                + packageName;
+    }
+
     @Override
     public void show(Activity srcActivity, int requestCode) {
         final ComponentName itemComponentName = new ComponentName(
@@ -114,7 +174,15 @@ public class ThirdPartyAppCategory extends Category {
 
     @Override
     public Drawable getOverlayIcon(Context context) {
-        return mResolveInfo.loadIcon(context.getPackageManager());
+        if (mIconState == null) {
+            Drawable icon = mResolveInfo.loadIcon(context.getPackageManager());
+            mIconState = icon.getConstantState();
+            if (mIconState == null) {
+                return icon;
+            }
+        }
+        // Each view gets its own drawable, sharing the decoded bitmap.
+        return mIconState.newDrawable(context.getResources());
     }
 
     @Override
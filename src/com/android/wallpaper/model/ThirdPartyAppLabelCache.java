@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import androidx.annotation.WorkerThread;
+
+import com.android.wallpaper.module.BinaryPreferences;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Persistent cache of third-party wallpaper app labels, so that discovering those apps doesn't
+ * load every app's resources on each launch.
+ * <p>
+ * Each label is stored along with the modification time of the app's APK, which changes whenever
+ * the app is updated, and the whole cache is dropped when the locale changes.
+ */
+class ThirdPartyAppLabelCache {
+
+    private static final String FILE_NAME = "third_party_app_labels";
+    private static final String KEY_LOCALE = "locale";
+    private static final String PREFIX_LABEL = "label:";
+    private static final String PREFIX_UPDATE_TIME = "updateTime:";
+
+    private static ThirdPartyAppLabelCache sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private ThirdPartyAppLabelCache(Context appContext) {
+        mPrefs = new BinaryPreferences(new File(appContext.getCacheDir(), FILE_NAME));
+    }
+
+    static synchronized ThirdPartyAppLabelCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThirdPartyAppLabelCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /** Returns the label of the given activity, loading and caching it if needed. */
+    @WorkerThread
+    String getLabel(PackageManager pm, ResolveInfo resolveInfo) {
+        ActivityInfo activityInfo = resolveInfo.activityInfo;
+        String component = activityInfo.packageName + "/" + activityInfo.name;
+        long updateTime = new File(activityInfo.applicationInfo.sourceDir).lastModified();
+        String locale = Locale.getDefault().toLanguageTag();
+
+        if (!locale.equals(mPrefs.getString(KEY_LOCALE, null))) {
+            mPrefs.edit().clear().putString(KEY_LOCALE, locale).apply();
+        } else if (mPrefs.getLong(PREFIX_UPDATE_TIME + component, -1) == updateTime) {
+            String label = mPrefs.getString(PREFIX_LABEL + component, null);
+            if (label != null) {
+                return label;
+            }
+        }
+
+        String label = resolveInfo.loadLabel(pm).toString();
+        mPrefs.edit()
+                .putString(PREFIX_LABEL + component, label)
+                .putLong(PREFIX_UPDATE_TIME + component, updateTime)
+                .apply();
+        return label;
+    }
+}
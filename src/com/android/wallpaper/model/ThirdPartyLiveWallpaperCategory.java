@@ -16,13 +16,20 @@
 package com.android.wallpaper.model;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.os.Handler;
 import android.os.Looper;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -33,14 +40,72 @@ import java.util.concurrent.Executors;
 public class ThirdPartyLiveWallpaperCategory extends WallpaperCategory {
 
     private static final ExecutorService sExecutorService = Executors.newCachedThreadPool();
+    // Applies package changes one at a time, whoever requested them.
+    private static final ExecutorService sPackageChangeExecutor =
+            Executors.newSingleThreadExecutor();
+
+    /** Receives the result of a package change. */
+    public interface PackageChangeCallback {
+        /**
+         * Called on the package change thread once the change was applied.
+         *
+         * @param changed whether this category's wallpapers changed
+         */
+        @WorkerThread
+        void onPackageChangeApplied(boolean changed);
+    }
+
+    /** Finds the live wallpapers of a single package. */
+    @VisibleForTesting
+    interface PackageResolver {
+        /** Returns the live wallpapers the given package currently provides. */
+        List<WallpaperInfo> getWallpapers(Context context, String packageName);
+
+        /** Returns the package providing the given wallpaper, or null if it isn't known. */
+        @Nullable
+        String getPackageName(WallpaperInfo wallpaper);
+    }
+
+    private static final PackageResolver DEFAULT_PACKAGE_RESOLVER = new PackageResolver() {
+        @Override
+        public List<WallpaperInfo> getWallpapers(Context context, String packageName) {
+            return LiveWallpaperInfo.getFromPackage(context, packageName);
+        }
+
+        @Nullable
+        @Override
+        public String getPackageName(WallpaperInfo wallpaper) {
+            android.app.WallpaperInfo component = wallpaper.getWallpaperComponent();
+            return component != null ? component.getPackageName() : null;
+        }
+    };
+
+    /** A package change that was requested but hasn't been applied yet. */
+    private static class PendingPackageChange {
+        boolean mRemoved;
+        final List<PackageChangeCallback> mCallbacks = new ArrayList<>();
+    }
 
     private final Set<String> mExcludedPackages;
+    private final PackageResolver mPackageResolver;
+    // Guarded by itself.
+    private final Map<String, PendingPackageChange> mPendingPackageChanges = new HashMap<>();
 
     public ThirdPartyLiveWallpaperCategory(String title, String collectionId,
             List<WallpaperInfo> wallpapers,
             int priority, @Nullable Set<String> excludedLiveWallpaperPackageNames) {
+        this(title, collectionId, wallpapers, priority, excludedLiveWallpaperPackageNames,
+                DEFAULT_PACKAGE_RESOLVER);
+    }
+
+    @VisibleForTesting
+    ThirdPartyLiveWallpaperCategory(String title, String collectionId,
+            List<WallpaperInfo> wallpapers, int priority,
+            @Nullable Set<String> excludedLiveWallpaperPackageNames,
+            PackageResolver packageResolver) {
         super(title, collectionId, wallpapers, priority);
         mExcludedPackages = excludedLiveWallpaperPackageNames;
+        mPackageResolver = packageResolver;
     }
 
     @Override
@@ -64,6 +129,124 @@ public class ThirdPartyLiveWallpaperCategory extends WallpaperCategory {
         }
     }
 
+    /**
+     * Updates the wallpapers of the given package in place through
+     * {@link #applyPackageChange(Context, String, boolean, PackageChangeCallback)}, then provides
+     * all of this category's wallpapers to the receiver on the main thread.
+     */
+    public void fetchWallpapersAfterPackageChange(Context context, String packageName,
+            boolean removed, WallpaperReceiver receiver) {
+        applyPackageChange(context, packageName, removed, changed -> {
+            List<WallpaperInfo> wallpapers;
+            synchronized (mWallpapersLock) {
+                wallpapers = new ArrayList<>(getMutableWallpapers());
+            }
+            new Handler(Looper.getMainLooper()).post(
+                    () -> receiver.onWallpapersReceived(wallpapers));
+        });
+    }
+
+    /**
+     * Replaces the wallpapers of the given package with the ones it currently provides, off the
+     * main thread. The package's existing wallpapers keep their position; a newly added package
+     * is placed where a full refresh would put it.
+     * <p>
+     * Changes are applied one at a time. Requests for a package whose change hasn't been applied
+     * yet, e.g. from the category provider and from the screen showing this category, are merged
+     * into that change, which is applied once for the latest status.
+     *
+     * @param removed whether the package is known to be gone, which skips resolving it
+     */
+    public void applyPackageChange(Context context, String packageName, boolean removed,
+            PackageChangeCallback callback) {
+        synchronized (mPendingPackageChanges) {
+            PendingPackageChange pending = mPendingPackageChanges.get(packageName);
+            if (pending != null) {
+                pending.mRemoved = removed;
+                pending.mCallbacks.add(callback);
+                return;
+            }
+            pending = new PendingPackageChange();
+            pending.mRemoved = removed;
+            pending.mCallbacks.add(callback);
+            mPendingPackageChanges.put(packageName, pending);
+        }
+        sPackageChangeExecutor.execute(() -> {
+            PendingPackageChange change;
+            synchronized (mPendingPackageChanges) {
+                change = mPendingPackageChanges.remove(packageName);
+            }
+            boolean changed = applyPackageChange(context, packageName, change.mRemoved);
+            for (PackageChangeCallback changeCallback : change.mCallbacks) {
+                changeCallback.onPackageChangeApplied(changed);
+            }
+        });
+    }
+
+    /**
+     * Replaces the wallpapers of the given package with the ones it currently provides.
+     *
+     * @param removed whether the package is known to be gone, which skips resolving it
+     * @return whether this category's wallpapers changed
+     */
+    @VisibleForTesting
+    @WorkerThread
+    boolean applyPackageChange(Context context, String packageName, boolean removed) {
+        List<WallpaperInfo> resolved =
+                removed || (mExcludedPackages != null && mExcludedPackages.contains(packageName))
+                        ? Collections.emptyList()
+                        : mPackageResolver.getWallpapers(context, packageName);
+        synchronized (mWallpapersLock) {
+            List<WallpaperInfo> wallpapers = getMutableWallpapers();
+            // Walk backwards so that index ends up at the package's first wallpaper.
+            int index = -1;
+            for (int i = wallpapers.size() - 1; i >= 0; i--) {
+                if (packageName.equals(mPackageResolver.getPackageName(wallpapers.get(i)))) {
+                    wallpapers.remove(i);
+                    index = i;
+                }
+            }
+            if (resolved.isEmpty()) {
+                return index >= 0;
+            }
+            if (index < 0) {
+                index = findInsertionIndex(context, wallpapers, resolved.get(0));
+            }
+            wallpapers.addAll(index, resolved);
+            return true;
+        }
+    }
+
+    /**
+     * Mirrors the order of {@link LiveWallpaperInfo#getAll}: system wallpapers first, followed by
+     * the others sorted by label.
+     */
+    private static int findInsertionIndex(Context context, List<WallpaperInfo> wallpapers,
+            WallpaperInfo added) {
+        PackageManager pm = context.getPackageManager();
+        Collator collator = Collator.getInstance();
+        boolean addedIsSystem = isSystemWallpaper(added);
+        String addedLabel = addedIsSystem ? null
+                : added.getWallpaperComponent().loadLabel(pm).toString();
+        for (int i = 0; i < wallpapers.size(); i++) {
+            WallpaperInfo wallpaper = wallpapers.get(i);
+            if (isSystemWallpaper(wallpaper)) {
+                continue;
+            }
+            if (addedIsSystem || collator.compare(
+                    wallpaper.getWallpaperComponent().loadLabel(pm).toString(), addedLabel) > 0) {
+                return i;
+            }
+        }
+        return wallpapers.size();
+    }
+
+    private static boolean isSystemWallpaper(WallpaperInfo wallpaper) {
+        android.app.WallpaperInfo component = wallpaper.getWallpaperComponent();
+        return component == null
+                || LiveWallpaperInfo.isSystemApp(component.getServiceInfo().applicationInfo);
+    }
+
     @Override
     public boolean supportsThirdParty() {
         return true;
@@ -74,9 +257,7 @@ public class ThirdPartyLiveWallpaperCategory extends WallpaperCategory {
         if (!supportsThirdParty()) return false;
         synchronized (mWallpapersLock) {
             for (WallpaperInfo wallpaper : getMutableWallpapers()) {
-                android.app.WallpaperInfo wallpaperComponent = wallpaper.getWallpaperComponent();
-                if (wallpaperComponent != null
-                        && wallpaperComponent.getPackageName().equals(packageName)) {
+                if (packageName.equals(mPackageResolver.getPackageName(wallpaper))) {
                     return true;
                 }
             }
@@ -27,4 +27,14 @@ public interface WallpaperReceiver {
      * @param wallpapers
      */
     public void onWallpapersReceived(List<WallpaperInfo> wallpapers);
+
+    /**
+     * Called with the wallpapers received so far while a category is still reading them, before
+     * {@link #onWallpapersReceived} is called with all of them. Categories that read all their
+     * wallpapers at once never call it.
+     *
+     * @param wallpapers all the wallpapers received so far
+     */
+    default void onWallpapersPartiallyReceived(List<WallpaperInfo> wallpapers) {
+    }
 }
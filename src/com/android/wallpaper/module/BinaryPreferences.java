@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link SharedPreferences} implementation backed by a compact, typed and versioned binary file
+ * instead of an XML file.
+ * <p>
+ * The file is only read on first access, through a read-only memory mapping, and every write
+ * replaces it atomically through {@link AtomicFile}. {@link Editor#apply()} writes are coalesced on
+ * a background thread so that a burst of applies results in a single disk write.
+ */
+public class BinaryPreferences implements SharedPreferences {
+
+    private static final String TAG = "BinaryPreferences";
+
+    /** "WPPF" in ASCII. */
+    private static final int MAGIC = 0x57505046;
+    @VisibleForTesting
+    static final int VERSION = 1;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_STRING_SET = 6;
+
+    private static final ExecutorService sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicFile mFile;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mLock = new Object();
+    // Guarded by mLock. Null until the file has been loaded.
+    private Map<String, Object> mMap;
+    // Guarded by mLock. Incremented on every in-memory change.
+    private long mMemoryGeneration;
+    // Guarded by mLock.
+    private boolean mWriteScheduled;
+    // Guarded by mLock.
+    private final WeakHashMap<OnSharedPreferenceChangeListener, Object> mListeners =
+            new WeakHashMap<>();
+
+    private final Object mWriteLock = new Object();
+    // Guarded by mWriteLock. The generation of the in-memory map that was last written to disk.
+    private long mDiskGeneration;
+
+    public BinaryPreferences(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Copies every value of {@code legacyPrefs} into this store, replacing its contents, and writes
+     * the result to disk synchronously. The legacy preferences are left untouched.
+     *
+     * @return whether the result was written, the legacy preferences must be kept otherwise
+     */
+    public boolean migrateFrom(SharedPreferences legacyPrefs) {
+        EditorImpl editor = new EditorImpl();
+        editor.clear();
+        for (Map.Entry<String, ?> entry : legacyPrefs.getAll().entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                editor.putString(entry.getKey(), (String) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(entry.getKey(), (Float) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Set) {
+                //noinspection unchecked
+                editor.putStringSet(entry.getKey(), (Set<String>) value);
+            }
+        }
+        editor.commitToMemory();
+        // Always write, even if there was nothing to migrate, so that the file exists afterwards.
+        synchronized (mLock) {
+            mMemoryGeneration++;
+        }
+        return writeToDisk();
+    }
+
+    /** Returns whether the store contains no values. */
+    public boolean isEmpty() {
+        synchronized (mLock) {
+            return getMapLocked().isEmpty();
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (mLock) {
+            return new HashMap<>(getMapLocked());
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = get(key);
+        //noinspection unchecked
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        synchronized (mLock) {
+            return getMapLocked().containsKey(key);
+        }
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        synchronized (mLock) {
+            mListeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        synchronized (mLock) {
+            mListeners.remove(listener);
+        }
+    }
+
+    @Nullable
+    private Object get(String key) {
+        synchronized (mLock) {
+            return getMapLocked().get(key);
+        }
+    }
+
+    private Map<String, Object> getMapLocked() {
+        if (mMap == null) {
+            mMap = load();
+        }
+        return mMap;
+    }
+
+    private Map<String, Object> load() {
+        Trace.beginSection("BinaryPreferences#load");
+        try (FileInputStream in = mFile.openRead(); FileChannel channel = in.getChannel()) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (FileNotFoundException e) {
+            return new HashMap<>();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to read " + mFile.getBaseFile() + ", starting from scratch", e);
+            return new HashMap<>();
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Writes the current in-memory state to disk unless a newer or equal state was already written.
+     */
+    private boolean writeToDisk() {
+        Map<String, Object> snapshot;
+        long generation;
+        synchronized (mLock) {
+            mWriteScheduled = false;
+            snapshot = new HashMap<>(getMapLocked());
+            generation = mMemoryGeneration;
+        }
+
+        synchronized (mWriteLock) {
+            if (generation <= mDiskGeneration) {
+                return true;
+            }
+            Trace.beginSection("BinaryPreferences#write");
+            FileOutputStream out = null;
+            try {
+                byte[] bytes = encode(snapshot);
+                out = mFile.startWrite();
+                out.write(bytes);
+                mFile.finishWrite(out);
+                mDiskGeneration = generation;
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write " + mFile.getBaseFile(), e);
+                if (out != null) {
+                    mFile.failWrite(out);
+                }
+                return false;
+            } finally {
+                Trace.endSection();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static byte[] encode(Map<String, Object> map) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                out.writeByte(TYPE_STRING);
+                writeString(out, entry.getKey());
+                writeString(out, (String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                writeString(out, entry.getKey());
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                writeString(out, entry.getKey());
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(TYPE_FLOAT);
+                writeString(out, entry.getKey());
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                writeString(out, entry.getKey());
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Set) {
+                out.writeByte(TYPE_STRING_SET);
+                writeString(out, entry.getKey());
+                //noinspection unchecked
+                Set<String> set = (Set<String>) value;
+                out.writeInt(set.size());
+                for (String item : set) {
+                    writeString(out, item);
+                }
+            } else {
+                throw new IOException("Unsupported value type for key " + entry.getKey());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @VisibleForTesting
+    static Map<String, Object> decode(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a preferences file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported preferences file version " + version);
+        }
+        int count = buffer.getInt();
+        Map<String, Object> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get();
+            String key = readString(buffer);
+            switch (type) {
+                case TYPE_STRING:
+                    map.put(key, readString(buffer));
+                    break;
+                case TYPE_INT:
+                    map.put(key, buffer.getInt());
+                    break;
+                case TYPE_LONG:
+                    map.put(key, buffer.getLong());
+                    break;
+                case TYPE_FLOAT:
+                    map.put(key, buffer.getFloat());
+                    break;
+                case TYPE_BOOLEAN:
+                    map.put(key, buffer.get() != 0);
+                    break;
+                case TYPE_STRING_SET:
+                    int size = buffer.getInt();
+                    Set<String> set = new HashSet<>(size * 2);
+                    for (int j = 0; j < size; j++) {
+                        set.add(readString(buffer));
+                    }
+                    map.put(key, Collections.unmodifiableSet(set));
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type + " for key " + key);
+            }
+        }
+        return map;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class EditorImpl implements Editor {
+        private final Map<String, Object> mModified = new HashMap<>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(values)));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @Override
+        public Editor clear() {
+            synchronized (this) {
+                mClear = true;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean changed = commitToMemory();
+            return !changed || writeToDisk();
+        }
+
+        @Override
+        public void apply() {
+            if (!commitToMemory()) {
+                return;
+            }
+            synchronized (mLock) {
+                if (mWriteScheduled) {
+                    return;
+                }
+                mWriteScheduled = true;
+            }
+            sWriteExecutor.execute(BinaryPreferences.this::writeToDisk);
+        }
+
+        private Editor put(String key, @Nullable Object value) {
+            synchronized (this) {
+                // A null value marks the key for removal.
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        /** Applies this editor's changes to the in-memory map. Returns whether anything changed. */
+        private boolean commitToMemory() {
+            List<String> changedKeys = new ArrayList<>();
+            List<OnSharedPreferenceChangeListener> listeners;
+            synchronized (mLock) {
+                Map<String, Object> map = getMapLocked();
+                synchronized (this) {
+                    if (mClear && !map.isEmpty()) {
+                        changedKeys.addAll(map.keySet());
+                        map.clear();
+                    }
+                    mClear = false;
+                    for (Map.Entry<String, Object> entry : mModified.entrySet()) {
+                        String key = entry.getKey();
+                        Object value = entry.getValue();
+                        if (value == null) {
+                            if (map.remove(key) != null) {
+                                changedKeys.add(key);
+                            }
+                        } else if (!Objects.equals(map.put(key, value), value)) {
+                            changedKeys.add(key);
+                        }
+                    }
+                    mModified.clear();
+                }
+                if (changedKeys.isEmpty()) {
+                    return false;
+                }
+                mMemoryGeneration++;
+                listeners = new ArrayList<>(mListeners.keySet());
+            }
+
+            if (!listeners.isEmpty()) {
+                mMainHandler.post(() -> {
+                    for (String key : changedKeys) {
+                        for (OnSharedPreferenceChangeListener listener : listeners) {
+                            listener.onSharedPreferenceChanged(BinaryPreferences.this, key);
+                        }
+                    }
+                });
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module
+
+import android.os.Looper
+import android.os.SystemClock
+import android.os.Trace
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records how long each singleton of the injector took to build, and on which thread. Each build
+ * also shows up as a systrace section.
+ */
+class ConstructionTrace {
+
+    /** The build of one singleton. Nested builds are included in the outer one's duration. */
+    data class Entry(
+        val name: String,
+        val threadName: String,
+        val isMainThread: Boolean,
+        val durationNanos: Long,
+    ) {
+        override fun toString(): String {
+            return "$name: ${TimeUnit.NANOSECONDS.toMicros(durationNanos)}us on $threadName"
+        }
+    }
+
+    private val entries = CopyOnWriteArrayList<Entry>()
+
+    fun <T> trace(name: String, create: () -> T): T {
+        Trace.beginSection("Injector#$name")
+        val startNanos = SystemClock.elapsedRealtimeNanos()
+        try {
+            return create()
+        } finally {
+            val durationNanos = SystemClock.elapsedRealtimeNanos() - startNanos
+            Trace.endSection()
+            entries.add(
+                Entry(
+                    name = name,
+                    threadName = Thread.currentThread().name,
+                    isMainThread = Looper.getMainLooper().isCurrentThread,
+                    durationNanos = durationNanos,
+                )
+            )
+        }
+    }
+
+    /** Returns the builds so far, in the order they finished. */
+    fun getEntries(): List<Entry> = entries.toList()
+}
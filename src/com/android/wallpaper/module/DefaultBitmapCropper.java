@@ -23,6 +23,7 @@ import android.util.Log;
 
 import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.Asset.BitmapReceiver;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,6 +39,9 @@ public class DefaultBitmapCropper implements BitmapCropper {
     @Override
     public void cropAndScaleBitmap(Asset asset, float scale, Rect cropRect,
             boolean isRtl, Callback callback) {
+        PerformanceMonitor monitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
+        long timer = monitor.startTimer(PerformanceMonitor.TIMER_CROP);
         // Crop rect in pixels of source image.
         Rect scaledCropRect = new Rect(
                 (int) Math.floor((float) cropRect.left / scale),
@@ -50,13 +54,16 @@ public class DefaultBitmapCropper implements BitmapCropper {
                     @Override
                     public void onBitmapDecoded(Bitmap bitmap) {
                         if (bitmap == null) {
+                            monitor.stopTimer(PerformanceMonitor.TIMER_CROP, timer);
                             callback.onError(null);
                             return;
                         }
                         // Asset provides a bitmap which is appropriate for the target width &
                         // height, but since it does not guarantee an exact size we need to fit
                         // the bitmap to the cropRect.
+                        monitor.recordTaskQueued(PerformanceMonitor.EXECUTOR_BITMAP_CROPPER);
                         sExecutorService.execute(() -> {
+                            monitor.recordTaskStarted(PerformanceMonitor.EXECUTOR_BITMAP_CROPPER);
                             try {
                                 // Fit bitmap to exact dimensions of crop rect.
                                 Bitmap result = Bitmap.createScaledBitmap(
@@ -64,6 +71,7 @@ public class DefaultBitmapCropper implements BitmapCropper {
                                         cropRect.width(),
                                         cropRect.height(),
                                         FILTER_SCALED_BITMAP);
+                                monitor.recordBitmapAllocated(result.getAllocationByteCount());
                                 new Handler(Looper.getMainLooper()).post(
                                         () -> callback.onBitmapCropped(result));
                             } catch (OutOfMemoryError e) {
@@ -71,6 +79,8 @@ public class DefaultBitmapCropper implements BitmapCropper {
                                         "Not enough memory to fit the final cropped and "
                                                 + "scaled bitmap to size", e);
                                 new Handler(Looper.getMainLooper()).post(() -> callback.onError(e));
+                            } finally {
+                                monitor.stopTimer(PerformanceMonitor.TIMER_CROP, timer);
                             }
                         });
                     }
@@ -22,13 +22,18 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.Xml;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.annotation.XmlRes;
 
 import com.android.wallpaper.R;
 import com.android.wallpaper.model.Category;
+import com.android.wallpaper.model.CategoryDeltaReceiver;
 import com.android.wallpaper.model.CategoryProvider;
 import com.android.wallpaper.model.CategoryReceiver;
 import com.android.wallpaper.model.DefaultWallpaperInfo;
@@ -42,6 +47,8 @@ import com.android.wallpaper.model.ThirdPartyLiveWallpaperCategory;
 import com.android.wallpaper.model.WallpaperCategory;
 import com.android.wallpaper.model.WallpaperInfo;
 import com.android.wallpaper.module.NetworkStatusNotifier.NetworkStatus;
+import com.android.wallpaper.module.PackageStatusNotifier.PackageStatus;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -54,6 +61,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -75,17 +84,31 @@ public class DefaultCategoryProvider implements CategoryProvider {
     private static final int PRIORITY_THIRD_PARTY = 400;
     public static final int CREATIVE_CATEGORY_PRIORITY = 1;
 
+    private static final List<String> EXCLUDED_THIRD_PARTY_PACKAGE_NAMES = Arrays.asList(
+            "com.android.launcher", // Legacy launcher
+            "com.android.wallpaper.livepicker"); // Live wallpaper picker
+    private static final ExecutorService sPackageChangeExecutor =
+            Executors.newSingleThreadExecutor();
+
     protected static List<Category> sSystemCategories;
 
     protected final Context mAppContext;
     protected ArrayList<Category> mCategories;
     protected boolean mFetchedCategories;
+    /**
+     * The task of the last fetch, whose excluded packages also apply to package changes.
+     * Subclasses that fetch through their own task set it to have package changes applied
+     * incrementally; package changes cause a full refetch otherwise.
+     */
+    @Nullable
+    protected FetchCategoriesTask mFetchCategoriesTask;
 
     private NetworkStatusNotifier mNetworkStatusNotifier;
     // The network status of the last fetch from the server.
     @NetworkStatus
     private int mNetworkStatus;
     private Locale mLocale;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     public DefaultCategoryProvider(Context context) {
         mAppContext = context.getApplicationContext();
@@ -204,7 +227,136 @@ public class DefaultCategoryProvider implements CategoryProvider {
             }
         };
 
-        new FetchCategoriesTask(delegatingReceiver, mAppContext).execute();
+        mFetchCategoriesTask = new FetchCategoriesTask(delegatingReceiver, mAppContext);
+        mFetchCategoriesTask.execute();
+    }
+
+    @Override
+    public boolean applyPackageChange(String packageName, @PackageStatus int status,
+            CategoryDeltaReceiver receiver) {
+        FetchCategoriesTask fetchTask = mFetchCategoriesTask;
+        if (!mFetchedCategories || fetchTask == null) {
+            return false;
+        }
+        boolean removed = status == PackageStatus.REMOVED;
+        String liveCollectionId = mAppContext.getString(R.string.live_wallpaper_collection_id);
+        Category liveCategory = getCategory(liveCollectionId);
+        if (liveCategory != null && !(liveCategory instanceof ThirdPartyLiveWallpaperCategory)) {
+            return false;
+        }
+        ThirdPartyLiveWallpaperCategory liveWallpapers =
+                (ThirdPartyLiveWallpaperCategory) liveCategory;
+
+        if (liveWallpapers != null) {
+            // Goes through the same serial path as the screen showing the category, so the
+            // package is resolved once and the two never race.
+            liveWallpapers.applyPackageChange(mAppContext, packageName, removed,
+                    liveChanged -> finishPackageChange(fetchTask, packageName, removed,
+                            liveWallpapers, liveChanged, /* addedLiveWallpapers= */ null,
+                            receiver));
+        } else {
+            sPackageChangeExecutor.execute(() -> {
+                ThirdPartyLiveWallpaperCategory addedLiveWallpapers = null;
+                if (!removed && mAppContext.getPackageManager().hasSystemFeature(
+                        PackageManager.FEATURE_LIVE_WALLPAPER)) {
+                    Set<String> excluded = fetchTask.getExcludedLiveWallpaperPackageNames();
+                    List<WallpaperInfo> resolved = excluded.contains(packageName)
+                            ? Collections.emptyList()
+                            : LiveWallpaperInfo.getFromPackage(mAppContext, packageName);
+                    if (!resolved.isEmpty()) {
+                        addedLiveWallpapers = new ThirdPartyLiveWallpaperCategory(
+                                mAppContext.getString(R.string.live_wallpapers_category_title),
+                                liveCollectionId, resolved, PRIORITY_LIVE, excluded);
+                    }
+                }
+                finishPackageChange(fetchTask, packageName, removed,
+                        /* liveWallpapers= */ null, /* liveChanged= */ false, addedLiveWallpapers,
+                        receiver);
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the third party app category of the changed package, off the main thread, then
+     * applies the changes to the categories on the main thread.
+     */
+    @WorkerThread
+    private void finishPackageChange(FetchCategoriesTask fetchTask, String packageName,
+            boolean removed, @Nullable ThirdPartyLiveWallpaperCategory liveWallpapers,
+            boolean liveChanged, @Nullable ThirdPartyLiveWallpaperCategory addedLiveWallpapers,
+            CategoryDeltaReceiver receiver) {
+        List<ThirdPartyAppCategory> thirdPartyApps = removed ? Collections.emptyList()
+                : ThirdPartyAppCategory.getFromPackage(mAppContext, packageName,
+                        PRIORITY_THIRD_PARTY, fetchTask.getExcludedThirdPartyPackageNames());
+        mMainHandler.post(() -> {
+            // A full refresh started in the meantime and will pick up the change.
+            if (!mFetchedCategories) {
+                return;
+            }
+            if (addedLiveWallpapers != null) {
+                mCategories.add(addedLiveWallpapers);
+                receiver.onCategoryAdded(addedLiveWallpapers);
+            } else if (liveChanged) {
+                if (liveWallpapers.getUnmodifiableWallpapers().isEmpty()) {
+                    mCategories.remove(liveWallpapers);
+                    receiver.onCategoryRemoved(liveWallpapers);
+                } else {
+                    receiver.onCategoryUpdated(liveWallpapers);
+                }
+            }
+            applyThirdPartyAppChange(packageName, thirdPartyApps, receiver);
+        });
+    }
+
+    /**
+     * Replaces the third party app categories of the given package with the given ones, which are
+     * empty if the package was removed or no longer offers to set a wallpaper.
+     */
+    private void applyThirdPartyAppChange(String packageName,
+            List<ThirdPartyAppCategory> thirdPartyApps, CategoryDeltaReceiver receiver) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < mCategories.size(); i++) {
+            Category category = mCategories.get(i);
+            if (category instanceof ThirdPartyAppCategory
+                    && category.containsThirdParty(packageName)) {
+                indices.add(i);
+            }
+        }
+        if (indices.size() == 1 && thirdPartyApps.size() == 1) {
+            ThirdPartyAppCategory thirdPartyApp = thirdPartyApps.get(0);
+            mCategories.set(indices.get(0), thirdPartyApp);
+            receiver.onCategoryUpdated(thirdPartyApp);
+            return;
+        }
+        // The categories of a package share its collection ID, so receivers can't tell which one
+        // an update is for. Remove them all and add the new ones instead.
+        for (int i = indices.size() - 1; i >= 0; i--) {
+            receiver.onCategoryRemoved(mCategories.remove((int) indices.get(i)));
+        }
+        for (ThirdPartyAppCategory thirdPartyApp : thirdPartyApps) {
+            mCategories.add(thirdPartyApp);
+            receiver.onCategoryAdded(thirdPartyApp);
+        }
+    }
+
+    /**
+     * Returns the packages of the live wallpapers listed in the partner-provided system categories,
+     * which aren't shown again in the live wallpapers category.
+     */
+    private static Set<String> getSystemCategoryLiveWallpaperPackageNames() {
+        Set<String> excluded = new HashSet<>();
+        if (sSystemCategories != null) {
+            excluded.addAll(sSystemCategories.stream()
+                    .filter(c -> c instanceof WallpaperCategory)
+                    .flatMap(c -> ((WallpaperCategory) c).getUnmodifiableWallpapers().stream()
+                            .filter(wallpaperInfo -> wallpaperInfo instanceof LiveWallpaperInfo)
+                            .map(wallpaperInfo ->
+                                    ((LiveWallpaperInfo) wallpaperInfo).getWallpaperComponent()
+                                            .getPackageName()))
+                    .collect(Collectors.toSet()));
+        }
+        return excluded;
     }
 
     private Locale getLocale() {
@@ -219,14 +371,34 @@ public class DefaultCategoryProvider implements CategoryProvider {
         protected final CategoryReceiver mReceiver;
         private PartnerProvider mPartnerProvider;
         protected final Context mAppContext;
+        private final PerformanceMonitor mPerformanceMonitor;
+        private long mTimer = PerformanceMonitor.NO_TIMER;
 
         public FetchCategoriesTask(CategoryReceiver receiver, Context context) {
             mReceiver = receiver;
             mAppContext = context.getApplicationContext();
+            mPerformanceMonitor = PerformanceMonitor.orNoOp(
+                    InjectorProvider.getInjector().getPerformanceMonitor());
+        }
+
+        @Override
+        protected void onPreExecute() {
+            mTimer = mPerformanceMonitor.startTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH);
         }
 
         @Override
         protected Void doInBackground(Void... voids) {
+            try {
+                publishCategories();
+            } catch (RuntimeException | Error e) {
+                mPerformanceMonitor.cancelTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH, mTimer);
+                throw e;
+            }
+            return null;
+        }
+
+        /** Publishes all the categories, one at a time. */
+        private void publishCategories() {
             mPartnerProvider = InjectorProvider.getInjector().getPartnerProvider(
                     mAppContext);
 
@@ -259,8 +431,6 @@ public class DefaultCategoryProvider implements CategoryProvider {
             for (ThirdPartyAppCategory thirdPartyApp : thirdPartyApps) {
                 publishProgress(thirdPartyApp);
             }
-
-            return null;
         }
 
         /**
@@ -277,24 +447,11 @@ public class DefaultCategoryProvider implements CategoryProvider {
         }
 
         public Set<String> getExcludedLiveWallpaperPackageNames() {
-            Set<String> excluded = new HashSet<>();
-            if (sSystemCategories != null) {
-                excluded.addAll(sSystemCategories.stream()
-                        .filter(c -> c instanceof WallpaperCategory)
-                        .flatMap(c -> ((WallpaperCategory) c).getUnmodifiableWallpapers().stream()
-                                .filter(wallpaperInfo -> wallpaperInfo instanceof LiveWallpaperInfo)
-                                .map(wallpaperInfo ->
-                                        ((LiveWallpaperInfo) wallpaperInfo).getWallpaperComponent()
-                                                .getPackageName()))
-                        .collect(Collectors.toSet()));
-            }
-            return excluded;
+            return getSystemCategoryLiveWallpaperPackageNames();
         }
 
         protected List<String> getExcludedThirdPartyPackageNames() {
-            return Arrays.asList(
-                    "com.android.launcher", // Legacy launcher
-                    "com.android.wallpaper.livepicker"); // Live wallpaper picker
+            return EXCLUDED_THIRD_PARTY_PACKAGE_NAMES;
         }
 
         /**
@@ -414,7 +571,13 @@ public class DefaultCategoryProvider implements CategoryProvider {
 
         @Override
         protected void onPostExecute(Void unused) {
+            mPerformanceMonitor.stopTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH, mTimer);
             mReceiver.doneFetchingCategories();
         }
+
+        @Override
+        protected void onCancelled() {
+            mPerformanceMonitor.cancelTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH, mTimer);
+        }
     }
 }
@@ -15,72 +15,225 @@
  */
 package com.android.wallpaper.module;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.text.TextUtils;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.wallpaper.model.WallpaperInfo;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import androidx.annotation.Nullable;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Checks whether an explore action can be taken for the given uri, i.e. whether any activity on
  * the device is capable of handling it.
+ * <p>
+ * Uris are resolved in batches on a background thread, grouped by scheme and authority: once an
+ * activity that handles every path of a scheme and authority (typically a browser) is found, the
+ * other uris of that group are answered without querying the {@link PackageManager} again.
+ * Results are cached until a package is added, changed or removed.
  */
 public class DefaultExploreIntentChecker implements ExploreIntentChecker {
-    private Context mAppContext;
 
-    private Map<Uri, Intent> mUriToActionViewIntentMap;
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    /** Queries the activities that can handle an intent. */
+    @VisibleForTesting
+    interface ActivityQuery {
+        List<ResolveInfo> queryIntentActivities(Intent intent, int flags);
+    }
+
+    private final ActivityQuery mActivityQuery;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+
+    private final Object mLock = new Object();
+    // Guarded by mLock. A null intent means no activity can handle the uri.
+    private final Map<Uri, Intent> mUriToActionViewIntentMap = new HashMap<>();
+    // Guarded by mLock. "scheme://authority" of the uris any of whose paths can be handled.
+    private final Set<String> mHandledAuthorities = new HashSet<>();
+    // Guarded by mLock. Receivers waiting for each uri, empty for prefetched ones.
+    private final Map<Uri, List<IntentReceiver>> mPendingUris = new LinkedHashMap<>();
+    // Guarded by mLock.
+    private boolean mBatchScheduled;
+    // Guarded by mLock. Incremented when packages change, so that results of a batch started
+    // before aren't cached.
+    private int mGeneration;
 
     public DefaultExploreIntentChecker(Context appContext) {
-        mAppContext = appContext;
-        mUriToActionViewIntentMap = new HashMap<>();
+        this(appContext.getPackageManager()::queryIntentActivities, sExecutor,
+                appContext.getMainExecutor());
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    @VisibleForTesting
+    DefaultExploreIntentChecker(ActivityQuery activityQuery, Executor backgroundExecutor,
+            Executor mainExecutor) {
+        mActivityQuery = activityQuery;
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
     }
 
     @Override
     public void fetchValidActionViewIntent(Uri uri, IntentReceiver receiver) {
-        if (mUriToActionViewIntentMap.containsKey(uri)) {
-            receiver.onIntentReceived(mUriToActionViewIntentMap.get(uri));
-            return;
+        Intent intent;
+        synchronized (mLock) {
+            if (mUriToActionViewIntentMap.containsKey(uri)) {
+                intent = mUriToActionViewIntentMap.get(uri);
+            } else if (mHandledAuthorities.contains(getAuthorityKey(uri))) {
+                intent = new Intent(Intent.ACTION_VIEW, uri);
+                mUriToActionViewIntentMap.put(uri, intent);
+            } else {
+                List<IntentReceiver> receivers = mPendingUris.get(uri);
+                if (receivers == null) {
+                    receivers = new ArrayList<>();
+                    mPendingUris.put(uri, receivers);
+                }
+                receivers.add(receiver);
+                scheduleBatchLocked();
+                return;
+            }
         }
+        receiver.onIntentReceived(intent);
+    }
 
-        new FetchActionViewIntentTask(mAppContext, uri, receiver).execute();
+    @Override
+    public void prefetchValidActionViewIntents(Context context, List<WallpaperInfo> wallpapers) {
+        List<WallpaperInfo> snapshot = new ArrayList<>(wallpapers);
+        mBackgroundExecutor.execute(() -> {
+            // Loading action urls may load other packages' resources, so do it outside the lock.
+            List<Uri> uris = new ArrayList<>();
+            for (WallpaperInfo wallpaper : snapshot) {
+                String actionUrl = wallpaper.getActionUrl(context);
+                if (!TextUtils.isEmpty(actionUrl)) {
+                    uris.add(Uri.parse(actionUrl));
+                }
+            }
+            synchronized (mLock) {
+                for (Uri uri : uris) {
+                    if (!mUriToActionViewIntentMap.containsKey(uri)
+                            && !mPendingUris.containsKey(uri)) {
+                        mPendingUris.put(uri, new ArrayList<>());
+                    }
+                }
+                if (!mPendingUris.isEmpty()) {
+                    scheduleBatchLocked();
+                }
+            }
+        });
     }
 
-    private class FetchActionViewIntentTask extends AsyncTask<Void, Void, Intent> {
-        private Context mAppContext;
-        private Uri mUri;
-        private IntentReceiver mReceiver;
+    /** Drops every cached result, as the activities able to handle them may have changed. */
+    @VisibleForTesting
+    void invalidate() {
+        synchronized (mLock) {
+            mGeneration++;
+            mUriToActionViewIntentMap.clear();
+            mHandledAuthorities.clear();
+        }
+    }
 
-        public FetchActionViewIntentTask(Context appContext, Uri uri, IntentReceiver receiver) {
-            mAppContext = appContext;
-            mUri = uri;
-            mReceiver = receiver;
+    private void scheduleBatchLocked() {
+        if (mBatchScheduled) {
+            return;
         }
+        mBatchScheduled = true;
+        mBackgroundExecutor.execute(this::resolvePendingUris);
+    }
 
-        @Nullable
-        @Override
-        protected Intent doInBackground(Void... params) {
-            Intent actionViewIntent = new Intent(Intent.ACTION_VIEW, mUri);
+    @WorkerThread
+    private void resolvePendingUris() {
+        Map<Uri, List<IntentReceiver>> pendingUris;
+        Set<String> handledAuthorities;
+        int generation;
+        synchronized (mLock) {
+            pendingUris = new LinkedHashMap<>(mPendingUris);
+            mPendingUris.clear();
+            mBatchScheduled = false;
+            handledAuthorities = new HashSet<>(mHandledAuthorities);
+            generation = mGeneration;
+        }
 
-            PackageManager pm = mAppContext.getPackageManager();
-            List<ResolveInfo> activities = pm.queryIntentActivities(actionViewIntent, /* flags */ 0);
+        Map<Uri, Intent> results = new HashMap<>();
+        for (Uri uri : pendingUris.keySet()) {
+            String authorityKey = getAuthorityKey(uri);
+            Intent actionViewIntent = new Intent(Intent.ACTION_VIEW, uri);
+            if (authorityKey != null && handledAuthorities.contains(authorityKey)) {
+                results.put(uri, actionViewIntent);
+                continue;
+            }
+            List<ResolveInfo> activities = mActivityQuery.queryIntentActivities(
+                    actionViewIntent, PackageManager.GET_RESOLVED_FILTER);
+            results.put(uri, activities.isEmpty() ? null : actionViewIntent);
+            if (authorityKey != null && handlesEveryPath(activities)) {
+                handledAuthorities.add(authorityKey);
+            }
+        }
 
-            Intent result = activities.isEmpty() ? null : actionViewIntent;
-            mUriToActionViewIntentMap.put(mUri, result);
+        synchronized (mLock) {
+            if (generation == mGeneration) {
+                mUriToActionViewIntentMap.putAll(results);
+                mHandledAuthorities.addAll(handledAuthorities);
+            }
+        }
+        mMainExecutor.execute(() -> {
+            for (Map.Entry<Uri, List<IntentReceiver>> entry : pendingUris.entrySet()) {
+                for (IntentReceiver receiver : entry.getValue()) {
+                    receiver.onIntentReceived(results.get(entry.getKey()));
+                }
+            }
+        });
+    }
 
-            return result;
+    /**
+     * Returns whether one of the activities matched through a filter that doesn't restrict the
+     * path, so it can handle any uri of the same scheme and authority.
+     */
+    private static boolean handlesEveryPath(List<ResolveInfo> activities) {
+        for (ResolveInfo activity : activities) {
+            IntentFilter filter = activity.filter;
+            if (filter != null && filter.countDataPaths() == 0
+                    && filter.countDataSchemeSpecificParts() == 0) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        @Override
-        protected void onPostExecute(Intent intent) {
-            mReceiver.onIntentReceived(intent);
+    /** Returns "scheme://authority" for hierarchical uris, or null for the other ones. */
+    @Nullable
+    private static String getAuthorityKey(Uri uri) {
+        if (uri.isOpaque() || uri.getScheme() == null || uri.getEncodedAuthority() == null) {
+            return null;
         }
+        return uri.getScheme() + "://" + uri.getEncodedAuthority();
     }
 }
-
@@ -16,127 +16,126 @@
 package com.android.wallpaper.module;
 
 import android.content.Context;
-import android.content.Intent;
 import android.content.pm.LauncherApps;
-import android.content.pm.PackageManager;
 import android.os.UserHandle;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Default version of {@link PackageStatusNotifier} that uses {@link LauncherApps}
+ * <p>
+ * All listeners share a single {@link LauncherApps.Callback} and a {@link PackageResolveCache}, so
+ * each package event resolves every package at most once per action, and multi-package events are
+ * resolved with one query per action.
  */
 public class DefaultPackageStatusNotifier implements PackageStatusNotifier {
 
-    private final Map<Listener, ListenerWrapper> mListeners = new HashMap<>();
-    private final Context mAppContext;
+    private final Map<Listener, String> mListeners = new LinkedHashMap<>();
     private final LauncherApps mLauncherApps;
-
+    private final PackageResolveCache mResolveCache;
+    private final LauncherApps.Callback mCallback = new PackageCallback();
+    private boolean mCallbackRegistered;
 
     public DefaultPackageStatusNotifier(Context context) {
-        mAppContext = context.getApplicationContext();
         mLauncherApps = (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        mResolveCache = new PackageResolveCache(
+                context.getApplicationContext().getPackageManager());
     }
 
     @Override
     public void addListener(Listener listener, String action) {
-        ListenerWrapper wrapper = new ListenerWrapper(mAppContext, action, listener);
-        removeListenerAndMaybeUnregisterCallback(listener);
-        mListeners.put(listener, wrapper);
-        mLauncherApps.registerCallback(wrapper);
+        mListeners.remove(listener);
+        mListeners.put(listener, action);
+        if (!mCallbackRegistered) {
+            mLauncherApps.registerCallback(mCallback);
+            mCallbackRegistered = true;
+        }
     }
 
     @Override
     public void removeListener(Listener listener) {
-        removeListenerAndMaybeUnregisterCallback(listener);
-    }
-
-    private void removeListenerAndMaybeUnregisterCallback(Listener listener) {
-        ListenerWrapper oldWrapper = mListeners.remove(listener);
-        if (oldWrapper != null) {
-            mLauncherApps.unregisterCallback(oldWrapper);
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mCallbackRegistered) {
+            mLauncherApps.unregisterCallback(mCallback);
+            mCallbackRegistered = false;
         }
     }
 
-    private static class ListenerWrapper extends LauncherApps.Callback {
-
-        private final Context mAppContext;
-        private final Intent mIntentFilter;
-        private final Listener mListener;
-
-        ListenerWrapper(Context context, String action, Listener listener) {
-            mAppContext = context.getApplicationContext();
-            mIntentFilter = new Intent(action);
-            mListener = listener;
-        }
-
-        private boolean isValidPackage(String packageName) {
-            mIntentFilter.setPackage(packageName);
-            PackageManager pm = mAppContext.getPackageManager();
-            return !pm.queryIntentServices(mIntentFilter, 0).isEmpty()
-                    || !pm.queryIntentActivities(mIntentFilter, 0).isEmpty();
+    /**
+     * Notifies the listeners of the given packages that handle each listener's action.
+     *
+     * @param status the {@link PackageStatus} to report
+     */
+    private void notifyValidPackages(String[] packageNames, @PackageStatus int status) {
+        // Copy the listeners as they may remove themselves while being notified.
+        List<Map.Entry<Listener, String>> listeners = new ArrayList<>(mListeners.entrySet());
+        Map<String, Set<String>> validPackagesByAction = new LinkedHashMap<>();
+        for (Map.Entry<Listener, String> entry : listeners) {
+            Set<String> validPackages = validPackagesByAction.computeIfAbsent(entry.getValue(),
+                    action -> mResolveCache.getValidPackages(action, packageNames));
+            for (String packageName : packageNames) {
+                if (validPackages.contains(packageName)) {
+                    entry.getKey().onPackageChanged(packageName, status);
+                }
+            }
         }
+    }
 
+    private class PackageCallback extends LauncherApps.Callback {
 
         @Override
         public void onPackageRemoved(String packageName, UserHandle userHandle) {
+            mResolveCache.invalidate(packageName);
             // We can't check if the removed package is "valid" for the given action, as it's not
             // there any more, so trigger REMOVED for all cases.
-            mListener.onPackageChanged(packageName, PackageStatus.REMOVED);
+            for (Listener listener : new ArrayList<>(mListeners.keySet())) {
+                listener.onPackageChanged(packageName, PackageStatus.REMOVED);
+            }
         }
 
         @Override
         public void onPackageAdded(String packageName, UserHandle userHandle) {
-            if (isValidPackage(packageName)) {
-                mListener.onPackageChanged(packageName, PackageStatus.ADDED);
-            }
+            mResolveCache.invalidate(packageName);
+            notifyValidPackages(new String[]{packageName}, PackageStatus.ADDED);
         }
 
         @Override
         public void onPackageChanged(String packageName, UserHandle userHandle) {
-            if (isValidPackage(packageName)) {
-                mListener.onPackageChanged(packageName, PackageStatus.CHANGED);
-            }
+            mResolveCache.invalidate(packageName);
+            notifyValidPackages(new String[]{packageName}, PackageStatus.CHANGED);
         }
 
         @Override
         public void onPackagesAvailable(String[] packageNames, UserHandle userHandle,
                                         boolean replacing) {
-            for (String packageName : packageNames) {
-                if (isValidPackage(packageName)) {
-                    mListener.onPackageChanged(packageName,
-                            replacing ? PackageStatus.CHANGED : PackageStatus.ADDED);
-                }
-            }
+            mResolveCache.invalidate(packageNames);
+            notifyValidPackages(packageNames,
+                    replacing ? PackageStatus.CHANGED : PackageStatus.ADDED);
         }
 
         @Override
         public void onPackagesUnavailable(String[] packageNames, UserHandle userHandle,
                                           boolean replacing) {
-            for (String packageName : packageNames) {
-                if (!replacing && isValidPackage(packageName)) {
-                    mListener.onPackageChanged(packageName, PackageStatus.REMOVED);
-                }
+            if (!replacing) {
+                // Use what the packages resolved to while they were still available.
+                notifyValidPackages(packageNames, PackageStatus.REMOVED);
             }
+            mResolveCache.invalidate(packageNames);
         }
 
         @Override
         public void onPackagesSuspended(String[] packageNames, UserHandle user) {
-            for (String packageName : packageNames) {
-                if (isValidPackage(packageName)) {
-                    mListener.onPackageChanged(packageName, PackageStatus.REMOVED);
-                }
-            }
+            notifyValidPackages(packageNames, PackageStatus.REMOVED);
         }
 
         @Override
         public void onPackagesUnsuspended(String[] packageNames, UserHandle user) {
-            for (String packageName : packageNames) {
-                if (isValidPackage(packageName)) {
-                    mListener.onPackageChanged(packageName, PackageStatus.ADDED);
-                }
-            }
+            notifyValidPackages(packageNames, PackageStatus.ADDED);
         }
     }
 }
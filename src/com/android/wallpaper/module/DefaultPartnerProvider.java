@@ -36,15 +36,18 @@ public class DefaultPartnerProvider implements PartnerProvider {
 
     private final String mPackageName;
     private final Resources mResources;
+    private final ResourceIndex mResourceIndex;
 
     public DefaultPartnerProvider(Context ctx) {
         Pair<String, Resources> apkInfo = findSystemApk(ctx.getPackageManager());
         if (apkInfo != null) {
             mPackageName = apkInfo.first;
             mResources = apkInfo.second;
+            mResourceIndex = ResourceIndex.get(ctx, mPackageName, mResources);
         } else {
             mPackageName = null;
             mResources = null;
+            mResourceIndex = null;
         }
     }
 
@@ -85,8 +88,8 @@ public class DefaultPartnerProvider implements PartnerProvider {
         // Resources may be null if no partner customization APK has been placed on the system image, so
         // check if null before calling Resources#getIdentifier.
         if (res != null) {
-            resId = res.getIdentifier(PartnerProvider.RES_LEGACY_SYSTEM_WALLPAPER_DIR,
-                    "string", mPackageName);
+            resId = mResourceIndex.getIdentifier(PartnerProvider.RES_LEGACY_SYSTEM_WALLPAPER_DIR,
+                    "string");
         }
         return (resId != 0) ? new File(res.getString(resId)) : null;
     }
@@ -102,8 +105,8 @@ public class DefaultPartnerProvider implements PartnerProvider {
         // Resources may be null if no partner customization APK has been placed on the system image, so
         // check if null before calling Resources#getIdentifier.
         if (res != null) {
-            final int resId = res.getIdentifier(
-                    RES_DEFAULT_WALLPAPER_HIDDEN, /* defType */ "bool", mPackageName);
+            final int resId = mResourceIndex.getIdentifier(
+                    RES_DEFAULT_WALLPAPER_HIDDEN, /* defType */ "bool");
             return resId != 0 && res.getBoolean(resId);
         }
         return false;
@@ -47,9 +47,11 @@ import com.android.wallpaper.asset.Asset.DimensionsReceiver;
 import com.android.wallpaper.asset.BitmapUtils;
 import com.android.wallpaper.asset.StreamableAsset;
 import com.android.wallpaper.asset.StreamableAsset.StreamReceiver;
+import com.android.wallpaper.asset.WallpaperIdSnapshot;
 import com.android.wallpaper.compat.WallpaperManagerCompat;
 import com.android.wallpaper.model.WallpaperInfo;
 import com.android.wallpaper.module.BitmapCropper.Callback;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 import com.android.wallpaper.util.BitmapTransformer;
 import com.android.wallpaper.util.DisplayUtils;
 import com.android.wallpaper.util.ScreenSizeCalculator;
@@ -78,6 +80,7 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
     private final WallpaperPreferences mWallpaperPreferences;
     private final WallpaperChangedNotifier mWallpaperChangedNotifier;
     private final DisplayUtils mDisplayUtils;
+    private final PerformanceMonitor mPerformanceMonitor;
 
     private WallpaperInfo mWallpaperInfoInPreview;
 
@@ -92,6 +95,7 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
         mWallpaperPreferences = injector.getPreferences(context);
         mWallpaperChangedNotifier = WallpaperChangedNotifier.getInstance();
         mDisplayUtils = injector.getDisplayUtils(context);
+        mPerformanceMonitor = PerformanceMonitor.orNoOp(injector.getPerformanceMonitor());
     }
 
     @Override
@@ -386,36 +390,38 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
             String collectionId,
             int wallpaperId,
             @Destination int destination) {
-        if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
-            mWallpaperPreferences.clearHomeWallpaperMetadata();
-
-            // Persist wallpaper IDs if the rotating wallpaper component
-            mWallpaperPreferences.setHomeWallpaperManagerId(wallpaperId);
-
-            // Only copy over wallpaper ID to lock wallpaper if no explicit lock wallpaper is set
-            // (so metadata isn't lost if a user explicitly sets a home-only wallpaper).
-
-            mWallpaperPreferences.setHomeWallpaperAttributions(attributions);
-            mWallpaperPreferences.setHomeWallpaperActionUrl(actionUrl);
-            mWallpaperPreferences.setHomeWallpaperActionLabelRes(actionLabelRes);
-            mWallpaperPreferences.setHomeWallpaperActionIconRes(actionIconRes);
-            // Only set base image URL for static Backdrop images, not for rotation.
-            mWallpaperPreferences.setHomeWallpaperBaseImageUrl(null);
-            mWallpaperPreferences.setHomeWallpaperCollectionId(collectionId);
-        }
+        mWallpaperPreferences.runInTransaction(() -> {
+            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
+                mWallpaperPreferences.clearHomeWallpaperMetadata();
 
-        // Set metadata to lock screen also when the rotating wallpaper so if user sets a home
-        // screen-only wallpaper later, these attributions will still be available.
-        if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH
-                || !isSeparateLockScreenWallpaperSet()) {
-            mWallpaperPreferences.clearLockWallpaperMetadata();
-            mWallpaperPreferences.setLockWallpaperId(wallpaperId);
-            mWallpaperPreferences.setLockWallpaperAttributions(attributions);
-            mWallpaperPreferences.setLockWallpaperActionUrl(actionUrl);
-            mWallpaperPreferences.setLockWallpaperActionLabelRes(actionLabelRes);
-            mWallpaperPreferences.setLockWallpaperActionIconRes(actionIconRes);
-            mWallpaperPreferences.setLockWallpaperCollectionId(collectionId);
-        }
+                // Persist wallpaper IDs if the rotating wallpaper component
+                mWallpaperPreferences.setHomeWallpaperManagerId(wallpaperId);
+
+                // Only copy over wallpaper ID to lock wallpaper if no explicit lock wallpaper is
+                // set (so metadata isn't lost if a user explicitly sets a home-only wallpaper).
+
+                mWallpaperPreferences.setHomeWallpaperAttributions(attributions);
+                mWallpaperPreferences.setHomeWallpaperActionUrl(actionUrl);
+                mWallpaperPreferences.setHomeWallpaperActionLabelRes(actionLabelRes);
+                mWallpaperPreferences.setHomeWallpaperActionIconRes(actionIconRes);
+                // Only set base image URL for static Backdrop images, not for rotation.
+                mWallpaperPreferences.setHomeWallpaperBaseImageUrl(null);
+                mWallpaperPreferences.setHomeWallpaperCollectionId(collectionId);
+            }
+
+            // Set metadata to lock screen also when the rotating wallpaper so if user sets a home
+            // screen-only wallpaper later, these attributions will still be available.
+            if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH
+                    || !isSeparateLockScreenWallpaperSet()) {
+                mWallpaperPreferences.clearLockWallpaperMetadata();
+                mWallpaperPreferences.setLockWallpaperId(wallpaperId);
+                mWallpaperPreferences.setLockWallpaperAttributions(attributions);
+                mWallpaperPreferences.setLockWallpaperActionUrl(actionUrl);
+                mWallpaperPreferences.setLockWallpaperActionLabelRes(actionLabelRes);
+                mWallpaperPreferences.setLockWallpaperActionIconRes(actionIconRes);
+                mWallpaperPreferences.setLockWallpaperCollectionId(collectionId);
+            }
+        });
 
         return true;
     }
@@ -492,40 +498,52 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
     public int setBitmapToWallpaperManagerCompat(Bitmap wallpaperBitmap, boolean allowBackup,
             int whichWallpaper) {
         ByteArrayOutputStream tmpOut = new ByteArrayOutputStream();
-        if (wallpaperBitmap.compress(CompressFormat.PNG, DEFAULT_COMPRESS_QUALITY, tmpOut)) {
-            try {
-                byte[] outByteArray = tmpOut.toByteArray();
-                return mWallpaperManagerCompat.setStream(
-                        new ByteArrayInputStream(outByteArray),
-                        null /* visibleCropHint */,
-                        allowBackup,
-                        whichWallpaper);
-            } catch (IOException e) {
-                Log.e(TAG, "unable to write stream to wallpaper manager");
-                return 0;
-            }
-        } else {
-            Log.e(TAG, "unable to compress wallpaper");
-            try {
-                return mWallpaperManagerCompat.setBitmap(
-                        wallpaperBitmap,
-                        null /* visibleCropHint */,
-                        allowBackup,
-                        whichWallpaper);
-            } catch (IOException e) {
-                Log.e(TAG, "unable to set wallpaper");
-                return 0;
+        long encodeTimer = mPerformanceMonitor.startTimer(PerformanceMonitor.TIMER_ENCODE);
+        boolean compressed =
+                wallpaperBitmap.compress(CompressFormat.PNG, DEFAULT_COMPRESS_QUALITY, tmpOut);
+        mPerformanceMonitor.stopTimer(PerformanceMonitor.TIMER_ENCODE, encodeTimer);
+        long applyTimer = mPerformanceMonitor.startTimer(PerformanceMonitor.TIMER_APPLY);
+        try {
+            if (compressed) {
+                try {
+                    byte[] outByteArray = tmpOut.toByteArray();
+                    return mWallpaperManagerCompat.setStream(
+                            new ByteArrayInputStream(outByteArray),
+                            null /* visibleCropHint */,
+                            allowBackup,
+                            whichWallpaper);
+                } catch (IOException e) {
+                    Log.e(TAG, "unable to write stream to wallpaper manager");
+                    return 0;
+                }
+            } else {
+                Log.e(TAG, "unable to compress wallpaper");
+                try {
+                    return mWallpaperManagerCompat.setBitmap(
+                            wallpaperBitmap,
+                            null /* visibleCropHint */,
+                            allowBackup,
+                            whichWallpaper);
+                } catch (IOException e) {
+                    Log.e(TAG, "unable to set wallpaper");
+                    return 0;
+                }
             }
+        } finally {
+            mPerformanceMonitor.stopTimer(PerformanceMonitor.TIMER_APPLY, applyTimer);
         }
     }
 
     private int setStreamToWallpaperManagerCompat(InputStream inputStream, boolean allowBackup,
             int whichWallpaper) {
+        long applyTimer = mPerformanceMonitor.startTimer(PerformanceMonitor.TIMER_APPLY);
         try {
             return mWallpaperManagerCompat.setStream(inputStream, null, allowBackup,
                     whichWallpaper);
         } catch (IOException e) {
             return 0;
+        } finally {
+            mPerformanceMonitor.stopTimer(PerformanceMonitor.TIMER_APPLY, applyTimer);
         }
     }
 
@@ -566,24 +584,26 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
             @Destination int destination) {
         android.app.WallpaperInfo component = wallpaperInfo.getWallpaperComponent();
 
-        if (destination == WallpaperPersister.DEST_HOME_SCREEN
-                || destination == WallpaperPersister.DEST_BOTH) {
-            mWallpaperPreferences.clearHomeWallpaperMetadata();
-            mWallpaperPreferences.setHomeWallpaperServiceName(component.getServiceName());
-            mWallpaperPreferences.setHomeWallpaperEffects(effects);
+        mWallpaperPreferences.runInTransaction(() -> {
+            if (destination == WallpaperPersister.DEST_HOME_SCREEN
+                    || destination == WallpaperPersister.DEST_BOTH) {
+                mWallpaperPreferences.clearHomeWallpaperMetadata();
+                mWallpaperPreferences.setHomeWallpaperServiceName(component.getServiceName());
+                mWallpaperPreferences.setHomeWallpaperEffects(effects);
 
-            // Since rotation affects home screen only, disable it when setting home live wp
-            mWallpaperPreferences.setWallpaperPresentationMode(
-                    WallpaperPreferences.PRESENTATION_MODE_STATIC);
-            mWallpaperPreferences.clearDailyRotations();
-        }
+                // Since rotation affects home screen only, disable it when setting home live wp
+                mWallpaperPreferences.setWallpaperPresentationMode(
+                        WallpaperPreferences.PRESENTATION_MODE_STATIC);
+                mWallpaperPreferences.clearDailyRotations();
+            }
 
-        if (destination == WallpaperPersister.DEST_LOCK_SCREEN
-                || destination == WallpaperPersister.DEST_BOTH) {
-            mWallpaperPreferences.clearLockWallpaperMetadata();
-            mWallpaperPreferences.setLockWallpaperServiceName(component.getServiceName());
-            mWallpaperPreferences.setLockWallpaperEffects(effects);
-        }
+            if (destination == WallpaperPersister.DEST_LOCK_SCREEN
+                    || destination == WallpaperPersister.DEST_BOTH) {
+                mWallpaperPreferences.clearLockWallpaperMetadata();
+                mWallpaperPreferences.setLockWallpaperServiceName(component.getServiceName());
+                mWallpaperPreferences.setLockWallpaperEffects(effects);
+            }
+        });
     }
 
     private class SetWallpaperTask extends AsyncTask<Void, Void, Boolean> {
@@ -713,6 +733,7 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
             }
 
             if (isSuccess) {
+                WallpaperIdSnapshot.getInstance(mAppContext).invalidate();
                 mCallback.onSuccess(mWallpaper, mDestination);
                 mWallpaperChangedNotifier.notifyWallpaperChanged();
             } else {
@@ -760,24 +781,26 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
          *                    image.
          */
         private void setImageWallpaperMetadata(@Destination int destination, int wallpaperId) {
-            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.clearHomeWallpaperMetadata();
-                mWallpaperPreferences.setHomeWallpaperEffects(null);
-                setImageWallpaperHomeMetadata(wallpaperId);
-
-                // Reset presentation mode to STATIC if an individual wallpaper is set to the
-                // home screen
-                // because rotation always affects at least the home screen.
-                mWallpaperPreferences.setWallpaperPresentationMode(
-                        WallpaperPreferences.PRESENTATION_MODE_STATIC);
-            }
+            mWallpaperPreferences.runInTransaction(() -> {
+                if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
+                    mWallpaperPreferences.clearHomeWallpaperMetadata();
+                    mWallpaperPreferences.setHomeWallpaperEffects(null);
+                    setImageWallpaperHomeMetadata(wallpaperId);
+
+                    // Reset presentation mode to STATIC if an individual wallpaper is set to the
+                    // home screen
+                    // because rotation always affects at least the home screen.
+                    mWallpaperPreferences.setWallpaperPresentationMode(
+                            WallpaperPreferences.PRESENTATION_MODE_STATIC);
+                }
 
-            if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.clearLockWallpaperMetadata();
-                setImageWallpaperLockMetadata(wallpaperId);
-            }
+                if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
+                    mWallpaperPreferences.clearLockWallpaperMetadata();
+                    setImageWallpaperLockMetadata(wallpaperId);
+                }
 
-            mWallpaperPreferences.clearDailyRotations();
+                mWallpaperPreferences.clearDailyRotations();
+            });
         }
 
         private void setImageWallpaperHomeMetadata(int homeWallpaperId) {
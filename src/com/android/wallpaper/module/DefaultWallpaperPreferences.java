@@ -21,11 +21,15 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
 import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.wallpaper.module.WallpaperPersister.Destination;
 import com.android.wallpaper.module.WallpaperPreferenceKeys.NoBackupKeys;
@@ -39,17 +43,25 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 /**
  * Default implementation that writes to and reads from SharedPreferences.
+ * <p>
+ * Preferences that are backed up live in the "wallpaper" XML SharedPreferences file. Preferences
+ * that aren't backed up live in a {@link BinaryPreferences} store, which is migrated once from the
+ * legacy "wallpaper-nobackup" XML file.
  */
 public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     public static final String PREFS_NAME = "wallpaper";
     public static final String NO_BACKUP_PREFS_NAME = "wallpaper-nobackup";
+    public static final String NO_BACKUP_STORE_NAME = "wallpaper-nobackup.prefs";
 
     private static final String TAG = "DefaultWPPreferences";
 
@@ -60,21 +72,65 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     // Keep a strong reference to this OnSharedPreferenceChangeListener to prevent the listener from
     // being garbage collected because SharedPreferences only holds a weak reference.
     private OnSharedPreferenceChangeListener mSharedPrefsChangedListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Only accessed on the main thread, where SharedPreferences delivers change callbacks.
+    private boolean mBackupNotificationPending;
+
+    private final ThreadLocal<Transaction> mTransaction = new ThreadLocal<>();
 
     public DefaultWallpaperPreferences(Context context) {
+        Trace.beginSection("DefaultWallpaperPreferences#init");
         mSharedPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        mNoBackupPrefs = context.getSharedPreferences(NO_BACKUP_PREFS_NAME, Context.MODE_PRIVATE);
-        if (mNoBackupPrefs.getAll().isEmpty() && !mSharedPrefs.getAll().isEmpty()) {
+        File storeFile = new File(context.getNoBackupFilesDir(), NO_BACKUP_STORE_NAME);
+        boolean migrating = !storeFile.exists();
+        mNoBackupPrefs = openNoBackupStore(context, storeFile);
+        // Versions of the app older than the legacy no-backup file kept its preferences with the
+        // backed up ones, which only needs checking on the launch that creates the store.
+        if (migrating && mNoBackupPrefs instanceof BinaryPreferences
+                && ((BinaryPreferences) mNoBackupPrefs).isEmpty()) {
             upgradePrefs();
         }
         mContext = context.getApplicationContext();
+        Trace.endSection();
 
         // Register a prefs changed listener so that all prefs changes trigger a backup event.
+        // Change callbacks arrive once per modified key, so coalesce them into a single
+        // notification for all the keys written by one apply or commit.
         final BackupManager backupManager = new BackupManager(context);
-        mSharedPrefsChangedListener = (sharedPreferences, key) -> backupManager.dataChanged();
+        mSharedPrefsChangedListener = (sharedPreferences, key) -> {
+            if (mBackupNotificationPending) {
+                return;
+            }
+            mBackupNotificationPending = true;
+            mMainHandler.post(() -> {
+                mBackupNotificationPending = false;
+                backupManager.dataChanged();
+            });
+        };
         mSharedPrefs.registerOnSharedPreferenceChangeListener(mSharedPrefsChangedListener);
     }
 
+    /**
+     * Opens the store for preferences that aren't backed up, migrating the contents of the legacy
+     * XML file into it the first time. If the migration can't be written, the legacy file is kept
+     * and returned instead, and the migration is attempted again on the next launch.
+     */
+    @VisibleForTesting
+    static SharedPreferences openNoBackupStore(Context context, File storeFile) {
+        if (storeFile.exists()) {
+            return new BinaryPreferences(storeFile);
+        }
+        SharedPreferences legacyPrefs =
+                context.getSharedPreferences(NO_BACKUP_PREFS_NAME, Context.MODE_PRIVATE);
+        BinaryPreferences store = new BinaryPreferences(storeFile);
+        if (!store.migrateFrom(legacyPrefs)) {
+            Log.w(TAG, "Unable to migrate " + NO_BACKUP_PREFS_NAME + ", keeping it for now");
+            return legacyPrefs;
+        }
+        context.deleteSharedPreferences(NO_BACKUP_PREFS_NAME);
+        return store;
+    }
+
     /**
      * Move {@link NoBackupKeys} preferences that might have been in mSharedPrefs from previous
      * versions of the app into mNoBackupPrefs.
@@ -163,8 +219,63 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         editor.apply();
     }
 
+    @Override
+    public void runInTransaction(Runnable writes) {
+        if (mTransaction.get() != null) {
+            writes.run();
+            return;
+        }
+
+        Transaction transaction = new Transaction(mSharedPrefs, mNoBackupPrefs);
+        mTransaction.set(transaction);
+        try {
+            writes.run();
+        } finally {
+            mTransaction.remove();
+            transaction.finish();
+        }
+    }
+
+    /**
+     * Returns {@link #mSharedPrefs} for reading. Within a transaction, the returned preferences
+     * also reflect the writes made so far in the transaction, so that getters and read-modify-write
+     * setters observe them.
+     */
+    protected SharedPreferences readSharedPrefs() {
+        Transaction transaction = mTransaction.get();
+        return transaction != null ? transaction.mSharedPrefs : mSharedPrefs;
+    }
+
+    /**
+     * Returns {@link #mNoBackupPrefs} for reading, following the same transaction semantics as
+     * {@link #readSharedPrefs()}.
+     */
+    protected SharedPreferences readNoBackupPrefs() {
+        Transaction transaction = mTransaction.get();
+        return transaction != null ? transaction.mNoBackupPrefs : mNoBackupPrefs;
+    }
+
+    /**
+     * Returns an editor for {@link #mSharedPrefs}. Within a transaction, this is the transaction's
+     * shared editor and calling {@code apply()} or {@code commit()} on it is deferred until the
+     * transaction ends.
+     */
+    protected SharedPreferences.Editor editSharedPrefs() {
+        Transaction transaction = mTransaction.get();
+        return transaction != null ? transaction.mSharedEditor : mSharedPrefs.edit();
+    }
+
+    /**
+     * Returns an editor for {@link #mNoBackupPrefs}, following the same transaction semantics as
+     * {@link #editSharedPrefs()}.
+     */
+    protected SharedPreferences.Editor editNoBackupPrefs() {
+        Transaction transaction = mTransaction.get();
+        return transaction != null ? transaction.mNoBackupEditor : mNoBackupPrefs.edit();
+    }
+
     private int getResIdPersistedByName(String key, String type) {
-        String resName = mSharedPrefs.getString(key, null);
+        String resName = readSharedPrefs().getString(key, null);
         if (resName == null) {
             return 0;
         }
@@ -174,13 +285,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     private void persistResIdByName(String key, int resId) {
         String resName = mContext.getResources().getResourceName(resId);
-        mSharedPrefs.edit().putString(key, resName).apply();
+        editSharedPrefs().putString(key, resName).apply();
     }
 
     @Override
     public int getWallpaperPresentationMode() {
         @PresentationMode
-        int homeWallpaperPresentationMode = mSharedPrefs.getInt(
+        int homeWallpaperPresentationMode = readSharedPrefs().getInt(
                 WallpaperPreferenceKeys.KEY_WALLPAPER_PRESENTATION_MODE,
                 WallpaperPreferences.PRESENTATION_MODE_STATIC);
         return homeWallpaperPresentationMode;
@@ -188,22 +299,23 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public void setWallpaperPresentationMode(@PresentationMode int presentationMode) {
-        mSharedPrefs.edit().putInt(
+        editSharedPrefs().putInt(
                 WallpaperPreferenceKeys.KEY_WALLPAPER_PRESENTATION_MODE, presentationMode).apply();
     }
 
     @Override
     public List<String> getHomeWallpaperAttributions() {
+        SharedPreferences prefs = readSharedPrefs();
         return Arrays.asList(
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_1, null),
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_2, null),
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_3, null));
+                prefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_1, null),
+                prefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_2, null),
+                prefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_3, null));
 
     }
 
     @Override
     public void setHomeWallpaperAttributions(List<String> attributions) {
-        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        SharedPreferences.Editor editor = editSharedPrefs();
         if (attributions.size() > 0) {
             editor.putString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_1,
                     attributions.get(0));
@@ -222,12 +334,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getHomeWallpaperActionUrl() {
-        return mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ACTION_URL, null);
+        return readSharedPrefs().getString(
+                WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ACTION_URL, null);
     }
 
     @Override
     public void setHomeWallpaperActionUrl(String actionUrl) {
-        mSharedPrefs.edit().putString(
+        editSharedPrefs().putString(
                 WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ACTION_URL, actionUrl).apply();
     }
 
@@ -257,13 +370,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public String getHomeWallpaperBaseImageUrl() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_BASE_IMAGE_URL, null);
     }
 
     @Override
     public void setHomeWallpaperBaseImageUrl(String baseImageUrl) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_BASE_IMAGE_URL, baseImageUrl)
                 .apply();
     }
@@ -271,37 +384,37 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getHomeWallpaperCollectionId() {
-        return mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_COLLECTION_ID,
+        return readSharedPrefs().getString(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_COLLECTION_ID,
                 null);
     }
 
     @Override
     public void setHomeWallpaperCollectionId(String collectionId) {
-        mSharedPrefs.edit().putString(
+        editSharedPrefs().putString(
                 WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_COLLECTION_ID, collectionId).apply();
     }
 
     @Override
     @Nullable
     public String getHomeWallpaperBackingFileName() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_BACKING_FILE, null);
     }
 
     @Override
     public void setHomeWallpaperBackingFileName(String fileName) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_BACKING_FILE, fileName).apply();
     }
 
     @Override
     public long getHomeWallpaperHashCode() {
-        return mSharedPrefs.getLong(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_HASH_CODE, 0);
+        return readSharedPrefs().getLong(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_HASH_CODE, 0);
     }
 
     @Override
     public void setHomeWallpaperHashCode(long hashCode) {
-        mSharedPrefs.edit().putLong(
+        editSharedPrefs().putLong(
                 WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_HASH_CODE, hashCode).apply();
     }
 
@@ -311,7 +424,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         if (!TextUtils.isEmpty(homeWallpaperBackingFileName)) {
             new File(homeWallpaperBackingFileName).delete();
         }
-        mSharedPrefs.edit()
+        editSharedPrefs()
                 .remove(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_1)
                 .remove(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_2)
                 .remove(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_ATTRIB_3)
@@ -321,7 +434,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
                 .remove(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_HASH_CODE)
                 .apply();
 
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .remove(NoBackupKeys.KEY_HOME_WALLPAPER_SERVICE_NAME)
                 .remove(NoBackupKeys.KEY_HOME_WALLPAPER_MANAGER_ID)
                 .remove(NoBackupKeys.KEY_HOME_WALLPAPER_REMOTE_ID)
@@ -333,13 +446,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public String getHomeWallpaperServiceName() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_SERVICE_NAME, null);
     }
 
     @Override
     public void setHomeWallpaperServiceName(@NonNull String serviceName) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_SERVICE_NAME, serviceName)
                 .apply();
         setFirstWallpaperApplyDateIfNeeded();
@@ -347,13 +460,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public int getHomeWallpaperManagerId() {
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_HOME_WALLPAPER_MANAGER_ID, 0);
     }
 
     @Override
     public void setHomeWallpaperManagerId(int homeWallpaperId) {
-        mNoBackupPrefs.edit().putInt(
+        editNoBackupPrefs().putInt(
                 NoBackupKeys.KEY_HOME_WALLPAPER_MANAGER_ID, homeWallpaperId)
                 .apply();
     }
@@ -361,7 +474,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getHomeWallpaperRecentsKey() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_RECENTS_KEY,
                 WallpaperPreferences.generateRecentsKey(getHomeWallpaperRemoteId(),
                         getHomeWallpaperHashCode()));
@@ -369,7 +482,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public void setHomeWallpaperRecentsKey(String recentsKey) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                         NoBackupKeys.KEY_HOME_WALLPAPER_RECENTS_KEY, recentsKey)
                 .apply();
     }
@@ -377,13 +490,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Nullable
     @Override
     public String getHomeWallpaperRemoteId() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_REMOTE_ID, null);
     }
 
     @Override
     public void setHomeWallpaperRemoteId(@Nullable String wallpaperRemoteId) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_REMOTE_ID, wallpaperRemoteId)
                 .apply();
         setFirstWallpaperApplyDateIfNeeded();
@@ -391,16 +504,17 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public List<String> getLockWallpaperAttributions() {
+        SharedPreferences prefs = readSharedPrefs();
         return Arrays.asList(
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_1, null),
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_2, null),
-                mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_3, null));
+                prefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_1, null),
+                prefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_2, null),
+                prefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_3, null));
 
     }
 
     @Override
     public void setLockWallpaperAttributions(List<String> attributions) {
-        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        SharedPreferences.Editor editor = editSharedPrefs();
         if (attributions.size() > 0) {
             editor.putString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_1,
                     attributions.get(0));
@@ -419,12 +533,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getLockWallpaperActionUrl() {
-        return mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ACTION_URL, null);
+        return readSharedPrefs().getString(
+                WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ACTION_URL, null);
     }
 
     @Override
     public void setLockWallpaperActionUrl(String actionUrl) {
-        mSharedPrefs.edit().putString(
+        editSharedPrefs().putString(
                 WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ACTION_URL, actionUrl).apply();
     }
 
@@ -455,38 +570,38 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getLockWallpaperCollectionId() {
-        return mSharedPrefs.getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_COLLECTION_ID,
+        return readSharedPrefs().getString(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_COLLECTION_ID,
                 null);
     }
 
     @Override
     public void setLockWallpaperCollectionId(String collectionId) {
-        mSharedPrefs.edit().putString(
+        editSharedPrefs().putString(
                 WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_COLLECTION_ID, collectionId).apply();
     }
 
     @Override
     @Nullable
     public String getLockWallpaperBackingFileName() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_BACKING_FILE, null);
     }
 
     @Override
     public void setLockWallpaperBackingFileName(String fileName) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_BACKING_FILE, fileName).apply();
     }
 
     @Override
     public int getLockWallpaperId() {
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_MANAGER_ID, 0);
     }
 
     @Override
     public void setLockWallpaperId(int lockWallpaperId) {
-        mNoBackupPrefs.edit().putInt(
+        editNoBackupPrefs().putInt(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_MANAGER_ID, lockWallpaperId)
                 .apply();
     }
@@ -494,7 +609,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     @Nullable
     public String getLockWallpaperRecentsKey() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_RECENTS_KEY,
                 WallpaperPreferences.generateRecentsKey(getLockWallpaperRemoteId(),
                         getLockWallpaperHashCode()));
@@ -502,20 +617,20 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public void setLockWallpaperRecentsKey(String recentsKey) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                         NoBackupKeys.KEY_LOCK_WALLPAPER_RECENTS_KEY, recentsKey)
                 .apply();
     }
 
     @Override
     public String getLockWallpaperRemoteId() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_REMOTE_ID, null);
     }
 
     @Override
     public void setLockWallpaperRemoteId(String wallpaperRemoteId) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_REMOTE_ID, wallpaperRemoteId)
                 .apply();
         setFirstWallpaperApplyDateIfNeeded();
@@ -523,12 +638,12 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public long getLockWallpaperHashCode() {
-        return mSharedPrefs.getLong(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_HASH_CODE, 0);
+        return readSharedPrefs().getLong(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_HASH_CODE, 0);
     }
 
     @Override
     public void setLockWallpaperHashCode(long hashCode) {
-        mSharedPrefs.edit()
+        editSharedPrefs()
                 .putLong(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_HASH_CODE, hashCode)
                 .apply();
     }
@@ -539,7 +654,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         if (!TextUtils.isEmpty(lockWallpaperBackingFileName)) {
             new File(lockWallpaperBackingFileName).delete();
         }
-        mSharedPrefs.edit()
+        editSharedPrefs()
                 .remove(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_1)
                 .remove(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_2)
                 .remove(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_ATTRIB_3)
@@ -550,7 +665,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
                 .remove(WallpaperPreferenceKeys.KEY_LOCK_WALLPAPER_HASH_CODE)
                 .apply();
 
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .remove(NoBackupKeys.KEY_LOCK_WALLPAPER_MANAGER_ID)
                 .remove(NoBackupKeys.KEY_LOCK_WALLPAPER_BACKING_FILE)
                 .remove(NoBackupKeys.KEY_LOCK_WALLPAPER_REMOTE_ID)
@@ -559,24 +674,24 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public String getLockWallpaperServiceName() {
-        return mNoBackupPrefs.getString(NoBackupKeys.KEY_LOCK_WALLPAPER_SERVICE_NAME, null);
+        return readNoBackupPrefs().getString(NoBackupKeys.KEY_LOCK_WALLPAPER_SERVICE_NAME, null);
     }
 
     @Override
     public void setLockWallpaperServiceName(String serviceName) {
-        mNoBackupPrefs.edit().putString(NoBackupKeys.KEY_LOCK_WALLPAPER_SERVICE_NAME, serviceName)
+        editNoBackupPrefs().putString(NoBackupKeys.KEY_LOCK_WALLPAPER_SERVICE_NAME, serviceName)
                 .apply();
     }
 
     @Override
     public void addDailyRotation(long timestamp) {
-        String jsonString = mNoBackupPrefs.getString(
+        String jsonString = readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS, "[]");
         try {
             JSONArray jsonArray = new JSONArray(jsonString);
             jsonArray.put(timestamp);
 
-            mNoBackupPrefs.edit()
+            editNoBackupPrefs()
                     .putString(NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS,
                             jsonArray.toString())
                     .apply();
@@ -587,7 +702,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public long getLastDailyRotationTimestamp() {
-        String jsonString = mNoBackupPrefs.getString(
+        String jsonString = readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS, "[]");
 
         try {
@@ -621,7 +736,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         }
 
         List<Long> timestamps = new ArrayList<>();
-        String jsonString = mNoBackupPrefs.getString(
+        String jsonString = readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS, "[]");
 
         try {
@@ -637,7 +752,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
             }
 
             jsonArray = new JSONArray(timestamps);
-            mNoBackupPrefs.edit()
+            editNoBackupPrefs()
                     .putString(NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS,
                             jsonArray.toString())
                     .apply();
@@ -673,7 +788,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         }
 
         List<Long> timestamps = new ArrayList<>();
-        String jsonString = mNoBackupPrefs.getString(
+        String jsonString = readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS, "[]");
 
         try {
@@ -697,13 +812,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public long getDailyWallpaperEnabledTimestamp() {
-        return mNoBackupPrefs.getLong(
+        return readNoBackupPrefs().getLong(
                 NoBackupKeys.KEY_DAILY_WALLPAPER_ENABLED_TIMESTAMP, -1);
     }
 
     @Override
     public void setDailyWallpaperEnabledTimestamp(long timestamp) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putLong(NoBackupKeys.KEY_DAILY_WALLPAPER_ENABLED_TIMESTAMP,
                         timestamp)
                 .apply();
@@ -711,7 +826,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public void clearDailyRotations() {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .remove(NoBackupKeys.KEY_DAILY_ROTATION_TIMESTAMPS)
                 .remove(NoBackupKeys.KEY_DAILY_WALLPAPER_ENABLED_TIMESTAMP)
                 .apply();
@@ -719,33 +834,33 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public long getLastDailyLogTimestamp() {
-        return mNoBackupPrefs.getLong(
+        return readNoBackupPrefs().getLong(
                 NoBackupKeys.KEY_LAST_DAILY_LOG_TIMESTAMP, 0);
     }
 
     @Override
     public void setLastDailyLogTimestamp(long timestamp) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putLong(NoBackupKeys.KEY_LAST_DAILY_LOG_TIMESTAMP, timestamp)
                 .apply();
     }
 
     @Override
     public long getLastAppActiveTimestamp() {
-        return mNoBackupPrefs.getLong(
+        return readNoBackupPrefs().getLong(
                 NoBackupKeys.KEY_LAST_APP_ACTIVE_TIMESTAMP, 0);
     }
 
     @Override
     public void setLastAppActiveTimestamp(long timestamp) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putLong(NoBackupKeys.KEY_LAST_APP_ACTIVE_TIMESTAMP, timestamp)
                 .apply();
     }
 
     @Override
     public void setDailyWallpaperRotationStatus(int status, long timestamp) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_LAST_ROTATION_STATUS, status)
                 .putLong(NoBackupKeys.KEY_LAST_ROTATION_STATUS_TIMESTAMP,
                         timestamp)
@@ -754,32 +869,32 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public int getDailyWallpaperLastRotationStatus() {
-        return mNoBackupPrefs.getInt(NoBackupKeys.KEY_LAST_ROTATION_STATUS, -1);
+        return readNoBackupPrefs().getInt(NoBackupKeys.KEY_LAST_ROTATION_STATUS, -1);
     }
 
     @Override
     public long getDailyWallpaperLastRotationStatusTimestamp() {
-        return mNoBackupPrefs.getLong(
+        return readNoBackupPrefs().getLong(
                 NoBackupKeys.KEY_LAST_ROTATION_STATUS_TIMESTAMP, 0);
     }
 
     @Override
     public long getLastSyncTimestamp() {
-        return mNoBackupPrefs.getLong(NoBackupKeys.KEY_LAST_SYNC_TIMESTAMP, 0);
+        return readNoBackupPrefs().getLong(NoBackupKeys.KEY_LAST_SYNC_TIMESTAMP, 0);
     }
 
     @Override
     public void setLastSyncTimestamp(long timestamp) {
         // Write synchronously via commit() to ensure this timetsamp gets written to disk
         // immediately.
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putLong(NoBackupKeys.KEY_LAST_SYNC_TIMESTAMP, timestamp)
                 .commit();
     }
 
     @Override
     public void setPendingWallpaperSetStatusSync(@PendingWallpaperSetStatus int setStatus) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS,
                         setStatus)
                 .commit();
@@ -788,14 +903,14 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     public int getPendingWallpaperSetStatus() {
         //noinspection ResourceType
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS,
                 WALLPAPER_SET_NOT_PENDING);
     }
 
     @Override
     public void setPendingWallpaperSetStatus(@PendingWallpaperSetStatus int setStatus) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS,
                         setStatus)
                 .apply();
@@ -804,7 +919,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     public void setPendingDailyWallpaperUpdateStatusSync(
             @PendingDailyWallpaperUpdateStatus int updateStatus) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS,
                         updateStatus)
                 .commit();
@@ -813,7 +928,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     public int getPendingDailyWallpaperUpdateStatus() {
         //noinspection ResourceType
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS,
                 DAILY_WALLPAPER_UPDATE_NOT_PENDING);
     }
@@ -821,7 +936,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     @Override
     public void setPendingDailyWallpaperUpdateStatus(
             @PendingDailyWallpaperUpdateStatus int updateStatus) {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS,
                         updateStatus)
                 .apply();
@@ -829,7 +944,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public void incrementNumDaysDailyRotationFailed() {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_FAILED,
                         getNumDaysDailyRotationFailed() + 1)
                 .apply();
@@ -837,20 +952,20 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public int getNumDaysDailyRotationFailed() {
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_FAILED, 0);
     }
 
     @Override
     public void resetNumDaysDailyRotationFailed() {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_FAILED, 0)
                 .apply();
     }
 
     @Override
     public void incrementNumDaysDailyRotationNotAttempted() {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_NOT_ATTEMPTED,
                         getNumDaysDailyRotationNotAttempted() + 1)
                 .apply();
@@ -858,39 +973,40 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public int getNumDaysDailyRotationNotAttempted() {
-        return mNoBackupPrefs.getInt(
+        return readNoBackupPrefs().getInt(
                 NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_NOT_ATTEMPTED, 0);
     }
 
     @Override
     public void resetNumDaysDailyRotationNotAttempted() {
-        mNoBackupPrefs.edit()
+        editNoBackupPrefs()
                 .putInt(NoBackupKeys.KEY_NUM_DAYS_DAILY_ROTATION_NOT_ATTEMPTED, 0)
                 .apply();
     }
 
     @Override
     public int getAppLaunchCount() {
-        return mNoBackupPrefs.getInt(NoBackupKeys.KEY_APP_LAUNCH_COUNT, 0);
+        return readNoBackupPrefs().getInt(NoBackupKeys.KEY_APP_LAUNCH_COUNT, 0);
     }
 
     private void setAppLaunchCount(int count) {
-        mNoBackupPrefs.edit().putInt(NoBackupKeys.KEY_APP_LAUNCH_COUNT, count).apply();
+        editNoBackupPrefs().putInt(NoBackupKeys.KEY_APP_LAUNCH_COUNT, count).apply();
     }
 
     @Override
     public int getFirstLaunchDateSinceSetup() {
-        return mNoBackupPrefs.getInt(NoBackupKeys.KEY_FIRST_LAUNCH_DATE_SINCE_SETUP, 0);
+        return readNoBackupPrefs().getInt(NoBackupKeys.KEY_FIRST_LAUNCH_DATE_SINCE_SETUP, 0);
     }
 
     private void setFirstLaunchDateSinceSetup(int firstLaunchDate) {
-        mNoBackupPrefs.edit().putInt(NoBackupKeys.KEY_FIRST_LAUNCH_DATE_SINCE_SETUP,
+        editNoBackupPrefs().putInt(NoBackupKeys.KEY_FIRST_LAUNCH_DATE_SINCE_SETUP,
                 firstLaunchDate).apply();
     }
 
     @Override
     public int getFirstWallpaperApplyDateSinceSetup() {
-        return mNoBackupPrefs.getInt(NoBackupKeys.KEY_FIRST_WALLPAPER_APPLY_DATE_SINCE_SETUP, 0);
+        return readNoBackupPrefs().getInt(
+                NoBackupKeys.KEY_FIRST_WALLPAPER_APPLY_DATE_SINCE_SETUP, 0);
     }
 
     @Override
@@ -905,13 +1021,13 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         if (tertiaryColor != null) {
             value += "," + tertiaryColor.toArgb();
         }
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                 NoBackupKeys.KEY_PREVIEW_WALLPAPER_COLOR_ID + storedWallpaperId, value).apply();
     }
 
     @Override
     public WallpaperColors getWallpaperColors(String storedWallpaperId) {
-        String value = mNoBackupPrefs.getString(
+        String value = readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_PREVIEW_WALLPAPER_COLOR_ID + storedWallpaperId, "");
         if (value.equals("")) {
             return null;
@@ -931,7 +1047,7 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
     }
 
     private void setFirstWallpaperApplyDateSinceSetup(int firstApplyDate) {
-        mNoBackupPrefs.edit().putInt(NoBackupKeys.KEY_FIRST_WALLPAPER_APPLY_DATE_SINCE_SETUP,
+        editNoBackupPrefs().putInt(NoBackupKeys.KEY_FIRST_WALLPAPER_APPLY_DATE_SINCE_SETUP,
                 firstApplyDate).apply();
     }
 
@@ -974,26 +1090,26 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
 
     @Override
     public String getHomeWallpaperEffects() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_HOME_WALLPAPER_EFFECTS, null);
     }
 
     @Override
     public void setHomeWallpaperEffects(String effects) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                         NoBackupKeys.KEY_HOME_WALLPAPER_EFFECTS, effects)
                 .apply();
     }
 
     @Override
     public String getLockWallpaperEffects() {
-        return mNoBackupPrefs.getString(
+        return readNoBackupPrefs().getString(
                 NoBackupKeys.KEY_LOCK_WALLPAPER_EFFECTS, null);
     }
 
     @Override
     public void setLockWallpaperEffects(String effects) {
-        mNoBackupPrefs.edit().putString(
+        editNoBackupPrefs().putString(
                         NoBackupKeys.KEY_LOCK_WALLPAPER_EFFECTS, effects)
                 .apply();
     }
@@ -1003,4 +1119,253 @@ public class DefaultWallpaperPreferences implements WallpaperPreferences {
         SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd", Locale.US);
         return Integer.parseInt(format.format(calendar.getTime()));
     }
+
+    /**
+     * Pending writes of a transaction started by {@link #runInTransaction(Runnable)}.
+     */
+    private static class Transaction {
+        private final TransactionEditor mSharedEditor;
+        private final TransactionEditor mNoBackupEditor;
+        private final SharedPreferences mSharedPrefs;
+        private final SharedPreferences mNoBackupPrefs;
+
+        Transaction(SharedPreferences sharedPrefs, SharedPreferences noBackupPrefs) {
+            mSharedEditor = new TransactionEditor(sharedPrefs.edit());
+            mNoBackupEditor = new TransactionEditor(noBackupPrefs.edit());
+            mSharedPrefs = new TransactionPreferences(sharedPrefs, mSharedEditor);
+            mNoBackupPrefs = new TransactionPreferences(noBackupPrefs, mNoBackupEditor);
+        }
+
+        void finish() {
+            mSharedEditor.finish();
+            mNoBackupEditor.finish();
+        }
+    }
+
+    /**
+     * Editor that collects the writes of a transaction into a single underlying editor. Writes
+     * are only persisted by {@link #finish()}, synchronously if any of them asked to be committed.
+     * The pending values are kept so that {@link TransactionPreferences} can read them back.
+     */
+    @VisibleForTesting
+    static class TransactionEditor implements SharedPreferences.Editor {
+        /** Pending value of a removed key. */
+        private static final Object REMOVED = new Object();
+
+        private final SharedPreferences.Editor mDelegate;
+        private final Map<String, Object> mPending = new HashMap<>();
+        private boolean mCleared;
+        private boolean mDirty;
+        private boolean mCommitRequested;
+
+        TransactionEditor(SharedPreferences.Editor delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            mDirty = true;
+            mPending.put(key, value != null ? value : REMOVED);
+            mDelegate.putString(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            mDirty = true;
+            mPending.put(key, values != null ? values : REMOVED);
+            mDelegate.putStringSet(key, values);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            mDirty = true;
+            mPending.put(key, value);
+            mDelegate.putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            mDirty = true;
+            mPending.put(key, value);
+            mDelegate.putLong(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            mDirty = true;
+            mPending.put(key, value);
+            mDelegate.putFloat(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            mDirty = true;
+            mPending.put(key, value);
+            mDelegate.putBoolean(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            mDirty = true;
+            mPending.put(key, REMOVED);
+            mDelegate.remove(key);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            mDirty = true;
+            // Like SharedPreferences, clear() drops the stored values but not the pending ones.
+            mCleared = true;
+            mDelegate.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            mCommitRequested = true;
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            // Deferred until the transaction finishes.
+        }
+
+        /**
+         * Persists the writes of the transaction, if any.
+         *
+         * @return whether they were committed synchronously
+         */
+        @VisibleForTesting
+        boolean finish() {
+            if (!mDirty) {
+                return false;
+            }
+            if (mCommitRequested) {
+                mDelegate.commit();
+                return true;
+            }
+            mDelegate.apply();
+            return false;
+        }
+    }
+
+    /**
+     * Read view of preferences within a transaction: the pending writes of the transaction's
+     * editor, on top of the stored values.
+     */
+    @VisibleForTesting
+    static class TransactionPreferences implements SharedPreferences {
+        private final SharedPreferences mStored;
+        private final TransactionEditor mEditor;
+
+        TransactionPreferences(SharedPreferences stored, TransactionEditor editor) {
+            mStored = stored;
+            mEditor = editor;
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            Map<String, Object> all = mEditor.mCleared ? new HashMap<>()
+                    : new HashMap<>(mStored.getAll());
+            for (Map.Entry<String, Object> entry : mEditor.mPending.entrySet()) {
+                if (entry.getValue() == TransactionEditor.REMOVED) {
+                    all.remove(entry.getKey());
+                } else {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return all;
+        }
+
+        @Nullable
+        @Override
+        public String getString(String key, @Nullable String defValue) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValue : (String) pending;
+            }
+            return mEditor.mCleared ? defValue : mStored.getString(key, defValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        @Override
+        public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValues : (Set<String>) pending;
+            }
+            return mEditor.mCleared ? defValues : mStored.getStringSet(key, defValues);
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValue : (Integer) pending;
+            }
+            return mEditor.mCleared ? defValue : mStored.getInt(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValue : (Long) pending;
+            }
+            return mEditor.mCleared ? defValue : mStored.getLong(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValue : (Float) pending;
+            }
+            return mEditor.mCleared ? defValue : mStored.getFloat(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending == TransactionEditor.REMOVED ? defValue : (Boolean) pending;
+            }
+            return mEditor.mCleared ? defValue : mStored.getBoolean(key, defValue);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            Object pending = mEditor.mPending.get(key);
+            if (pending != null) {
+                return pending != TransactionEditor.REMOVED;
+            }
+            return !mEditor.mCleared && mStored.contains(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return mEditor;
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mStored.registerOnSharedPreferenceChangeListener(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mStored.unregisterOnSharedPreferenceChangeListener(listener);
+        }
+    }
 }
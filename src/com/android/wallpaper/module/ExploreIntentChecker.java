@@ -15,11 +15,16 @@
  */
 package com.android.wallpaper.module;
 
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.model.WallpaperInfo;
+
+import java.util.List;
+
 /**
  * Interface for an object which checks whether any activity on the device can handle ACTION_VIEW
  * (or "explore") intents for given payloads.
@@ -32,6 +37,13 @@ public interface ExploreIntentChecker {
      */
     void fetchValidActionViewIntent(Uri uri, IntentReceiver receiver);
 
+    /**
+     * Starts resolving the action urls of the given wallpapers in the background, so that later
+     * calls to {@link #fetchValidActionViewIntent} for them are answered right away.
+     */
+    default void prefetchValidActionViewIntents(Context context, List<WallpaperInfo> wallpapers) {
+    }
+
     /**
      * Receiver of an intent.
      */
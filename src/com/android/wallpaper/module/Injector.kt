@@ -136,4 +136,11 @@ interface Injector {
     fun getWallpaperColorsViewModel(): WallpaperColorsViewModel
 
     fun getMyPhotosIntentProvider(): MyPhotosIntentProvider
+
+    /**
+     * Starts building, off the main thread, the dependencies that are needed early and don't
+     * depend on any UI, so that getters find them ready. Called once, when the application's main
+     * process starts.
+     */
+    fun warmUp(context: Context) {}
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module
+
+import android.os.Looper
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * A singleton of the injector, built on first access by whichever thread gets there first.
+ *
+ * Each singleton has its own lock, so a caller only waits when this particular singleton is being
+ * built, not while unrelated ones are. A singleton can also be scheduled to be built by the
+ * injector's warm-up, in which case the main thread waits for the warm-up to build it rather than
+ * building it itself.
+ */
+internal class LazySingleton<T : Any>(
+    private val name: String,
+    private val trace: ConstructionTrace,
+) {
+    @Volatile private var value: T? = null
+    // Released once the warm-up holds the lock to build this singleton.
+    @Volatile private var warmUpScheduled: CountDownLatch? = null
+
+    val isInitialized: Boolean
+        get() = value != null
+
+    fun get(create: () -> T): T {
+        value?.let {
+            return it
+        }
+        val scheduled = warmUpScheduled
+        if (scheduled != null && Looper.getMainLooper().isCurrentThread) {
+            // Bounded, in case the warm-up task is itself waiting for a lock the caller holds.
+            scheduled.await(WARM_UP_WAIT_MILLIS, TimeUnit.MILLISECONDS)
+        }
+        synchronized(this) {
+            return value ?: trace.trace(name, create).also { value = it }
+        }
+    }
+
+    /** Marks this singleton as to be built by [runWarmUp]. Must be called before it runs. */
+    fun scheduleWarmUp() {
+        if (value == null) {
+            warmUpScheduled = CountDownLatch(1)
+        }
+    }
+
+    /** Runs [build], the warm-up task building this singleton, while holding its lock. */
+    fun runWarmUp(build: () -> Unit) {
+        synchronized(this) {
+            warmUpScheduled?.countDown()
+            warmUpScheduled = null
+            build()
+        }
+    }
+
+    private companion object {
+        const val WARM_UP_WAIT_MILLIS = 2_000L
+    }
+}
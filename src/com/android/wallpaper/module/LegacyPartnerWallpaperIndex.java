@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Settings;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent list of the wallpapers in the legacy partner wallpaper directory, so that building
+ * the on-device category doesn't list that directory on each launch.
+ * <p>
+ * The list is stored along with the directory's modification time and the device's boot count,
+ * and scanned again when either changes.
+ */
+public class LegacyPartnerWallpaperIndex {
+
+    private static final String FILE_NAME = "legacy_partner_wallpaper_index";
+    private static final String KEY_STAMP = "stamp";
+    private static final String KEY_FULL_NAMES = "full_names";
+    /** Can't be part of a file name. */
+    private static final String SEPARATOR = "/";
+    private static final String THUMBNAIL_SUFFIX = "_small";
+
+    private static final Map<String, LegacyPartnerWallpaperIndex> sInstances = new HashMap<>();
+    // Guarded by the class.
+    @Nullable
+    private static Integer sBootCount;
+
+    /** Lists the full size wallpapers of a directory the slow way. */
+    @VisibleForTesting
+    interface Scanner {
+        List<String> scan(File directory);
+    }
+
+    @Nullable
+    private final SharedPreferences mPrefs;
+    private final File mDirectory;
+    private final String mStamp;
+    private final Scanner mScanner;
+
+    private List<String> mFullNames;
+
+    @VisibleForTesting
+    LegacyPartnerWallpaperIndex(@Nullable SharedPreferences prefs, File directory, String stamp,
+            Scanner scanner) {
+        mPrefs = prefs;
+        mDirectory = directory;
+        mStamp = stamp;
+        mScanner = scanner;
+    }
+
+    /**
+     * Returns the index of the given legacy partner wallpaper directory.
+     */
+    public static synchronized LegacyPartnerWallpaperIndex get(Context context, File directory) {
+        Context appContext = context.getApplicationContext();
+        if (sBootCount == null) {
+            // Only changes across reboots, so one read per process is enough.
+            sBootCount = Settings.Global.getInt(
+                    appContext.getContentResolver(), Settings.Global.BOOT_COUNT, 0);
+        }
+        String stamp = directory.lastModified() + ":" + sBootCount;
+        String key = directory.getAbsolutePath() + "#" + stamp;
+        LegacyPartnerWallpaperIndex index = sInstances.get(key);
+        if (index == null) {
+            index = new LegacyPartnerWallpaperIndex(
+                    new BinaryPreferences(new File(appContext.getCacheDir(), FILE_NAME)),
+                    directory, stamp, LegacyPartnerWallpaperIndex::scan);
+            sInstances.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the file names of the full size wallpapers in the directory, each of which may have
+     * a thumbnail named by {@link #getThumbnailName}.
+     */
+    public synchronized List<String> getFullNames() {
+        if (mFullNames != null) {
+            return mFullNames;
+        }
+
+        String stamp = mDirectory.getAbsolutePath() + "#" + mStamp;
+        if (mPrefs != null && stamp.equals(mPrefs.getString(KEY_STAMP, null))) {
+            String fullNames = mPrefs.getString(KEY_FULL_NAMES, "");
+            mFullNames = fullNames.isEmpty() ? Collections.emptyList()
+                    : Collections.unmodifiableList(Arrays.asList(fullNames.split(SEPARATOR)));
+            return mFullNames;
+        }
+
+        mFullNames = Collections.unmodifiableList(mScanner.scan(mDirectory));
+        if (mPrefs != null) {
+            mPrefs.edit()
+                    .putString(KEY_STAMP, stamp)
+                    .putString(KEY_FULL_NAMES, TextUtils.join(SEPARATOR, mFullNames))
+                    .apply();
+        }
+        return mFullNames;
+    }
+
+    /** Returns the file name of the thumbnail of the given full size wallpaper. */
+    public static String getThumbnailName(String fullName) {
+        int dotPos = fullName.lastIndexOf('.');
+        if (dotPos < 0) {
+            return fullName + THUMBNAIL_SUFFIX;
+        }
+        return fullName.substring(0, dotPos) + THUMBNAIL_SUFFIX + fullName.substring(dotPos);
+    }
+
+    /**
+     * Lists the full size wallpapers of the given directory, skipping thumbnails, which are found
+     * through their full size counterpart.
+     */
+    @VisibleForTesting
+    static List<String> scan(File directory) {
+        List<String> fullNames = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return fullNames;
+        }
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            String name = file.getName();
+            int dotPos = name.lastIndexOf('.');
+            if (dotPos > -1) {
+                name = name.substring(0, dotPos);
+            }
+            if (!name.endsWith(THUMBNAIL_SUFFIX)) {
+                fullNames.add(file.getName());
+            }
+        }
+        return fullNames;
+    }
+}
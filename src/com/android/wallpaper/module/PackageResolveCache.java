@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import android.content.Intent;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches whether packages handle a given intent action, either as a service or as an activity,
+ * so that a package event only costs one round of {@link PackageManager} queries no matter how
+ * many listeners observe it.
+ * <p>
+ * Entries are keyed by action and package name, and must be invalidated with
+ * {@link #invalidate(String[])} whenever the package changes. Not thread safe; package callbacks
+ * are all delivered on the main thread.
+ */
+class PackageResolveCache {
+
+    private final PackageManager mPackageManager;
+    private final Map<String, Map<String, Boolean>> mResultsByAction = new HashMap<>();
+
+    private int mPackageManagerCalls;
+    private int mCacheHits;
+
+    PackageResolveCache(PackageManager packageManager) {
+        mPackageManager = packageManager;
+    }
+
+    /** Returns whether the given package handles the given action. */
+    boolean isValidPackage(String action, String packageName) {
+        return !getValidPackages(action, new String[]{packageName}).isEmpty();
+    }
+
+    /**
+     * Returns those of the given packages that handle the given action. Packages that aren't
+     * cached yet are resolved together: a single package is queried directly, while several are
+     * checked against one unfiltered query for the action.
+     */
+    Set<String> getValidPackages(String action, String[] packageNames) {
+        Map<String, Boolean> results =
+                mResultsByAction.computeIfAbsent(action, key -> new HashMap<>());
+        Set<String> validPackages = new HashSet<>();
+        List<String> uncached = new ArrayList<>();
+        for (String packageName : packageNames) {
+            Boolean cached = results.get(packageName);
+            if (cached == null) {
+                uncached.add(packageName);
+            } else {
+                mCacheHits++;
+                if (cached) {
+                    validPackages.add(packageName);
+                }
+            }
+        }
+        if (uncached.isEmpty()) {
+            return validPackages;
+        }
+
+        Intent intent = new Intent(action);
+        if (uncached.size() == 1) {
+            intent.setPackage(uncached.get(0));
+        }
+        Set<String> resolved = new HashSet<>();
+        addPackageNames(queryIntentServices(intent), resolved);
+        // A package is valid if it handles the action either way, so only ask for activities if
+        // the services didn't already cover every package.
+        if (!resolved.containsAll(uncached)) {
+            addPackageNames(queryIntentActivities(intent), resolved);
+        }
+        for (String packageName : uncached) {
+            boolean valid = resolved.contains(packageName);
+            results.put(packageName, valid);
+            if (valid) {
+                validPackages.add(packageName);
+            }
+        }
+        return validPackages;
+    }
+
+    /** Drops the cached results of the given packages, for every action. */
+    void invalidate(String... packageNames) {
+        for (Map<String, Boolean> results : mResultsByAction.values()) {
+            for (String packageName : packageNames) {
+                results.remove(packageName);
+            }
+        }
+    }
+
+    /** Returns how many {@link PackageManager} queries this cache has made. */
+    @VisibleForTesting
+    int getPackageManagerCallCount() {
+        return mPackageManagerCalls;
+    }
+
+    /** Returns how many package lookups were answered without querying {@link PackageManager}. */
+    @VisibleForTesting
+    int getCacheHitCount() {
+        return mCacheHits;
+    }
+
+    private List<ResolveInfo> queryIntentServices(Intent intent) {
+        mPackageManagerCalls++;
+        return mPackageManager.queryIntentServices(intent, 0);
+    }
+
+    private List<ResolveInfo> queryIntentActivities(Intent intent) {
+        mPackageManagerCalls++;
+        return mPackageManager.queryIntentActivities(intent, 0);
+    }
+
+    private static void addPackageNames(List<ResolveInfo> resolveInfos, Set<String> packageNames) {
+        for (ResolveInfo resolveInfo : resolveInfos) {
+            ComponentInfo componentInfo = resolveInfo.serviceInfo != null
+                    ? resolveInfo.serviceInfo : resolveInfo.activityInfo;
+            if (componentInfo != null) {
+                packageNames.add(componentInfo.packageName);
+            }
+        }
+    }
+}
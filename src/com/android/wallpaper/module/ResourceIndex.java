@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent name to id table of the resources of a partner or stub package, so that loading its
+ * wallpapers doesn't go through {@link Resources#getIdentifier}, a slow string-based lookup, for
+ * every resource of every wallpaper on each launch.
+ * <p>
+ * Each identifier is resolved once and then stored along with the package's version code and
+ * update time; the whole table is dropped when either changes. Missing resources are stored too,
+ * as optional ones (e.g. wallpaper subtitles) are usually missing. The version is looked up once
+ * per process and package, until {@link #invalidate} is called for a changed package.
+ */
+public class ResourceIndex {
+
+    private static final String TAG = "ResourceIndex";
+    private static final String FILE_PREFIX = "resource_index_";
+    private static final String KEY_STAMP = "stamp";
+    private static final String PREFIX_ID = "id:";
+    /** Resource ids are positive, and 0 means the resource doesn't exist. */
+    private static final int UNRESOLVED = -1;
+
+    // Keyed by the path of the index file, so that each file has a single store.
+    private static final Map<String, ResourceIndex> sInstances = new HashMap<>();
+    // The version stamps of the packages looked up so far, by package name.
+    private static final Map<String, String> sStamps = new HashMap<>();
+
+    /** Resolves a resource name the slow way. */
+    @VisibleForTesting
+    interface IdentifierResolver {
+        int getIdentifier(String name, String type);
+    }
+
+    @Nullable
+    private final BinaryPreferences mPrefs;
+    private final String mStamp;
+    private final IdentifierResolver mResolver;
+
+    private boolean mStampChecked;
+
+    @VisibleForTesting
+    ResourceIndex(@Nullable BinaryPreferences prefs, String stamp, IdentifierResolver resolver) {
+        mPrefs = prefs;
+        mStamp = stamp;
+        mResolver = resolver;
+    }
+
+    /**
+     * Returns the index of the given package, whose resources are {@code resources}.
+     */
+    public static synchronized ResourceIndex get(Context context, String packageName,
+            Resources resources) {
+        String stamp = sStamps.get(packageName);
+        if (stamp == null) {
+            PackageInfo packageInfo;
+            try {
+                packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Package not found, not persisting its resource ids: " + packageName);
+                return unpersisted(packageName, resources);
+            }
+            stamp = packageInfo.getLongVersionCode() + ":" + packageInfo.lastUpdateTime;
+            sStamps.put(packageName, stamp);
+        }
+
+        File file = new File(context.getApplicationContext().getCacheDir(),
+                FILE_PREFIX + packageName);
+        String key = file.getAbsolutePath();
+        ResourceIndex index = sInstances.get(key);
+        if (index == null || !index.mStamp.equals(stamp)) {
+            // A new version of the package reuses the store, which the new stamp clears.
+            BinaryPreferences prefs = index != null ? index.mPrefs : new BinaryPreferences(file);
+            index = new ResourceIndex(prefs, stamp,
+                    (name, type) -> resources.getIdentifier(name, type, packageName));
+            sInstances.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Makes the next {@link #get} look up the version of the given package again, e.g. because it
+     * was updated.
+     */
+    public static synchronized void invalidate(String packageName) {
+        sStamps.remove(packageName);
+    }
+
+    /**
+     * Returns an index of the given package that always resolves ids through
+     * {@link Resources#getIdentifier}, for callers that can't persist them.
+     */
+    public static ResourceIndex unpersisted(String packageName, Resources resources) {
+        return new ResourceIndex(/* prefs= */ null, /* stamp= */ "",
+                (name, type) -> resources.getIdentifier(name, type, packageName));
+    }
+
+    /**
+     * Returns the id of the given resource, or 0 if there is no such resource, like
+     * {@link Resources#getIdentifier}. The writes of ids resolved for the first time are coalesced,
+     * so loading a whole category only writes the table once.
+     */
+    public synchronized int getIdentifier(String name, String type) {
+        if (mPrefs == null) {
+            return mResolver.getIdentifier(name, type);
+        }
+        checkStampLocked();
+
+        String key = PREFIX_ID + type + "/" + name;
+        int id = mPrefs.getInt(key, UNRESOLVED);
+        if (id == UNRESOLVED) {
+            id = mResolver.getIdentifier(name, type);
+            mPrefs.edit().putInt(key, id).apply();
+        }
+        return id;
+    }
+
+    private void checkStampLocked() {
+        if (mStampChecked) {
+            return;
+        }
+        mStampChecked = true;
+        if (!mStamp.equals(mPrefs.getString(KEY_STAMP, null))) {
+            mPrefs.edit().clear().putString(KEY_STAMP, mStamp).apply();
+        }
+    }
+}
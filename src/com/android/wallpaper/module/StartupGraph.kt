@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module
+
+import android.util.Log
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs initialization tasks on an executor, each one as soon as the tasks it depends on are done,
+ * so that independent tasks run in parallel.
+ *
+ * A task that fails is logged and still counts as done, since whatever it was initializing is
+ * built again on first access anyway.
+ */
+class StartupGraph {
+
+    private class Node(
+        val name: String,
+        val dependencies: List<String>,
+        val init: () -> Unit,
+    ) {
+        val dependents = mutableListOf<Node>()
+        val remainingDependencies = AtomicInteger(dependencies.size)
+    }
+
+    private val nodes = LinkedHashMap<String, Node>()
+    private val remainingNodes = AtomicInteger()
+    private val done = CountDownLatch(1)
+    private var started = false
+
+    /** Adds a task, which runs once every task named in [dependencies] is done. */
+    fun add(name: String, vararg dependencies: String, init: () -> Unit) {
+        check(!started) { "Can't add $name after the graph started" }
+        require(name !in nodes) { "Duplicate task $name" }
+        nodes[name] = Node(name, dependencies.toList(), init)
+    }
+
+    /**
+     * Starts running the tasks on [executor] and calls [onComplete] on the thread that finishes
+     * the last one.
+     *
+     * @throws IllegalArgumentException if a task depends on an unknown task, or on itself through
+     *   other tasks
+     */
+    fun start(executor: Executor, onComplete: () -> Unit = {}) {
+        check(!started) { "The graph already started" }
+        started = true
+        for (node in nodes.values) {
+            for (dependency in node.dependencies) {
+                val dependencyNode =
+                    requireNotNull(nodes[dependency]) {
+                        "${node.name} depends on unknown task $dependency"
+                    }
+                dependencyNode.dependents.add(node)
+            }
+        }
+        checkAcyclic()
+
+        remainingNodes.set(nodes.size)
+        if (nodes.isEmpty()) {
+            onComplete()
+            done.countDown()
+            return
+        }
+        nodes.values
+            .filter { it.dependencies.isEmpty() }
+            .forEach { schedule(it, executor, onComplete) }
+    }
+
+    /** Waits for every task to be done. Returns false if [timeout] elapsed first. */
+    fun await(timeout: Long, unit: TimeUnit): Boolean = done.await(timeout, unit)
+
+    private fun schedule(node: Node, executor: Executor, onComplete: () -> Unit) {
+        executor.execute {
+            try {
+                node.init()
+            } catch (e: RuntimeException) {
+                Log.w(TAG, "Failed to initialize ${node.name}", e)
+            }
+            for (dependent in node.dependents) {
+                if (dependent.remainingDependencies.decrementAndGet() == 0) {
+                    schedule(dependent, executor, onComplete)
+                }
+            }
+            if (remainingNodes.decrementAndGet() == 0) {
+                onComplete()
+                done.countDown()
+            }
+        }
+    }
+
+    /** Checks that every task can run, i.e. that no task depends on itself. */
+    private fun checkAcyclic() {
+        val remaining = nodes.values.associateWithTo(HashMap()) { it.dependencies.size }
+        val ready = ArrayDeque(nodes.values.filter { it.dependencies.isEmpty() })
+        var visited = 0
+        while (ready.isNotEmpty()) {
+            val node = ready.removeFirst()
+            visited++
+            for (dependent in node.dependents) {
+                val count = remaining.getValue(dependent) - 1
+                remaining[dependent] = count
+                if (count == 0) {
+                    ready.addLast(dependent)
+                }
+            }
+        }
+        require(visited == nodes.size) {
+            "Dependency cycle among " + remaining.filterValues { it > 0 }.keys.map { it.name }
+        }
+    }
+
+    private companion object {
+        const val TAG = "StartupGraph"
+    }
+}
@@ -20,6 +20,9 @@ import android.content.Context
 import android.content.Intent
 import android.net.Uri
 import android.os.Bundle
+import android.os.Process
+import android.util.Log
+import androidx.annotation.VisibleForTesting
 import androidx.activity.ComponentActivity
 import androidx.fragment.app.Fragment
 import androidx.lifecycle.LifecycleOwner
@@ -30,6 +33,7 @@ import com.android.wallpaper.model.CategoryProvider
 import com.android.wallpaper.model.LiveWallpaperInfo
 import com.android.wallpaper.model.WallpaperColorsViewModel
 import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.monitor.DefaultPerformanceMonitor
 import com.android.wallpaper.monitor.PerformanceMonitor
 import com.android.wallpaper.network.Requester
 import com.android.wallpaper.network.WallpaperRequester
@@ -40,6 +44,7 @@ import com.android.wallpaper.picker.MyPhotosStarter
 import com.android.wallpaper.picker.PreviewFragment
 import com.android.wallpaper.picker.customization.data.content.WallpaperClientImpl
 import com.android.wallpaper.picker.customization.data.repository.WallpaperRepository
+import com.android.wallpaper.picker.customization.data.repository.WallpaperThumbnailCache
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperSnapshotRestorer
 import com.android.wallpaper.picker.individual.IndividualPickerFragment
@@ -48,74 +53,81 @@ import com.android.wallpaper.picker.undo.domain.interactor.UndoInteractor
 import com.android.wallpaper.settings.data.repository.SecureSettingsRepository
 import com.android.wallpaper.settings.data.repository.SecureSettingsRepositoryImpl
 import com.android.wallpaper.util.DisplayUtils
+import java.io.File
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 
 open class WallpaperPicker2Injector : Injector {
-    private var appScope: CoroutineScope? = null
-    private var alarmManagerWrapper: AlarmManagerWrapper? = null
-    private var bitmapCropper: BitmapCropper? = null
-    private var categoryProvider: CategoryProvider? = null
-    private var currentWallpaperFactory: CurrentWallpaperInfoFactory? = null
-    private var customizationSections: CustomizationSections? = null
-    private var displayUtils: DisplayUtils? = null
-    private var drawableLayerResolver: DrawableLayerResolver? = null
-    private var exploreIntentChecker: ExploreIntentChecker? = null
-    private var liveWallpaperInfoFactory: LiveWallpaperInfoFactory? = null
-    private var networkStatusNotifier: NetworkStatusNotifier? = null
-    private var packageStatusNotifier: PackageStatusNotifier? = null
-    private var partnerProvider: PartnerProvider? = null
-    private var performanceMonitor: PerformanceMonitor? = null
-    private var requester: Requester? = null
-    private var systemFeatureChecker: SystemFeatureChecker? = null
-    private var userEventLogger: UserEventLogger? = null
-    private var wallpaperManagerCompat: WallpaperManagerCompat? = null
-    private var wallpaperPersister: WallpaperPersister? = null
-    private var prefs: WallpaperPreferences? = null
-    private var wallpaperPreviewFragmentManager: WallpaperPreviewFragmentManager? = null
-    private var wallpaperRefresher: WallpaperRefresher? = null
-    private var wallpaperRotationRefresher: WallpaperRotationRefresher? = null
-    private var wallpaperStatusChecker: WallpaperStatusChecker? = null
-    private var flags: BaseFlags? = null
-    private var undoInteractor: UndoInteractor? = null
-    private var wallpaperInteractor: WallpaperInteractor? = null
-    private var wallpaperSnapshotRestorer: WallpaperSnapshotRestorer? = null
-    private var secureSettingsRepository: SecureSettingsRepository? = null
-    private var wallpaperColorsViewModel: WallpaperColorsViewModel? = null
+    private val constructionTrace = ConstructionTrace()
+
+    private val appScope = singleton<CoroutineScope>("ApplicationCoroutineScope")
+    private val alarmManagerWrapper = singleton<AlarmManagerWrapper>("AlarmManagerWrapper")
+    private val bitmapCropper = singleton<BitmapCropper>("BitmapCropper")
+    private val categoryProvider = singleton<CategoryProvider>("CategoryProvider")
+    private val currentWallpaperFactory =
+        singleton<CurrentWallpaperInfoFactory>("CurrentWallpaperInfoFactory")
+    private val customizationSections = singleton<CustomizationSections>("CustomizationSections")
+    private val displayUtils = singleton<DisplayUtils>("DisplayUtils")
+    private val drawableLayerResolver = singleton<DrawableLayerResolver>("DrawableLayerResolver")
+    private val exploreIntentChecker = singleton<ExploreIntentChecker>("ExploreIntentChecker")
+    private val liveWallpaperInfoFactory =
+        singleton<LiveWallpaperInfoFactory>("LiveWallpaperInfoFactory")
+    private val networkStatusNotifier = singleton<NetworkStatusNotifier>("NetworkStatusNotifier")
+    private val packageStatusNotifier = singleton<PackageStatusNotifier>("PackageStatusNotifier")
+    private val partnerProvider = singleton<PartnerProvider>("PartnerProvider")
+    private val performanceMonitor = singleton<PerformanceMonitor>("PerformanceMonitor")
+    private val requester = singleton<Requester>("Requester")
+    private val systemFeatureChecker = singleton<SystemFeatureChecker>("SystemFeatureChecker")
+    private val userEventLogger = singleton<UserEventLogger>("UserEventLogger")
+    private val wallpaperManagerCompat = singleton<WallpaperManagerCompat>("WallpaperManagerCompat")
+    private val wallpaperPersister = singleton<WallpaperPersister>("WallpaperPersister")
+    private val prefs = singleton<WallpaperPreferences>("WallpaperPreferences")
+    private val wallpaperPreviewFragmentManager =
+        singleton<WallpaperPreviewFragmentManager>("WallpaperPreviewFragmentManager")
+    private val wallpaperRefresher = singleton<WallpaperRefresher>("WallpaperRefresher")
+    private val wallpaperRotationRefresher =
+        singleton<WallpaperRotationRefresher>("WallpaperRotationRefresher")
+    private val wallpaperStatusChecker = singleton<WallpaperStatusChecker>("WallpaperStatusChecker")
+    private val flags = singleton<BaseFlags>("Flags")
+    private val undoInteractor = singleton<UndoInteractor>("UndoInteractor")
+    private val wallpaperInteractor = singleton<WallpaperInteractor>("WallpaperInteractor")
+    private val wallpaperSnapshotRestorer =
+        singleton<WallpaperSnapshotRestorer>("WallpaperSnapshotRestorer")
+    private val secureSettingsRepository =
+        singleton<SecureSettingsRepository>("SecureSettingsRepository")
+    private val wallpaperColorsViewModel =
+        singleton<WallpaperColorsViewModel>("WallpaperColorsViewModel")
 
     override fun getApplicationCoroutineScope(): CoroutineScope {
-        return appScope ?: CoroutineScope(Dispatchers.Main).also { appScope = it }
+        return appScope.get { CoroutineScope(Dispatchers.Main) }
     }
 
-    @Synchronized
     override fun getAlarmManagerWrapper(context: Context): AlarmManagerWrapper {
-        return alarmManagerWrapper
-            ?: DefaultAlarmManagerWrapper(context.applicationContext).also {
-                alarmManagerWrapper = it
-            }
+        return alarmManagerWrapper.get { DefaultAlarmManagerWrapper(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getBitmapCropper(): BitmapCropper {
-        return bitmapCropper ?: DefaultBitmapCropper().also { bitmapCropper = it }
+        return bitmapCropper.get { DefaultBitmapCropper() }
     }
 
     override fun getCategoryProvider(context: Context): CategoryProvider {
-        return categoryProvider
-            ?: DefaultCategoryProvider(context.applicationContext).also { categoryProvider = it }
+        return categoryProvider.get { DefaultCategoryProvider(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getCurrentWallpaperInfoFactory(context: Context): CurrentWallpaperInfoFactory {
-        return currentWallpaperFactory
-            ?: DefaultCurrentWallpaperInfoFactory(context.applicationContext).also {
-                currentWallpaperFactory = it
-            }
+        return currentWallpaperFactory.get {
+            DefaultCurrentWallpaperInfoFactory(context.applicationContext)
+        }
     }
 
     override fun getCustomizationSections(activity: ComponentActivity): CustomizationSections {
-        return customizationSections
-            ?: WallpaperPickerSections().also { customizationSections = it }
+        return customizationSections.get { WallpaperPickerSections() }
     }
 
     override fun getDeepLinkRedirectIntent(context: Context, uri: Uri): Intent {
@@ -127,7 +139,7 @@ open class WallpaperPicker2Injector : Injector {
     }
 
     override fun getDisplayUtils(context: Context): DisplayUtils {
-        return displayUtils ?: DisplayUtils(context.applicationContext).also { displayUtils = it }
+        return displayUtils.get { DisplayUtils(context.applicationContext) }
     }
 
     override fun getDownloadableIntentAction(): String? {
@@ -135,8 +147,7 @@ open class WallpaperPicker2Injector : Injector {
     }
 
     override fun getDrawableLayerResolver(): DrawableLayerResolver {
-        return drawableLayerResolver
-            ?: DefaultDrawableLayerResolver().also { drawableLayerResolver = it }
+        return drawableLayerResolver.get { DefaultDrawableLayerResolver() }
     }
 
     override fun getEffectsController(
@@ -145,12 +156,8 @@ open class WallpaperPicker2Injector : Injector {
         return null
     }
 
-    @Synchronized
     override fun getExploreIntentChecker(context: Context): ExploreIntentChecker {
-        return exploreIntentChecker
-            ?: DefaultExploreIntentChecker(context.applicationContext).also {
-                exploreIntentChecker = it
-            }
+        return exploreIntentChecker.get { DefaultExploreIntentChecker(context.applicationContext) }
     }
 
     override fun getIndividualPickerFragment(context: Context, collectionId: String): Fragment {
@@ -158,40 +165,27 @@ open class WallpaperPicker2Injector : Injector {
     }
 
     override fun getLiveWallpaperInfoFactory(context: Context): LiveWallpaperInfoFactory {
-        return liveWallpaperInfoFactory
-            ?: DefaultLiveWallpaperInfoFactory().also { liveWallpaperInfoFactory = it }
+        return liveWallpaperInfoFactory.get { DefaultLiveWallpaperInfoFactory() }
     }
 
-    @Synchronized
     override fun getNetworkStatusNotifier(context: Context): NetworkStatusNotifier {
-        return networkStatusNotifier
-            ?: DefaultNetworkStatusNotifier(context.applicationContext).also {
-                networkStatusNotifier = it
-            }
+        return networkStatusNotifier.get {
+            DefaultNetworkStatusNotifier(context.applicationContext)
+        }
     }
 
-    @Synchronized
     override fun getPackageStatusNotifier(context: Context): PackageStatusNotifier {
-        return packageStatusNotifier
-            ?: DefaultPackageStatusNotifier(context.applicationContext).also {
-                packageStatusNotifier = it
-            }
+        return packageStatusNotifier.get {
+            DefaultPackageStatusNotifier(context.applicationContext)
+        }
     }
 
-    @Synchronized
     override fun getPartnerProvider(context: Context): PartnerProvider {
-        return partnerProvider
-            ?: DefaultPartnerProvider(context.applicationContext).also { partnerProvider = it }
+        return partnerProvider.get { DefaultPartnerProvider(context.applicationContext) }
     }
 
-    @Synchronized
-    override fun getPerformanceMonitor(): PerformanceMonitor? {
-
-        return performanceMonitor
-            ?: PerformanceMonitor {
-                    /** No Op */
-                }
-                .also { performanceMonitor = it }
+    override fun getPerformanceMonitor(): PerformanceMonitor {
+        return performanceMonitor.get { DefaultPerformanceMonitor() }
     }
 
     override fun getPreviewFragment(
@@ -215,140 +209,296 @@ open class WallpaperPicker2Injector : Injector {
         return fragment
     }
 
-    @Synchronized
     override fun getRequester(context: Context): Requester {
-        return requester ?: WallpaperRequester(context.applicationContext).also { requester = it }
+        return requester.get { WallpaperRequester(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getSystemFeatureChecker(): SystemFeatureChecker {
-        return systemFeatureChecker
-            ?: DefaultSystemFeatureChecker().also { systemFeatureChecker = it }
+        return systemFeatureChecker.get { DefaultSystemFeatureChecker() }
     }
 
     override fun getUserEventLogger(context: Context): UserEventLogger {
-        return userEventLogger ?: NoOpUserEventLogger().also { userEventLogger = it }
+        return userEventLogger.get { NoOpUserEventLogger() }
     }
 
-    @Synchronized
     override fun getWallpaperManagerCompat(context: Context): WallpaperManagerCompat {
-        return wallpaperManagerCompat
-            ?: WallpaperManagerCompat.getInstance(context).also { wallpaperManagerCompat = it }
+        return wallpaperManagerCompat.get { WallpaperManagerCompat.getInstance(context) }
     }
 
-    @Synchronized
     override fun getWallpaperPersister(context: Context): WallpaperPersister {
-        return wallpaperPersister
-            ?: DefaultWallpaperPersister(context.applicationContext).also {
-                wallpaperPersister = it
-            }
+        return wallpaperPersister.get { DefaultWallpaperPersister(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getPreferences(context: Context): WallpaperPreferences {
-        return prefs ?: DefaultWallpaperPreferences(context.applicationContext).also { prefs = it }
+        return prefs.get { DefaultWallpaperPreferences(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getWallpaperPreviewFragmentManager(): WallpaperPreviewFragmentManager {
-        return wallpaperPreviewFragmentManager
-            ?: DefaultWallpaperPreviewFragmentManager().also {
-                wallpaperPreviewFragmentManager = it
-            }
+        return wallpaperPreviewFragmentManager.get { DefaultWallpaperPreviewFragmentManager() }
     }
 
-    @Synchronized
     override fun getWallpaperRefresher(context: Context): WallpaperRefresher {
-        return wallpaperRefresher
-            ?: DefaultWallpaperRefresher(context.applicationContext).also {
-                wallpaperRefresher = it
-            }
+        return wallpaperRefresher.get { DefaultWallpaperRefresher(context.applicationContext) }
     }
 
-    @Synchronized
     override fun getWallpaperRotationRefresher(): WallpaperRotationRefresher {
-        return wallpaperRotationRefresher
-            ?: WallpaperRotationRefresher { _, listener ->
-                    // Not implemented
-                    listener.onError()
-                }
-                .also { wallpaperRotationRefresher = it }
+        return wallpaperRotationRefresher.get {
+            WallpaperRotationRefresher { _, listener ->
+                // Not implemented
+                listener.onError()
+            }
+        }
     }
 
     override fun getWallpaperStatusChecker(): WallpaperStatusChecker {
-        return wallpaperStatusChecker
-            ?: DefaultWallpaperStatusChecker().also { wallpaperStatusChecker = it }
+        return wallpaperStatusChecker.get { DefaultWallpaperStatusChecker() }
     }
 
     override fun getFlags(): BaseFlags {
-        return flags ?: object : BaseFlags() {}.also { flags = it }
+        return flags.get { object : BaseFlags() {} }
     }
 
     override fun getUndoInteractor(
         context: Context,
         lifecycleOwner: LifecycleOwner
     ): UndoInteractor {
-        return undoInteractor
-            ?: UndoInteractor(
-                    getApplicationCoroutineScope(),
-                    UndoRepository(),
-                    getSnapshotRestorers(context),
-                )
-                .also { undoInteractor = it }
+        return undoInteractor.get {
+            UndoInteractor(
+                getApplicationCoroutineScope(),
+                UndoRepository(),
+                getSnapshotRestorers(context),
+            )
+        }
     }
 
     override fun getWallpaperInteractor(context: Context): WallpaperInteractor {
         val appContext = context.applicationContext
-        return wallpaperInteractor
-            ?: WallpaperInteractor(
-                    repository =
-                        WallpaperRepository(
-                            scope = getApplicationCoroutineScope(),
-                            client =
-                                WallpaperClientImpl(
-                                    context = appContext,
-                                    infoFactory = getCurrentWallpaperInfoFactory(appContext),
-                                    wallpaperManager = WallpaperManager.getInstance(appContext)
-                                ),
-                            wallpaperPreferences = getPreferences(context = appContext),
-                            backgroundDispatcher = Dispatchers.IO,
-                        ),
-                )
-                .also { wallpaperInteractor = it }
+        return wallpaperInteractor.get {
+            WallpaperInteractor(
+                repository =
+                    WallpaperRepository(
+                        scope = getApplicationCoroutineScope(),
+                        client =
+                            WallpaperClientImpl(
+                                context = appContext,
+                                infoFactory = getCurrentWallpaperInfoFactory(appContext),
+                                wallpaperManager = WallpaperManager.getInstance(appContext)
+                            ),
+                        wallpaperPreferences = getPreferences(context = appContext),
+                        backgroundDispatcher = Dispatchers.IO,
+                        performanceMonitor = getPerformanceMonitor(),
+                        thumbnailCache =
+                            WallpaperThumbnailCache(
+                                diskDirectory =
+                                    File(appContext.cacheDir, THUMBNAIL_CACHE_DIRECTORY),
+                            ),
+                    ),
+            )
+        }
     }
 
     override fun getWallpaperSnapshotRestorer(context: Context): WallpaperSnapshotRestorer {
-        return wallpaperSnapshotRestorer
-            ?: WallpaperSnapshotRestorer(
-                    scope = getApplicationCoroutineScope(),
-                    interactor = getWallpaperInteractor(context),
-                )
-                .also { wallpaperSnapshotRestorer = it }
+        return wallpaperSnapshotRestorer.get {
+            WallpaperSnapshotRestorer(
+                scope = getApplicationCoroutineScope(),
+                interactor = getWallpaperInteractor(context),
+            )
+        }
     }
 
     protected fun getSecureSettingsRepository(context: Context): SecureSettingsRepository {
-        return secureSettingsRepository
-            ?: SecureSettingsRepositoryImpl(
-                    contentResolver = context.applicationContext.contentResolver,
-                    backgroundDispatcher = Dispatchers.IO,
-                )
-                .also { secureSettingsRepository = it }
+        return secureSettingsRepository.get {
+            SecureSettingsRepositoryImpl(
+                contentResolver = context.applicationContext.contentResolver,
+                scope = getApplicationCoroutineScope(),
+                backgroundDispatcher = Dispatchers.IO,
+            )
+        }
     }
 
     override fun getWallpaperColorsViewModel(): WallpaperColorsViewModel {
-        return wallpaperColorsViewModel
-            ?: WallpaperColorsViewModel().also { wallpaperColorsViewModel = it }
+        return wallpaperColorsViewModel.get { WallpaperColorsViewModel() }
     }
 
     override fun getMyPhotosIntentProvider(): MyPhotosStarter.MyPhotosIntentProvider {
         return object : MyPhotosStarter.MyPhotosIntentProvider {}
     }
 
+    override fun warmUp(context: Context) {
+        val executor =
+            ThreadPoolExecutor(
+                    WARM_UP_THREADS,
+                    WARM_UP_THREADS,
+                    WARM_UP_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    LinkedBlockingQueue(),
+                    object : ThreadFactory {
+                        private val count = AtomicInteger()
+
+                        override fun newThread(runnable: Runnable): Thread {
+                            return Thread(
+                                {
+                                    // Don't compete with the UI thread for the cores.
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+                                    runnable.run()
+                                },
+                                "InjectorWarmUp-${count.incrementAndGet()}",
+                            )
+                        }
+                    },
+                )
+                .apply { allowCoreThreadTimeOut(true) }
+        warmUp(context, executor)
+    }
+
+    /**
+     * Builds the singletons added by [addWarmUpTasks] on [executor], each one once the singletons
+     * its constructor needs are built, and logs how long each build took when they're all done.
+     */
+    @VisibleForTesting
+    fun warmUp(context: Context, executor: Executor): StartupGraph {
+        val appContext = context.applicationContext
+        val graph = StartupGraph()
+        addWarmUpTasks(graph, appContext)
+        graph.start(executor) {
+            Log.d(TAG, "Warm-up done: " + constructionTrace.getEntries().joinToString())
+        }
+        return graph
+    }
+
+    /**
+     * Adds a task building each singleton worth building before the UI asks for it. Only
+     * singletons that don't need an activity or lifecycle owner belong here, and each task must
+     * list the tasks building the singletons its constructor gets from this injector.
+     */
+    protected open fun addWarmUpTasks(graph: StartupGraph, context: Context) {
+        graph.addSingleton(PERFORMANCE_MONITOR, performanceMonitor) { getPerformanceMonitor() }
+        graph.addSingleton(PREFERENCES, prefs) { getPreferences(context) }
+        graph.addSingleton(PARTNER_PROVIDER, partnerProvider) { getPartnerProvider(context) }
+        graph.addSingleton(NETWORK_STATUS_NOTIFIER, networkStatusNotifier) {
+            getNetworkStatusNotifier(context)
+        }
+        graph.addSingleton(PACKAGE_STATUS_NOTIFIER, packageStatusNotifier) {
+            getPackageStatusNotifier(context)
+        }
+        graph.addSingleton(WALLPAPER_MANAGER_COMPAT, wallpaperManagerCompat) {
+            getWallpaperManagerCompat(context)
+        }
+        graph.addSingleton(DISPLAY_UTILS, displayUtils) { getDisplayUtils(context) }
+        graph.addSingleton(WALLPAPER_STATUS_CHECKER, wallpaperStatusChecker) {
+            getWallpaperStatusChecker()
+        }
+        graph.addSingleton(LIVE_WALLPAPER_INFO_FACTORY, liveWallpaperInfoFactory) {
+            getLiveWallpaperInfoFactory(context)
+        }
+        graph.addSingleton(EXPLORE_INTENT_CHECKER, exploreIntentChecker) {
+            getExploreIntentChecker(context)
+        }
+        graph.addSingleton(REQUESTER, requester) { getRequester(context) }
+        graph.addSingleton(USER_EVENT_LOGGER, userEventLogger) { getUserEventLogger(context) }
+        graph.addSingleton(FLAGS, flags) { getFlags() }
+        graph.addSingleton(SECURE_SETTINGS_REPOSITORY, secureSettingsRepository) {
+            getSecureSettingsRepository(context)
+        }
+        graph.addSingleton(CATEGORY_PROVIDER, categoryProvider, NETWORK_STATUS_NOTIFIER) {
+            getCategoryProvider(context)
+        }
+        graph.addSingleton(
+            WALLPAPER_REFRESHER,
+            wallpaperRefresher,
+            PREFERENCES,
+            WALLPAPER_STATUS_CHECKER,
+        ) {
+            getWallpaperRefresher(context)
+        }
+        graph.addSingleton(
+            CURRENT_WALLPAPER_INFO_FACTORY,
+            currentWallpaperFactory,
+            WALLPAPER_REFRESHER,
+            LIVE_WALLPAPER_INFO_FACTORY,
+        ) {
+            getCurrentWallpaperInfoFactory(context)
+        }
+        graph.addSingleton(
+            WALLPAPER_PERSISTER,
+            wallpaperPersister,
+            WALLPAPER_MANAGER_COMPAT,
+            PREFERENCES,
+            DISPLAY_UTILS,
+            PERFORMANCE_MONITOR,
+        ) {
+            getWallpaperPersister(context)
+        }
+        graph.addSingleton(
+            WALLPAPER_INTERACTOR,
+            wallpaperInteractor,
+            CURRENT_WALLPAPER_INFO_FACTORY,
+            PREFERENCES,
+            PERFORMANCE_MONITOR,
+        ) {
+            getWallpaperInteractor(context)
+        }
+        graph.addSingleton(
+            WALLPAPER_SNAPSHOT_RESTORER,
+            wallpaperSnapshotRestorer,
+            WALLPAPER_INTERACTOR,
+        ) {
+            getWallpaperSnapshotRestorer(context)
+        }
+    }
+
+    /**
+     * Adds a task building [singleton] through [build]. Until the task runs, getters on the main
+     * thread wait for it instead of building the singleton themselves.
+     */
+    private fun StartupGraph.addSingleton(
+        name: String,
+        singleton: LazySingleton<*>,
+        vararg dependencies: String,
+        build: () -> Unit,
+    ) {
+        singleton.scheduleWarmUp()
+        add(name, *dependencies) { singleton.runWarmUp(build) }
+    }
+
+    /** Returns how long each singleton took to build so far, and on which thread. */
+    @VisibleForTesting
+    fun getConstructionTrace(): List<ConstructionTrace.Entry> = constructionTrace.getEntries()
+
+    private fun <T : Any> singleton(name: String) = LazySingleton<T>(name, constructionTrace)
+
     companion object {
         /**
          * When this injector is overridden, this is the minimal value that should be used by
          * restorers returns in [getSnapshotRestorers].
          */
         @JvmStatic protected val MIN_SNAPSHOT_RESTORER_KEY = 0
+
+        private const val THUMBNAIL_CACHE_DIRECTORY = "quick_switch_thumbnails"
+
+        private const val TAG = "WallpaperPicker2Injector"
+        private const val WARM_UP_THREADS = 3
+        private const val WARM_UP_KEEP_ALIVE_SECONDS = 1L
+
+        protected const val PERFORMANCE_MONITOR = "PerformanceMonitor"
+        protected const val PREFERENCES = "Preferences"
+        protected const val PARTNER_PROVIDER = "PartnerProvider"
+        protected const val NETWORK_STATUS_NOTIFIER = "NetworkStatusNotifier"
+        protected const val PACKAGE_STATUS_NOTIFIER = "PackageStatusNotifier"
+        protected const val WALLPAPER_MANAGER_COMPAT = "WallpaperManagerCompat"
+        protected const val DISPLAY_UTILS = "DisplayUtils"
+        protected const val WALLPAPER_STATUS_CHECKER = "WallpaperStatusChecker"
+        protected const val LIVE_WALLPAPER_INFO_FACTORY = "LiveWallpaperInfoFactory"
+        protected const val EXPLORE_INTENT_CHECKER = "ExploreIntentChecker"
+        protected const val REQUESTER = "Requester"
+        protected const val USER_EVENT_LOGGER = "UserEventLogger"
+        protected const val FLAGS = "Flags"
+        protected const val SECURE_SETTINGS_REPOSITORY = "SecureSettingsRepository"
+        protected const val CATEGORY_PROVIDER = "CategoryProvider"
+        protected const val WALLPAPER_REFRESHER = "WallpaperRefresher"
+        protected const val CURRENT_WALLPAPER_INFO_FACTORY = "CurrentWallpaperInfoFactory"
+        protected const val WALLPAPER_PERSISTER = "WallpaperPersister"
+        protected const val WALLPAPER_INTERACTOR = "WallpaperInteractor"
+        protected const val WALLPAPER_SNAPSHOT_RESTORER = "WallpaperSnapshotRestorer"
     }
 }
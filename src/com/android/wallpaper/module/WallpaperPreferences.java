@@ -44,6 +44,17 @@ public interface WallpaperPreferences {
     int DAILY_WALLPAPER_UPDATE_NOT_PENDING = 0;
     int DAILY_WALLPAPER_UPDATE_PENDING = 1;
 
+    /**
+     * Runs the given setters as a single transaction, so that they result in a single write to
+     * disk and a single backup notification. Nested calls join the outermost transaction.
+     * <p>
+     * Getters called from within the transaction on the same thread observe the writes made so far
+     * in it, so read-modify-write setters can be called more than once.
+     */
+    default void runInTransaction(Runnable writes) {
+        writes.run();
+    }
+
     /**
      * Returns the wallpaper presentation mode.
      */
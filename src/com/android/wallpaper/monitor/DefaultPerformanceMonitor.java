@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.monitor;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PerformanceMonitor} that aggregates timings, cache hit ratios, executor queue depths and
+ * bitmap allocations in memory and reports them through {@link #dump(PrintWriter)}.
+ * <p>
+ * Timers also emit async {@link Trace} sections whenever tracing is on. Aggregation is off unless
+ * enabled at construction time, which by default happens with
+ * {@code adb shell setprop log.tag.WallpaperPerfMonitor DEBUG} followed by an app restart; while
+ * it's off every hook returns after a single field read.
+ */
+public class DefaultPerformanceMonitor implements PerformanceMonitor {
+
+    private static final String TAG = "WallpaperPerfMonitor";
+
+    private static final String[] TIMER_NAMES = {
+            "CategoryFetch",
+            "ThumbnailDecode",
+            "PreviewFirstPixel",
+            "Crop",
+            "Encode",
+            "Apply",
+            "LiveEngineBind",
+    };
+    private static final String[] CACHE_NAMES = {
+            "BitmapCachingAsset",
+            "Glide",
+            "WallpaperThumbnail",
+            "WallpaperColors",
+            "ContentUriProbe",
+    };
+    private static final String[] EXECUTOR_NAMES = {
+            "AssetDecode",
+            "BitmapCropper",
+    };
+
+    private final boolean mEnabled;
+
+    private final AtomicLongArray mTimerCounts = new AtomicLongArray(TIMER_COUNT);
+    private final AtomicLongArray mTimerTotalNanos = new AtomicLongArray(TIMER_COUNT);
+    private final AtomicLongArray mTimerMaxNanos = new AtomicLongArray(TIMER_COUNT);
+    private final AtomicLongArray mCacheHits = new AtomicLongArray(CACHE_COUNT);
+    private final AtomicLongArray mCacheMisses = new AtomicLongArray(CACHE_COUNT);
+    private final AtomicIntegerArray mQueueDepths = new AtomicIntegerArray(EXECUTOR_COUNT);
+    private final AtomicIntegerArray mMaxQueueDepths = new AtomicIntegerArray(EXECUTOR_COUNT);
+    private final AtomicLong mBitmapCount = new AtomicLong();
+    private final AtomicLong mBitmapBytes = new AtomicLong();
+
+    public DefaultPerformanceMonitor() {
+        this(Log.isLoggable(TAG, Log.DEBUG));
+    }
+
+    @VisibleForTesting
+    public DefaultPerformanceMonitor(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /** Returns whether statistics are being aggregated. */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    @Override
+    public void recordFullResPreviewLoadedMemorySnapshot() {
+        // No-op: memory snapshots are left to monitors backed by a reporting service.
+    }
+
+    @Override
+    public long startTimer(@Timer int timer) {
+        boolean tracing = Trace.isEnabled();
+        if (!mEnabled && !tracing) {
+            return NO_TIMER;
+        }
+        long token = SystemClock.elapsedRealtimeNanos();
+        if (tracing) {
+            Trace.beginAsyncSection(TIMER_NAMES[timer], Long.hashCode(token));
+        }
+        return token;
+    }
+
+    @Override
+    public void stopTimer(@Timer int timer, long token) {
+        if (token == NO_TIMER) {
+            return;
+        }
+        if (Trace.isEnabled()) {
+            Trace.endAsyncSection(TIMER_NAMES[timer], Long.hashCode(token));
+        }
+        if (mEnabled) {
+            recordDuration(timer, SystemClock.elapsedRealtimeNanos() - token);
+        }
+    }
+
+    @Override
+    public void cancelTimer(@Timer int timer, long token) {
+        if (token != NO_TIMER && Trace.isEnabled()) {
+            Trace.endAsyncSection(TIMER_NAMES[timer], Long.hashCode(token));
+        }
+    }
+
+    @VisibleForTesting
+    void recordDuration(@Timer int timer, long durationNanos) {
+        mTimerCounts.incrementAndGet(timer);
+        mTimerTotalNanos.addAndGet(timer, durationNanos);
+        long max;
+        do {
+            max = mTimerMaxNanos.get(timer);
+        } while (durationNanos > max
+                && !mTimerMaxNanos.compareAndSet(timer, max, durationNanos));
+    }
+
+    @Override
+    public void recordCacheLookup(@Cache int cache, boolean hit) {
+        if (!mEnabled) {
+            return;
+        }
+        if (hit) {
+            mCacheHits.incrementAndGet(cache);
+        } else {
+            mCacheMisses.incrementAndGet(cache);
+        }
+    }
+
+    @Override
+    public void recordTaskQueued(@MonitoredExecutor int executor) {
+        if (!mEnabled) {
+            return;
+        }
+        int depth = mQueueDepths.incrementAndGet(executor);
+        int max;
+        do {
+            max = mMaxQueueDepths.get(executor);
+        } while (depth > max && !mMaxQueueDepths.compareAndSet(executor, max, depth));
+    }
+
+    @Override
+    public void recordTaskStarted(@MonitoredExecutor int executor) {
+        if (!mEnabled) {
+            return;
+        }
+        // Monitoring may have been off when the task was queued, so never go below zero.
+        int depth;
+        do {
+            depth = mQueueDepths.get(executor);
+        } while (depth > 0 && !mQueueDepths.compareAndSet(executor, depth, depth - 1));
+    }
+
+    @Override
+    public void recordBitmapAllocated(long bytes) {
+        if (!mEnabled) {
+            return;
+        }
+        mBitmapCount.incrementAndGet();
+        mBitmapBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public void dump(PrintWriter writer) {
+        writer.println("PerformanceMonitor:");
+        if (!mEnabled) {
+            writer.println("  disabled; run 'adb shell setprop log.tag." + TAG
+                    + " DEBUG' and restart the app to enable");
+            return;
+        }
+
+        writer.println("  Timers (count, avg ms, max ms):");
+        for (int i = 0; i < TIMER_COUNT; i++) {
+            long count = mTimerCounts.get(i);
+            double averageMillis = count == 0 ? 0 : toMillis(mTimerTotalNanos.get(i)) / count;
+            writer.println(String.format(Locale.US, "    %s: %d, %.1f, %.1f", TIMER_NAMES[i],
+                    count, averageMillis, toMillis(mTimerMaxNanos.get(i))));
+        }
+
+        writer.println("  Caches (hits, misses, hit ratio):");
+        for (int i = 0; i < CACHE_COUNT; i++) {
+            long hits = mCacheHits.get(i);
+            long misses = mCacheMisses.get(i);
+            long lookups = hits + misses;
+            writer.println(String.format(Locale.US, "    %s: %d, %d, %.2f", CACHE_NAMES[i],
+                    hits, misses, lookups == 0 ? 0 : (double) hits / lookups));
+        }
+
+        writer.println("  Executor queues (current depth, max depth):");
+        for (int i = 0; i < EXECUTOR_COUNT; i++) {
+            writer.println(String.format(Locale.US, "    %s: %d, %d", EXECUTOR_NAMES[i],
+                    mQueueDepths.get(i), mMaxQueueDepths.get(i)));
+        }
+
+        writer.println(String.format(Locale.US, "  Bitmaps allocated: %d, %d bytes",
+                mBitmapCount.get(), mBitmapBytes.get()));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
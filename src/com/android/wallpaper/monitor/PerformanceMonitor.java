@@ -15,16 +15,132 @@
  */
 package com.android.wallpaper.monitor;
 
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 /**
  * Interface for classes that monitor the application's performance in terms of memory usage, crash
  * statistics, and network usage.
+ * <p>
+ * Besides the memory snapshot, implementations may time hot operations, count cache hits and
+ * misses, track executor queue depths and count allocated bitmap bytes. All of those hooks default
+ * to no-ops so that call sites can report unconditionally and pay nothing when monitoring is off.
  */
 public interface PerformanceMonitor {
 
+    /** Token returned by {@link #startTimer(int)} when the timer isn't running. */
+    long NO_TIMER = 0L;
+
+    /** Monitor that records nothing, for injectors that don't monitor performance. */
+    PerformanceMonitor NO_OP = () -> {
+    };
+
+    /** Returns the given monitor, or {@link #NO_OP} if there is none. */
+    static PerformanceMonitor orNoOp(@Nullable PerformanceMonitor monitor) {
+        return monitor != null ? monitor : NO_OP;
+    }
+
+    int TIMER_CATEGORY_FETCH = 0;
+    int TIMER_THUMBNAIL_DECODE = 1;
+    int TIMER_PREVIEW_FIRST_PIXEL = 2;
+    int TIMER_CROP = 3;
+    int TIMER_ENCODE = 4;
+    int TIMER_APPLY = 5;
+    int TIMER_LIVE_ENGINE_BIND = 6;
+    int TIMER_COUNT = 7;
+
+    /** An operation that can be timed through {@link #startTimer(int)}. */
+    @IntDef({
+            TIMER_CATEGORY_FETCH,
+            TIMER_THUMBNAIL_DECODE,
+            TIMER_PREVIEW_FIRST_PIXEL,
+            TIMER_CROP,
+            TIMER_ENCODE,
+            TIMER_APPLY,
+            TIMER_LIVE_ENGINE_BIND,
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Timer {
+    }
+
+    int CACHE_BITMAP_CACHING_ASSET = 0;
+    int CACHE_GLIDE = 1;
+    int CACHE_WALLPAPER_THUMBNAIL = 2;
+    int CACHE_WALLPAPER_COLORS = 3;
+    int CACHE_CONTENT_URI_PROBE = 4;
+    int CACHE_COUNT = 5;
+
+    /** A cache whose hit ratio is tracked through {@link #recordCacheLookup(int, boolean)}. */
+    @IntDef({
+            CACHE_BITMAP_CACHING_ASSET,
+            CACHE_GLIDE,
+            CACHE_WALLPAPER_THUMBNAIL,
+            CACHE_WALLPAPER_COLORS,
+            CACHE_CONTENT_URI_PROBE,
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Cache {
+    }
+
+    int EXECUTOR_ASSET_DECODE = 0;
+    int EXECUTOR_BITMAP_CROPPER = 1;
+    int EXECUTOR_COUNT = 2;
+
+    /** An executor whose queue depth is tracked through {@link #recordTaskQueued(int)}. */
+    @IntDef({
+            EXECUTOR_ASSET_DECODE,
+            EXECUTOR_BITMAP_CROPPER,
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    @interface MonitoredExecutor {
+    }
+
     /**
      * Takes a memory snapshot of the app and should be called when the wallpaper image has completely
      * loaded in a full-window preview.
      */
     void recordFullResPreviewLoadedMemorySnapshot();
+
+    /**
+     * Starts timing the given operation and returns a token to pass to
+     * {@link #stopTimer(int, long)}. The start and stop calls may happen on different threads.
+     */
+    default long startTimer(@Timer int timer) {
+        return NO_TIMER;
+    }
+
+    /** Stops timing an operation started with {@link #startTimer(int)}. */
+    default void stopTimer(@Timer int timer, long token) {
+    }
+
+    /**
+     * Abandons an operation started with {@link #startTimer(int)} that was canceled or failed,
+     * without recording its duration.
+     */
+    default void cancelTimer(@Timer int timer, long token) {
+    }
+
+    /** Records a lookup in the given cache and whether it was served from the cache. */
+    default void recordCacheLookup(@Cache int cache, boolean hit) {
+    }
+
+    /** Records that a task was submitted to the given executor. */
+    default void recordTaskQueued(@MonitoredExecutor int executor) {
+    }
+
+    /** Records that a task submitted to the given executor started running. */
+    default void recordTaskStarted(@MonitoredExecutor int executor) {
+    }
+
+    /** Records the size of a newly allocated bitmap. */
+    default void recordBitmapAllocated(long bytes) {
+    }
+
+    /** Writes a report of everything recorded so far, e.g. for {@code adb shell dumpsys}. */
+    default void dump(PrintWriter writer) {
+    }
 }
@@ -51,17 +51,22 @@ import com.android.wallpaper.module.MultiPanesChecker;
 import com.android.wallpaper.module.NetworkStatusNotifier;
 import com.android.wallpaper.module.NetworkStatusNotifier.NetworkStatus;
 import com.android.wallpaper.module.UserEventLogger;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 import com.android.wallpaper.picker.AppbarFragment.AppbarFragmentHost;
 import com.android.wallpaper.picker.CategorySelectorFragment.CategorySelectorFragmentHost;
 import com.android.wallpaper.picker.MyPhotosStarter.PermissionChangedListener;
 import com.android.wallpaper.picker.individual.IndividualPickerFragment.IndividualPickerFragmentHost;
 import com.android.wallpaper.util.ActivityUtils;
 import com.android.wallpaper.util.DeepLinkUtils;
+import com.android.wallpaper.util.DiskBasedLogger;
 import com.android.wallpaper.util.DisplayUtils;
 import com.android.wallpaper.util.LaunchUtils;
 import com.android.wallpaper.widget.BottomActionBar;
 import com.android.wallpaper.widget.BottomActionBar.BottomActionBarHost;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  *  Main Activity allowing containing view sections for the user to switch between the different
  *  Fragments providing customization options.
@@ -209,6 +214,15 @@ public class CustomizationPickerActivity extends FragmentActivity implements App
         mIsSafeToCommitFragmentTransaction = false;
     }
 
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+            @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        DiskBasedLogger.dump(getApplicationContext(), writer);
+        PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor())
+                .dump(writer);
+    }
+
     @Override
     protected void onStop() {
         mUserEventLogger.logStopped();
@@ -30,11 +30,7 @@ import android.animation.AnimatorListenerAdapter;
 import android.app.Activity;
 import android.app.WallpaperColors;
 import android.content.Context;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
-import android.graphics.ColorSpace;
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -66,17 +62,19 @@ import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.CurrentWallpaperAssetVN;
 import com.android.wallpaper.model.SetWallpaperViewModel;
 import com.android.wallpaper.model.WallpaperInfo.ColorInfo;
-import com.android.wallpaper.module.BitmapCropper;
 import com.android.wallpaper.module.Injector;
 import com.android.wallpaper.module.InjectorProvider;
 import com.android.wallpaper.module.LargeScreenMultiPanesChecker;
 import com.android.wallpaper.module.WallpaperPersister.Destination;
 import com.android.wallpaper.module.WallpaperPreferences;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 import com.android.wallpaper.util.DisplayUtils;
 import com.android.wallpaper.util.FullScreenAnimation;
+import com.android.wallpaper.util.PreviewColorsCalculator;
 import com.android.wallpaper.util.ResourceUtils;
 import com.android.wallpaper.util.ScreenSizeCalculator;
 import com.android.wallpaper.util.SizeCalculator;
+import com.android.wallpaper.util.WallpaperCropGeometry;
 import com.android.wallpaper.util.WallpaperCropUtils;
 import com.android.wallpaper.widget.BottomActionBar;
 import com.android.wallpaper.widget.BottomActionBar.AccessibilityCallback;
@@ -87,13 +85,11 @@ import com.bumptech.glide.MemoryCategory;
 import com.davemorrissey.labs.subscaleview.ImageSource;
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Fragment which displays the UI for previewing an individual static wallpaper and its attribution
@@ -104,12 +100,12 @@ public class ImagePreviewFragment extends PreviewFragment {
     private static final String TAG = "ImagePreviewFragment";
     private static final float DEFAULT_WALLPAPER_MAX_ZOOM = 8f;
     private static final Executor sExecutor = Executors.newCachedThreadPool();
+    /** How long the wallpaper has to stay still before its colors are recalculated. */
+    private static final long RECALCULATE_COLORS_DELAY_MILLIS = 100;
 
     private final WallpaperSurfaceCallback mWallpaperSurfaceCallback =
             new WallpaperSurfaceCallback();
 
-    private final AtomicInteger mImageScaleChangeCounter = new AtomicInteger(0);
-    private final AtomicInteger mRecalculateColorCounter = new AtomicInteger(0);
     private final Injector mInjector = InjectorProvider.getInjector();
 
     /**
@@ -121,6 +117,11 @@ public class ImagePreviewFragment extends PreviewFragment {
      * The size of the current screen
      */
     private Point mScreenSize;
+    /** Crop calculations reused as the wallpaper is panned and zoomed. */
+    private WallpaperCropGeometry mCropGeometry;
+    private final Point mCropHostViewSize = new Point();
+    private final Rect mVisibleFileRect = new Rect();
+    private PreviewColorsCalculator mColorsCalculator;
     protected Point mRawWallpaperSize; // Native size of wallpaper image.
     protected ImageView mLowResImageView;
     protected TouchForwardingLayout mTouchForwardingLayout;
@@ -138,13 +139,18 @@ public class ImagePreviewFragment extends PreviewFragment {
     protected Asset mWallpaperAsset;
     private Future<ColorInfo> mColorFuture;
     private DisplayUtils mDisplayUtils;
+    private long mFirstPixelTimer = PerformanceMonitor.NO_TIMER;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mFirstPixelTimer = PerformanceMonitor.orNoOp(mInjector.getPerformanceMonitor())
+                .startTimer(PerformanceMonitor.TIMER_PREVIEW_FIRST_PIXEL);
         mWallpaperAsset = mWallpaper.getAsset(requireContext().getApplicationContext());
         mColorFuture = mWallpaper.computeColorInfo(requireContext());
         mWallpaperPreferences = mInjector.getPreferences(getContext());
+        mColorsCalculator = new PreviewColorsCalculator(mWallpaperAsset,
+                this::calculateRawCropRect);
     }
 
     @Override
@@ -159,6 +165,7 @@ public class ImagePreviewFragment extends PreviewFragment {
 
         Activity activity = requireActivity();
         mDisplayUtils = mInjector.getDisplayUtils(activity);
+        mCropGeometry = new WallpaperCropGeometry(activity.getApplicationContext());
         ScreenSizeCalculator screenSizeCalculator = ScreenSizeCalculator.getInstance();
         mScreenSize = screenSizeCalculator.getScreenSize(
                 activity.getWindowManager().getDefaultDisplay());
@@ -260,6 +267,7 @@ public class ImagePreviewFragment extends PreviewFragment {
     public void onDestroy() {
         super.onDestroy();
 
+        mColorsCalculator.cancel();
         if (mFullResImageView != null) {
             mFullResImageView.recycle();
         }
@@ -368,6 +376,12 @@ public class ImagePreviewFragment extends PreviewFragment {
                     if (mFullResImageView != null) {
                         // Set page bitmap.
                         mFullResImageView.setImage(ImageSource.bitmap(pageBitmap));
+                        PerformanceMonitor monitor =
+                                PerformanceMonitor.orNoOp(mInjector.getPerformanceMonitor());
+                        monitor.stopTimer(PerformanceMonitor.TIMER_PREVIEW_FIRST_PIXEL,
+                                mFirstPixelTimer);
+                        mFirstPixelTimer = PerformanceMonitor.NO_TIMER;
+                        monitor.recordFullResPreviewLoadedMemorySnapshot();
 
                         if (isWallpaperColorCached) {
                             crossFadeInMosaicView();
@@ -386,20 +400,14 @@ public class ImagePreviewFragment extends PreviewFragment {
                                         // Disallow bottom sheet to popup when wallpaper is moving
                                         // by user dragging.
                                         mBottomActionBar.enableActionButtonsWithBottomSheet(false);
-                                        mImageScaleChangeCounter.incrementAndGet();
-                                        mFullResImageView.postDelayed(() -> {
-                                            if (mImageScaleChangeCounter.decrementAndGet() == 0) {
-                                                recalculateColors(false);
-                                            }
-                                        }, /* delayMillis= */ 100);
+                                        recalculateColors(/* cacheColor= */ false,
+                                                RECALCULATE_COLORS_DELAY_MILLIS);
                                     }
                                 });
 
                         // If the color isn't cached in SharedPreference, recalculate the Colors.
                         if (!isWallpaperColorCached) {
-                            Handler.getMain().post(() -> {
-                                recalculateColors(true);
-                            });
+                            recalculateColors(/* cacheColor= */ true, /* delayMillis= */ 0);
                         }
                     }
                 });
@@ -415,61 +423,45 @@ public class ImagePreviewFragment extends PreviewFragment {
         });
     }
 
-    private void recalculateColors(boolean cacheColor) {
-        Context context = getContext();
-        if (context == null) {
-            Log.e(TAG, "Got null context, skip recalculating colors");
-            return;
-        }
-
-        BitmapCropper bitmapCropper = mInjector.getBitmapCropper();
-        bitmapCropper.cropAndScaleBitmap(mWallpaperAsset, mFullResImageView.getScale(),
-                calculateCropRect(context, /* cropExtraWidth= */ true), /* adjustForRtl= */ false,
-                new BitmapCropper.Callback() {
-                    @Override
-                    public void onBitmapCropped(Bitmap croppedBitmap) {
-                        mRecalculateColorCounter.incrementAndGet();
-                        sExecutor.execute(() -> {
-                            boolean shouldRecycle = false;
-                            ByteArrayOutputStream tmpOut = new ByteArrayOutputStream();
-                            Bitmap cropped = croppedBitmap;
-                            if (cropped.compress(Bitmap.CompressFormat.PNG, 100, tmpOut)) {
-                                byte[] outByteArray = tmpOut.toByteArray();
-                                BitmapFactory.Options options = new BitmapFactory.Options();
-                                options.inPreferredColorSpace =
-                                        ColorSpace.get(ColorSpace.Named.SRGB);
-                                cropped = BitmapFactory.decodeByteArray(outByteArray, 0,
-                                        outByteArray.length);
-                            }
-                            if (cropped.getConfig() == Bitmap.Config.HARDWARE) {
-                                cropped = cropped.copy(Bitmap.Config.ARGB_8888, false);
-                                shouldRecycle = true;
-                            }
-                            WallpaperColors colors = WallpaperColors.fromBitmap(cropped);
-                            if (shouldRecycle) {
-                                cropped.recycle();
-                            }
-                            if (mRecalculateColorCounter.decrementAndGet() == 0) {
-                                Handler.getMain().post(() -> {
-                                    onWallpaperColorsChanged(colors);
-                                    if (mFullResImageView.getAlpha() == 0f) {
-                                        crossFadeInMosaicView();
-                                    }
-                                });
-                            }
+    private void recalculateColors(boolean cacheColor, long delayMillis) {
+        mColorsCalculator.request(delayMillis, cacheColor, (colors, shouldCacheColors) -> {
+            Context context = getContext();
+            if (context == null) {
+                Log.e(TAG, "Got null context, skip recalculating colors");
+                return;
+            }
+            onWallpaperColorsChanged(colors);
+            if (mFullResImageView.getAlpha() == 0f) {
+                crossFadeInMosaicView();
+            }
 
-                            if (cacheColor) {
-                                mWallpaperPreferences.storeWallpaperColors(
-                                        mWallpaper.getStoredWallpaperId(context), colors);
-                            }
-                        });
-                    }
+            // Also set when this request superseded one that asked for caching.
+            if (shouldCacheColors) {
+                String wallpaperId = mWallpaper.getStoredWallpaperId(context);
+                sExecutor.execute(() ->
+                        mWallpaperPreferences.storeWallpaperColors(wallpaperId, colors));
+            }
+        });
+    }
 
-                    @Override
-                    public void onError(@Nullable Throwable e) {
-                        Log.w(TAG, "Recalculate colors, crop and scale bitmap failed.", e);
-                    }
-                });
+    /**
+     * Returns the visible part of the wallpaper in pixels of the raw wallpaper, or null if the
+     * wallpaper isn't shown yet.
+     */
+    @Nullable
+    private Rect calculateRawCropRect() {
+        if (mFullResImageView == null || mRawWallpaperSize == null) {
+            return null;
+        }
+        Rect cropRect = new Rect();
+        calculateCropRect(/* cropExtraWidth= */ true, cropRect);
+        float scale = mFullResImageView.getScale();
+        cropRect.set(
+                (int) Math.floor(cropRect.left / scale),
+                (int) Math.floor(cropRect.top / scale),
+                (int) Math.floor(cropRect.right / scale),
+                (int) Math.floor(cropRect.bottom / scale));
+        return cropRect;
     }
 
     /**
@@ -546,30 +538,23 @@ public class ImagePreviewFragment extends PreviewFragment {
         mFullResImageView.setScaleAndCenter(minWallpaperZoom, centerPosition);
     }
 
-    private Rect calculateCropRect(Context context, boolean cropExtraWidth) {
-        float wallpaperZoom = mFullResImageView.getScale();
-        Context appContext = context.getApplicationContext();
-
-        Rect visibleFileRect = new Rect();
-        mFullResImageView.visibleFileRect(visibleFileRect);
-
-        int cropWidth = mWallpaperSurface.getMeasuredWidth();
-        int cropHeight = mWallpaperSurface.getMeasuredHeight();
-        int maxCrop = Math.max(cropWidth, cropHeight);
-        int minCrop = Math.min(cropWidth, cropHeight);
-        Point hostViewSize = new Point(cropWidth, cropHeight);
-
-        Resources res = appContext.getResources();
-        Point cropSurfaceSize = WallpaperCropUtils.calculateCropSurfaceSize(res, maxCrop, minCrop,
-                cropWidth, cropHeight);
-        return WallpaperCropUtils.calculateCropRect(appContext, hostViewSize,
-                cropSurfaceSize, mRawWallpaperSize, visibleFileRect, wallpaperZoom, cropExtraWidth);
+    /**
+     * Calculates the crop of the wallpaper as currently panned and zoomed into
+     * {@code outCropRect}.
+     */
+    private void calculateCropRect(boolean cropExtraWidth, Rect outCropRect) {
+        mFullResImageView.visibleFileRect(mVisibleFileRect);
+        mCropHostViewSize.set(mWallpaperSurface.getMeasuredWidth(),
+                mWallpaperSurface.getMeasuredHeight());
+        mCropGeometry.calculateCropRect(mCropHostViewSize, mRawWallpaperSize, mVisibleFileRect,
+                mFullResImageView.getScale(), cropExtraWidth, outCropRect);
     }
 
     @Override
     protected void setCurrentWallpaper(@Destination int destination) {
         // Only crop extra wallpaper width for single display devices.
-        Rect cropRect = calculateCropRect(getContext(), !mDisplayUtils.hasMultiInternalDisplays());
+        Rect cropRect = new Rect();
+        calculateCropRect(!mDisplayUtils.hasMultiInternalDisplays(), cropRect);
         float screenScale = WallpaperCropUtils.getScaleOfScreenResolution(
                 mFullResImageView.getScale(), cropRect, mWallpaperScreenSize.x,
                 mWallpaperScreenSize.y);
@@ -639,7 +624,7 @@ public class ImagePreviewFragment extends PreviewFragment {
                 // rendered in a larger surface than what preview shows, simulating the behavior of
                 // the actual wallpaper surface and so we can crop it to a size that fits in all
                 // screens.
-                float scale = WallpaperCropUtils.getSystemWallpaperMaximumScale(context);
+                float scale = mCropGeometry.getSystemWallpaperMaximumScale();
                 int origWidth = mWallpaperSurface.getWidth();
                 int origHeight = mWallpaperSurface.getHeight();
 
@@ -655,7 +640,7 @@ public class ImagePreviewFragment extends PreviewFragment {
                 int left = (origWidth - width) / 2;
                 int top = (origHeight - height) / 2;
 
-                if (WallpaperCropUtils.isRtl(context)) {
+                if (mCropGeometry.isRtl()) {
                     left *= -1;
                 }
 
@@ -75,6 +75,7 @@ import com.android.wallpaper.util.ScreenSizeCalculator;
 import com.android.wallpaper.util.SizeCalculator;
 import com.android.wallpaper.util.WallpaperConnection;
 import com.android.wallpaper.util.WallpaperSurfaceCallback;
+import com.android.wallpaper.util.WallpaperTouchForwarder;
 import com.android.wallpaper.widget.BottomActionBar;
 import com.android.wallpaper.widget.BottomActionBar.AccessibilityCallback;
 import com.android.wallpaper.widget.BottomActionBar.BottomSheetContent;
@@ -119,6 +120,7 @@ public class LivePreviewFragment extends PreviewFragment implements
     private Point mScreenSize;
     private ViewGroup mPreviewContainer;
     private TouchForwardingLayout mTouchForwardingLayout;
+    private WallpaperTouchForwarder mTouchForwarder;
     private SurfaceView mWallpaperSurface;
     private Future<ColorInfo> mColorFuture;
     private WallpaperColors mWallpaperColors;
@@ -246,6 +248,11 @@ public class LivePreviewFragment extends PreviewFragment implements
     }
 
     private void setupCurrentWallpaperPreview() {
+        mTouchForwarder = new WallpaperTouchForwarder(event -> {
+            if (mWallpaperConnection != null && mWallpaperConnection.getEngine() != null) {
+                mWallpaperConnection.getEngine().dispatchPointer(event);
+            }
+        });
         mHomePreviewCard.setOnTouchListener((v, ev) -> {
             if (mWallpaperConnection != null && mWallpaperConnection.getEngine() != null) {
                 float scaleRatio =
@@ -254,10 +261,8 @@ public class LivePreviewFragment extends PreviewFragment implements
                 if (action == MotionEvent.ACTION_DOWN) {
                     mBottomActionBar.collapseBottomSheetIfExpanded();
                 }
-                MotionEvent dup = MotionEvent.obtainNoHistory(ev);
-                dup.setLocation(ev.getX() / scaleRatio, ev.getY() / scaleRatio);
+                mTouchForwarder.forward(ev, scaleRatio);
                 try {
-                    mWallpaperConnection.getEngine().dispatchPointer(dup);
                     if (action == MotionEvent.ACTION_UP) {
                         mWallpaperConnection.getEngine().dispatchWallpaperCommand(
                                 WallpaperManager.COMMAND_TAP,
@@ -284,6 +289,10 @@ public class LivePreviewFragment extends PreviewFragment implements
             mSettingsLiveData.removeObserver(mSettingsSliceView);
             mSettingsLiveData = null;
         }
+        if (mTouchForwarder != null) {
+            mTouchForwarder.release();
+            mTouchForwarder = null;
+        }
         if (mWallpaperConnection != null) {
             mWallpaperConnection.disconnect();
             mWallpaperConnection = null;
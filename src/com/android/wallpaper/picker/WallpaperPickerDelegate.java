@@ -34,6 +34,7 @@ import androidx.fragment.app.FragmentActivity;
 import com.android.wallpaper.R;
 import com.android.wallpaper.compat.WallpaperManagerCompat;
 import com.android.wallpaper.model.Category;
+import com.android.wallpaper.model.CategoryDeltaReceiver;
 import com.android.wallpaper.model.CategoryProvider;
 import com.android.wallpaper.model.CategoryReceiver;
 import com.android.wallpaper.model.ImageWallpaperInfo;
@@ -43,6 +44,7 @@ import com.android.wallpaper.module.Injector;
 import com.android.wallpaper.module.InjectorProvider;
 import com.android.wallpaper.module.PackageStatusNotifier;
 import com.android.wallpaper.module.PackageStatusNotifier.PackageStatus;
+import com.android.wallpaper.module.ResourceIndex;
 import com.android.wallpaper.module.WallpaperPersister;
 import com.android.wallpaper.module.WallpaperPreferences;
 import com.android.wallpaper.picker.PreviewActivity.PreviewActivityIntentFactory;
@@ -188,6 +190,9 @@ public class WallpaperPickerDelegate implements MyPhotosStarter {
     }
 
     private void updateThirdPartyCategories(String packageName, @PackageStatus int status) {
+        if (applyPackageChange(packageName, status)) {
+            return;
+        }
         if (status == PackageStatus.ADDED) {
             mCategoryProvider.fetchCategories(new CategoryReceiver() {
                 @Override
@@ -223,6 +228,34 @@ public class WallpaperPickerDelegate implements MyPhotosStarter {
         }
     }
 
+    /**
+     * Asks the category provider to update only the categories affected by the given package,
+     * instead of refetching all of them.
+     *
+     * @return whether the provider is applying the change
+     */
+    private boolean applyPackageChange(String packageName, @PackageStatus int status) {
+        // The package's resources may have moved.
+        ResourceIndex.invalidate(packageName);
+        return mCategoryProvider.applyPackageChange(packageName, status,
+                new CategoryDeltaReceiver() {
+                    @Override
+                    public void onCategoryAdded(Category category) {
+                        addCategory(category, false);
+                    }
+
+                    @Override
+                    public void onCategoryUpdated(Category category) {
+                        updateCategory(category);
+                    }
+
+                    @Override
+                    public void onCategoryRemoved(Category category) {
+                        removeCategory(category);
+                    }
+                });
+    }
+
     private Category findThirdPartyCategory(String packageName) {
         int size = mCategoryProvider.getSize();
         for (int i = 0; i < size; i++) {
@@ -247,6 +280,9 @@ public class WallpaperPickerDelegate implements MyPhotosStarter {
             // there's nothing to do.
             return;
         }
+        if (applyPackageChange(packageName, status)) {
+            return;
+        }
         mCategoryProvider.fetchCategories(new CategoryReceiver() {
             @Override
             public void onCategoryReceived(Category category) {
@@ -17,6 +17,7 @@ package com.android.wallpaper.picker;
 
 import android.app.Application;
 
+import com.android.wallpaper.module.Injector;
 import com.android.wallpaper.module.InjectorProvider;
 import com.android.wallpaper.module.WallpaperPicker2Injector;
 
@@ -30,6 +31,13 @@ public class WallpapersApplication extends Application {
         super.onCreate();
 
         // Initialize the injector.
-        InjectorProvider.setInjector(new WallpaperPicker2Injector());
+        Injector injector = new WallpaperPicker2Injector();
+        InjectorProvider.setInjector(injector);
+
+        // Start building its dependencies off the main thread before the first activity asks for
+        // them, but not in other processes of the app, which never show the picker.
+        if (getPackageName().equals(Application.getProcessName())) {
+            injector.warmUp(this);
+        }
     }
 }
@@ -27,7 +27,10 @@ import android.graphics.BitmapFactory
 import android.graphics.Color
 import android.net.Uri
 import android.os.Looper
+import android.os.ParcelFileDescriptor
 import android.util.Log
+import com.android.wallpaper.R
+import com.android.wallpaper.asset.BitmapUtils
 import com.android.wallpaper.model.WallpaperInfo
 import com.android.wallpaper.module.CurrentWallpaperInfoFactory
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination
@@ -46,6 +49,11 @@ class WallpaperClientImpl(
 ) : WallpaperClient {
 
     private var recentsContentProviderAvailable: Boolean? = null
+    private val thumbnailSizePx: Int by lazy {
+        context.resources.getDimensionPixelSize(
+            R.dimen.wallpaper_quick_switch_selected_option_height
+        )
+    }
 
     override fun recentWallpapers(
         destination: WallpaperDestination,
@@ -186,7 +194,7 @@ class WallpaperClientImpl(
                         if (file == null) {
                             Log.e(TAG, "Error getting wallpaper preview: $wallpaperId")
                         } else {
-                            return BitmapFactory.decodeFileDescriptor(file.fileDescriptor)
+                            return decodeSampledThumbnail(file)
                         }
                     }
             } catch (e: IOException) {
@@ -206,6 +214,27 @@ class WallpaperClientImpl(
         return null
     }
 
+    /**
+     * Decodes the given thumbnail file, subsampled so that it is no larger than needed to fill a
+     * quick switch option.
+     */
+    private fun decodeSampledThumbnail(file: ParcelFileDescriptor): Bitmap? {
+        // decodeFileDescriptor leaves the descriptor's position untouched, so it can be read twice.
+        val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        BitmapFactory.decodeFileDescriptor(file.fileDescriptor, null, options)
+        if (options.outWidth > 0 && options.outHeight > 0) {
+            options.inSampleSize =
+                BitmapUtils.calculateInSampleSize(
+                    options.outWidth,
+                    options.outHeight,
+                    thumbnailSizePx,
+                    thumbnailSizePx,
+                )
+        }
+        options.inJustDecodeBounds = false
+        return BitmapFactory.decodeFileDescriptor(file.fileDescriptor, null, options)
+    }
+
     override fun areRecentsAvailable(): Boolean {
         if (recentsContentProviderAvailable == null) {
             recentsContentProviderAvailable =
@@ -18,13 +18,18 @@
 package com.android.wallpaper.picker.customization.data.repository
 
 import android.graphics.Bitmap
-import android.util.LruCache
 import com.android.wallpaper.module.WallpaperPreferences
+import com.android.wallpaper.monitor.PerformanceMonitor
 import com.android.wallpaper.picker.customization.data.content.WallpaperClient
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination
 import com.android.wallpaper.picker.customization.shared.model.WallpaperModel
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
@@ -33,6 +38,7 @@ import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.withContext
 
 /** Encapsulates access to wallpaper-related data. */
@@ -41,10 +47,16 @@ class WallpaperRepository(
     private val client: WallpaperClient,
     private val wallpaperPreferences: WallpaperPreferences,
     private val backgroundDispatcher: CoroutineDispatcher,
+    private val performanceMonitor: PerformanceMonitor = PerformanceMonitor.NO_OP,
+    private val thumbnailCache: WallpaperThumbnailCache = WallpaperThumbnailCache(),
 ) {
     val maxOptions = MAX_OPTIONS
 
-    private val thumbnailCache = LruCache<String, Bitmap>(maxOptions)
+    /** Thumbnail loads that are currently in flight, keyed by wallpaper ID. */
+    private val pendingThumbnails = mutableMapOf<String, PendingThumbnail>()
+    /** Scope for shared thumbnail loads; a failed load must not cancel [scope]. */
+    private val thumbnailScope =
+        CoroutineScope(scope.coroutineContext + SupervisorJob(scope.coroutineContext[Job]))
 
     /** The ID of the currently-selected wallpaper. */
     fun selectedWallpaperId(
@@ -95,17 +107,68 @@ class WallpaperRepository(
             .flowOn(backgroundDispatcher)
     }
 
-    /** Returns a thumbnail for the wallpaper with the given ID. */
+    /**
+     * Returns a thumbnail for the wallpaper with the given ID.
+     *
+     * Thumbnails are served from memory, then from disk, and only then loaded from the client.
+     * Concurrent requests for the same wallpaper share a single load.
+     */
     suspend fun loadThumbnail(wallpaperId: String, lastUpdatedTimestamp: Long): Bitmap? {
-        val cacheKey = "$wallpaperId-$lastUpdatedTimestamp"
-        return thumbnailCache[cacheKey]
-            ?: withContext(backgroundDispatcher) {
-                val thumbnail = client.loadThumbnail(wallpaperId)
-                if (thumbnail != null) {
-                    thumbnailCache.put(cacheKey, thumbnail)
-                }
-                thumbnail
+        thumbnailCache.getFromMemory(wallpaperId, lastUpdatedTimestamp)?.let {
+            performanceMonitor.recordCacheLookup(
+                PerformanceMonitor.CACHE_WALLPAPER_THUMBNAIL,
+                true,
+            )
+            return it
+        }
+
+        val load =
+            synchronized(pendingThumbnails) {
+                pendingThumbnails[wallpaperId]
+                    ?.takeIf { it.lastUpdatedTimestamp == lastUpdatedTimestamp }
+                    ?.deferred
+                    ?: thumbnailScope
+                        .async(backgroundDispatcher, start = CoroutineStart.LAZY) {
+                            try {
+                                val fromDisk =
+                                    thumbnailCache.getFromDisk(wallpaperId, lastUpdatedTimestamp)
+                                performanceMonitor.recordCacheLookup(
+                                    PerformanceMonitor.CACHE_WALLPAPER_THUMBNAIL,
+                                    fromDisk != null,
+                                )
+                                fromDisk
+                                    ?: loadThumbnailFromClient(wallpaperId)?.also {
+                                        thumbnailCache.put(wallpaperId, lastUpdatedTimestamp, it)
+                                    }
+                            } finally {
+                                synchronized(pendingThumbnails) {
+                                    if (
+                                        pendingThumbnails[wallpaperId]?.lastUpdatedTimestamp ==
+                                            lastUpdatedTimestamp
+                                    ) {
+                                        pendingThumbnails.remove(wallpaperId)
+                                    }
+                                }
+                            }
+                        }
+                        .also {
+                            pendingThumbnails[wallpaperId] =
+                                PendingThumbnail(lastUpdatedTimestamp, it)
+                            it.start()
+                        }
+            }
+        return load.await()
+    }
+
+    private suspend fun loadThumbnailFromClient(wallpaperId: String): Bitmap? {
+        val timer = performanceMonitor.startTimer(PerformanceMonitor.TIMER_THUMBNAIL_DECODE)
+        return try {
+            client.loadThumbnail(wallpaperId)?.also {
+                performanceMonitor.recordBitmapAllocated(it.allocationByteCount.toLong())
             }
+        } finally {
+            performanceMonitor.stopTimer(PerformanceMonitor.TIMER_THUMBNAIL_DECODE, timer)
+        }
     }
 
     /** Sets the wallpaper to the one with the given ID. */
@@ -113,19 +176,33 @@ class WallpaperRepository(
         destination: WallpaperDestination,
         wallpaperId: String,
     ) {
-        _selectingWallpaperId.value =
-            _selectingWallpaperId.value.toMutableMap().apply { this[destination] = wallpaperId }
+        // Setting both screens at once selects the wallpaper on each of them.
+        val selectingDestinations =
+            if (destination == WallpaperDestination.BOTH) {
+                listOf(WallpaperDestination.HOME, WallpaperDestination.LOCK)
+            } else {
+                listOf(destination)
+            }
+        _selectingWallpaperId.update { selecting ->
+            selecting + selectingDestinations.associateWith { wallpaperId }
+        }
         withContext(backgroundDispatcher) {
             client.setWallpaper(
                 destination = destination,
                 wallpaperId = wallpaperId,
             ) {
-                _selectingWallpaperId.value =
-                    _selectingWallpaperId.value.toMutableMap().apply { this[destination] = null }
+                _selectingWallpaperId.update { selecting ->
+                    selecting + selectingDestinations.associateWith { null }
+                }
             }
         }
     }
 
+    private class PendingThumbnail(
+        val lastUpdatedTimestamp: Long,
+        val deferred: Deferred<Bitmap?>,
+    )
+
     companion object {
         private const val DEFAULT_KEY = "default_missing_key"
         /** The maximum number of options to show, including the currently-selected one. */
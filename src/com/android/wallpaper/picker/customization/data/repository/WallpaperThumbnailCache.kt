@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.picker.customization.data.repository
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.net.Uri
+import android.util.Log
+import android.util.LruCache
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Two-tier cache of wallpaper thumbnails.
+ *
+ * The memory tier is budgeted in bytes and keyed by wallpaper ID only; the last-updated timestamp
+ * is stored next to the bitmap and compared on lookup so that hits don't need to build a composite
+ * key. The optional disk tier keeps encoded thumbnails in [diskDirectory] so they survive process
+ * restarts.
+ *
+ * Memory lookups are safe on any thread. Disk reads and writes must happen on a background thread.
+ */
+class WallpaperThumbnailCache(
+    memoryBudgetBytes: Int = DEFAULT_MEMORY_BUDGET_BYTES,
+    private val diskDirectory: File? = null,
+    private val diskBudgetBytes: Long = DEFAULT_DISK_BUDGET_BYTES,
+) {
+
+    private val memoryCache =
+        object : LruCache<String, CachedThumbnail>(memoryBudgetBytes) {
+            override fun sizeOf(key: String, value: CachedThumbnail): Int {
+                return value.bitmap.allocationByteCount
+            }
+        }
+
+    /**
+     * Returns the thumbnail held in memory for the given wallpaper, or `null` if there is none or
+     * if the one held was stored for a different [lastUpdatedTimestamp].
+     */
+    fun getFromMemory(wallpaperId: String, lastUpdatedTimestamp: Long): Bitmap? {
+        val cached = memoryCache[wallpaperId] ?: return null
+        return if (cached.lastUpdatedTimestamp == lastUpdatedTimestamp) cached.bitmap else null
+    }
+
+    /**
+     * Returns the thumbnail stored on disk for the given wallpaper, promoting it to the memory tier,
+     * or `null` if there is no up-to-date copy on disk.
+     */
+    fun getFromDisk(wallpaperId: String, lastUpdatedTimestamp: Long): Bitmap? {
+        val directory = diskDirectory ?: return null
+        val file = File(directory, filePrefix(wallpaperId) + lastUpdatedTimestamp + FILE_SUFFIX)
+        if (!file.exists()) {
+            return null
+        }
+        val bitmap = BitmapFactory.decodeFile(file.path)
+        if (bitmap == null) {
+            file.delete()
+            return null
+        }
+        // Touch the file so that trimming evicts the least recently used entries first.
+        file.setLastModified(System.currentTimeMillis())
+        memoryCache.put(wallpaperId, CachedThumbnail(lastUpdatedTimestamp, bitmap))
+        return bitmap
+    }
+
+    /** Stores the given thumbnail in both tiers, replacing any older copy for the same wallpaper. */
+    fun put(wallpaperId: String, lastUpdatedTimestamp: Long, bitmap: Bitmap) {
+        memoryCache.put(wallpaperId, CachedThumbnail(lastUpdatedTimestamp, bitmap))
+        val directory = diskDirectory ?: return
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create thumbnail cache directory $directory")
+            return
+        }
+
+        val prefix = filePrefix(wallpaperId)
+        directory.listFiles { _, name -> name.startsWith(prefix) }?.forEach { it.delete() }
+
+        val file = File(directory, prefix + lastUpdatedTimestamp + FILE_SUFFIX)
+        val tempFile = File(directory, file.name + TEMP_SUFFIX)
+        try {
+            FileOutputStream(tempFile).use { out ->
+                bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, DISK_QUALITY, out)
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete()
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to write thumbnail for $wallpaperId", e)
+            tempFile.delete()
+        }
+        trimDisk()
+    }
+
+    /** Drops every cached thumbnail from memory. The disk tier is left untouched. */
+    fun evictAllFromMemory() {
+        memoryCache.evictAll()
+    }
+
+    private fun trimDisk() {
+        val files = diskDirectory?.listFiles() ?: return
+        var totalBytes = files.sumOf { it.length() }
+        if (totalBytes <= diskBudgetBytes) {
+            return
+        }
+        files.sortBy { it.lastModified() }
+        for (file in files) {
+            if (totalBytes <= diskBudgetBytes) {
+                break
+            }
+            val length = file.length()
+            if (file.delete()) {
+                totalBytes -= length
+            }
+        }
+    }
+
+    private fun filePrefix(wallpaperId: String): String {
+        return Uri.encode(wallpaperId) + FILE_SEPARATOR
+    }
+
+    private class CachedThumbnail(
+        val lastUpdatedTimestamp: Long,
+        val bitmap: Bitmap,
+    )
+
+    companion object {
+        private const val TAG = "WallpaperThumbnailCache"
+
+        /** Enough for a handful of quick-switch thumbnails at xxxhdpi, plus some churn. */
+        const val DEFAULT_MEMORY_BUDGET_BYTES = 4 * 1024 * 1024
+        const val DEFAULT_DISK_BUDGET_BYTES = 2L * 1024 * 1024
+
+        private const val DISK_QUALITY = 90
+        private const val FILE_SEPARATOR = "@"
+        private const val FILE_SUFFIX = ".webp"
+        private const val TEMP_SUFFIX = ".tmp"
+    }
+}
@@ -46,6 +46,18 @@ class WallpaperSnapshotRestorer(
         snapshot: RestorableSnapshot,
     ) {
         val homeWallpaperId = snapshot.args[SELECTED_HOME_SCREEN_WALLPAPER_ID]
+        val lockWallpaperId = snapshot.args[SELECTED_LOCK_SCREEN_WALLPAPER_ID]
+        if (!homeWallpaperId.isNullOrEmpty() && homeWallpaperId == lockWallpaperId) {
+            // Both screens go back to the same wallpaper, which only needs to be applied once.
+            interactor.setWallpaper(
+                destination = WallpaperDestination.BOTH,
+                wallpaperId = homeWallpaperId
+            )
+            return
+        }
+
+        // Otherwise, the home wallpaper goes first as setting it can also change a lock screen
+        // that mirrors it.
         if (!homeWallpaperId.isNullOrEmpty()) {
             interactor.setWallpaper(
                 destination = WallpaperDestination.HOME,
@@ -53,7 +65,6 @@ class WallpaperSnapshotRestorer(
             )
         }
 
-        val lockWallpaperId = snapshot.args[SELECTED_LOCK_SCREEN_WALLPAPER_ID]
         if (!lockWallpaperId.isNullOrEmpty()) {
             interactor.setWallpaper(
                 destination = WallpaperDestination.LOCK,
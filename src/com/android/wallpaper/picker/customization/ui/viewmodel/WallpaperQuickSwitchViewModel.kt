@@ -17,21 +17,34 @@
 
 package com.android.wallpaper.picker.customization.ui.viewmodel
 
+import androidx.annotation.VisibleForTesting
 import com.android.wallpaper.R
 import com.android.wallpaper.picker.common.text.ui.viewmodel.Text
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination
+import com.android.wallpaper.picker.customization.shared.model.WallpaperModel
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
-import kotlinx.coroutines.flow.distinctUntilChangedBy
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.launch
 
-/** Models UI state for views that can render wallpaper quick switching. */
+/**
+ * Models UI state for views that can render wallpaper quick switching.
+ *
+ * The selected and selecting wallpaper IDs are combined into a single [SelectionSnapshot]. Each
+ * time it changes, only the options whose state can differ between the old and the new snapshot
+ * are updated, through a state flow per wallpaper ID that lives as long as the option does. No
+ * option is created before the first snapshot, so that options start in their actual state.
+ */
 class WallpaperQuickSwitchViewModel
 constructor(
     private val interactor: WallpaperInteractor,
@@ -40,133 +53,43 @@ constructor(
     maxOptions: Int = interactor.maxOptions,
 ) {
 
-    private val selectedWallpaperId: Flow<String> =
-        interactor
-            .selectedWallpaperId(destination)
-            .shareIn(
-                scope = coroutineScope,
-                started = SharingStarted.WhileSubscribed(),
-                replay = 1,
-            )
-    private val selectingWallpaperId: Flow<String?> =
-        interactor
-            .selectingWallpaperId(destination)
-            .shareIn(
-                scope = coroutineScope,
-                started = SharingStarted.WhileSubscribed(),
-                replay = 1,
+    private val selectionSnapshot: Flow<SelectionSnapshot> =
+        combine(
+                interactor.selectedWallpaperId(destination),
+                interactor.selectingWallpaperId(destination),
+                ::SelectionSnapshot,
             )
+            .distinctUntilChanged()
+
+    // The fields below are only accessed from the options flow, which runs on the dispatcher of
+    // coroutineScope.
+    private var currentSnapshot: SelectionSnapshot? = null
+    private val optionStates = mutableMapOf<String, MutableStateFlow<OptionState>>()
+    private val optionViewModels =
+        mutableMapOf<WallpaperModel, WallpaperQuickSwitchOptionViewModel>()
 
     val options: Flow<List<WallpaperQuickSwitchOptionViewModel>> =
-        interactor
-            .previews(
-                destination = destination,
-                maxResults = maxOptions,
-            )
-            .distinctUntilChangedBy { previews ->
-                // Produce a key that's the same if the same set of wallpapers is available,
-                // even if in a different order. This is so that the view can keep from
-                // moving the wallpaper options around when the sort order changes as the
-                // user selects different wallpapers.
-                previews
-                    .map { preview -> preview.wallpaperId + preview.lastUpdated }
-                    .sorted()
-                    .joinToString(",")
-            }
-            .map { previews ->
-                // True if any option is becoming selected following user click.
-                val isSomethingBecomingSelectedFlow: Flow<Boolean> =
-                    selectingWallpaperId.distinctUntilChanged().map { it != null }
-
-                previews.map { preview ->
-                    // True if this option is currently selected.
-                    val isSelectedFlow: Flow<Boolean> =
-                        selectedWallpaperId.distinctUntilChanged().map { it == preview.wallpaperId }
-                    // True if this option is becoming the selected one following user click.
-                    val isBecomingSelectedFlow: Flow<Boolean> =
-                        selectingWallpaperId.distinctUntilChanged().map {
-                            it == preview.wallpaperId
-                        }
-
-                    WallpaperQuickSwitchOptionViewModel(
-                        wallpaperId = preview.wallpaperId,
-                        placeholderColor = preview.placeholderColor,
-                        thumbnail = {
-                            interactor.loadThumbnail(
-                                wallpaperId = preview.wallpaperId,
-                                lastUpdatedTimestamp = preview.lastUpdated
-                            )
-                        },
-                        isLarge =
-                            combine(
-                                isSelectedFlow,
-                                isBecomingSelectedFlow,
-                                isSomethingBecomingSelectedFlow,
-                            ) { isSelected, isBecomingSelected, isSomethingBecomingSelected,
-                                ->
-                                // The large option is the one that's currently selected or
-                                // the one that is becoming the selected one following user
-                                // click.
-                                (isSelected && !isSomethingBecomingSelected) || isBecomingSelected
-                            },
-                        // We show the progress indicator if the option is in the process of
-                        // becoming the selected one following user click.
-                        isProgressIndicatorVisible = isBecomingSelectedFlow,
-                        isSelectionBorderVisible =
-                            combine(
-                                isSelectedFlow,
-                                isBecomingSelectedFlow,
-                                isSomethingBecomingSelectedFlow,
-                            ) { isSelected, isBeingSelected, isSomethingBecomingSelected ->
-                                // The selection border is shown for the option that is the
-                                // one that's currently selected or the one that is becoming
-                                // the selected one following user click.
-                                (isSelected && !isSomethingBecomingSelected) || isBeingSelected
-                            },
-                        isSelectionIconVisible =
-                            combine(
-                                isSelectedFlow,
-                                isSomethingBecomingSelectedFlow,
-                            ) { isSelected, isSomethingBecomingSelected ->
-                                // The selection icon is shown for the option that is
-                                // currently selected but only if nothing else is becoming
-                                // selected. If anything is being selected following user
-                                // click, the selection icon is not shown on any option.
-                                isSelected && !isSomethingBecomingSelected
-                            },
-                        onSelected =
-                            combine(
-                                    isSelectedFlow,
-                                    isBecomingSelectedFlow,
-                                    isSomethingBecomingSelectedFlow,
-                                ) { isSelected, isBeingSelected, isSomethingBecomingSelected,
-                                    ->
-                                    // An option is selectable if it is not itself becoming
-                                    // selected following user click or if nothing else is
-                                    // becoming selected but this option is not the selected
-                                    // one.
-                                    (isSomethingBecomingSelected && !isBeingSelected) ||
-                                        (!isSomethingBecomingSelected && !isSelected)
-                                }
-                                .distinctUntilChanged()
-                                .map { isSelectable ->
-                                    if (isSelectable) {
-                                        {
-                                            // A selectable option can become selected.
-                                            coroutineScope.launch {
-                                                interactor.setWallpaper(
-                                                    destination = destination,
-                                                    wallpaperId = preview.wallpaperId,
-                                                )
-                                            }
-                                        }
-                                    } else {
-                                        // A non-selectable option cannot become selected.
-                                        null
-                                    }
-                                }
-                    )
+        channelFlow {
+                val firstSnapshotApplied = CompletableDeferred<Unit>()
+                launch {
+                    selectionSnapshot.collect { snapshot ->
+                        applySnapshot(snapshot)
+                        firstSnapshotApplied.complete(Unit)
+                    }
                 }
+                firstSnapshotApplied.await()
+
+                interactor
+                    .previews(
+                        destination = destination,
+                        maxResults = maxOptions,
+                    )
+                    // Only update the options if a different set of wallpapers is available, not
+                    // if the same wallpapers are in a different order. This is so that the view
+                    // can keep from moving the wallpaper options around when the sort order
+                    // changes as the user selects different wallpapers.
+                    .distinctUntilChanged(::isSameSetOfWallpapers)
+                    .collect { previews -> send(updateOptions(previews)) }
             }
             .shareIn(
                 scope = coroutineScope,
@@ -185,8 +108,188 @@ constructor(
             Text.Resource(R.string.wallpaper_picker_entry_title)
         }
 
+    /** Returns the state of the option of the given wallpaper, or `null` if there is none. */
+    @VisibleForTesting
+    fun optionState(wallpaperId: String): StateFlow<OptionState>? {
+        return optionStates[wallpaperId]?.asStateFlow()
+    }
+
+    private fun updateOptions(
+        previews: List<WallpaperModel>,
+    ): List<WallpaperQuickSwitchOptionViewModel> {
+        val wallpaperIds = previews.mapTo(HashSet()) { it.wallpaperId }
+        optionStates.keys.retainAll(wallpaperIds)
+        optionViewModels.keys.retainAll(previews.toSet())
+        return previews.map { preview ->
+            optionViewModels.getOrPut(preview) { createOption(preview) }
+        }
+    }
+
+    private fun createOption(preview: WallpaperModel): WallpaperQuickSwitchOptionViewModel {
+        val snapshot = checkNotNull(currentSnapshot) { "Options are created after a snapshot" }
+        val state =
+            optionStates.getOrPut(preview.wallpaperId) {
+                MutableStateFlow(snapshot.stateOf(preview.wallpaperId))
+            }
+        val onSelected: () -> Unit = {
+            // A selectable option can become selected.
+            coroutineScope.launch {
+                interactor.setWallpaper(
+                    destination = destination,
+                    wallpaperId = preview.wallpaperId,
+                )
+            }
+        }
+        return WallpaperQuickSwitchOptionViewModel(
+            wallpaperId = preview.wallpaperId,
+            placeholderColor = preview.placeholderColor,
+            thumbnail = {
+                interactor.loadThumbnail(
+                    wallpaperId = preview.wallpaperId,
+                    lastUpdatedTimestamp = preview.lastUpdated
+                )
+            },
+            isLarge = state.map { it.isLarge }.distinctUntilChanged(),
+            isProgressIndicatorVisible =
+                state.map { it.isProgressIndicatorVisible }.distinctUntilChanged(),
+            isSelectionBorderVisible =
+                state.map { it.isSelectionBorderVisible }.distinctUntilChanged(),
+            isSelectionIconVisible = state.map { it.isSelectionIconVisible }.distinctUntilChanged(),
+            onSelected =
+                state
+                    .map { it.isSelectable }
+                    .distinctUntilChanged()
+                    // A non-selectable option cannot become selected.
+                    .map { isSelectable -> if (isSelectable) onSelected else null },
+        )
+    }
+
+    /** Updates the state of the options that the change of snapshot may affect. */
+    private fun applySnapshot(snapshot: SelectionSnapshot) {
+        val previous = currentSnapshot
+        currentSnapshot = snapshot
+        if (
+            previous == null ||
+                previous.isSomethingBecomingSelected != snapshot.isSomethingBecomingSelected
+        ) {
+            // Whether anything is becoming selected affects every option.
+            optionStates.forEach { (wallpaperId, state) ->
+                state.value = snapshot.stateOf(wallpaperId)
+            }
+        } else {
+            // Otherwise, only options that are or were selected or becoming selected change.
+            updateOptionState(previous.selectedId, snapshot)
+            updateOptionState(previous.selectingId, snapshot)
+            updateOptionState(snapshot.selectedId, snapshot)
+            updateOptionState(snapshot.selectingId, snapshot)
+        }
+    }
+
+    private fun updateOptionState(wallpaperId: String?, snapshot: SelectionSnapshot) {
+        if (wallpaperId != null) {
+            optionStates[wallpaperId]?.value = snapshot.stateOf(wallpaperId)
+        }
+    }
+
+    /** The IDs of the wallpaper that's selected and of the one becoming selected, if any. */
+    private data class SelectionSnapshot(
+        val selectedId: String?,
+        val selectingId: String?,
+    ) {
+        val isSomethingBecomingSelected: Boolean
+            get() = selectingId != null
+
+        fun stateOf(wallpaperId: String): OptionState {
+            return OptionState.of(
+                isSelected = wallpaperId == selectedId,
+                isBecomingSelected = wallpaperId == selectingId,
+                isSomethingBecomingSelected = isSomethingBecomingSelected,
+            )
+        }
+    }
+
+    /** The selection state of a single option. */
+    @VisibleForTesting
+    data class OptionState(
+        /**
+         * The large option is the one that's currently selected or the one that is becoming the
+         * selected one following user click.
+         */
+        val isLarge: Boolean,
+        /**
+         * We show the progress indicator if the option is in the process of becoming the selected
+         * one following user click.
+         */
+        val isProgressIndicatorVisible: Boolean,
+        /**
+         * The selection border is shown for the option that is the one that's currently selected
+         * or the one that is becoming the selected one following user click.
+         */
+        val isSelectionBorderVisible: Boolean,
+        /**
+         * The selection icon is shown for the option that is currently selected but only if
+         * nothing else is becoming selected. If anything is being selected following user click,
+         * the selection icon is not shown on any option.
+         */
+        val isSelectionIconVisible: Boolean,
+        /**
+         * An option is selectable if it is not itself becoming selected following user click or
+         * if nothing else is becoming selected but this option is not the selected one.
+         */
+        val isSelectable: Boolean,
+    ) {
+        companion object {
+            // One instance for each combination of the three inputs, so updates don't allocate.
+            private val STATES =
+                Array(8) { index ->
+                    val isSelected = index and 1 != 0
+                    val isBecomingSelected = index and 2 != 0
+                    val isSomethingBecomingSelected = index and 4 != 0
+                    OptionState(
+                        isLarge =
+                            (isSelected && !isSomethingBecomingSelected) || isBecomingSelected,
+                        isProgressIndicatorVisible = isBecomingSelected,
+                        isSelectionBorderVisible =
+                            (isSelected && !isSomethingBecomingSelected) || isBecomingSelected,
+                        isSelectionIconVisible = isSelected && !isSomethingBecomingSelected,
+                        isSelectable =
+                            (isSomethingBecomingSelected && !isBecomingSelected) ||
+                                (!isSomethingBecomingSelected && !isSelected),
+                    )
+                }
+
+            fun of(
+                isSelected: Boolean,
+                isBecomingSelected: Boolean,
+                isSomethingBecomingSelected: Boolean,
+            ): OptionState {
+                return STATES[
+                    (if (isSelected) 1 else 0) or
+                        (if (isBecomingSelected) 2 else 0) or
+                        (if (isSomethingBecomingSelected) 4 else 0)]
+            }
+        }
+    }
+
     companion object {
         /** The maximum number of options to show, including the currently-selected one. */
         private const val MAX_OPTIONS = 5
+
+        /**
+         * Whether both lists hold the same wallpapers, by ID and last update time, regardless of
+         * their order. Wallpaper IDs are unique within a list.
+         */
+        private fun isSameSetOfWallpapers(
+            old: List<WallpaperModel>,
+            new: List<WallpaperModel>,
+        ): Boolean {
+            return old.size == new.size &&
+                new.all { preview ->
+                    old.any {
+                        it.wallpaperId == preview.wallpaperId &&
+                            it.lastUpdated == preview.lastUpdated
+                    }
+                }
+        }
     }
 }
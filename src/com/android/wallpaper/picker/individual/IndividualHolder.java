@@ -56,6 +56,14 @@ abstract class IndividualHolder extends ViewHolder {
         mWallpaperContainer.getLayoutParams().height = tileHeightPx;
     }
 
+    /**
+     * Points this IndividualHolder at a new instance of the wallpaper it shows, which renders the
+     * same, without reloading its views.
+     */
+    public void updateWallpaper(WallpaperInfo wallpaper) {
+        mWallpaper = wallpaper;
+    }
+
     /**
      * Binds the given wallpaper to this IndividualHolder.
      */
@@ -19,6 +19,7 @@ import CreativeCategoryHolder
 import android.app.Activity
 import android.app.ProgressDialog
 import android.app.WallpaperManager
+import android.content.Context
 import android.content.DialogInterface
 import android.content.res.Configuration
 import android.content.res.Resources
@@ -51,9 +52,12 @@ import com.android.wallpaper.R
 import com.android.wallpaper.model.Category
 import com.android.wallpaper.model.CategoryProvider
 import com.android.wallpaper.model.CategoryReceiver
+import com.android.wallpaper.model.CreativeCategory
 import com.android.wallpaper.model.LiveWallpaperInfo
+import com.android.wallpaper.model.ThirdPartyLiveWallpaperCategory
 import com.android.wallpaper.model.WallpaperCategory
 import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.model.WallpaperReceiver
 import com.android.wallpaper.model.WallpaperRotationInitializer
 import com.android.wallpaper.model.WallpaperRotationInitializer.NetworkPreference
 import com.android.wallpaper.module.InjectorProvider
@@ -74,8 +78,12 @@ import com.android.wallpaper.widget.WallpaperPickerRecyclerViewAccessibilityDele
 import com.bumptech.glide.Glide
 import com.bumptech.glide.MemoryCategory
 import java.util.Date
+import java.util.Objects
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /** Displays the Main UI for picking an individual wallpaper image. */
 class IndividualPickerFragment2 :
@@ -129,6 +137,18 @@ class IndividualPickerFragment2 :
     private lateinit var categoryProvider: CategoryProvider
     private var appliedWallpaperIds: Set<String> = setOf()
     private var mIsCreativeWallpaperEnabled = false
+    private var itemsUpdateJob: Job? = null
+    // The same receiver for every fetch, so the category can tell this fragment's reads apart.
+    private val wallpaperReceiver =
+        object : WallpaperReceiver {
+            override fun onWallpapersReceived(wallpapers: List<WallpaperInfo>) {
+                onWallpapersFetched(wallpapers)
+            }
+
+            override fun onWallpapersPartiallyReceived(wallpapers: List<WallpaperInfo>) {
+                onWallpapersFetched(wallpapers, isComplete = false)
+            }
+        }
 
     /**
      * Staged error dialog fragments that were unable to be shown when the activity didn't allow
@@ -213,63 +233,138 @@ class IndividualPickerFragment2 :
     }
 
     private fun fetchWallpapers(forceReload: Boolean) {
-        items.clear()
         isWallpapersReceived = false
         updateLoading()
-        val context = requireContext()
+        category?.fetchWallpapers(
+            requireContext().applicationContext,
+            wallpaperReceiver,
+            forceReload
+        )
+    }
+
+    /**
+     * Shows the fetched wallpapers.
+     *
+     * @param isComplete false if more wallpapers are still being fetched
+     */
+    private fun onWallpapersFetched(
+        fetchedWallpapers: List<WallpaperInfo>,
+        isComplete: Boolean = true,
+    ) {
+        val context = context
+        if (context == null) {
+            Log.w(TAG, "Null context!!")
+            return
+        }
+        isWallpapersReceived = true
+        updateLoading()
+        val supportsUserCreated =
+            mIsCreativeWallpaperEnabled && category?.supportsUserCreatedWallpapers() == true
+        val appliedWallpaperIds = getAppliedWallpaperIds()
+        val currentWallpaper: android.app.WallpaperInfo? =
+            WallpaperManager.getInstance(context).wallpaperInfo
+        // Grouping and hashing resolve the strings of every wallpaper, on every partial page.
+        updateItems {
+            buildItems(
+                context,
+                fetchedWallpapers,
+                supportsUserCreated,
+                currentWallpaper,
+                appliedWallpaperIds
+            )
+        }
+
+        // Resolve the explore links of the category in one go, rather than on each preview.
+        if (isComplete) {
+            InjectorProvider.getInjector()
+                .getExploreIntentChecker(context)
+                .prefetchValidActionViewIntents(context.applicationContext, fetchedWallpapers)
+        }
+
+        // Finish activity if no wallpapers are found (on phone)
+        if (isComplete && fetchedWallpapers.isEmpty()) {
+            activity?.finish()
+        }
+    }
+
+    /** Builds the items to show for the given wallpapers. Runs in the background. */
+    private fun buildItems(
+        context: Context,
+        fetchedWallpapers: List<WallpaperInfo>,
+        supportsUserCreated: Boolean,
+        currentWallpaper: android.app.WallpaperInfo?,
+        appliedWallpaperIds: Set<String>,
+    ): List<PickerItem> {
         val userCreatedWallpapers = mutableListOf<WallpaperInfo>()
+        val newItems = mutableListOf<PickerItem>()
+        val byGroup = fetchedWallpapers.groupBy { it.getGroupName(context) }.toMutableMap()
+        val firstEntry = byGroup.keys.firstOrNull()
+
+        // Handle first group (templates/items that allow to create a new wallpaper)
+        if (firstEntry != null && supportsUserCreated) {
+            val wallpapers = byGroup.getValue(firstEntry)
+
+            if (wallpapers.size > 1 && !TextUtils.isEmpty(firstEntry)) {
+                addItemHeader(newItems, firstEntry, newItems.isEmpty())
+                addTemplates(newItems, wallpapers, userCreatedWallpapers)
+                byGroup.remove(firstEntry)
+            }
+        }
 
-        category?.fetchWallpapers(
-            context.applicationContext,
-            { fetchedWallpapers ->
-                if (getContext() == null) {
-                    Log.w(TAG, "Null context!!")
-                    return@fetchWallpapers
-                }
-                isWallpapersReceived = true
-                updateLoading()
-                val supportsUserCreated = category?.supportsUserCreatedWallpapers() == true
-                val byGroup = fetchedWallpapers.groupBy { it.getGroupName(context) }.toMutableMap()
-                val appliedWallpaperIds = getAppliedWallpaperIds()
-                val firstEntry = byGroup.keys.firstOrNull()
-                val currentWallpaper: android.app.WallpaperInfo? =
-                    WallpaperManager.getInstance(context).wallpaperInfo
-
-                // Handle first group (templates/items that allow to create a new wallpaper)
-                if (mIsCreativeWallpaperEnabled && firstEntry != null && supportsUserCreated) {
-                    val wallpapers = byGroup.getValue(firstEntry)
-
-                    if (wallpapers.size > 1 && !TextUtils.isEmpty(firstEntry)) {
-                        addItemHeader(firstEntry, items.isEmpty())
-                        addTemplates(wallpapers, userCreatedWallpapers)
-                        byGroup.remove(firstEntry)
-                    }
+        // Handle other groups
+        if (byGroup.isNotEmpty()) {
+            byGroup.forEach { (groupName, wallpapers) ->
+                if (!TextUtils.isEmpty(groupName)) {
+                    addItemHeader(newItems, groupName, newItems.isEmpty())
                 }
+                addWallpaperItems(
+                    context,
+                    newItems,
+                    wallpapers,
+                    currentWallpaper,
+                    appliedWallpaperIds
+                )
+            }
+        }
+        return newItems
+    }
 
-                // Handle other groups
-                if (byGroup.isNotEmpty()) {
-                    byGroup.forEach { (groupName, wallpapers) ->
-                        if (!TextUtils.isEmpty(groupName)) {
-                            addItemHeader(groupName, items.isEmpty())
-                        }
-                        addWallpaperItems(wallpapers, currentWallpaper, appliedWallpaperIds)
+    /**
+     * Replaces the displayed items with the ones returned by [createItems], creating them and
+     * diffing them against the current ones in the background so that only the tiles that changed
+     * are re-bound.
+     */
+    private fun updateItems(createItems: () -> List<PickerItem>) {
+        itemsUpdateJob?.cancel()
+        val oldItems = items.toList()
+        itemsUpdateJob =
+            lifecycleScope.launch {
+                val (newItems, diff) =
+                    withContext(Dispatchers.Default) {
+                        val newItems = createItems()
+                        newItems to PickerItemDiffer.calculateDiff(oldItems, newItems)
                     }
-                }
+                items.clear()
+                items.addAll(newItems)
+                val previousAdapter = adapter
                 maybeSetUpImageGrid()
-                adapter?.notifyDataSetChanged()
-
-                // Finish activity if no wallpapers are found (on phone)
-                if (fetchedWallpapers.isEmpty()) {
-                    activity?.finish()
+                // A new adapter binds every item anyway.
+                if (previousAdapter != null && previousAdapter === adapter) {
+                    val offset = if (category?.supportsCustomPhotos() == true) 1 else 0
+                    diff.dispatchUpdatesTo(
+                        PickerItemDiffer.OffsetAdapterCallback(previousAdapter, offset)
+                    )
                 }
-            },
-            forceReload
-        )
+            }
     }
 
     // Add item header based on whether it's the first one or not
-    private fun addItemHeader(groupName: String, isFirst: Boolean) {
-        items.add(
+    private fun addItemHeader(
+        pickerItems: MutableList<PickerItem>,
+        groupName: String,
+        isFirst: Boolean
+    ) {
+        pickerItems.add(
             if (isFirst) {
                 PickerItem.FirstHeaderItem(groupName)
             } else {
@@ -284,6 +379,7 @@ class IndividualPickerFragment2 :
      * CreativeCollection.
      */
     private fun addTemplates(
+        pickerItems: MutableList<PickerItem>,
         wallpapers: List<WallpaperInfo>,
         userCreatedWallpapers: MutableList<WallpaperInfo>
     ) {
@@ -294,7 +390,7 @@ class IndividualPickerFragment2 :
         }
 
         if (userCreatedWallpapers.isNotEmpty()) {
-            items.add(PickerItem.CreativeCollection(userCreatedWallpapers))
+            pickerItems.add(PickerItem.CreativeCollection(userCreatedWallpapers))
         }
     }
 
@@ -303,20 +399,32 @@ class IndividualPickerFragment2 :
      * WallpaperItem
      */
     private fun addWallpaperItems(
+        context: Context,
+        pickerItems: MutableList<PickerItem>,
         wallpapers: List<WallpaperInfo>,
         currentWallpaper: android.app.WallpaperInfo?,
         appliedWallpaperIds: Set<String>
     ) {
-        items.addAll(
+        pickerItems.addAll(
             wallpapers.map {
                 val isApplied =
                     if (it is LiveWallpaperInfo) it.isApplied(currentWallpaper)
                     else appliedWallpaperIds.contains(it.wallpaperId)
-                PickerItem.WallpaperItem(it, isApplied)
+                PickerItem.WallpaperItem(it, isApplied, getRenderedContentHash(context, it))
             }
         )
     }
 
+    /** Hashes the wallpaper fields that [IndividualHolder] renders, other than the thumbnail. */
+    private fun getRenderedContentHash(context: Context, wallpaper: WallpaperInfo): Int {
+        return Objects.hash(
+            wallpaper.getTitle(context),
+            wallpaper.getAttributions(context),
+            wallpaper.getContentDescription(context),
+            wallpaper.badgeDrawableRes,
+        )
+    }
+
     private fun registerPackageListener(category: Category) {
         if (category.supportsThirdParty()) {
             appStatusListener =
@@ -325,7 +433,19 @@ class IndividualPickerFragment2 :
                         status != PackageStatusNotifier.PackageStatus.REMOVED ||
                             category.containsThirdParty(pkgName)
                     ) {
-                        fetchWallpapers(true)
+                        if (category is ThirdPartyLiveWallpaperCategory && pkgName != null) {
+                            // Only re-resolve the package that changed, merged with the same
+                            // change applied by the category provider.
+                            category.fetchWallpapersAfterPackageChange(
+                                requireContext().applicationContext,
+                                pkgName,
+                                status == PackageStatusNotifier.PackageStatus.REMOVED,
+                            ) {
+                                onWallpapersFetched(it)
+                            }
+                        } else {
+                            fetchWallpapers(true)
+                        }
                     }
                 }
             packageStatusNotifier?.addListener(
@@ -557,6 +677,7 @@ class IndividualPickerFragment2 :
     override fun onDestroy() {
         super.onDestroy()
         progressDialog?.dismiss()
+        (category as? CreativeCategory)?.cancelFetch(wallpaperReceiver)
         if (appStatusListener != null) {
             packageStatusNotifier?.removeListener(appStatusListener)
         }
@@ -733,8 +854,12 @@ class IndividualPickerFragment2 :
     }
 
     sealed class PickerItem(val title: CharSequence = "") {
-        class WallpaperItem(val wallpaperInfo: WallpaperInfo, val isApplied: Boolean) :
-            PickerItem()
+        class WallpaperItem(
+            val wallpaperInfo: WallpaperInfo,
+            val isApplied: Boolean,
+            /** Hash of the rendered wallpaper fields, used to detect changed tiles. */
+            val contentHash: Int = 0,
+        ) : PickerItem()
 
         class HeaderItem(title: CharSequence) : PickerItem(title)
 
@@ -807,6 +932,24 @@ class IndividualPickerFragment2 :
             }
         }
 
+        override fun onBindViewHolder(
+            holder: RecyclerView.ViewHolder,
+            position: Int,
+            payloads: MutableList<Any>
+        ) {
+            if (
+                payloads.isNotEmpty() &&
+                    payloads.all { it === PickerItemDiffer.PAYLOAD_WALLPAPER } &&
+                    getItemViewType(position) == ITEM_VIEW_TYPE_INDIVIDUAL_WALLPAPER
+            ) {
+                val wallpaperIndex = if (category.supportsCustomPhotos()) position - 1 else position
+                val item = items[wallpaperIndex] as PickerItem.WallpaperItem
+                (holder as IndividualHolder).updateWallpaper(item.wallpaperInfo)
+            } else {
+                super.onBindViewHolder(holder, position, payloads)
+            }
+        }
+
         override fun getItemCount(): Int {
             return if (category.supportsCustomPhotos()) {
                 items.size + 1
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.picker.individual
+
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListUpdateCallback
+import androidx.recyclerview.widget.RecyclerView
+import com.android.wallpaper.model.LiveWallpaperInfo
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.picker.individual.IndividualPickerFragment2.PickerItem
+
+/**
+ * Computes the insert, remove, move and change operations that turn one list of [PickerItem]s
+ * into another, so that a refresh only re-binds the tiles that actually changed.
+ *
+ * Wallpaper items are matched by wallpaper ID and compared by their applied state,
+ * [PickerItem.WallpaperItem.contentHash] and [WallpaperInfo] instance. Wallpapers without an ID
+ * only match themselves.
+ *
+ * A new instance of a wallpaper that renders the same is dispatched with [PAYLOAD_WALLPAPER], so
+ * that its tile points at the new instance without reloading its thumbnail. Live wallpapers are
+ * the exception: a new instance comes from re-resolving its package, whose thumbnail may have
+ * changed, so its tile is re-bound.
+ */
+object PickerItemDiffer {
+
+    /** Payload of a tile that only needs to point at a new instance of the same wallpaper. */
+    val PAYLOAD_WALLPAPER = Any()
+
+    /** Calculates the difference between the lists. This can be slow, so call it off-main. */
+    fun calculateDiff(
+        oldItems: List<PickerItem>,
+        newItems: List<PickerItem>,
+    ): DiffUtil.DiffResult {
+        return DiffUtil.calculateDiff(
+            object : DiffUtil.Callback() {
+                override fun getOldListSize() = oldItems.size
+
+                override fun getNewListSize() = newItems.size
+
+                override fun areItemsTheSame(oldPosition: Int, newPosition: Int): Boolean {
+                    return isSameItem(oldItems[oldPosition], newItems[newPosition])
+                }
+
+                override fun areContentsTheSame(oldPosition: Int, newPosition: Int): Boolean {
+                    val oldItem = oldItems[oldPosition]
+                    val newItem = newItems[newPosition]
+                    return hasSameContents(oldItem, newItem) &&
+                        (oldItem !is PickerItem.WallpaperItem ||
+                            oldItem.wallpaperInfo ===
+                                (newItem as PickerItem.WallpaperItem).wallpaperInfo)
+                }
+
+                override fun getChangePayload(oldPosition: Int, newPosition: Int): Any? {
+                    val oldItem = oldItems[oldPosition]
+                    val newItem = newItems[newPosition]
+                    return if (
+                        newItem is PickerItem.WallpaperItem &&
+                            newItem.wallpaperInfo !is LiveWallpaperInfo &&
+                            hasSameContents(oldItem, newItem)
+                    ) {
+                        PAYLOAD_WALLPAPER
+                    } else {
+                        null
+                    }
+                }
+            },
+            /* detectMoves= */ true,
+        )
+    }
+
+    private fun isSameItem(oldItem: PickerItem, newItem: PickerItem): Boolean {
+        return when (oldItem) {
+            is PickerItem.WallpaperItem -> {
+                newItem is PickerItem.WallpaperItem &&
+                    (oldItem.wallpaperInfo === newItem.wallpaperInfo ||
+                        (oldItem.wallpaperInfo.wallpaperId != null &&
+                            oldItem.wallpaperInfo.wallpaperId == newItem.wallpaperInfo.wallpaperId))
+            }
+            is PickerItem.HeaderItem -> newItem is PickerItem.HeaderItem
+            is PickerItem.FirstHeaderItem -> newItem is PickerItem.FirstHeaderItem
+            is PickerItem.CreativeCollection -> newItem is PickerItem.CreativeCollection
+        } && oldItem.title == newItem.title
+    }
+
+    private fun hasSameContents(oldItem: PickerItem, newItem: PickerItem): Boolean {
+        return when (oldItem) {
+            is PickerItem.WallpaperItem -> {
+                newItem is PickerItem.WallpaperItem &&
+                    oldItem.isApplied == newItem.isApplied &&
+                    oldItem.contentHash == newItem.contentHash
+            }
+            is PickerItem.CreativeCollection -> {
+                newItem is PickerItem.CreativeCollection &&
+                    oldItem.templates.map { it.wallpaperId } ==
+                        newItem.templates.map { it.wallpaperId }
+            }
+            // Headers only render their title, which is part of their identity.
+            else -> true
+        }
+    }
+
+    /**
+     * Dispatches list operations to an adapter that shows [offset] extra tiles, such as the "my
+     * photos" tile, ahead of the items.
+     */
+    class OffsetAdapterCallback(
+        private val adapter: RecyclerView.Adapter<*>,
+        private val offset: Int,
+    ) : ListUpdateCallback {
+        override fun onInserted(position: Int, count: Int) {
+            adapter.notifyItemRangeInserted(position + offset, count)
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            adapter.notifyItemRangeRemoved(position + offset, count)
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            adapter.notifyItemMoved(fromPosition + offset, toPosition + offset)
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            adapter.notifyItemRangeChanged(position + offset, count, payload)
+        }
+    }
+}
@@ -20,8 +20,10 @@ package com.android.wallpaper.picker.undo.domain.interactor
 import com.android.wallpaper.picker.undo.data.repository.UndoRepository
 import com.android.wallpaper.picker.undo.shared.model.RestorableSnapshot
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.supervisorScope
 
 /**
  * Encapsulates the "undo" business logic.
@@ -87,16 +89,28 @@ class UndoInteractor(
         }
     }
 
-    /** Triggers a revert for all areas. */
-    fun revertAll() {
-        repository.getAllDirty().forEach { ownerId ->
-            val restorer = restorerByOwnerId[ownerId]
-            val snapshot = repository.getSnapshot(ownerId)
-            if (restorer != null && snapshot != null) {
-                scope.launch { restorer.restoreToSnapshot(snapshot) }
+    /**
+     * Triggers a revert for all areas.
+     *
+     * Areas are restored concurrently, the returned [Job] completes once all of them are.
+     */
+    fun revertAll(): Job {
+        val restores =
+            repository.getAllDirty().mapNotNull { ownerId ->
+                val restorer = restorerByOwnerId[ownerId]
+                val snapshot = repository.getSnapshot(ownerId)
+                if (restorer != null && snapshot != null) restorer to snapshot else null
             }
-        }
 
         repository.clearAllDirty()
+
+        return scope.launch {
+            // An area failing to restore must not cancel the others.
+            supervisorScope {
+                restores.forEach { (restorer, snapshot) ->
+                    launch { restorer.restoreToSnapshot(snapshot) }
+                }
+            }
+        }
     }
 }
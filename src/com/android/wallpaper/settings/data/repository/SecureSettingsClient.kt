@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.settings.data.repository
+
+import android.content.ContentResolver
+import android.database.ContentObserver
+import android.provider.Settings
+
+/**
+ * Defines the [Settings.Secure] operations of [SecureSettingsRepositoryImpl], each one of which is
+ * an IPC to the settings provider.
+ */
+interface SecureSettingsClient {
+
+    /** Calls [observer] whenever the setting with the given name changes. */
+    fun registerObserver(name: String, observer: ContentObserver)
+
+    fun unregisterObserver(observer: ContentObserver)
+
+    /** Returns the raw value of the setting with the given name, or null if it isn't set. */
+    fun getString(name: String): String?
+
+    fun putInt(name: String, value: Int)
+}
+
+class SecureSettingsClientImpl(
+    private val contentResolver: ContentResolver,
+) : SecureSettingsClient {
+
+    override fun registerObserver(name: String, observer: ContentObserver) {
+        contentResolver.registerContentObserver(
+            Settings.Secure.getUriFor(name),
+            /* notifyForDescendants= */ false,
+            observer,
+        )
+    }
+
+    override fun unregisterObserver(observer: ContentObserver) {
+        contentResolver.unregisterContentObserver(observer)
+    }
+
+    override fun getString(name: String): String? {
+        return Settings.Secure.getString(contentResolver, name)
+    }
+
+    override fun putInt(name: String, value: Int) {
+        Settings.Secure.putInt(contentResolver, name, value)
+    }
+}
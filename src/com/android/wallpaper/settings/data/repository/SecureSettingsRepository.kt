@@ -20,12 +20,19 @@ package com.android.wallpaper.settings.data.repository
 import android.content.ContentResolver
 import android.database.ContentObserver
 import android.provider.Settings
+import java.util.concurrent.ConcurrentHashMap
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.withContext
 
 /** Defines interface for classes that can provide access to data from [Settings.Secure]. */
@@ -47,57 +54,163 @@ interface SecureSettingsRepository {
         name: String,
         defaultValue: Int = 0,
     ): Int
+
+    /**
+     * Returns the values of several settings at once, keyed by name, given the default value of
+     * each one.
+     */
+    suspend fun getAll(
+        defaultValues: Map<String, Int>,
+    ): Map<String, Int> {
+        return defaultValues.mapValues { (name, defaultValue) -> get(name, defaultValue) }
+    }
 }
 
+/**
+ * Keeps a single observer per setting, however many collectors track it, and reads the setting
+ * once per change for all of them. The last value read is cached while the setting is observed,
+ * so [get] and [getAll] don't read it again.
+ */
 class SecureSettingsRepositoryImpl(
-    private val contentResolver: ContentResolver,
+    private val client: SecureSettingsClient,
+    private val scope: CoroutineScope,
     private val backgroundDispatcher: CoroutineDispatcher,
 ) : SecureSettingsRepository {
 
+    constructor(
+        contentResolver: ContentResolver,
+        scope: CoroutineScope,
+        backgroundDispatcher: CoroutineDispatcher,
+    ) : this(SecureSettingsClientImpl(contentResolver), scope, backgroundDispatcher)
+
+    /**
+     * Shares the observers of the settings in a scope of their own, on [backgroundDispatcher], for
+     * callers without an application scope.
+     */
+    constructor(
+        contentResolver: ContentResolver,
+        backgroundDispatcher: CoroutineDispatcher,
+    ) : this(
+        contentResolver,
+        CoroutineScope(SupervisorJob() + backgroundDispatcher),
+        backgroundDispatcher,
+    )
+
+    private val observedSettings = ConcurrentHashMap<String, ObservedSetting>()
+
     override fun intSetting(
         name: String,
         defaultValue: Int,
     ): Flow<Int> {
-        return callbackFlow {
-                val observer =
-                    object : ContentObserver(null) {
-                        override fun onChange(selfChange: Boolean) {
-                            trySend(Unit)
-                        }
-                    }
-
-                contentResolver.registerContentObserver(
-                    Settings.Secure.getUriFor(name),
-                    /* notifyForDescendants= */ false,
-                    observer,
-                )
-                send(Unit)
-
-                awaitClose { contentResolver.unregisterContentObserver(observer) }
-            }
-            .map { Settings.Secure.getInt(contentResolver, name, defaultValue) }
-            // The above work is done on the background thread (which is important for accessing
-            // settings through the content resolver).
-            .flowOn(backgroundDispatcher)
+        return observedSettings
+            .computeIfAbsent(name) { ObservedSetting(it) }
+            .values
+            .map { it.toIntOrDefault(defaultValue) }
     }
 
     override suspend fun set(name: String, value: Int) {
         withContext(backgroundDispatcher) {
-            Settings.Secure.putInt(
-                contentResolver,
-                name,
-                value,
-            )
+            client.putInt(name, value)
+            // The observer reads the new value soon, don't serve the old one until then.
+            observedSettings[name]?.invalidate()
         }
     }
 
     override suspend fun get(name: String, defaultValue: Int): Int {
-        return withContext(backgroundDispatcher) {
-            Settings.Secure.getInt(
-                contentResolver,
-                name,
-                defaultValue,
-            )
+        return getAll(mapOf(name to defaultValue)).getValue(name)
+    }
+
+    override suspend fun getAll(defaultValues: Map<String, Int>): Map<String, Int> {
+        val values = mutableMapOf<String, Int>()
+        val uncachedNames = mutableListOf<String>()
+        defaultValues.forEach { (name, defaultValue) ->
+            val cached = observedSettings[name]?.getCachedValue()
+            if (cached != null) {
+                values[name] = cached.value.toIntOrDefault(defaultValue)
+            } else {
+                uncachedNames.add(name)
+            }
+        }
+        if (uncachedNames.isNotEmpty()) {
+            withContext(backgroundDispatcher) {
+                uncachedNames.forEach { name ->
+                    values[name] = client.getString(name).toIntOrDefault(defaultValues[name]!!)
+                }
+            }
         }
+        return values
+    }
+
+    /** A value read from the settings provider, which is null when the setting isn't set. */
+    private class CachedValue(val value: String?)
+
+    /** A setting with a single observer, registered while its [values] are collected. */
+    private inner class ObservedSetting(private val name: String) {
+
+        private val lock = Any()
+        // Guarded by lock.
+        private var isObserving = false
+        // Guarded by lock. Only set while observing, as nothing would tell it went stale otherwise.
+        private var cachedValue: CachedValue? = null
+        // Guarded by lock. Incremented on invalidation, so that reads started before aren't cached.
+        private var generation = 0
+
+        val values: SharedFlow<String?> =
+            callbackFlow {
+                    val observer =
+                        object : ContentObserver(null) {
+                            override fun onChange(selfChange: Boolean) {
+                                trySend(Unit)
+                            }
+                        }
+
+                    client.registerObserver(name, observer)
+                    synchronized(lock) { isObserving = true }
+                    send(Unit)
+
+                    awaitClose {
+                        client.unregisterObserver(observer)
+                        synchronized(lock) { isObserving = false }
+                        invalidate()
+                    }
+                }
+                // Changes arriving while a read is in progress only need one more read.
+                .conflate()
+                .map { readAndCache() }
+                // The above work is done on the background thread (which is important for
+                // accessing settings through the content resolver).
+                .flowOn(backgroundDispatcher)
+                // Drop the replayed value as soon as nobody observes it, since it isn't kept
+                // up to date anymore.
+                .shareIn(
+                    scope,
+                    SharingStarted.WhileSubscribed(replayExpirationMillis = 0),
+                    replay = 1,
+                )
+
+        fun getCachedValue(): CachedValue? = synchronized(lock) { cachedValue }
+
+        fun invalidate() {
+            synchronized(lock) {
+                generation++
+                cachedValue = null
+            }
+        }
+
+        private fun readAndCache(): String? {
+            val readGeneration = synchronized(lock) { generation }
+            val value = client.getString(name)
+            synchronized(lock) {
+                if (isObserving && generation == readGeneration) {
+                    cachedValue = CachedValue(value)
+                }
+            }
+            return value
+        }
+    }
+
+    /** Parses a setting the way [Settings.Secure.getInt] does. */
+    private fun String?.toIntOrDefault(defaultValue: Int): Int {
+        return this?.toIntOrNull() ?: defaultValue
     }
 }
@@ -15,8 +15,6 @@
  */
 package com.android.wallpaper.util;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
@@ -27,64 +25,102 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
-import java.io.BufferedReader;
-import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.text.ParseException;
+import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Logs messages to logcat and for debuggable build types ("eng" or "userdebug") also mirrors logs
  * to a disk-based log buffer.
+ * <p>
+ * The disk-based log buffer is a size-capped ring file of fixed-size binary records (see
+ * {@link LogRingFile}), kept open on a dedicated thread while logging is active. Logs are buffered
+ * in memory and flushed to the file periodically. Use {@link #dump(Context, PrintWriter)} to render
+ * the buffer as text.
+ * <p>
+ * Locks are always taken in the order {@link #S_FILE_LOCK}, then {@link #S_LOCK}.
  */
 public class DiskBasedLogger {
 
-    static final String LOGS_FILE_PATH = "logs.txt";
-    static final SimpleDateFormat DATE_FORMAT =
-            new SimpleDateFormat("EEE MMM dd HH:mm:ss.SSS z yyyy", Locale.US);
-
-    private static final String TEMP_LOGS_FILE_PATH = "temp_logs.txt";
+    static final String LOGS_FILE_PATH = "logs.bin";
+    /** Text log buffer used by previous versions, deleted on the next clean up. */
+    private static final String LEGACY_LOGS_FILE_PATH = "logs.txt";
     private static final String TAG = "DiskBasedLogger";
 
+    /** Number of records held by the ring file, which caps it at 512 KiB. */
+    @VisibleForTesting
+    static final int LOGS_CAPACITY = 2048;
+    private static final long LOGS_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long FLUSH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final String DATE_FORMAT_PATTERN = "EEE MMM dd HH:mm:ss.SSS z yyyy";
+
     /**
      * POJO used to lock thread creation and file read/write operations.
      */
     private static final Object S_LOCK = new Object();
 
+    /**
+     * Guards the logs file, which is written on the logger thread and read by
+     * {@link #dump(Context, PrintWriter)} on the calling thread.
+     */
+    private static final Object S_FILE_LOCK = new Object();
+
     private static final long THREAD_TIMEOUT_MILLIS =
             TimeUnit.MILLISECONDS.convert(2, TimeUnit.MINUTES);
     private static Handler sHandler;
     private static HandlerThread sLoggerThread;
+
+    // Guarded by S_FILE_LOCK.
+    @Nullable
+    private static LogRingFile sLogsFile;
+    // Guarded by S_LOCK.
+    private static final List<PendingLog> sPendingLogs = new ArrayList<>();
+    // Guarded by S_LOCK.
+    private static boolean sFlushScheduled;
+
     private static final Runnable THREAD_CLEANUP_RUNNABLE = new Runnable() {
         @Override
         public void run() {
-            if (sLoggerThread != null && sLoggerThread.isAlive()) {
-
-                // HandlerThread#quitSafely was added in JB-MR2, so prefer to use that instead of #quit.
-                boolean isQuitSuccessful =
-                        Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
-                        ? sLoggerThread.quitSafely()
-                        : sLoggerThread.quit();
+            synchronized (S_FILE_LOCK) {
+                flushPendingLogs();
+                closeLogsFile();
+            }
 
-                if (!isQuitSuccessful) {
-                    Log.e(TAG, "Unable to quit disk-based logger HandlerThread");
+            synchronized (S_LOCK) {
+                if (sLoggerThread != null && sLoggerThread.isAlive()) {
+
+                    // HandlerThread#quitSafely was added in JB-MR2, so prefer to use that instead
+                    // of #quit.
+                    boolean isQuitSuccessful =
+                            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                            ? sLoggerThread.quitSafely()
+                            : sLoggerThread.quit();
+
+                    if (!isQuitSuccessful) {
+                        Log.e(TAG, "Unable to quit disk-based logger HandlerThread");
+                    }
+
+                    sLoggerThread = null;
+                    sHandler = null;
+                    // Logs added since the flush above are written by the next logger thread.
+                    sFlushScheduled = false;
                 }
-
-                sLoggerThread = null;
-                sHandler = null;
             }
         }
     };
 
+    private static final Runnable FLUSH_RUNNABLE = () -> {
+        synchronized (S_FILE_LOCK) {
+            flushPendingLogs();
+        }
+    };
+
     /**
      * Initializes and returns a new dedicated HandlerThread for reading and writing to the disk-based
      * logs file.
@@ -119,6 +155,10 @@ public class DiskBasedLogger {
         }
     }
 
+    private static boolean isDebuggableBuild() {
+        return Build.TYPE.equals("eng") || Build.TYPE.equals("userdebug");
+    }
+
     /**
      * Logs an "error" level log to logcat based on the provided tag and message and also duplicates
      * the log to a file-based log buffer if running on a "userdebug" or "eng" build.
@@ -128,7 +168,7 @@ public class DiskBasedLogger {
         Log.e(tag, msg);
 
         // Only mirror logs to disk-based log buffer if the build is debuggable.
-        if (!Build.TYPE.equals("eng") && !Build.TYPE.equals("userdebug")) {
+        if (!isDebuggableBuild()) {
             return;
         }
 
@@ -139,32 +179,21 @@ public class DiskBasedLogger {
             return;
         }
 
-        handler.post(() -> {
-            File logs = new File(context.getFilesDir(), LOGS_FILE_PATH);
-
-            // Construct a log message that we can parse later in order to clean up old logs.
-            String datetime = DATE_FORMAT.format(Calendar.getInstance().getTime());
-            String log = datetime + "/E " + tag + ": " + msg + "\n";
-
-            synchronized (S_LOCK) {
-                FileOutputStream outputStream;
-
-                try {
-                    outputStream = context.openFileOutput(logs.getName(), Context.MODE_APPEND);
-                    outputStream.write(log.getBytes(UTF_8));
-                    outputStream.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Unable to close output stream for disk-based log buffer", e);
-                }
+        synchronized (S_LOCK) {
+            sPendingLogs.add(new PendingLog(System.currentTimeMillis(), 'E', tag, msg,
+                    context.getApplicationContext()));
+            if (!sFlushScheduled) {
+                sFlushScheduled = true;
+                handler.postDelayed(FLUSH_RUNNABLE, FLUSH_DELAY_MILLIS);
             }
-        });
+        }
     }
 
     /**
      * Deletes logs in the disk-based log buffer older than 7 days.
      */
     public static void clearOldLogs(Context context) {
-        if (!Build.TYPE.equals("eng") && !Build.TYPE.equals("userdebug")) {
+        if (!isDebuggableBuild()) {
             return;
         }
 
@@ -176,50 +205,71 @@ public class DiskBasedLogger {
         }
 
         handler.post(() -> {
-            // Check if the logs file exists first before trying to read from it.
-            File logsFile = new File(context.getFilesDir(), LOGS_FILE_PATH);
-            if (!logsFile.exists()) {
-                Log.w(TAG, "Disk-based log buffer doesn't exist, so there's nothing to clean up.");
-                return;
-            }
+            new File(context.getFilesDir(), LEGACY_LOGS_FILE_PATH).delete();
 
-            synchronized (S_LOCK) {
-                FileInputStream inputStream;
-                BufferedReader bufferedReader;
-
-                try {
-                    inputStream = context.openFileInput(LOGS_FILE_PATH);
-                    bufferedReader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
-                } catch (IOException e) {
-                    Log.e(TAG, "IO exception opening a buffered reader for the existing logs file", e);
+            synchronized (S_FILE_LOCK) {
+                flushPendingLogs();
+                LogRingFile logsFile = getLogsFile(context);
+                if (logsFile == null) {
                     return;
                 }
-
-                Date sevenDaysAgo = getSevenDaysAgo();
-
-                File tempLogsFile = new File(context.getFilesDir(), TEMP_LOGS_FILE_PATH);
-                FileOutputStream outputStream;
-
                 try {
-                    outputStream = context.openFileOutput(TEMP_LOGS_FILE_PATH, Context.MODE_APPEND);
+                    logsFile.dropOlderThan(System.currentTimeMillis() - LOGS_RETENTION_MILLIS);
+                    logsFile.flush();
                 } catch (IOException e) {
-                    Log.e(TAG, "Unable to close output stream for disk-based log buffer", e);
-                    return;
+                    Log.e(TAG, "Unable to clear old logs from the disk-based log buffer", e);
                 }
+            }
+        });
+    }
 
-                copyLogsNewerThanDate(bufferedReader, outputStream, sevenDaysAgo);
-
-                // Close streams to prevent resource leaks.
-                closeStream(inputStream, "couldn't close input stream for log file");
-                closeStream(outputStream, "couldn't close output stream for temp log file");
+    /**
+     * Writes the contents of the disk-based log buffer as text, oldest first, e.g. for inclusion
+     * in bug reports. Reads the buffer and the logs not flushed to it yet on the calling thread,
+     * only waiting for a flush in progress.
+     */
+    public static void dump(Context context, PrintWriter writer) {
+        writer.println("Disk-based logs:");
+        if (!isDebuggableBuild()) {
+            writer.println("  (not available on this build type)");
+            return;
+        }
 
-                // Rename temp log file (if it exists--which is only when the logs file has logs newer than
-                // 7 days to begin with) to the final logs file.
-                if (tempLogsFile.exists() && !tempLogsFile.renameTo(logsFile)) {
-                    Log.e(TAG, "couldn't rename temp logs file to final logs file");
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT_PATTERN, Locale.US);
+        List<String> lines = new ArrayList<>();
+        synchronized (S_FILE_LOCK) {
+            boolean wasOpen = sLogsFile != null;
+            LogRingFile logsFile = getLogsFile(context);
+            if (logsFile != null) {
+                try {
+                    logsFile.read(record -> lines.add(formatLog(dateFormat,
+                            record.mTimestampMillis, record.mLevel, record.mTag,
+                            record.mMessage)));
+                } catch (IOException | RuntimeException e) {
+                    lines.add("Unable to read logs: " + e);
+                }
+                // Nothing else closes a file opened just for the dump.
+                if (!wasOpen) {
+                    closeLogsFile();
                 }
             }
-        });
+            synchronized (S_LOCK) {
+                for (PendingLog log : sPendingLogs) {
+                    lines.add(formatLog(dateFormat, log.mTimestampMillis, log.mLevel, log.mTag,
+                            log.mMessage));
+                }
+            }
+        }
+        for (String line : lines) {
+            writer.print("  ");
+            writer.println(line);
+        }
+    }
+
+    private static String formatLog(SimpleDateFormat dateFormat, long timestampMillis, char level,
+            String tag, String message) {
+        return dateFormat.format(new Date(timestampMillis)) + "/" + level + " " + tag + ": "
+                + message;
     }
 
     @Nullable
@@ -229,58 +279,83 @@ public class DiskBasedLogger {
     }
 
     /**
-     * Constructs and returns a {@link Date} object representing the time 7 days ago.
+     * Writes the logs buffered in memory to the logs file. Must be called on the logger thread,
+     * holding {@link #S_FILE_LOCK} so that each log is either pending or in the file for
+     * {@link #dump(Context, PrintWriter)}.
      */
-    private static Date getSevenDaysAgo() {
-        Calendar sevenDaysAgoCalendar = Calendar.getInstance();
-        sevenDaysAgoCalendar.add(Calendar.DAY_OF_MONTH, -7);
-        return sevenDaysAgoCalendar.getTime();
-    }
+    private static void flushPendingLogs() {
+        List<PendingLog> logs;
+        synchronized (S_LOCK) {
+            sFlushScheduled = false;
+            if (sHandler != null) {
+                sHandler.removeCallbacks(FLUSH_RUNNABLE);
+            }
+            if (sPendingLogs.isEmpty()) {
+                return;
+            }
+            logs = new ArrayList<>(sPendingLogs);
+            sPendingLogs.clear();
+        }
 
-    /**
-     * Tries to close the provided Closeable stream and logs the error message if the stream couldn't
-     * be closed.
-     */
-    private static void closeStream(Closeable stream, String errorMessage) {
+        LogRingFile logsFile = getLogsFile(logs.get(0).mContext);
+        if (logsFile == null) {
+            return;
+        }
         try {
-            stream.close();
+            for (PendingLog log : logs) {
+                logsFile.append(log.mTimestampMillis, log.mLevel, log.mTag, log.mMessage);
+            }
+            logsFile.flush();
         } catch (IOException e) {
-            Log.e(TAG, errorMessage);
+            Log.e(TAG, "Unable to write to the disk-based log buffer", e);
         }
     }
 
     /**
-     * Copies all log lines newer than the supplied date from the provided {@link BufferedReader} to
-     * the provided {@OutputStream}.
-     * <p>
-     * The caller of this method is responsible for closing the output stream and input stream
-     * underlying the BufferedReader when all operations have finished.
+     * Returns the logs file, opening it if needed, or null if it can't be opened. Must be called
+     * holding {@link #S_FILE_LOCK}.
      */
-    private static void copyLogsNewerThanDate(BufferedReader reader, OutputStream outputStream,
-                                              Date date) {
-        try {
-            String line = reader.readLine();
-            while (line != null) {
-                // Get the date from the line string.
-                String datetime = line.split("/")[0];
-                Date logDate;
-                try {
-                    logDate = DATE_FORMAT.parse(datetime);
-                } catch (ParseException e) {
-                    Log.e(TAG, "Error parsing date from previous logs", e);
-                    return;
-                }
-
-                // Copy logs newer than the provided date into a temp log file.
-                if (logDate.after(date)) {
-                    outputStream.write(line.getBytes(UTF_8));
-                    outputStream.write("\n".getBytes(UTF_8));
-                }
-
-                line = reader.readLine();
+    @Nullable
+    private static LogRingFile getLogsFile(Context context) {
+        if (sLogsFile == null) {
+            try {
+                sLogsFile = LogRingFile.open(new File(context.getFilesDir(), LOGS_FILE_PATH),
+                        LOGS_CAPACITY);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to open the disk-based log buffer", e);
             }
+        }
+        return sLogsFile;
+    }
+
+    /** Closes the logs file if it's open. Must be called holding {@link #S_FILE_LOCK}. */
+    private static void closeLogsFile() {
+        if (sLogsFile == null) {
+            return;
+        }
+        try {
+            sLogsFile.close();
         } catch (IOException e) {
-            Log.e(TAG, "IO exception while reading line from buffered reader", e);
+            Log.e(TAG, "Unable to close the disk-based log buffer", e);
+        }
+        sLogsFile = null;
+    }
+
+    /** A log that hasn't been written to the logs file yet. */
+    private static class PendingLog {
+        final long mTimestampMillis;
+        final char mLevel;
+        final String mTag;
+        final String mMessage;
+        final Context mContext;
+
+        PendingLog(long timestampMillis, char level, String tag, String message,
+                Context context) {
+            mTimestampMillis = timestampMillis;
+            mLevel = level;
+            mTag = tag;
+            mMessage = message;
+            mContext = context;
         }
     }
 }
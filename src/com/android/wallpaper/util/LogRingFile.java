@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A size-capped file of fixed-size binary log records, used as a ring buffer: once the file is
+ * full, each new record overwrites the oldest one.
+ * <p>
+ * Each record holds an epoch-millis timestamp, a level character, a tag and a message; tags and
+ * messages that don't fit in a record are truncated. This class is not thread-safe.
+ */
+class LogRingFile implements Closeable {
+
+    /** "WPLG" in ASCII. */
+    private static final int MAGIC = 0x57504c47;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 256;
+    /** Timestamp, level, tag length and message length. */
+    private static final int RECORD_HEADER_SIZE = 8 + 2 + 2 + 2;
+    static final int MAX_PAYLOAD_SIZE = RECORD_SIZE - RECORD_HEADER_SIZE;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mCapacity;
+    private final ByteBuffer mRecordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final ByteBuffer mHeaderBuffer = ByteBuffer.allocate(HEADER_SIZE);
+    private final ByteBuffer mTimestampBuffer = ByteBuffer.allocate(8);
+
+    /** Index of the oldest record. */
+    private int mStart;
+    private int mCount;
+    private boolean mHeaderDirty;
+
+    /** A record read back from the file. */
+    static class Record {
+        final long mTimestampMillis;
+        final char mLevel;
+        final String mTag;
+        final String mMessage;
+
+        Record(long timestampMillis, char level, String tag, String message) {
+            mTimestampMillis = timestampMillis;
+            mLevel = level;
+            mTag = tag;
+            mMessage = message;
+        }
+    }
+
+    /** Receives the records of the file, from oldest to newest. */
+    interface RecordVisitor {
+        void visit(Record record);
+    }
+
+    /**
+     * Opens the ring file at the given path, creating it with room for {@code capacity} records if
+     * it doesn't exist or isn't a valid ring file of that capacity.
+     */
+    static LogRingFile open(File file, int capacity) throws IOException {
+        return new LogRingFile(new RandomAccessFile(file, "rw"), capacity);
+    }
+
+    private LogRingFile(RandomAccessFile file, int capacity) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+        mCapacity = capacity;
+
+        if (!readHeader()) {
+            mStart = 0;
+            mCount = 0;
+            mFile.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            mHeaderDirty = true;
+            flush();
+        }
+    }
+
+    /** Returns the number of records currently held. */
+    int size() {
+        return mCount;
+    }
+
+    /** Appends a record, overwriting the oldest one if the file is full. */
+    void append(long timestampMillis, char level, String tag, String message) throws IOException {
+        byte[] tagBytes = tag.getBytes(UTF_8);
+        byte[] messageBytes = message.getBytes(UTF_8);
+        int tagLength = Math.min(tagBytes.length, MAX_PAYLOAD_SIZE);
+        int messageLength = Math.min(messageBytes.length, MAX_PAYLOAD_SIZE - tagLength);
+
+        mRecordBuffer.clear();
+        mRecordBuffer.putLong(timestampMillis)
+                .putChar(level)
+                .putShort((short) tagLength)
+                .putShort((short) messageLength)
+                .put(tagBytes, 0, tagLength)
+                .put(messageBytes, 0, messageLength);
+        mRecordBuffer.flip();
+
+        int index;
+        if (mCount < mCapacity) {
+            index = (mStart + mCount) % mCapacity;
+            mCount++;
+        } else {
+            index = mStart;
+            mStart = (mStart + 1) % mCapacity;
+        }
+        writeFully(mRecordBuffer, recordPosition(index));
+        mHeaderDirty = true;
+    }
+
+    /**
+     * Drops the oldest records, up to the first one that isn't older than the given time. Records
+     * are appended in wall clock order, which goes back when the clock is changed, so this scans
+     * from the oldest record rather than searching the timestamps; records logged after the clock
+     * went back are never dropped ahead of the older ones.
+     */
+    void dropOlderThan(long cutoffMillis) throws IOException {
+        int dropped = 0;
+        while (dropped < mCount && readTimestamp(dropped) < cutoffMillis) {
+            dropped++;
+        }
+        if (dropped > 0) {
+            mStart = (mStart + dropped) % mCapacity;
+            mCount -= dropped;
+            mHeaderDirty = true;
+        }
+    }
+
+    /** Visits every record from oldest to newest. */
+    void read(RecordVisitor visitor) throws IOException {
+        for (int i = 0; i < mCount; i++) {
+            mRecordBuffer.clear();
+            readFully(mRecordBuffer, recordPosition((mStart + i) % mCapacity));
+            mRecordBuffer.flip();
+            long timestamp = mRecordBuffer.getLong();
+            char level = mRecordBuffer.getChar();
+            int tagLength = mRecordBuffer.getShort();
+            int messageLength = mRecordBuffer.getShort();
+            String tag = new String(mRecordBuffer.array(), mRecordBuffer.position(), tagLength,
+                    UTF_8);
+            String message = new String(mRecordBuffer.array(),
+                    mRecordBuffer.position() + tagLength, messageLength, UTF_8);
+            visitor.visit(new Record(timestamp, level, tag, message));
+        }
+    }
+
+    /** Writes the header if records were added or dropped since the last flush. */
+    void flush() throws IOException {
+        if (!mHeaderDirty) {
+            return;
+        }
+        mHeaderBuffer.clear();
+        mHeaderBuffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(RECORD_SIZE)
+                .putInt(mCapacity)
+                .putInt(mStart)
+                .putInt(mCount);
+        mHeaderBuffer.position(HEADER_SIZE);
+        mHeaderBuffer.flip();
+        writeFully(mHeaderBuffer, 0);
+        mHeaderDirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        if (mChannel.size() != HEADER_SIZE + (long) mCapacity * RECORD_SIZE) {
+            return false;
+        }
+        mHeaderBuffer.clear();
+        readFully(mHeaderBuffer, 0);
+        mHeaderBuffer.flip();
+        if (mHeaderBuffer.getInt() != MAGIC
+                || mHeaderBuffer.getInt() != VERSION
+                || mHeaderBuffer.getInt() != RECORD_SIZE
+                || mHeaderBuffer.getInt() != mCapacity) {
+            return false;
+        }
+        int start = mHeaderBuffer.getInt();
+        int count = mHeaderBuffer.getInt();
+        if (start < 0 || start >= mCapacity || count < 0 || count > mCapacity) {
+            return false;
+        }
+        mStart = start;
+        mCount = count;
+        return true;
+    }
+
+    private long readTimestamp(int logicalIndex) throws IOException {
+        mTimestampBuffer.clear();
+        readFully(mTimestampBuffer, recordPosition((mStart + logicalIndex) % mCapacity));
+        mTimestampBuffer.flip();
+        return mTimestampBuffer.getLong();
+    }
+
+    private static long recordPosition(int index) {
+        return HEADER_SIZE + (long) index * RECORD_SIZE;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += mChannel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of log file");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import android.app.WallpaperColors;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.wallpaper.asset.Asset;
+import com.android.wallpaper.asset.Asset.BitmapReceiver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Computes the colors of the visible part of a wallpaper being previewed, as the user pans and
+ * zooms it.
+ * <p>
+ * Requests are debounced, and each request supersedes the previous ones: a superseded request is
+ * dropped before its region is decoded if it hasn't been yet, and otherwise before its colors are
+ * computed or delivered. A request that asks for its colors to be cached passes that on to
+ * whichever request ends up delivering colors, so that superseding it doesn't drop the caching.
+ * The region is decoded straight at about the size that
+ * {@link WallpaperColors#fromBitmap} samples anyway, so no full-size crop is ever created.
+ */
+@MainThread
+public class PreviewColorsCalculator {
+
+    /** Receives the colors of the latest request. */
+    public interface Callback {
+        /**
+         * @param cacheColors whether this request or any request it superseded asked for the
+         *                    colors to be cached
+         */
+        void onColorsCalculated(@Nullable WallpaperColors colors, boolean cacheColors);
+    }
+
+    /** Decodes a region of the wallpaper at about the given size. */
+    @VisibleForTesting
+    interface RegionDecoder {
+        void decodeRegion(Rect rawRect, int targetWidth, int targetHeight,
+                BitmapReceiver receiver);
+    }
+
+    /** Computes the colors of a bitmap. */
+    @VisibleForTesting
+    interface ColorsExtractor {
+        @WorkerThread
+        WallpaperColors extract(Bitmap bitmap);
+    }
+
+    /**
+     * Area in pixels of the decoded region, matching what {@link WallpaperColors#fromBitmap} scales
+     * bitmaps down to.
+     */
+    @VisibleForTesting
+    static final int SAMPLE_AREA_PX = 112 * 112;
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Supplier<Rect> mRawCropRectSupplier;
+    private final RegionDecoder mRegionDecoder;
+    private final ColorsExtractor mColorsExtractor;
+    private final Handler mMainHandler;
+    private final Executor mExecutor;
+
+    // Incremented by every request and by cancel(), so that work started for an earlier value can
+    // tell it has been superseded.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private Runnable mPendingRequest;
+    // Whether a request since the colors were last delivered asked for them to be cached.
+    private boolean mCacheColors;
+
+    /**
+     * @param asset               the wallpaper being previewed
+     * @param rawCropRectSupplier returns the visible part of the wallpaper, in raw pixels, when a
+     *                            request is about to be decoded
+     */
+    public PreviewColorsCalculator(Asset asset, Supplier<Rect> rawCropRectSupplier) {
+        this(rawCropRectSupplier,
+                (rawRect, targetWidth, targetHeight, receiver) -> asset.decodeBitmapRegion(
+                        rawRect, targetWidth, targetHeight, /* shouldAdjustForRtl= */ false,
+                        receiver),
+                PreviewColorsCalculator::extractColors,
+                new Handler(Looper.getMainLooper()), sExecutor);
+    }
+
+    @VisibleForTesting
+    PreviewColorsCalculator(Supplier<Rect> rawCropRectSupplier, RegionDecoder regionDecoder,
+            ColorsExtractor colorsExtractor, Handler mainHandler, Executor executor) {
+        mRawCropRectSupplier = rawCropRectSupplier;
+        mRegionDecoder = regionDecoder;
+        mColorsExtractor = colorsExtractor;
+        mMainHandler = mainHandler;
+        mExecutor = executor;
+    }
+
+    /**
+     * Calculates the colors of the visible part of the wallpaper once no other request has been
+     * made for the given delay, superseding any earlier request.
+     *
+     * @param cacheColors whether the colors should be cached, which is passed on to the callback
+     *                    of the request that delivers colors if this one is superseded
+     */
+    public void request(long delayMillis, boolean cacheColors, Callback callback) {
+        int generation = mGeneration.incrementAndGet();
+        mCacheColors |= cacheColors;
+        if (mPendingRequest != null) {
+            mMainHandler.removeCallbacks(mPendingRequest);
+        }
+        mPendingRequest = () -> {
+            mPendingRequest = null;
+            decode(generation, callback);
+        };
+        mMainHandler.postDelayed(mPendingRequest, delayMillis);
+    }
+
+    /** Drops every request that hasn't delivered its colors yet. */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+        mCacheColors = false;
+        if (mPendingRequest != null) {
+            mMainHandler.removeCallbacks(mPendingRequest);
+            mPendingRequest = null;
+        }
+    }
+
+    private void decode(int generation, Callback callback) {
+        Rect rawRect = mRawCropRectSupplier.get();
+        if (rawRect == null || rawRect.isEmpty()) {
+            return;
+        }
+        // Keep the aspect ratio of the region while decoding about SAMPLE_AREA_PX pixels.
+        float aspectRatio = rawRect.width() / (float) rawRect.height();
+        int targetWidth = Math.max(1, Math.round((float) Math.sqrt(SAMPLE_AREA_PX * aspectRatio)));
+        int targetHeight = Math.max(1, Math.round(targetWidth / aspectRatio));
+        mRegionDecoder.decodeRegion(rawRect, targetWidth, targetHeight, bitmap -> {
+            if (bitmap == null || isSuperseded(generation)) {
+                return;
+            }
+            mExecutor.execute(() -> {
+                if (isSuperseded(generation)) {
+                    return;
+                }
+                WallpaperColors colors = mColorsExtractor.extract(bitmap);
+                mMainHandler.post(() -> {
+                    if (!isSuperseded(generation)) {
+                        boolean cacheColors = mCacheColors;
+                        mCacheColors = false;
+                        callback.onColorsCalculated(colors, cacheColors);
+                    }
+                });
+            });
+        });
+    }
+
+    private boolean isSuperseded(int generation) {
+        return mGeneration.get() != generation;
+    }
+
+    private static WallpaperColors extractColors(Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.HARDWARE) {
+            return WallpaperColors.fromBitmap(bitmap);
+        }
+        Bitmap softwareBitmap = bitmap.copy(Bitmap.Config.ARGB_8888, /* isMutable= */ false);
+        WallpaperColors colors = WallpaperColors.fromBitmap(softwareBitmap);
+        softwareBitmap.recycle();
+        return colors;
+    }
+}
@@ -49,6 +49,9 @@ import android.view.WindowManager.LayoutParams;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -87,6 +90,9 @@ public class WallpaperConnection extends IWallpaperConnection.Stub implements Se
     private boolean mIsEngineVisible;
     private boolean mEngineReady;
     private boolean mDestroyed;
+    private final PerformanceMonitor mPerformanceMonitor;
+    /** Times binding until the engine is first shown; {@link PerformanceMonitor#NO_TIMER} after. */
+    private volatile long mEngineBindTimer = PerformanceMonitor.NO_TIMER;
 
     /**
      * @param intent used to bind the wallpaper service
@@ -115,6 +121,8 @@ public class WallpaperConnection extends IWallpaperConnection.Stub implements Se
         mListener = listener;
         mContainerView = containerView;
         mSecondContainerView = secondaryContainerView;
+        mPerformanceMonitor =
+                PerformanceMonitor.orNoOp(InjectorProvider.getInjector().getPerformanceMonitor());
     }
 
     /**
@@ -134,6 +142,8 @@ public class WallpaperConnection extends IWallpaperConnection.Stub implements Se
                 return false;
             }
 
+            mEngineBindTimer =
+                    mPerformanceMonitor.startTimer(PerformanceMonitor.TIMER_LIVE_ENGINE_BIND);
             mConnected = true;
         }
 
@@ -288,6 +298,9 @@ public class WallpaperConnection extends IWallpaperConnection.Stub implements Se
     @Override
     public void engineShown(IWallpaperEngine engine) {
         mEngineReady = true;
+        long engineBindTimer = mEngineBindTimer;
+        mEngineBindTimer = PerformanceMonitor.NO_TIMER;
+        mPerformanceMonitor.stopTimer(PerformanceMonitor.TIMER_LIVE_ENGINE_BIND, engineBindTimer);
         if (mContainerView != null) {
             mContainerView.post(() -> reparentWallpaperSurface(mContainerView));
         }
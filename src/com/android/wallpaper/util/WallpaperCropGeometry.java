@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import androidx.annotation.MainThread;
+
+/**
+ * Crop calculations of {@link WallpaperCropUtils} for a preview that is zoomed and panned
+ * repeatedly. The display and parallax parameters are looked up once per configuration, the crop
+ * surface size once per host view size, and results are written into caller-supplied objects, so
+ * that recalculating the crop on every frame doesn't allocate.
+ */
+@MainThread
+public class WallpaperCropGeometry {
+
+    private final Resources mResources;
+
+    // Parameters derived from mConfiguration, looked up again when the configuration changes.
+    private final Configuration mConfiguration = new Configuration();
+    private boolean mHasConfiguration;
+    private float mSystemWallpaperMaxScale;
+    private boolean mIsRtl;
+    private boolean mIsLargeScreen;
+
+    // Crop surface size of the last host view size.
+    private final Point mHostViewSize = new Point(-1, -1);
+    private final Point mCropSurfaceSize = new Point();
+
+    public WallpaperCropGeometry(Context context) {
+        mResources = context.getResources();
+    }
+
+    /** See {@link WallpaperCropUtils#getSystemWallpaperMaximumScale(Context)}. */
+    public float getSystemWallpaperMaximumScale() {
+        updateParameters();
+        if (Float.isNaN(mSystemWallpaperMaxScale)) {
+            mSystemWallpaperMaxScale =
+                    WallpaperCropUtils.getSystemWallpaperMaximumScale(mResources);
+        }
+        return mSystemWallpaperMaxScale;
+    }
+
+    /** See {@link WallpaperCropUtils#isRtl(Context)}. */
+    public boolean isRtl() {
+        updateParameters();
+        return mIsRtl;
+    }
+
+    /**
+     * Calculates the crop of the wallpaper in physical pixel terms (i.e., scaled to current zoom),
+     * as {@link WallpaperCropUtils#calculateCropRect(Context, Point, Point, Point, Rect, float,
+     * boolean)} does for a crop surface sized after the host view.
+     *
+     * @param hostViewSize            the size of the view hosting the wallpaper as a Point (x,y).
+     * @param rawWallpaperSize        the size of the raw wallpaper as a Point (x,y).
+     * @param visibleRawWallpaperRect the area of the raw wallpaper which is expected to see.
+     * @param wallpaperZoom           the factor which is used to scale the raw wallpaper.
+     * @param cropExtraWidth          true to crop extra wallpaper width for panel sliding.
+     * @param outCropRect             receives the crop.
+     */
+    public void calculateCropRect(Point hostViewSize, Point rawWallpaperSize,
+            Rect visibleRawWallpaperRect, float wallpaperZoom, boolean cropExtraWidth,
+            Rect outCropRect) {
+        updateParameters();
+        updateCropSurfaceSize(hostViewSize);
+        WallpaperCropUtils.calculateCropRect(wallpaperZoom, rawWallpaperSize, mCropSurfaceSize,
+                hostViewSize, (int) (visibleRawWallpaperRect.left * wallpaperZoom),
+                (int) (visibleRawWallpaperRect.top * wallpaperZoom), cropExtraWidth, mIsRtl,
+                outCropRect);
+    }
+
+    /**
+     * Calculates the home and lock screen crops of the same preview at once. The home screen crop
+     * includes the extra width the wallpaper scrolls through across home screen pages, which the
+     * lock screen doesn't need.
+     *
+     * @see #calculateCropRect(Point, Point, Rect, float, boolean, Rect)
+     */
+    public void calculateCropRects(Point hostViewSize, Point rawWallpaperSize,
+            Rect visibleRawWallpaperRect, float wallpaperZoom, Rect outHomeCropRect,
+            Rect outLockCropRect) {
+        calculateCropRect(hostViewSize, rawWallpaperSize, visibleRawWallpaperRect, wallpaperZoom,
+                /* cropExtraWidth= */ true, outHomeCropRect);
+        WallpaperCropUtils.calculateCropRect(wallpaperZoom, rawWallpaperSize, mCropSurfaceSize,
+                hostViewSize, (int) (visibleRawWallpaperRect.left * wallpaperZoom),
+                (int) (visibleRawWallpaperRect.top * wallpaperZoom), /* cropExtraWidth= */ false,
+                mIsRtl, outLockCropRect);
+    }
+
+    private void updateParameters() {
+        Configuration configuration = mResources.getConfiguration();
+        if (mHasConfiguration && mConfiguration.equals(configuration)) {
+            return;
+        }
+        mConfiguration.setTo(configuration);
+        mHasConfiguration = true;
+        // Looked up on first use, as crop calculations don't need it.
+        mSystemWallpaperMaxScale = Float.NaN;
+        mIsRtl = WallpaperCropUtils.isRtl(configuration);
+        mIsLargeScreen = WallpaperCropUtils.isLargeScreen(mResources);
+        // The crop surface depends on the screen size class.
+        mHostViewSize.set(-1, -1);
+    }
+
+    private void updateCropSurfaceSize(Point hostViewSize) {
+        if (mHostViewSize.equals(hostViewSize)) {
+            return;
+        }
+        mHostViewSize.set(hostViewSize.x, hostViewSize.y);
+        WallpaperCropUtils.calculateCropSurfaceSize(mIsLargeScreen,
+                Math.max(hostViewSize.x, hostViewSize.y), Math.min(hostViewSize.x, hostViewSize.y),
+                hostViewSize.x, hostViewSize.y, mCropSurfaceSize);
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.wallpaper.util;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Point;
 import android.graphics.PointF;
@@ -92,15 +93,37 @@ public final class WallpaperCropUtils {
      */
     public static Point calculateCropSurfaceSize(Resources resources, int maxDim, int minDim,
             int width, int height) {
+        Point cropSurfaceSize = new Point();
+        calculateCropSurfaceSize(isLargeScreen(resources), maxDim, minDim, width, height,
+                cropSurfaceSize);
+        return cropSurfaceSize;
+    }
+
+    /**
+     * Same as {@link #calculateCropSurfaceSize(Resources, int, int, int, int)}, but writes the
+     * result into {@code outSize} instead of allocating it.
+     *
+     * @param isLargeScreen see {@link #isLargeScreen(Resources)}
+     */
+    public static void calculateCropSurfaceSize(boolean isLargeScreen, int maxDim, int minDim,
+            int width, int height, Point outSize) {
         final int defaultWidth, defaultHeight;
-        if (resources.getConfiguration().smallestScreenWidthDp >= 720) {
+        if (isLargeScreen) {
             defaultWidth = (int) (maxDim * wallpaperTravelToScreenWidthRatio(maxDim, minDim));
         } else {
             defaultWidth = Math.max((int) (minDim * WALLPAPER_SCREENS_SPAN), maxDim);
         }
         defaultHeight = width < height ? maxDim : minDim;
 
-        return new Point(defaultWidth, defaultHeight);
+        outSize.set(defaultWidth, defaultHeight);
+    }
+
+    /**
+     * Returns whether the screen is large enough for the wallpaper to travel by a fraction of the
+     * screen's width rather than span two screens.
+     */
+    public static boolean isLargeScreen(Resources resources) {
+        return resources.getConfiguration().smallestScreenWidthDp >= 720;
     }
 
     /**
@@ -192,16 +215,28 @@ public final class WallpaperCropUtils {
     public static Rect calculateCropRect(Context context, float wallpaperZoom, Point wallpaperSize,
             Point defaultCropSurfaceSize, Point targetHostSize, int scrollX, int scrollY,
             boolean cropExtraWidth) {
-        // Calculate Rect of wallpaper in physical pixel terms (i.e., scaled to current zoom).
+        Rect cropRect = new Rect();
+        calculateCropRect(wallpaperZoom, wallpaperSize, defaultCropSurfaceSize, targetHostSize,
+                scrollX, scrollY, cropExtraWidth, isRtl(context), cropRect);
+        return cropRect;
+    }
+
+    /**
+     * Same as {@link #calculateCropRect(Context, float, Point, Point, Point, int, int, boolean)},
+     * but writes the result into {@code outCropRect} instead of allocating it.
+     *
+     * @param isRtl whether the layout direction is RTL, see {@link #isRtl(Context)}
+     */
+    public static void calculateCropRect(float wallpaperZoom, Point wallpaperSize,
+            Point defaultCropSurfaceSize, Point targetHostSize, int scrollX, int scrollY,
+            boolean cropExtraWidth, boolean isRtl, Rect outCropRect) {
+        // Calculate bounds of wallpaper in physical pixel terms (i.e., scaled to current zoom).
         int scaledWallpaperWidth = Math.round(wallpaperSize.x * wallpaperZoom);
         int scaledWallpaperHeight = Math.round(wallpaperSize.y * wallpaperZoom);
-        Rect rect = new Rect();
-        rect.set(0, 0, scaledWallpaperWidth, scaledWallpaperHeight);
 
         // Crop rect should start off as the visible screen and then include extra width and height
         // if available within wallpaper at the current zoom.
-        Rect cropRect = new Rect(scrollX, scrollY, scrollX + targetHostSize.x,
-                scrollY + targetHostSize.y);
+        outCropRect.set(scrollX, scrollY, scrollX + targetHostSize.x, scrollY + targetHostSize.y);
 
         int extraWidth = defaultCropSurfaceSize.x - targetHostSize.x;
         int extraHeightTopAndBottom = (int) ((defaultCropSurfaceSize.y - targetHostSize.y) / 2f);
@@ -209,27 +244,25 @@ public final class WallpaperCropUtils {
         if (cropExtraWidth) {
             // Try to increase size of screenRect to include extra width depending on the layout
             // direction.
-            if (isRtl(context)) {
-                cropRect.left = Math.max(cropRect.left - extraWidth, rect.left);
+            if (isRtl) {
+                outCropRect.left = Math.max(outCropRect.left - extraWidth, 0);
             } else {
-                cropRect.right = Math.min(cropRect.right + extraWidth, rect.right);
+                outCropRect.right = Math.min(outCropRect.right + extraWidth, scaledWallpaperWidth);
             }
         }
 
         // Try to increase the size of the cropRect to to include extra height.
-        int availableExtraHeightTop = cropRect.top - Math.max(
-                rect.top,
-                cropRect.top - extraHeightTopAndBottom);
+        int availableExtraHeightTop = outCropRect.top - Math.max(
+                0,
+                outCropRect.top - extraHeightTopAndBottom);
         int availableExtraHeightBottom = Math.min(
-                rect.bottom,
-                cropRect.bottom + extraHeightTopAndBottom) - cropRect.bottom;
+                scaledWallpaperHeight,
+                outCropRect.bottom + extraHeightTopAndBottom) - outCropRect.bottom;
 
         int availableExtraHeightTopAndBottom =
                 Math.min(availableExtraHeightTop, availableExtraHeightBottom);
-        cropRect.top -= availableExtraHeightTopAndBottom;
-        cropRect.bottom += availableExtraHeightTopAndBottom;
-
-        return cropRect;
+        outCropRect.top -= availableExtraHeightTopAndBottom;
+        outCropRect.bottom += availableExtraHeightTopAndBottom;
     }
 
     /**
@@ -240,17 +273,28 @@ public final class WallpaperCropUtils {
      * @param inner the size of inner rectangle as a Point (x,y).
      */
     public static Rect calculateVisibleRect(Point outer, Point inner) {
-        PointF visibleRectCenter = new PointF(outer.x / 2f, outer.y / 2f);
+        Rect visibleRect = new Rect();
+        calculateVisibleRect(outer, inner, visibleRect);
+        return visibleRect;
+    }
+
+    /**
+     * Same as {@link #calculateVisibleRect(Point, Point)}, but writes the result into
+     * {@code outVisibleRect} instead of allocating it.
+     */
+    public static void calculateVisibleRect(Point outer, Point inner, Rect outVisibleRect) {
+        float visibleRectCenterX = outer.x / 2f;
+        float visibleRectCenterY = outer.y / 2f;
         if (inner.x / (float) inner.y > outer.x / (float) outer.y) {
             float minZoom = inner.x / (float) outer.x;
             float visibleRectHeight = inner.y / minZoom;
-            return new Rect(0, (int) (visibleRectCenter.y - visibleRectHeight / 2),
-                    outer.x, (int) (visibleRectCenter.y + visibleRectHeight / 2));
+            outVisibleRect.set(0, (int) (visibleRectCenterY - visibleRectHeight / 2),
+                    outer.x, (int) (visibleRectCenterY + visibleRectHeight / 2));
         } else {
             float minZoom = inner.y / (float) outer.y;
             float visibleRectWidth = inner.x / minZoom;
-            return new Rect((int) (visibleRectCenter.x - visibleRectWidth / 2),
-                    0, (int) (visibleRectCenter.x + visibleRectWidth / 2), outer.y);
+            outVisibleRect.set((int) (visibleRectCenterX - visibleRectWidth / 2),
+                    0, (int) (visibleRectCenterX + visibleRectWidth / 2), outer.y);
         }
     }
 
@@ -360,7 +404,14 @@ public final class WallpaperCropUtils {
      * Get the system wallpaper's maximum scale value.
      */
     public static float getSystemWallpaperMaximumScale(Context context) {
-        return context.getResources()
+        return getSystemWallpaperMaximumScale(context.getResources());
+    }
+
+    /**
+     * Get the system wallpaper's maximum scale value.
+     */
+    public static float getSystemWallpaperMaximumScale(Resources resources) {
+        return resources
                 .getFloat(Resources.getSystem().getIdentifier(
                         /* name= */ "config_wallpaperMaxScale",
                         /* defType= */ "dimen",
@@ -372,8 +423,14 @@ public final class WallpaperCropUtils {
      * was added in API 17, returns false for versions lower than 17.
      */
     public static boolean isRtl(Context context) {
-        return context.getResources().getConfiguration().getLayoutDirection()
-                == View.LAYOUT_DIRECTION_RTL;
+        return isRtl(context.getResources().getConfiguration());
+    }
+
+    /**
+     * Returns whether the layout direction of the given configuration is RTL.
+     */
+    public static boolean isRtl(Configuration configuration) {
+        return configuration.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
     }
 
     /**
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import android.os.RemoteException;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.MotionEvent.PointerCoords;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Forwards the touch events of a preview to a live wallpaper engine, scaled to the engine's
+ * surface.
+ * <p>
+ * Moves are coalesced into a single event per frame which carries the earlier samples as history,
+ * so a high-rate touchscreen doesn't cost a binder transaction per sample. Any other action flushes
+ * the pending move and is dispatched right away, so the engine sees events in order.
+ */
+@MainThread
+public class WallpaperTouchForwarder {
+
+    private static final String TAG = "WallpaperTouchForwarder";
+
+    /** Sends an event to the wallpaper engine; the event is recycled once this returns. */
+    public interface PointerDispatcher {
+        void dispatchPointer(MotionEvent event) throws RemoteException;
+    }
+
+    /** Runs a callback on the next frame. */
+    @VisibleForTesting
+    interface FrameScheduler {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+
+        void removeFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    private static final FrameScheduler CHOREOGRAPHER_SCHEDULER = new FrameScheduler() {
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().postFrameCallback(callback);
+        }
+
+        @Override
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().removeFrameCallback(callback);
+        }
+    };
+
+    private final PointerDispatcher mDispatcher;
+    private final FrameScheduler mFrameScheduler;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> flushMove();
+
+    @Nullable
+    private MotionEvent mPendingMove;
+    private PointerCoords[] mPointerCoords = new PointerCoords[0];
+
+    public WallpaperTouchForwarder(PointerDispatcher dispatcher) {
+        this(dispatcher, CHOREOGRAPHER_SCHEDULER);
+    }
+
+    @VisibleForTesting
+    WallpaperTouchForwarder(PointerDispatcher dispatcher, FrameScheduler frameScheduler) {
+        mDispatcher = dispatcher;
+        mFrameScheduler = frameScheduler;
+    }
+
+    /**
+     * Forwards an event of the preview, whose coordinates are divided by the given ratio of the
+     * preview size to the engine's surface size.
+     */
+    public void forward(MotionEvent event, float scaleRatio) {
+        // Like MotionEvent#setLocation, move every pointer by the offset that puts the first one
+        // at its scaled position.
+        float offsetX = event.getX() / scaleRatio - event.getX();
+        float offsetY = event.getY() / scaleRatio - event.getY();
+
+        if (event.getActionMasked() != MotionEvent.ACTION_MOVE) {
+            flushMove();
+            MotionEvent copy = MotionEvent.obtainNoHistory(event);
+            copy.offsetLocation(offsetX, offsetY);
+            dispatch(copy);
+            return;
+        }
+
+        if (mPendingMove != null && (mPendingMove.getPointerCount() != event.getPointerCount()
+                || mPendingMove.getSource() != event.getSource())) {
+            flushMove();
+        }
+        if (mPendingMove == null) {
+            mPendingMove = MotionEvent.obtain(event);
+            mPendingMove.offsetLocation(offsetX, offsetY);
+            mFrameScheduler.postFrameCallback(mFrameCallback);
+            return;
+        }
+        appendSamples(event, offsetX, offsetY);
+    }
+
+    /** Drops the pending move and stops waiting for the next frame. */
+    public void release() {
+        mFrameScheduler.removeFrameCallback(mFrameCallback);
+        if (mPendingMove != null) {
+            mPendingMove.recycle();
+            mPendingMove = null;
+        }
+    }
+
+    private void appendSamples(MotionEvent event, float offsetX, float offsetY) {
+        int pointerCount = event.getPointerCount();
+        if (mPointerCoords.length < pointerCount) {
+            PointerCoords[] pointerCoords = new PointerCoords[pointerCount];
+            System.arraycopy(mPointerCoords, 0, pointerCoords, 0, mPointerCoords.length);
+            for (int i = mPointerCoords.length; i < pointerCount; i++) {
+                pointerCoords[i] = new PointerCoords();
+            }
+            mPointerCoords = pointerCoords;
+        }
+        for (int h = 0; h < event.getHistorySize(); h++) {
+            for (int i = 0; i < pointerCount; i++) {
+                event.getHistoricalPointerCoords(i, h, mPointerCoords[i]);
+                mPointerCoords[i].x += offsetX;
+                mPointerCoords[i].y += offsetY;
+            }
+            mPendingMove.addBatch(event.getHistoricalEventTime(h), mPointerCoords,
+                    event.getMetaState());
+        }
+        for (int i = 0; i < pointerCount; i++) {
+            event.getPointerCoords(i, mPointerCoords[i]);
+            mPointerCoords[i].x += offsetX;
+            mPointerCoords[i].y += offsetY;
+        }
+        mPendingMove.addBatch(event.getEventTime(), mPointerCoords, event.getMetaState());
+    }
+
+    private void flushMove() {
+        if (mPendingMove == null) {
+            return;
+        }
+        mFrameScheduler.removeFrameCallback(mFrameCallback);
+        MotionEvent move = mPendingMove;
+        mPendingMove = null;
+        dispatch(move);
+    }
+
+    private void dispatch(MotionEvent event) {
+        try {
+            mDispatcher.dispatchPointer(event);
+        } catch (RemoteException e) {
+            Log.e(TAG, "Remote exception of wallpaper connection");
+        } finally {
+            event.recycle();
+        }
+    }
+}
@@ -29,6 +29,8 @@ import androidx.annotation.Nullable;
 
 import com.android.wallpaper.asset.Asset;
 import com.android.wallpaper.asset.BitmapCachingAsset;
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 import com.android.wallpaper.util.ScreenSizeCalculator;
 
 /** A class to load the {@link WallpaperColors} from wallpaper {@link Asset}. */
@@ -44,11 +46,14 @@ public class WallpaperColorsLoader {
     // The max size should be at least 2 for storing home and lockscreen wallpaper if they are
     // different.
     private static LruCache<Asset, WallpaperColors> sCache = new LruCache<>(/* maxSize= */ 6);
+    private static PerformanceMonitor sPerformanceMonitor;
 
     /** Gets the {@link WallpaperColors} from the wallpaper {@link Asset}. */
     public static void getWallpaperColors(Context context, @NonNull Asset asset,
                                           @NonNull Callback callback) {
         WallpaperColors cached = sCache.get(asset);
+        getPerformanceMonitor().recordCacheLookup(
+                PerformanceMonitor.CACHE_WALLPAPER_COLORS, cached != null);
         if (cached != null) {
             callback.onLoaded(cached);
             return;
@@ -75,4 +80,12 @@ public class WallpaperColorsLoader {
             }
         });
     }
+
+    private static synchronized PerformanceMonitor getPerformanceMonitor() {
+        if (sPerformanceMonitor == null) {
+            sPerformanceMonitor = PerformanceMonitor.orNoOp(
+                    InjectorProvider.getInjector().getPerformanceMonitor());
+        }
+        return sPerformanceMonitor;
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.graphics.Point;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.R;
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.module.WallpaperPicker2Injector;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentUriAssetTest {
+
+    private static final String AUTHORITY = "com.android.wallpaper.asset.test";
+    private static final long TIMEOUT_SECONDS = 5;
+    /** The probe cache outlives each test, so each one uses its own URI. */
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+    private Context mContext;
+    private Uri mUri;
+    private byte[] mImage;
+    private final AtomicInteger mOpenCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = ApplicationProvider.getApplicationContext();
+        InjectorProvider.setInjector(new WallpaperPicker2Injector());
+        Robolectric.buildContentProvider(ImageProvider.class).create(AUTHORITY);
+        ImageProvider.sMimeType = "image/jpeg";
+        ImageProvider.sDateModified = 1;
+
+        mUri = Uri.parse("content://" + AUTHORITY + "/image/" + sNextId.incrementAndGet());
+        // A PNG, so that its sniffed type would differ from the one the provider reports.
+        mImage = readFully(mContext.getResources().openRawResource(R.drawable.center_crop_blue));
+        shadowOf(mContext.getContentResolver()).registerInputStreamSupplier(mUri, () -> {
+            mOpenCount.incrementAndGet();
+            return new ByteArrayInputStream(mImage);
+        });
+    }
+
+    @Test
+    public void isJpeg_usesProviderTypeWithoutOpeningStream() {
+        ContentUriAsset asset = new ContentUriAsset(mContext, mUri);
+
+        assertTrue(asset.isJpeg());
+        assertFalse(asset.isPng());
+        assertEquals(0, mOpenCount.get());
+    }
+
+    @Test
+    public void isJpeg_afterProbe_keepsProviderType() {
+        ContentUriAsset asset = new ContentUriAsset(mContext, mUri);
+        boolean jpegBeforeProbe = asset.isJpeg();
+
+        assertNotNull(asset.calculateRawDimensions());
+
+        assertTrue(jpegBeforeProbe);
+        assertTrue(asset.isJpeg());
+        assertFalse(asset.isPng());
+    }
+
+    @Test
+    public void calculateRawDimensions_unchangedImage_opensStreamOnce() {
+        Point dimensions = new ContentUriAsset(mContext, mUri).calculateRawDimensions();
+        ContentUriAsset asset = new ContentUriAsset(mContext, mUri);
+
+        assertEquals(dimensions, asset.calculateRawDimensions());
+        assertEquals(dimensions, asset.calculateRawDimensions());
+        asset.readExifTag(ExifInterface.TAG_ORIENTATION);
+        assertEquals(1, mOpenCount.get());
+    }
+
+    @Test
+    public void calculateRawDimensions_modifiedImage_probesAgain() {
+        new ContentUriAsset(mContext, mUri).calculateRawDimensions();
+        ImageProvider.sDateModified = 2;
+
+        new ContentUriAsset(mContext, mUri).calculateRawDimensions();
+
+        assertEquals(2, mOpenCount.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void isJpeg_duringProbe_doesNotWaitForIt() throws Exception {
+        Uri uri = Uri.parse(mUri + "/slow");
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        shadowOf(mContext.getContentResolver()).registerInputStreamSupplier(uri, () -> {
+            opened.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(mImage);
+        });
+        ContentUriAsset asset = new ContentUriAsset(mContext, uri);
+        Thread probe = new Thread(asset::calculateRawDimensions);
+        probe.start();
+
+        try {
+            assertTrue(opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(asset.isJpeg());
+        } finally {
+            release.countDown();
+            probe.join();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** Reports a fixed type and the size and modification date of every image. */
+    public static class ImageProvider extends ContentProvider {
+        static volatile String sMimeType;
+        static volatile long sDateModified;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Cursor query(Uri uri, @Nullable String[] projection, @Nullable String selection,
+                @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+            MatrixCursor cursor = new MatrixCursor(projection);
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                row[i] = i == 0 ? 1024L : sDateModified;
+            }
+            cursor.addRow(row);
+            return cursor;
+        }
+
+        @Nullable
+        @Override
+        public String getType(Uri uri) {
+            return sMimeType;
+        }
+
+        @Nullable
+        @Override
+        public Uri insert(Uri uri, @Nullable ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, @Nullable String selection,
+                @Nullable String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                @Nullable String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
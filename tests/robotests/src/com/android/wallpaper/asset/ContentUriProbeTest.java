@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentUriProbeTest {
+
+    private byte[] mImage;
+    private int mOpenCount;
+
+    @Before
+    public void setUp() throws IOException {
+        mImage = readFully(ApplicationProvider.getApplicationContext().getResources()
+                .openRawResource(R.drawable.center_crop_blue));
+    }
+
+    @Test
+    public void read_unopenableStream_returnsNull() {
+        assertNull(ContentUriProbe.read(() -> {
+            mOpenCount++;
+            return null;
+        }));
+        assertEquals(1, mOpenCount);
+    }
+
+    @Test
+    public void read_imageWithinMarkLimit_opensOneStream() {
+        ContentUriProbe probe = ContentUriProbe.read(this::openImage);
+
+        assertNotNull(probe);
+        assertEquals(1, mOpenCount);
+    }
+
+    @Test
+    public void read_reportsDecoderBounds() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(mImage, 0, mImage.length, options);
+
+        ContentUriProbe probe = ContentUriProbe.read(this::openImage);
+
+        assertNotNull(probe);
+        assertEquals(new Point(options.outWidth, options.outHeight), probe.mRawDimensions);
+    }
+
+    @Test
+    public void getExifOrientation_withoutExif_isNormal() {
+        ContentUriProbe probe = new ContentUriProbe(new Point(1, 2), /* exif= */ null);
+
+        assertEquals(ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL, probe.getExifOrientation());
+    }
+
+    private InputStream openImage() {
+        mOpenCount++;
+        return new ByteArrayInputStream(mImage);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
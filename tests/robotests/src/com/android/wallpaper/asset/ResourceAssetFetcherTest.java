@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.res.Resources;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.R;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResourceAssetFetcherTest {
+
+    private static final int RES_ID = R.drawable.center_crop_blue;
+
+    private Resources mResources;
+    private ResourceAssetLoader.ResourceAssetFetcher mFetcher;
+    private InputStream mData;
+    private Exception mError;
+
+    @Before
+    public void setUp() {
+        mResources = ApplicationProvider.getApplicationContext().getResources();
+        mFetcher = new ResourceAssetLoader.ResourceAssetFetcher(
+                new ResourceAsset(mResources, RES_ID));
+    }
+
+    @Test
+    public void loadData_providesEncodedResourceWithoutReencoding() throws IOException {
+        mFetcher.loadData(Priority.NORMAL, new Callback());
+
+        assertNull(mError);
+        assertNotNull(mData);
+        // The bytes are those of the resource itself, so nothing was decoded or encoded.
+        assertArrayEquals(readFully(mResources.openRawResource(RES_ID)), readFully(mData));
+        mFetcher.cleanup();
+    }
+
+    @Test
+    public void loadData_afterCancel_failsWithoutOpeningResource() {
+        mFetcher.cancel();
+
+        mFetcher.loadData(Priority.NORMAL, new Callback());
+
+        assertNull(mData);
+        assertNotNull(mError);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private class Callback implements DataFetcher.DataCallback<InputStream> {
+        @Override
+        public void onDataReady(@Nullable InputStream data) {
+            mData = data;
+        }
+
+        @Override
+        public void onLoadFailed(Exception e) {
+            mError = e;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a {@link MicroBenchmark} run, serialized as JSON with results sorted by name and a
+ * fixed key order so that reports of different runs diff cleanly.
+ */
+public final class BenchmarkReport {
+
+    /** Version of the JSON layout, bumped whenever a key is renamed or its meaning changes. */
+    static final int FORMAT_VERSION = 1;
+
+    static final String METRIC_MIN_NS = "minNsPerOp";
+    static final String METRIC_MEDIAN_NS = "medianNsPerOp";
+    static final String METRIC_ALLOCATED_BYTES = "allocatedBytesPerOp";
+
+    /** The measurements of a single benchmark. */
+    public static final class Result {
+        final String mName;
+        final long mOps;
+        final long mMinNsPerOp;
+        final long mMedianNsPerOp;
+        final long mAllocatedBytesPerOp;
+
+        Result(String name, long ops, long minNsPerOp, long medianNsPerOp,
+                long allocatedBytesPerOp) {
+            mName = name;
+            mOps = ops;
+            mMinNsPerOp = minNsPerOp;
+            mMedianNsPerOp = medianNsPerOp;
+            mAllocatedBytesPerOp = allocatedBytesPerOp;
+        }
+
+        /** Returns the value of the given metric, one of the {@code METRIC_} constants. */
+        long getMetric(String metric) {
+            switch (metric) {
+                case METRIC_MIN_NS:
+                    return mMinNsPerOp;
+                case METRIC_MEDIAN_NS:
+                    return mMedianNsPerOp;
+                case METRIC_ALLOCATED_BYTES:
+                    return mAllocatedBytesPerOp;
+                default:
+                    throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mMedianNsPerOp + " ns/op median, " + mMinNsPerOp
+                    + " ns/op min, " + mAllocatedBytesPerOp + " B/op";
+        }
+    }
+
+    private final List<Result> mResults;
+
+    BenchmarkReport(List<Result> results) {
+        mResults = new ArrayList<>(results);
+        mResults.sort(Comparator.comparing(result -> result.mName));
+    }
+
+    /** Returns the results, sorted by name. */
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(mResults);
+    }
+
+    /** Serializes the report. */
+    public String toJson() {
+        try {
+            JSONArray results = new JSONArray();
+            for (Result result : mResults) {
+                results.put(new JSONObject()
+                        .put("name", result.mName)
+                        .put("ops", result.mOps)
+                        .put(METRIC_MIN_NS, result.mMinNsPerOp)
+                        .put(METRIC_MEDIAN_NS, result.mMedianNsPerOp)
+                        .put(METRIC_ALLOCATED_BYTES, result.mAllocatedBytesPerOp));
+            }
+            return new JSONObject()
+                    .put("formatVersion", FORMAT_VERSION)
+                    .put("results", results)
+                    .toString(/* indentSpaces= */ 2);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Parses a report written by {@link #toJson()}. */
+    public static BenchmarkReport fromJson(String json) throws JSONException {
+        JSONObject report = new JSONObject(json);
+        int formatVersion = report.getInt("formatVersion");
+        if (formatVersion != FORMAT_VERSION) {
+            throw new JSONException("Unsupported report format version " + formatVersion);
+        }
+        JSONArray results = report.getJSONArray("results");
+        List<Result> parsed = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            parsed.add(new Result(result.getString("name"), result.getLong("ops"),
+                    result.getLong(METRIC_MIN_NS), result.getLong(METRIC_MEDIAN_NS),
+                    result.getLong(METRIC_ALLOCATED_BYTES)));
+        }
+        return new BenchmarkReport(parsed);
+    }
+
+    /**
+     * Compares this report against a baseline and describes every benchmark whose metric grew by
+     * more than the given fraction. Benchmarks missing from either report, and metrics that
+     * weren't measured, are ignored.
+     *
+     * @param metric    one of the {@code METRIC_} constants
+     * @param threshold the tolerated growth, e.g. 0.1 for 10%
+     * @return descriptions of the regressions, empty if there are none
+     */
+    public List<String> findRegressions(BenchmarkReport baseline, String metric, double threshold) {
+        Map<String, Result> baselineResults = new LinkedHashMap<>();
+        for (Result result : baseline.mResults) {
+            baselineResults.put(result.mName, result);
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (Result result : mResults) {
+            Result baselineResult = baselineResults.get(result.mName);
+            if (baselineResult == null) {
+                continue;
+            }
+            long before = baselineResult.getMetric(metric);
+            long after = result.getMetric(metric);
+            if (before < 0 || after < 0) {
+                continue;
+            }
+            // A zero baseline, e.g. an allocation-free benchmark, regresses on any growth.
+            if (after > before * (1 + threshold)) {
+                regressions.add(result.mName + " " + metric + ": " + before + " -> " + after);
+            }
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BenchmarkReportTest {
+
+    @Test
+    public void toJson_isSortedAndRoundTrips() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(Arrays.asList(
+                new BenchmarkReport.Result("b", 10, 5, 6, 32),
+                new BenchmarkReport.Result("a", 10, 1, 2, 0)));
+
+        String json = report.toJson();
+        BenchmarkReport parsed = BenchmarkReport.fromJson(json);
+
+        assertTrue(json.indexOf("\"a\"") < json.indexOf("\"b\""));
+        assertEquals(json, parsed.toJson());
+    }
+
+    @Test
+    public void findRegressions_reportsOnlyGrowthBeyondThreshold() {
+        BenchmarkReport baseline = new BenchmarkReport(Arrays.asList(
+                new BenchmarkReport.Result("fast", 10, 100, 100, 0),
+                new BenchmarkReport.Result("slow", 10, 100, 100, 0),
+                new BenchmarkReport.Result("removed", 10, 100, 100, 0)));
+        BenchmarkReport current = new BenchmarkReport(Arrays.asList(
+                new BenchmarkReport.Result("fast", 10, 105, 105, 0),
+                new BenchmarkReport.Result("slow", 10, 150, 150, 16),
+                new BenchmarkReport.Result("added", 10, 100, 100, 0)));
+
+        List<String> timeRegressions = current.findRegressions(baseline,
+                BenchmarkReport.METRIC_MEDIAN_NS, /* threshold= */ 0.1);
+        List<String> allocationRegressions = current.findRegressions(baseline,
+                BenchmarkReport.METRIC_ALLOCATED_BYTES, /* threshold= */ 0.1);
+
+        assertEquals(Arrays.asList("slow medianNsPerOp: 100 -> 150"), timeRegressions);
+        assertEquals(Arrays.asList("slow allocatedBytesPerOp: 0 -> 16"), allocationRegressions);
+    }
+
+    @Test
+    public void measure_countsEveryOp() {
+        MicroBenchmark benchmark = new MicroBenchmark(/* warmupSamples= */ 1,
+                /* measuredSamples= */ 3);
+
+        BenchmarkReport.Result result = benchmark.measure("noop", /* opsPerSample= */ 4,
+                () -> null);
+
+        assertEquals(12, result.mOps);
+        assertEquals(1, benchmark.getReport().getResults().size());
+    }
+}
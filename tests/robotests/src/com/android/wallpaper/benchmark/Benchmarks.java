@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What the benchmarks of this package share: how they're enabled, how many samples they take and
+ * how their reports are written and compared.
+ * <p>
+ * Benchmarks are skipped unless the {@code wallpaper.benchmark} system property is true. Other
+ * properties:
+ * <ul>
+ *     <li>{@code wallpaper.benchmark.warmup} and {@code wallpaper.benchmark.samples}: sample counts
+ *     <li>{@code wallpaper.benchmark.report}: a directory to write each benchmark class's JSON
+ *     report to, named after the class
+ *     <li>{@code wallpaper.benchmark.baseline}: a directory of previous reports to compare against;
+ *     a benchmark class fails if {@code wallpaper.benchmark.metric} (default
+ *     {@code medianNsPerOp}) grew by more than {@code wallpaper.benchmark.threshold} (default
+ *     0.1, i.e. 10%) for any of its benchmarks
+ * </ul>
+ */
+final class Benchmarks {
+
+    private static final String TAG = "Benchmarks";
+    private static final String PROPERTY_PREFIX = "wallpaper.benchmark";
+    private static final long ASYNC_TIMEOUT_MILLIS = 10_000;
+
+    private Benchmarks() {
+    }
+
+    /** Skips the calling test unless benchmarks are enabled, and returns a runner for it. */
+    static MicroBenchmark start() {
+        assumeTrue(Boolean.getBoolean(PROPERTY_PREFIX));
+        return new MicroBenchmark(
+                Integer.getInteger(PROPERTY_PREFIX + ".warmup", 5),
+                Integer.getInteger(PROPERTY_PREFIX + ".samples", 15));
+    }
+
+    /**
+     * Logs the results of the given runner, writes them to the report directory if any, and fails
+     * if any of them regressed against the baseline directory if any.
+     */
+    static void finish(String name, MicroBenchmark benchmark) throws IOException, JSONException {
+        BenchmarkReport report = benchmark.getReport();
+        for (BenchmarkReport.Result result : report.getResults()) {
+            Log.i(TAG, name + ": " + result);
+        }
+        String fileName = name + ".json";
+        String reportDir = System.getProperty(PROPERTY_PREFIX + ".report");
+        if (reportDir != null) {
+            Files.write(new File(reportDir, fileName).toPath(),
+                    report.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+
+        String baselineDir = System.getProperty(PROPERTY_PREFIX + ".baseline");
+        File baselineFile = baselineDir == null ? null : new File(baselineDir, fileName);
+        if (baselineFile != null && baselineFile.isFile()) {
+            BenchmarkReport baseline = BenchmarkReport.fromJson(new String(
+                    Files.readAllBytes(baselineFile.toPath()), StandardCharsets.UTF_8));
+            List<String> regressions = report.findRegressions(baseline,
+                    System.getProperty(PROPERTY_PREFIX + ".metric",
+                            BenchmarkReport.METRIC_MEDIAN_NS),
+                    Double.parseDouble(
+                            System.getProperty(PROPERTY_PREFIX + ".threshold", "0.1")));
+            assertTrue("Regressions against " + baselineFile + ": " + regressions,
+                    regressions.isEmpty());
+        }
+    }
+
+    /**
+     * Runs the main looper until the given result of asynchronous work that delivers on it is
+     * complete.
+     */
+    static <T> T awaitOnMainLooper(CompletableFuture<T> result) {
+        long deadline = SystemClock.uptimeMillis() + ASYNC_TIMEOUT_MILLIS;
+        while (!result.isDone()) {
+            if (SystemClock.uptimeMillis() > deadline) {
+                throw new IllegalStateException("Timed out waiting for the main looper");
+            }
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.yield();
+        }
+        return result.join();
+    }
+
+    /** Creates a bitmap of the given size filled with a gradient, so pixels differ. */
+    static Bitmap createSyntheticBitmap(Point size) {
+        int[] pixels = new int[size.x * size.y];
+        for (int y = 0; y < size.y; y++) {
+            for (int x = 0; x < size.x; x++) {
+                pixels[y * size.x + x] = 0xFF000000 | ((x & 0xFF) << 16) | ((y & 0xFF) << 8);
+            }
+        }
+        return Bitmap.createBitmap(pixels, size.x, size.y, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.asset.BitmapUtils;
+import com.android.wallpaper.util.BitmapProcessor;
+import com.android.wallpaper.util.BitmapTransformer;
+import com.android.wallpaper.util.WallpaperCropUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+/**
+ * Benchmarks the bitmap math and processing helpers on synthetic 1080p, 1440p and 4K bitmaps,
+ * with native graphics so that the real bitmap code runs. See {@link Benchmarks} for how to run
+ * it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class BitmapUtilsBenchmark {
+
+    private static final int MATH_OPS_PER_SAMPLE = 10_000;
+    private static final Point[] SIZES = {
+            new Point(1080, 1920),
+            new Point(1440, 2560),
+            new Point(2160, 3840),
+    };
+    private static final Point SCREEN_SIZE = new Point(1080, 2340);
+    private static final Point CROP_SURFACE_SIZE = new Point(2160, 2340);
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        Context context = ApplicationProvider.getApplicationContext();
+
+        for (Point size : SIZES) {
+            String suffix = "_" + size.x + "x" + size.y;
+            Bitmap bitmap = Benchmarks.createSyntheticBitmap(size);
+            Rect visibleRect = WallpaperCropUtils.calculateVisibleRect(size, SCREEN_SIZE);
+
+            benchmark.measure("calculateInSampleSize" + suffix, MATH_OPS_PER_SAMPLE,
+                    () -> BitmapUtils.calculateInSampleSize(size.x, size.y, SCREEN_SIZE.x / 4,
+                            SCREEN_SIZE.y / 4));
+            benchmark.measure("calculateVisibleRect" + suffix, MATH_OPS_PER_SAMPLE,
+                    () -> WallpaperCropUtils.calculateVisibleRect(size, SCREEN_SIZE));
+            benchmark.measure("calculateCropRect" + suffix, MATH_OPS_PER_SAMPLE,
+                    () -> WallpaperCropUtils.calculateCropRect(context, SCREEN_SIZE,
+                            CROP_SURFACE_SIZE, size, visibleRect, /* wallpaperZoom= */ 1.2f));
+            benchmark.measure("generateHashCode" + suffix, /* opsPerSample= */ 100,
+                    () -> BitmapUtils.generateHashCode(bitmap));
+            benchmark.measure("applyFillTransformation" + suffix, /* opsPerSample= */ 1,
+                    () -> BitmapTransformer.applyFillTransformation(bitmap, SCREEN_SIZE));
+            benchmark.measure("createLowResBitmap" + suffix, /* opsPerSample= */ 1,
+                    () -> BitmapProcessor.createLowResBitmap(bitmap, SCREEN_SIZE.x,
+                            SCREEN_SIZE.y));
+        }
+
+        Benchmarks.finish("BitmapUtilsBenchmark", benchmark);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.util.WallpaperCropGeometry;
+import com.android.wallpaper.util.WallpaperCropUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Benchmarks the per-frame crop calculation of the image preview, whose allocatedBytesPerOp
+ * should stay at 0. See {@link Benchmarks} for how to run it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropGeometryBenchmark {
+
+    private static final int OPS_PER_SAMPLE = 10_000;
+    private static final Point[] SIZES = {
+            new Point(1080, 1920),
+            new Point(1440, 2560),
+            new Point(2160, 3840),
+    };
+    private static final Point SCREEN_SIZE = new Point(1080, 2340);
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        Context context = ApplicationProvider.getApplicationContext();
+
+        // Zooming or panning the preview recalculates the crop on every frame, which should not
+        // allocate.
+        WallpaperCropGeometry geometry = new WallpaperCropGeometry(context);
+        Rect cropRect = new Rect();
+        for (Point size : SIZES) {
+            Rect visibleRect = WallpaperCropUtils.calculateVisibleRect(size, SCREEN_SIZE);
+            benchmark.measure("cropGeometryFrame_" + size.x + "x" + size.y, OPS_PER_SAMPLE,
+                    () -> {
+                        geometry.calculateCropRect(SCREEN_SIZE, size, visibleRect,
+                                /* wallpaperZoom= */ 1.2f, /* cropExtraWidth= */ true,
+                                cropRect);
+                        return cropRect;
+                    });
+        }
+
+        Benchmarks.finish("CropGeometryBenchmark", benchmark);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal host-side microbenchmark runner: runs a body for a number of warmup samples, then times
+ * a number of measured samples of {@code opsPerSample} calls each and counts the bytes allocated
+ * by the calling thread while doing so.
+ * <p>
+ * Allocation counting relies on the HotSpot {@code com.sun.management.ThreadMXBean} extension and
+ * is reported as -1 on VMs that don't support it.
+ */
+public final class MicroBenchmark {
+
+    /** The code being measured. Its return value is kept so the JIT can't discard the call. */
+    public interface Body {
+        Object run();
+    }
+
+    private static volatile Object sSink;
+
+    private final int mWarmupSamples;
+    private final int mMeasuredSamples;
+    private final List<BenchmarkReport.Result> mResults = new ArrayList<>();
+
+    /**
+     * @param warmupSamples   samples run and discarded before measuring, to let the JIT settle
+     * @param measuredSamples samples that are timed
+     */
+    public MicroBenchmark(int warmupSamples, int measuredSamples) {
+        if (warmupSamples < 0 || measuredSamples < 1) {
+            throw new IllegalArgumentException("Need at least one measured sample");
+        }
+        mWarmupSamples = warmupSamples;
+        mMeasuredSamples = measuredSamples;
+    }
+
+    /**
+     * Measures the given body and records the result under the given name.
+     *
+     * @param opsPerSample how many times the body is called per timed sample; cheap bodies need
+     *                     many calls for the sample to be long enough to time reliably
+     */
+    public BenchmarkReport.Result measure(String name, int opsPerSample, Body body) {
+        for (int i = 0; i < mWarmupSamples; i++) {
+            runSample(opsPerSample, body);
+        }
+
+        long[] sampleNanos = new long[mMeasuredSamples];
+        long allocatedBefore = getAllocatedBytes();
+        for (int i = 0; i < mMeasuredSamples; i++) {
+            long start = System.nanoTime();
+            runSample(opsPerSample, body);
+            sampleNanos[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = getAllocatedBytes();
+
+        Arrays.sort(sampleNanos);
+        long totalOps = (long) mMeasuredSamples * opsPerSample;
+        long allocatedBytesPerOp = allocatedBefore < 0 || allocatedAfter < 0
+                ? -1 : (allocatedAfter - allocatedBefore) / totalOps;
+        BenchmarkReport.Result result = new BenchmarkReport.Result(name, totalOps,
+                sampleNanos[0] / opsPerSample,
+                sampleNanos[mMeasuredSamples / 2] / opsPerSample,
+                allocatedBytesPerOp);
+        mResults.add(result);
+        return result;
+    }
+
+    /** Returns a report of everything measured so far. */
+    public BenchmarkReport getReport() {
+        return new BenchmarkReport(mResults);
+    }
+
+    private static void runSample(int opsPerSample, Body body) {
+        Object last = null;
+        for (int i = 0; i < opsPerSample; i++) {
+            last = body.run();
+        }
+        sSink = last;
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotBean =
+                    (com.sun.management.ThreadMXBean) threadMXBean;
+            if (hotspotBean.isThreadAllocatedMemorySupported()
+                    && hotspotBean.isThreadAllocatedMemoryEnabled()) {
+                return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.WallpaperColors;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Looper;
+
+import com.android.wallpaper.asset.FileAsset;
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.module.WallpaperPicker2Injector;
+import com.android.wallpaper.util.PreviewColorsCalculator;
+import com.android.wallpaper.util.WallpaperCropUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Benchmarks the bitmap work behind the colors of one pan gesture over a 4K wallpaper, as the
+ * preview used to do it on every frame, against the same gesture through
+ * {@link PreviewColorsCalculator}, which decodes a single downsampled region once it settles. See
+ * {@link Benchmarks} for how to run it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PreviewColorsBenchmark {
+
+    private static final Point WALLPAPER_SIZE = new Point(2160, 3840);
+    private static final Point SCREEN_SIZE = new Point(1080, 2340);
+    // About half a second of panning at 60fps.
+    private static final int PAN_GESTURE_FRAMES = 30;
+    private static final long FRAME_MILLIS = 16;
+    // As ImagePreviewFragment requests the colors while the wallpaper is panned.
+    private static final long PAN_COLORS_DELAY_MILLIS = 100;
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        if (InjectorProvider.getInjector() == null) {
+            InjectorProvider.setInjector(new WallpaperPicker2Injector());
+        }
+        Bitmap panBitmap = Benchmarks.createSyntheticBitmap(WALLPAPER_SIZE);
+        Rect panRect = WallpaperCropUtils.calculateVisibleRect(WALLPAPER_SIZE, SCREEN_SIZE);
+
+        benchmark.measure("colorsPerPanGestureEveryFrame", /* opsPerSample= */ 1, () -> {
+            Bitmap decoded = null;
+            for (int frame = 0; frame < PAN_GESTURE_FRAMES; frame++) {
+                Bitmap cropped = Bitmap.createBitmap(panBitmap, panRect.left, panRect.top,
+                        panRect.width(), panRect.height());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                cropped.compress(Bitmap.CompressFormat.PNG, 100, out);
+                decoded = BitmapFactory.decodeStream(new ByteArrayInputStream(out.toByteArray()));
+            }
+            return decoded;
+        });
+
+        File panFile = File.createTempFile("pan", ".png");
+        panFile.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(panFile)) {
+            panBitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+        PreviewColorsCalculator calculator =
+                new PreviewColorsCalculator(new FileAsset(panFile), () -> panRect);
+        benchmark.measure("colorsPerPanGestureDebounced", /* opsPerSample= */ 1, () -> {
+            CompletableFuture<WallpaperColors> colors = new CompletableFuture<>();
+            for (int frame = 0; frame < PAN_GESTURE_FRAMES; frame++) {
+                calculator.request(PAN_COLORS_DELAY_MILLIS, /* cacheColors= */ false,
+                        (frameColors, cacheColors) -> colors.complete(frameColors));
+                shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FRAME_MILLIS));
+            }
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(PAN_COLORS_DELAY_MILLIS));
+            return Benchmarks.awaitOnMainLooper(colors);
+        });
+
+        Benchmarks.finish("PreviewColorsBenchmark", benchmark);
+    }
+}
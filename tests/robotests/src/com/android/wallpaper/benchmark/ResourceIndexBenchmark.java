@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.R;
+import com.android.wallpaper.module.ResourceIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks resolving every string of the app by name, through getIdentifier as the legacy
+ * loaders did, against a warm {@link ResourceIndex}. See {@link Benchmarks} for how to run it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ResourceIndexBenchmark {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        Context context = ApplicationProvider.getApplicationContext();
+        Resources resources = context.getResources();
+        String packageName = context.getPackageName();
+        List<String> resNames = new ArrayList<>();
+        for (Field field : R.string.class.getFields()) {
+            resNames.add(field.getName());
+        }
+
+        benchmark.measure("appStringsGetIdentifier", /* opsPerSample= */ 1, () -> {
+            int sum = 0;
+            for (String name : resNames) {
+                sum += resources.getIdentifier(name, "string", packageName);
+            }
+            return sum;
+        });
+        ResourceIndex resourceIndex = ResourceIndex.get(context, packageName, resources);
+        for (String name : resNames) {
+            resourceIndex.getIdentifier(name, "string");
+        }
+        benchmark.measure("appStringsIndexed", /* opsPerSample= */ 1, () -> {
+            int sum = 0;
+            for (String name : resNames) {
+                sum += resourceIndex.getIdentifier(name, "string");
+            }
+            return sum;
+        });
+
+        Benchmarks.finish("ResourceIndexBenchmark", benchmark);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.wallpaper.R;
+import com.android.wallpaper.asset.ResourceAsset;
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.module.WallpaperPicker2Injector;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Benchmarks a resource thumbnail as ResourceAssetLoader used to produce it, decoded, re-encoded
+ * and decoded again by Glide, against decoding the resource stream once at the target size. See
+ * {@link Benchmarks} for how to run it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ResourceThumbnailBenchmark {
+
+    private static final int THUMBNAIL_RES_ID = R.drawable.center_crop_blue;
+    private static final int SAMPLE_SIZE = 8;
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        if (InjectorProvider.getInjector() == null) {
+            InjectorProvider.setInjector(new WallpaperPicker2Injector());
+        }
+        Resources resources = ApplicationProvider.getApplicationContext().getResources();
+
+        benchmark.measure("resourceThumbnailPngRoundTrip", /* opsPerSample= */ 10, () -> {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = SAMPLE_SIZE;
+            Bitmap decoded = BitmapFactory.decodeResource(resources, THUMBNAIL_RES_ID, options);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            decoded.compress(Bitmap.CompressFormat.PNG, 100, out);
+            return BitmapFactory.decodeStream(new ByteArrayInputStream(out.toByteArray()));
+        });
+        ResourceAsset asset = new ResourceAsset(resources, THUMBNAIL_RES_ID);
+        Point size = asset.calculateRawDimensions();
+        benchmark.measure("resourceThumbnailDirect", /* opsPerSample= */ 10, () -> {
+            CompletableFuture<Bitmap> decoded = new CompletableFuture<>();
+            asset.decodeBitmap(size.x / SAMPLE_SIZE, size.y / SAMPLE_SIZE, decoded::complete);
+            return Benchmarks.awaitOnMainLooper(decoded);
+        });
+
+        Benchmarks.finish("ResourceThumbnailBenchmark", benchmark);
+    }
+}
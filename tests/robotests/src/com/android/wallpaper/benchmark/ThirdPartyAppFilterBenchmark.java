@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.benchmark;
+
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+
+import com.android.wallpaper.model.ThirdPartyAppCategory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks filtering the apps offering to set a wallpaper, as the third-party app categories do,
+ * against the nested loops and list lookups they used to do per app. See {@link Benchmarks} for
+ * how to run it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ThirdPartyAppFilterBenchmark {
+
+    private static final int APP_COUNT = 1_000;
+    private static final int EXCLUDED_APP_COUNT = 200;
+    private static final int IMAGE_PICKER_COUNT = 20;
+    private static final String OWN_PACKAGE = "app.1";
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        MicroBenchmark benchmark = Benchmarks.start();
+        List<ResolveInfo> apps = new ArrayList<>();
+        for (int i = 0; i < APP_COUNT; i++) {
+            apps.add(createResolveInfo("app." + i));
+        }
+        List<ResolveInfo> imagePickers = new ArrayList<>();
+        for (int i = 0; i < IMAGE_PICKER_COUNT; i++) {
+            imagePickers.add(createResolveInfo("app." + i * 7));
+        }
+        // Every fifth app is excluded.
+        List<String> excluded = new ArrayList<>();
+        for (int i = 0; i < EXCLUDED_APP_COUNT; i++) {
+            excluded.add("app." + i * 5);
+        }
+
+        benchmark.measure("thirdPartyAppsFilterNestedLoops", /* opsPerSample= */ 10, () -> {
+            List<ResolveInfo> filtered = new ArrayList<>();
+            outer:
+            for (ResolveInfo info : apps) {
+                String packageName = info.activityInfo.packageName;
+                if (excluded.contains(packageName) || packageName.equals(OWN_PACKAGE)) {
+                    continue;
+                }
+                for (ResolveInfo imagePicker : imagePickers) {
+                    if (packageName.equals(imagePicker.activityInfo.packageName)) {
+                        continue outer;
+                    }
+                }
+                filtered.add(info);
+            }
+            return filtered;
+        });
+        benchmark.measure("thirdPartyAppsFilterIndexed", /* opsPerSample= */ 10,
+                () -> ThirdPartyAppCategory.filterApps(apps, imagePickers, excluded,
+                        OWN_PACKAGE));
+
+        Benchmarks.finish("ThirdPartyAppFilterBenchmark", benchmark);
+    }
+
+    private static ResolveInfo createResolveInfo(String packageName) {
+        ResolveInfo info = new ResolveInfo();
+        info.activityInfo = new ActivityInfo();
+        info.activityInfo.packageName = packageName;
+        info.activityInfo.name = packageName + ".SetWallpaperActivity";
+        return info;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class CreativeWallpaperReaderTest {
+
+    private static final String AUTHORITY = "com.android.wallpaper.test.creative";
+    private static final Uri WALLPAPERS_URI = Uri.parse("content://" + AUTHORITY + "/wallpapers");
+    private static final String COLLECTION_ID = "collection";
+    private static final int ROW_COUNT = 2000;
+    // Every other row belongs to the collection.
+    private static final int WALLPAPER_COUNT = ROW_COUNT / 2;
+    private static final int PAGE_SIZE = 100;
+
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final List<List<WallpaperInfo>> mPages = new ArrayList<>();
+    private List<WallpaperInfo> mResult;
+
+    private Context mContext;
+    private FakeProvider mProvider;
+    private CreativeWallpaperReader mReader;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mProvider = Robolectric.setupContentProvider(FakeProvider.class, AUTHORITY);
+        mReader = new CreativeWallpaperReader(mTasks::add, new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void read_deliversPagesThenAllWallpapers() {
+        read();
+        runTasks();
+
+        assertEquals(WALLPAPER_COUNT / PAGE_SIZE, mPages.size());
+        for (List<WallpaperInfo> page : mPages) {
+            assertEquals(PAGE_SIZE, page.size());
+        }
+        assertEquals("wallpaper 0", mPages.get(0).get(0).getContentDescription(mContext));
+        assertEquals("wallpaper 200", mPages.get(1).get(0).getContentDescription(mContext));
+        assertNotNull(mResult);
+        assertEquals(WALLPAPER_COUNT, mResult.size());
+    }
+
+    @Test
+    public void readWallpapers_handsOutFirstPageBeforeCursorIsDrained() {
+        List<Integer> rowsReadPerPage = new ArrayList<>();
+
+        CreativeWallpaperReader.readWallpapers(mContext, WALLPAPERS_URI, /* effectsUri= */ null,
+                COLLECTION_ID, /* wallpaperInfo= */ null, PAGE_SIZE, /* signal= */ null,
+                page -> rowsReadPerPage.add(mProvider.mRowsRead));
+
+        // The first page is complete after 2 * PAGE_SIZE rows, minus the skipped last one.
+        assertEquals(2 * PAGE_SIZE - 1, (int) rowsReadPerPage.get(0));
+        assertEquals(WALLPAPER_COUNT / PAGE_SIZE, rowsReadPerPage.size());
+    }
+
+    @Test
+    public void readWallpapers_canceledMidway_stopsReading() {
+        CancellationSignal signal = new CancellationSignal();
+
+        try {
+            CreativeWallpaperReader.readWallpapers(mContext, WALLPAPERS_URI,
+                    /* effectsUri= */ null, COLLECTION_ID, /* wallpaperInfo= */ null, PAGE_SIZE,
+                    signal, page -> signal.cancel());
+            fail("Expected the read to be canceled");
+        } catch (OperationCanceledException expected) {
+            // Expected.
+        }
+
+        assertTrue(mProvider.mRowsRead < 2 * PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void read_canceledBeforeRunning_deliversNothing() {
+        CancellationSignal signal = read();
+
+        signal.cancel();
+        runTasks();
+
+        assertTrue(mPages.isEmpty());
+        assertNull(mResult);
+        assertEquals(0, mProvider.mRowsRead);
+    }
+
+    @Test
+    public void getCached_afterRead_returnsWallpapersUntilProviderChanges() {
+        assertNull(mReader.getCached(WALLPAPERS_URI, COLLECTION_ID));
+        read();
+        runTasks();
+
+        assertEquals(WALLPAPER_COUNT, mReader.getCached(WALLPAPERS_URI, COLLECTION_ID).size());
+
+        mContext.getContentResolver().notifyChange(WALLPAPERS_URI, /* observer= */ null);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertNull(mReader.getCached(WALLPAPERS_URI, COLLECTION_ID));
+    }
+
+    @Test
+    public void getCached_returnsCopiesUnaffectedByChangesToEarlierResults() {
+        read();
+        runTasks();
+        ((CreativeWallpaperInfo) mResult.get(0)).setCurrentlyAppliedEffectId("effect");
+
+        List<WallpaperInfo> cached = mReader.getCached(WALLPAPERS_URI, COLLECTION_ID);
+        ((CreativeWallpaperInfo) cached.get(0)).setCurrentlyAppliedEffectId("other effect");
+
+        CreativeWallpaperInfo wallpaper =
+                (CreativeWallpaperInfo) mReader.getCached(WALLPAPERS_URI, COLLECTION_ID).get(0);
+        assertNotSame(mResult.get(0), wallpaper);
+        assertNull(wallpaper.getCurrentlyAppliedEffectId());
+        assertEquals("wallpaper 0", wallpaper.getContentDescription(mContext));
+    }
+
+    @Test
+    public void read_providerChangedDuringRead_doesNotCache() {
+        read();
+
+        mReader.invalidate(AUTHORITY);
+        runTasks();
+
+        assertNotNull(mResult);
+        assertNull(mReader.getCached(WALLPAPERS_URI, COLLECTION_ID));
+    }
+
+    private CancellationSignal read() {
+        return mReader.read(mContext, WALLPAPERS_URI, /* effectsUri= */ null, COLLECTION_ID,
+                /* wallpaperInfo= */ null, PAGE_SIZE, new CreativeWallpaperReader.Callback() {
+                    @Override
+                    public void onPageRead(List<WallpaperInfo> page) {
+                        mPages.add(page);
+                    }
+
+                    @Override
+                    public void onReadFinished(List<WallpaperInfo> wallpapers) {
+                        mResult = wallpapers;
+                    }
+                });
+    }
+
+    private void runTasks() {
+        for (Runnable task : mTasks) {
+            task.run();
+        }
+        mTasks.clear();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /** Provides {@link #ROW_COUNT} creative wallpapers, alternating between two collections. */
+    public static class FakeProvider extends ContentProvider {
+
+        private static final String[] COLUMNS = {
+                WallpaperInfoContract.CATEGORY_ID,
+                WallpaperInfoContract.WALLPAPER_TITLE,
+                WallpaperInfoContract.WALLPAPER_CONTENT_DESCRIPTION,
+                WallpaperInfoContract.WALLPAPER_THUMBNAIL,
+                WallpaperInfoContract.WALLPAPER_CONFIG_PREVIEW_URI,
+                WallpaperInfoContract.WALLPAPER_CLEAN_PREVIEW_URI,
+                WallpaperInfoContract.WALLPAPER_DELETE_URI,
+                WallpaperInfoContract.WALLPAPER_SHARE_URI,
+                WallpaperInfoContract.WALLPAPER_GROUP_NAME,
+                WallpaperInfoContract.WALLPAPER_IS_APPLIED,
+        };
+
+        int mRowsRead;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            MatrixCursor cursor = new MatrixCursor(COLUMNS, ROW_COUNT) {
+                @Override
+                public boolean onMove(int oldPosition, int newPosition) {
+                    mRowsRead++;
+                    return super.onMove(oldPosition, newPosition);
+                }
+            };
+            for (int i = 0; i < ROW_COUNT; i++) {
+                String uriPrefix = "content://" + AUTHORITY + "/" + i + "/";
+                cursor.addRow(new Object[]{
+                        i % 2 == 0 ? COLLECTION_ID : "other",
+                        "Wallpaper " + i,
+                        "wallpaper " + i,
+                        uriPrefix + "thumbnail",
+                        uriPrefix + "config",
+                        uriPrefix + "clean",
+                        uriPrefix + "delete",
+                        uriPrefix + "share",
+                        "group",
+                        0,
+                });
+            }
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
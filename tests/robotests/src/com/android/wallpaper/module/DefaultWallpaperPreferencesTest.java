@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.backup.BackupManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowBackupManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public class DefaultWallpaperPreferencesTest {
+
+    private static final String KEY = "home_wallpaper_remote_id";
+
+    @Rule
+    public final TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private SharedPreferences mLegacyPrefs;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mLegacyPrefs = mContext.getSharedPreferences(
+                DefaultWallpaperPreferences.NO_BACKUP_PREFS_NAME, Context.MODE_PRIVATE);
+        mLegacyPrefs.edit().clear().putString(KEY, "remote").putInt("count", 3).commit();
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteSharedPreferences(DefaultWallpaperPreferences.NO_BACKUP_PREFS_NAME);
+        mContext.deleteSharedPreferences(DefaultWallpaperPreferences.PREFS_NAME);
+    }
+
+    @Test
+    public void openNoBackupStore_firstLaunch_migratesLegacyValues() throws Exception {
+        File storeFile = new File(mTempFolder.getRoot(), "nobackup.prefs");
+
+        SharedPreferences store = DefaultWallpaperPreferences.openNoBackupStore(mContext,
+                storeFile);
+
+        assertTrue(store instanceof BinaryPreferences);
+        assertTrue(storeFile.exists());
+        SharedPreferences reopened = new BinaryPreferences(storeFile);
+        assertEquals("remote", reopened.getString(KEY, null));
+        assertEquals(3, reopened.getInt("count", 0));
+    }
+
+    @Test
+    public void openNoBackupStore_afterMigration_opensStoreWithoutLegacyFile() throws Exception {
+        File storeFile = new File(mTempFolder.getRoot(), "nobackup.prefs");
+        DefaultWallpaperPreferences.openNoBackupStore(mContext, storeFile);
+        mLegacyPrefs.edit().putString(KEY, "changed").commit();
+
+        SharedPreferences store = DefaultWallpaperPreferences.openNoBackupStore(mContext,
+                storeFile);
+
+        assertTrue(store instanceof BinaryPreferences);
+        assertEquals("remote", store.getString(KEY, null));
+    }
+
+    @Test
+    public void openNoBackupStore_failedWrite_keepsReadingLegacyFile() throws Exception {
+        // The parent of the store is a regular file, so the store can't be written.
+        File notADirectory = mTempFolder.newFile("not_a_directory");
+        File storeFile = new File(notADirectory, "nobackup.prefs");
+
+        SharedPreferences store = DefaultWallpaperPreferences.openNoBackupStore(mContext,
+                storeFile);
+
+        assertFalse(storeFile.exists());
+        assertSame(mLegacyPrefs, store);
+        assertEquals("remote", store.getString(KEY, null));
+        assertEquals(3, mContext.getSharedPreferences(
+                DefaultWallpaperPreferences.NO_BACKUP_PREFS_NAME, Context.MODE_PRIVATE)
+                .getInt("count", 0));
+    }
+
+    @Test
+    public void constructor_storeCreatedEmpty_movesNoBackupKeysFromBackedUpPrefs() {
+        mLegacyPrefs.edit().clear().commit();
+        mContext.getSharedPreferences(DefaultWallpaperPreferences.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putString(KEY, "old").commit();
+
+        DefaultWallpaperPreferences prefs = new DefaultWallpaperPreferences(mContext);
+
+        assertEquals("old", prefs.getHomeWallpaperRemoteId());
+    }
+
+    @Test
+    public void constructor_storeExists_leavesBackedUpPrefsAlone() {
+        mLegacyPrefs.edit().clear().commit();
+        new DefaultWallpaperPreferences(mContext);
+        mContext.getSharedPreferences(DefaultWallpaperPreferences.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putString(KEY, "old").commit();
+
+        DefaultWallpaperPreferences prefs = new DefaultWallpaperPreferences(mContext);
+
+        assertNull(prefs.getHomeWallpaperRemoteId());
+    }
+
+    @Test
+    public void runInTransaction_readModifyWriteSetters_observeEarlierWrites() {
+        DefaultWallpaperPreferences prefs = new DefaultWallpaperPreferences(mContext);
+
+        prefs.runInTransaction(() -> {
+            prefs.incrementNumDaysDailyRotationFailed();
+            prefs.incrementNumDaysDailyRotationFailed();
+            prefs.setHomeWallpaperRemoteId("new");
+            assertEquals(2, prefs.getNumDaysDailyRotationFailed());
+            assertEquals("new", prefs.getHomeWallpaperRemoteId());
+        });
+
+        assertEquals(2, prefs.getNumDaysDailyRotationFailed());
+        assertEquals("new", prefs.getHomeWallpaperRemoteId());
+    }
+
+    @Test
+    public void runInTransaction_nested_joinsOutermost() {
+        DefaultWallpaperPreferences prefs = new DefaultWallpaperPreferences(mContext);
+        SharedPreferences stored = mContext.getSharedPreferences(
+                DefaultWallpaperPreferences.PREFS_NAME, Context.MODE_PRIVATE);
+
+        prefs.runInTransaction(() -> {
+            prefs.runInTransaction(() -> prefs.setHomeWallpaperCollectionId("inner"));
+
+            // The inner transaction's writes wait for the outer one.
+            assertFalse(stored.contains(WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_COLLECTION_ID));
+            assertEquals("inner", prefs.getHomeWallpaperCollectionId());
+        });
+
+        assertEquals("inner", stored.getString(
+                WallpaperPreferenceKeys.KEY_HOME_WALLPAPER_COLLECTION_ID, null));
+    }
+
+    @Test
+    public void runInTransaction_manyWrites_notifiesBackupOnce() {
+        DefaultWallpaperPreferences prefs = new DefaultWallpaperPreferences(mContext);
+        idleMainLooper();
+        ShadowBackupManager backupManager = Shadow.extract(new BackupManager(mContext));
+        int dataChangedCount = backupManager.getDataChangedCount();
+
+        prefs.runInTransaction(() -> {
+            prefs.setHomeWallpaperCollectionId("collection");
+            prefs.setLockWallpaperCollectionId("collection");
+            prefs.setWallpaperPresentationMode(WallpaperPreferences.PRESENTATION_MODE_STATIC);
+        });
+        idleMainLooper();
+
+        assertEquals(dataChangedCount + 1, backupManager.getDataChangedCount());
+    }
+
+    @Test
+    public void transactionEditor_finish_appliesByDefault() {
+        RecordingEditor delegate = new RecordingEditor();
+        DefaultWallpaperPreferences.TransactionEditor editor =
+                new DefaultWallpaperPreferences.TransactionEditor(delegate);
+
+        editor.putInt("a", 1).apply();
+        editor.putString("b", "value").apply();
+
+        assertTrue(delegate.mCalls.isEmpty());
+        assertFalse(editor.finish());
+        assertEquals(Collections.singletonList("apply"), delegate.mCalls);
+    }
+
+    @Test
+    public void transactionEditor_finish_commitsIfAnyWriteCommitted() {
+        RecordingEditor delegate = new RecordingEditor();
+        DefaultWallpaperPreferences.TransactionEditor editor =
+                new DefaultWallpaperPreferences.TransactionEditor(delegate);
+
+        editor.putInt("a", 1).apply();
+        editor.putInt("b", 2).commit();
+        editor.putInt("c", 3).apply();
+
+        assertTrue(editor.finish());
+        assertEquals(Collections.singletonList("commit"), delegate.mCalls);
+    }
+
+    @Test
+    public void transactionEditor_finish_withoutWrites_persistsNothing() {
+        RecordingEditor delegate = new RecordingEditor();
+        DefaultWallpaperPreferences.TransactionEditor editor =
+                new DefaultWallpaperPreferences.TransactionEditor(delegate);
+
+        editor.commit();
+
+        assertFalse(editor.finish());
+        assertTrue(delegate.mCalls.isEmpty());
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /** Records whether it was applied or committed. */
+    private static class RecordingEditor implements SharedPreferences.Editor {
+        final List<String> mCalls = new ArrayList<>();
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            mCalls.add("commit");
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            mCalls.add("apply");
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class WallpaperPicker2InjectorTest {
+
+    private static final long WARM_UP_TIMEOUT_SECONDS = 10;
+
+    private Context mContext;
+    private ExecutorService mExecutor;
+    private WallpaperPicker2Injector mInjector;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mExecutor = Executors.newFixedThreadPool(3);
+        mInjector = new WallpaperPicker2Injector();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void getters_afterWarmUp_constructNothingOnMainThread() throws Exception {
+        assertTrue(Looper.getMainLooper().isCurrentThread());
+        assertTrue(mInjector.warmUp(mContext, mExecutor)
+                .await(WARM_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        int warmedUp = mInjector.getConstructionTrace().size();
+
+        mInjector.getPerformanceMonitor();
+        mInjector.getPreferences(mContext);
+        mInjector.getPartnerProvider(mContext);
+        mInjector.getNetworkStatusNotifier(mContext);
+        mInjector.getPackageStatusNotifier(mContext);
+        mInjector.getWallpaperManagerCompat(mContext);
+        mInjector.getDisplayUtils(mContext);
+        mInjector.getWallpaperStatusChecker();
+        mInjector.getLiveWallpaperInfoFactory(mContext);
+        mInjector.getExploreIntentChecker(mContext);
+        mInjector.getRequester(mContext);
+        mInjector.getCategoryProvider(mContext);
+        mInjector.getWallpaperRefresher(mContext);
+        mInjector.getCurrentWallpaperInfoFactory(mContext);
+        mInjector.getWallpaperPersister(mContext);
+        mInjector.getWallpaperInteractor(mContext);
+        mInjector.getWallpaperSnapshotRestorer(mContext);
+
+        List<ConstructionTrace.Entry> entries = mInjector.getConstructionTrace();
+        assertEquals(warmedUp, entries.size());
+        for (ConstructionTrace.Entry entry : entries) {
+            assertFalse(entry.toString(), entry.isMainThread());
+        }
+    }
+
+    @Test
+    public void warmUp_schedulesDependentsAfterTheirDependencies() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        StartupGraph graph = mInjector.warmUp(mContext, tasks::add);
+
+        // Runs the tasks one at a time, noting which task built each singleton. A task scheduled
+        // before its dependencies are built would build them itself, as nested builds.
+        Map<String, Integer> taskIndices = new HashMap<>();
+        int taskIndex = 0;
+        while (!tasks.isEmpty()) {
+            tasks.remove().run();
+            for (ConstructionTrace.Entry entry : mInjector.getConstructionTrace()) {
+                if (!taskIndices.containsKey(entry.getName())) {
+                    taskIndices.put(entry.getName(), taskIndex);
+                }
+            }
+            taskIndex++;
+        }
+
+        assertTrue(graph.await(0, TimeUnit.SECONDS));
+        assertBuiltBefore(taskIndices, "WallpaperPreferences", "WallpaperRefresher");
+        assertBuiltBefore(taskIndices, "WallpaperRefresher", "CurrentWallpaperInfoFactory");
+        assertBuiltBefore(taskIndices, "CurrentWallpaperInfoFactory", "WallpaperInteractor");
+        assertBuiltBefore(taskIndices, "WallpaperInteractor", "WallpaperSnapshotRestorer");
+    }
+
+    @Test
+    public void getter_onMainThreadBeforeWarmUpTaskRuns_waitsForIt() throws Exception {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        StartupGraph graph = mInjector.warmUp(mContext, task -> {
+            synchronized (tasks) {
+                tasks.add(task);
+            }
+        });
+        // Only runs the tasks once the main thread is about to ask for a singleton.
+        CountDownLatch asking = new CountDownLatch(1);
+        Thread warmUpThread = new Thread(() -> {
+            try {
+                asking.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Runnable task;
+            while ((task = pollTask(tasks)) != null) {
+                task.run();
+            }
+        });
+        warmUpThread.start();
+
+        asking.countDown();
+        mInjector.getPreferences(mContext);
+        warmUpThread.join();
+
+        assertTrue(graph.await(0, TimeUnit.SECONDS));
+        for (ConstructionTrace.Entry entry : mInjector.getConstructionTrace()) {
+            assertFalse(entry.toString(), entry.isMainThread());
+        }
+    }
+
+    @Test
+    public void getter_duringWarmUp_returnsWarmedUpInstance() throws Exception {
+        StartupGraph graph = mInjector.warmUp(mContext, mExecutor);
+        WallpaperPreferences preferences = mInjector.getPreferences(mContext);
+
+        assertTrue(graph.await(WARM_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(preferences, mInjector.getPreferences(mContext));
+    }
+
+    private static void assertBuiltBefore(Map<String, Integer> taskIndices, String dependency,
+            String dependent) {
+        assertTrue(dependency + " not built", taskIndices.containsKey(dependency));
+        assertTrue(dependent + " not built", taskIndices.containsKey(dependent));
+        assertTrue(dependency + " built by the same task as or after " + dependent,
+                taskIndices.get(dependency) < taskIndices.get(dependent));
+    }
+
+    private static Runnable pollTask(ArrayDeque<Runnable> tasks) {
+        synchronized (tasks) {
+            return tasks.poll();
+        }
+    }
+}
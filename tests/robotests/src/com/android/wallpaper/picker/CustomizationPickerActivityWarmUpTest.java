@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.picker;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.wallpaper.module.ConstructionTrace;
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.module.WallpaperPicker2Injector;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(application = WallpapersApplication.class)
+public class CustomizationPickerActivityWarmUpTest {
+
+    /** The singletons CustomizationPickerActivity.onCreate gets before anything else. */
+    private static final List<String> CREATE_DEPENDENCIES = Arrays.asList(
+            "CategoryProvider",
+            "WallpaperPreferences",
+            "PackageStatusNotifier",
+            "WallpaperPersister",
+            "WallpaperManagerCompat",
+            "DisplayUtils",
+            "PerformanceMonitor",
+            "NetworkStatusNotifier",
+            "UserEventLogger",
+            "Flags");
+
+    @Test
+    public void create_buildsNothingOnMainThread() {
+        // The application started the warm-up, as it does when the app launches.
+        WallpaperPicker2Injector injector =
+                (WallpaperPicker2Injector) InjectorProvider.getInjector();
+
+        Robolectric.buildActivity(CustomizationPickerActivity.class).create();
+
+        Set<String> built = new HashSet<>();
+        for (ConstructionTrace.Entry entry : injector.getConstructionTrace()) {
+            if (CREATE_DEPENDENCIES.contains(entry.getName())) {
+                built.add(entry.getName());
+                assertFalse(entry.toString(), entry.isMainThread());
+            }
+        }
+        assertTrue("Only built " + built, built.containsAll(CREATE_DEPENDENCIES));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.WallpaperColors;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.wallpaper.asset.Asset.BitmapReceiver;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreviewColorsCalculatorTest {
+
+    private static final long DELAY_MILLIS = 100;
+    private static final WallpaperColors COLORS =
+            new WallpaperColors(Color.valueOf(Color.RED), null, null);
+
+    private final List<Rect> mDecodedRects = new ArrayList<>();
+    private final List<BitmapReceiver> mPendingDecodes = new ArrayList<>();
+    private final List<Runnable> mPendingTasks = new ArrayList<>();
+    private final List<WallpaperColors> mDelivered = new ArrayList<>();
+    private final List<Boolean> mDeliveredCacheColors = new ArrayList<>();
+    private int mExtractions;
+    private Rect mCropRect = new Rect(0, 0, 1000, 2000);
+
+    private PreviewColorsCalculator mCalculator;
+
+    @Before
+    public void setUp() {
+        mCalculator = new PreviewColorsCalculator(
+                () -> mCropRect,
+                (rawRect, targetWidth, targetHeight, receiver) -> {
+                    mDecodedRects.add(new Rect(rawRect));
+                    // The decoded size keeps the region's aspect ratio at the sampling area.
+                    assertEquals(rawRect.width() / (float) rawRect.height(),
+                            targetWidth / (float) targetHeight, 0.02f);
+                    assertTrue(Math.abs(targetWidth * targetHeight
+                            - PreviewColorsCalculator.SAMPLE_AREA_PX) < 200);
+                    mPendingDecodes.add(receiver);
+                },
+                bitmap -> {
+                    mExtractions++;
+                    return COLORS;
+                },
+                new Handler(Looper.getMainLooper()),
+                mPendingTasks::add);
+    }
+
+    @Test
+    public void requestsWithinDelay_onlyLastOneIsDecoded() {
+        for (int i = 0; i < 10; i++) {
+            mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+            advance(DELAY_MILLIS / 2);
+        }
+        mCropRect = new Rect(100, 0, 1100, 2000);
+        advance(DELAY_MILLIS);
+
+        assertEquals(1, mDecodedRects.size());
+        assertEquals(mCropRect, mDecodedRects.get(0));
+        finishDecodes();
+        assertEquals(1, mDelivered.size());
+        assertSame(COLORS, mDelivered.get(0));
+    }
+
+    @Test
+    public void requestDuringDecode_dropsSupersededResultBeforeExtracting() {
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ false, this::deliver);
+        advance(0);
+        mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+
+        finishDecodes();
+
+        assertEquals(0, mExtractions);
+        assertTrue(mDelivered.isEmpty());
+
+        advance(DELAY_MILLIS);
+        finishDecodes();
+        assertEquals(1, mExtractions);
+        assertEquals(1, mDelivered.size());
+    }
+
+    @Test
+    public void requestDuringExtraction_dropsSupersededColors() {
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ false, this::deliver);
+        advance(0);
+        mPendingDecodes.remove(0).onBitmapDecoded(createBitmap());
+        mPendingTasks.remove(0).run();
+
+        mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+        idleMainLooper();
+
+        assertEquals(1, mExtractions);
+        assertTrue(mDelivered.isEmpty());
+    }
+
+    @Test
+    public void cancel_dropsPendingAndRunningRequests() {
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ false, this::deliver);
+        advance(0);
+        mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+
+        mCalculator.cancel();
+        advance(DELAY_MILLIS);
+        finishDecodes();
+
+        assertEquals(1, mDecodedRects.size());
+        assertEquals(0, mExtractions);
+        assertTrue(mDelivered.isEmpty());
+    }
+
+    @Test
+    public void panDuringCachingRequest_deliversColorsToCache() {
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ true, this::deliver);
+        advance(0);
+        // The user pans before the first colors are delivered.
+        mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+        finishDecodes();
+        advance(DELAY_MILLIS);
+        finishDecodes();
+
+        assertEquals(1, mDelivered.size());
+        assertEquals(Arrays.asList(true), mDeliveredCacheColors);
+
+        // Later pans don't cache again.
+        mCalculator.request(DELAY_MILLIS, /* cacheColors= */ false, this::deliver);
+        advance(DELAY_MILLIS);
+        finishDecodes();
+
+        assertEquals(Arrays.asList(true, false), mDeliveredCacheColors);
+    }
+
+    @Test
+    public void cancel_dropsCaching() {
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ true, this::deliver);
+        mCalculator.cancel();
+
+        mCalculator.request(/* delayMillis= */ 0, /* cacheColors= */ false, this::deliver);
+        advance(0);
+        finishDecodes();
+
+        assertEquals(Arrays.asList(false), mDeliveredCacheColors);
+    }
+
+    private void deliver(WallpaperColors colors, boolean cacheColors) {
+        mDelivered.add(colors);
+        mDeliveredCacheColors.add(cacheColors);
+    }
+
+    private void finishDecodes() {
+        while (!mPendingDecodes.isEmpty()) {
+            mPendingDecodes.remove(0).onBitmapDecoded(createBitmap());
+        }
+        while (!mPendingTasks.isEmpty()) {
+            mPendingTasks.remove(0).run();
+        }
+        idleMainLooper();
+    }
+
+    private static Bitmap createBitmap() {
+        return Bitmap.createBitmap(80, 160, Bitmap.Config.ARGB_8888);
+    }
+
+    private static void advance(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
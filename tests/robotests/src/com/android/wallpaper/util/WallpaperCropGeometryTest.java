@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks that {@link WallpaperCropGeometry} and the out-param variants of
+ * {@link WallpaperCropUtils} compute exactly what the allocating functions compute.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WallpaperCropGeometryTest {
+
+    private static final Point[] WALLPAPER_SIZES = {
+            new Point(1080, 1920),
+            new Point(1440, 2560),
+            new Point(3840, 2160),
+            new Point(4000, 4000),
+            new Point(500, 300),
+    };
+    private static final Point[] HOST_VIEW_SIZES = {
+            new Point(1080, 2340),
+            new Point(2340, 1080),
+            new Point(1620, 3510),
+    };
+    private static final float[] ZOOMS = {0.3f, 1f, 1.37f, 2.5f};
+
+    private Context mContext;
+    private WallpaperCropGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mGeometry = new WallpaperCropGeometry(mContext);
+    }
+
+    @Test
+    public void calculateVisibleRect_matchesAllocatingVersion() {
+        Rect outRect = new Rect();
+        for (Point wallpaperSize : WALLPAPER_SIZES) {
+            for (Point hostViewSize : HOST_VIEW_SIZES) {
+                WallpaperCropUtils.calculateVisibleRect(wallpaperSize, hostViewSize, outRect);
+
+                assertEquals(WallpaperCropUtils.calculateVisibleRect(wallpaperSize, hostViewSize),
+                        outRect);
+            }
+        }
+    }
+
+    @Test
+    public void calculateCropRect_matchesAllocatingVersion() {
+        assertCropRectsMatch();
+    }
+
+    @Test
+    @Config(qualifiers = "ldrtl")
+    public void calculateCropRect_rtl_matchesAllocatingVersion() {
+        assertCropRectsMatch();
+    }
+
+    @Test
+    @Config(qualifiers = "sw720dp")
+    public void calculateCropRect_largeScreen_matchesAllocatingVersion() {
+        assertCropRectsMatch();
+    }
+
+    @Test
+    public void calculateCropRects_matchesSeparateCalculations() {
+        Rect homeCropRect = new Rect();
+        Rect lockCropRect = new Rect();
+        Point hostViewSize = HOST_VIEW_SIZES[0];
+        Point wallpaperSize = WALLPAPER_SIZES[2];
+        Rect visibleRect = WallpaperCropUtils.calculateVisibleRect(wallpaperSize, hostViewSize);
+
+        mGeometry.calculateCropRects(hostViewSize, wallpaperSize, visibleRect, ZOOMS[1],
+                homeCropRect, lockCropRect);
+
+        assertEquals(calculateCropRect(hostViewSize, wallpaperSize, visibleRect, ZOOMS[1],
+                /* cropExtraWidth= */ true), homeCropRect);
+        assertEquals(calculateCropRect(hostViewSize, wallpaperSize, visibleRect, ZOOMS[1],
+                /* cropExtraWidth= */ false), lockCropRect);
+    }
+
+    private void assertCropRectsMatch() {
+        Rect outRect = new Rect();
+        for (Point wallpaperSize : WALLPAPER_SIZES) {
+            for (Point hostViewSize : HOST_VIEW_SIZES) {
+                Rect visibleRect =
+                        WallpaperCropUtils.calculateVisibleRect(wallpaperSize, hostViewSize);
+                for (float zoom : ZOOMS) {
+                    for (boolean cropExtraWidth : new boolean[]{true, false}) {
+                        mGeometry.calculateCropRect(hostViewSize, wallpaperSize, visibleRect, zoom,
+                                cropExtraWidth, outRect);
+
+                        assertEquals(calculateCropRect(hostViewSize, wallpaperSize, visibleRect,
+                                zoom, cropExtraWidth), outRect);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Calculates the crop the way the preview did before it used the geometry engine. */
+    private Rect calculateCropRect(Point hostViewSize, Point wallpaperSize, Rect visibleRect,
+            float zoom, boolean cropExtraWidth) {
+        Point cropSurfaceSize = WallpaperCropUtils.calculateCropSurfaceSize(
+                mContext.getResources(), Math.max(hostViewSize.x, hostViewSize.y),
+                Math.min(hostViewSize.x, hostViewSize.y), hostViewSize.x, hostViewSize.y);
+        return WallpaperCropUtils.calculateCropRect(mContext, hostViewSize, cropSurfaceSize,
+                wallpaperSize, visibleRect, zoom, cropExtraWidth);
+    }
+}
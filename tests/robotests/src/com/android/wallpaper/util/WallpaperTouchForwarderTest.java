@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.view.Choreographer;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class WallpaperTouchForwarderTest {
+
+    private static final long INPUT_INTERVAL_MILLIS = 1000 / 240;
+    private static final int SAMPLES_PER_FRAME = 4;
+    private static final float SCALE_RATIO = 0.5f;
+
+    private final List<MotionEvent> mDispatched = new ArrayList<>();
+    private Choreographer.FrameCallback mFrameCallback;
+    private WallpaperTouchForwarder mForwarder;
+
+    @Before
+    public void setUp() {
+        mForwarder = new WallpaperTouchForwarder(
+                // Copy the events like binder would, since the forwarder recycles them.
+                event -> mDispatched.add(MotionEvent.obtain(event)),
+                new WallpaperTouchForwarder.FrameScheduler() {
+                    @Override
+                    public void postFrameCallback(Choreographer.FrameCallback callback) {
+                        mFrameCallback = callback;
+                    }
+
+                    @Override
+                    public void removeFrameCallback(Choreographer.FrameCallback callback) {
+                        if (mFrameCallback == callback) {
+                            mFrameCallback = null;
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void drag_at240Hz_dispatchesOneMovePerFrame() {
+        int frames = 60;
+        long time = 0;
+        mForwarder.forward(obtain(MotionEvent.ACTION_DOWN, time, 0f), SCALE_RATIO);
+        for (int frame = 0; frame < frames; frame++) {
+            for (int sample = 0; sample < SAMPLES_PER_FRAME; sample++) {
+                time += INPUT_INTERVAL_MILLIS;
+                mForwarder.forward(obtain(MotionEvent.ACTION_MOVE, time, time), SCALE_RATIO);
+            }
+            runFrame();
+        }
+        mForwarder.forward(obtain(MotionEvent.ACTION_UP, time, time), SCALE_RATIO);
+
+        // DOWN, one move per frame and UP, rather than one dispatch per input sample.
+        assertEquals(frames + 2, mDispatched.size());
+        assertEquals(MotionEvent.ACTION_DOWN, mDispatched.get(0).getActionMasked());
+        assertEquals(MotionEvent.ACTION_UP, mDispatched.get(frames + 1).getActionMasked());
+        MotionEvent lastMove = mDispatched.get(frames);
+        assertEquals(MotionEvent.ACTION_MOVE, lastMove.getActionMasked());
+        assertEquals(SAMPLES_PER_FRAME - 1, lastMove.getHistorySize());
+        // Every sample, including the batched ones, is scaled to the engine's surface.
+        assertEquals(time / SCALE_RATIO, lastMove.getX(), 0.01f);
+        assertEquals((time - INPUT_INTERVAL_MILLIS) / SCALE_RATIO,
+                lastMove.getHistoricalX(SAMPLES_PER_FRAME - 2), 0.01f);
+        assertEquals(time, lastMove.getEventTime());
+    }
+
+    @Test
+    public void up_flushesPendingMoveFirst() {
+        mForwarder.forward(obtain(MotionEvent.ACTION_DOWN, 0, 0f), SCALE_RATIO);
+        mForwarder.forward(obtain(MotionEvent.ACTION_MOVE, 4, 10f), SCALE_RATIO);
+        mForwarder.forward(obtain(MotionEvent.ACTION_MOVE, 8, 20f), SCALE_RATIO);
+        mForwarder.forward(obtain(MotionEvent.ACTION_UP, 8, 20f), SCALE_RATIO);
+
+        assertEquals(3, mDispatched.size());
+        assertEquals(MotionEvent.ACTION_MOVE, mDispatched.get(1).getActionMasked());
+        assertEquals(1, mDispatched.get(1).getHistorySize());
+        assertEquals(MotionEvent.ACTION_UP, mDispatched.get(2).getActionMasked());
+        assertNull(mFrameCallback);
+    }
+
+    @Test
+    public void release_dropsPendingMove() {
+        mForwarder.forward(obtain(MotionEvent.ACTION_DOWN, 0, 0f), SCALE_RATIO);
+        mForwarder.forward(obtain(MotionEvent.ACTION_MOVE, 4, 10f), SCALE_RATIO);
+
+        mForwarder.release();
+
+        assertEquals(1, mDispatched.size());
+        assertNull(mFrameCallback);
+    }
+
+    private void runFrame() {
+        Choreographer.FrameCallback callback = mFrameCallback;
+        mFrameCallback = null;
+        if (callback != null) {
+            callback.doFrame(System.nanoTime());
+        }
+    }
+
+    private static MotionEvent obtain(int action, long eventTime, float position) {
+        return MotionEvent.obtain(/* downTime= */ 0, eventTime, action, position, position,
+                /* metaState= */ 0);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.asset
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Rect
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.wallpaper.R
+import com.android.wallpaper.module.InjectorProvider
+import com.android.wallpaper.testing.TestInjector
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class BuiltInWallpaperAssetTest {
+
+    private val context: Context = InstrumentationRegistry.getInstrumentation().targetContext
+    private var opens = 0
+    private val underTest = BuiltInWallpaperAsset {
+        opens++
+        context.resources.openRawResource(RES_ID)
+    }
+
+    @Before
+    fun setUp() {
+        InjectorProvider.setInjector(TestInjector())
+    }
+
+    @Test
+    fun calculateRawDimensions_readsHeaderOnce() {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        context.resources.openRawResource(RES_ID).use {
+            BitmapFactory.decodeStream(it, null, bounds)
+        }
+
+        repeat(3) {
+            val dimensions = underTest.calculateRawDimensions()!!
+            assertThat(dimensions.x).isEqualTo(bounds.outWidth)
+            assertThat(dimensions.y).isEqualTo(bounds.outHeight)
+        }
+        assertThat(opens).isEqualTo(1)
+    }
+
+    @Test
+    fun decodeBitmapRegion_sharesRegionDecoder_andSubsamples() {
+        val dimensions = underTest.calculateRawDimensions()!!
+        val rect = Rect(0, 0, dimensions.x / 2, dimensions.y / 2)
+
+        repeat(2) {
+            val bitmap = decodeRegion(rect, rect.width() / 4, rect.height() / 4)
+
+            assertThat(bitmap).isNotNull()
+            // Decoded with a sample size rather than at full resolution.
+            assertThat(bitmap!!.width).isAtMost(rect.width() / 2)
+        }
+        // Once for the header and once for the shared region decoder.
+        assertThat(opens).isEqualTo(2)
+    }
+
+    private fun decodeRegion(rect: Rect, targetWidth: Int, targetHeight: Int): Bitmap? {
+        val latch = CountDownLatch(1)
+        var result: Bitmap? = null
+        underTest.decodeBitmapRegion(Rect(rect), targetWidth, targetHeight, false) {
+            result = it
+            latch.countDown()
+        }
+        assertThat(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue()
+        return result
+    }
+
+    companion object {
+        private val RES_ID = R.drawable.center_crop_blue
+        private const val TIMEOUT_SECONDS = 5L
+    }
+}
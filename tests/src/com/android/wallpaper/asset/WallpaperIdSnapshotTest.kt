@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.asset
+
+import androidx.test.filters.SmallTest
+import com.android.wallpaper.asset.CurrentWallpaperAssetVN.CurrentWallpaperVNKey
+import com.android.wallpaper.compat.WallpaperManagerCompat.FLAG_LOCK
+import com.android.wallpaper.compat.WallpaperManagerCompat.FLAG_SYSTEM
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class WallpaperIdSnapshotTest {
+
+    private var binderCalls = 0
+    private var homeId = 10
+    private val underTest = WallpaperIdSnapshot { which ->
+        binderCalls++
+        if (which == FLAG_LOCK) 20 else homeId
+    }
+
+    @Test
+    fun repeatedKeyLookups_fetchIdsOnce() {
+        val cache = HashMap<CurrentWallpaperVNKey, String>()
+
+        repeat(LOOKUP_COUNT) {
+            val key = createKey(FLAG_SYSTEM)
+            cache.getOrPut(key) { "bitmap" }
+            cache.containsKey(createKey(FLAG_LOCK))
+        }
+
+        // One call for each of home and lock, instead of one per hashCode() and equals().
+        assertThat(binderCalls).isEqualTo(2)
+        assertThat(cache).hasSize(1)
+    }
+
+    @Test
+    fun invalidate_fetchesNewIds() {
+        val oldKey = createKey(FLAG_SYSTEM)
+
+        homeId = 11
+        underTest.invalidate()
+        val newKey = createKey(FLAG_SYSTEM)
+
+        assertThat(newKey).isNotEqualTo(oldKey)
+        assertThat(underTest.getWallpaperId(FLAG_LOCK)).isEqualTo(20)
+        assertThat(binderCalls).isEqualTo(4)
+    }
+
+    /** Creates a key the way [CurrentWallpaperAssetVN.getKey] does. */
+    private fun createKey(which: Int): CurrentWallpaperVNKey {
+        return CurrentWallpaperVNKey(which, underTest.getWallpaperId(which))
+    }
+
+    companion object {
+        private const val LOOKUP_COUNT = 100
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.model
+
+import android.content.pm.ActivityInfo
+import android.content.pm.ResolveInfo
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class ThirdPartyAppCategoryTest {
+
+    private val apps = (0 until APP_COUNT).map { createResolveInfo("app.$it") }
+    private val imagePickers =
+        (0 until IMAGE_PICKER_COUNT).map { createResolveInfo("app.${it * 7}") }
+    // Every fifth app is excluded.
+    private val excluded = (0 until EXCLUDED_COUNT).map { "app.${it * 5}" }
+
+    @Test
+    fun filterApps_skipsExcludedOwnAndImagePickerPackages() {
+        val filtered =
+            ThirdPartyAppCategory.filterApps(apps, imagePickers, excluded, OWN_PACKAGE)
+
+        assertThat(filtered).containsExactlyElementsIn(filterAppsWithNestedLoops()).inOrder()
+        assertThat(filtered.map { it.activityInfo.packageName })
+            .containsNoneOf("app.0", "app.5", "app.7", OWN_PACKAGE)
+    }
+
+    /** The filtering that getAll used to do, with a list lookup and a loop per app. */
+    private fun filterAppsWithNestedLoops(): List<ResolveInfo> {
+        val filtered = mutableListOf<ResolveInfo>()
+        outer@ for (info in apps) {
+            val packageName = info.activityInfo.packageName
+            if (excluded.contains(packageName) || packageName == OWN_PACKAGE) {
+                continue
+            }
+            for (imagePicker in imagePickers) {
+                if (packageName == imagePicker.activityInfo.packageName) {
+                    continue@outer
+                }
+            }
+            filtered.add(info)
+        }
+        return filtered
+    }
+
+    private fun createResolveInfo(packageName: String): ResolveInfo {
+        return ResolveInfo().apply {
+            activityInfo =
+                ActivityInfo().also {
+                    it.packageName = packageName
+                    it.name = "$packageName.SetWallpaperActivity"
+                }
+        }
+    }
+
+    companion object {
+        private const val APP_COUNT = 1_000
+        private const val EXCLUDED_COUNT = 200
+        private const val IMAGE_PICKER_COUNT = 20
+        private const val OWN_PACKAGE = "app.1"
+    }
+}
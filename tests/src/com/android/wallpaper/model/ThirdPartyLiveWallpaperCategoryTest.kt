@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.model
+
+import android.content.Context
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.wallpaper.testing.TestStaticWallpaperInfo
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class ThirdPartyLiveWallpaperCategoryTest {
+
+    private val context: Context = InstrumentationRegistry.getInstrumentation().targetContext
+
+    /** The wallpapers each package currently provides. */
+    private val installed = mutableMapOf<String, List<WallpaperInfo>>()
+    private var resolveCount = 0
+
+    private val resolver =
+        object : ThirdPartyLiveWallpaperCategory.PackageResolver {
+            override fun getWallpapers(context: Context, packageName: String): List<WallpaperInfo> {
+                resolveCount++
+                return installed[packageName].orEmpty()
+            }
+
+            override fun getPackageName(wallpaper: WallpaperInfo): String? {
+                return wallpaper.wallpaperId.substringBefore('/')
+            }
+        }
+
+    @Test
+    fun applyPackageChange_addedPackage_appendsItsWallpapers() {
+        val underTest = createCategory("a" to 2, "b" to 1)
+        installed["c"] = createWallpapers("c", 2)
+
+        val changed = underTest.applyPackageChange(context, "c", /* removed= */ false)
+
+        assertThat(changed).isTrue()
+        assertThat(ids(underTest)).containsExactly("a/0", "a/1", "b/0", "c/0", "c/1").inOrder()
+    }
+
+    @Test
+    fun applyPackageChange_removedPackage_dropsItsWallpapersWithoutResolving() {
+        val underTest = createCategory("a" to 2, "b" to 1, "c" to 1)
+
+        val changed = underTest.applyPackageChange(context, "a", /* removed= */ true)
+
+        assertThat(changed).isTrue()
+        assertThat(ids(underTest)).containsExactly("b/0", "c/0").inOrder()
+        assertThat(resolveCount).isEqualTo(0)
+    }
+
+    @Test
+    fun applyPackageChange_replacedPackage_keepsItsPosition() {
+        val underTest = createCategory("a" to 1, "b" to 2, "c" to 1)
+        installed["b"] = createWallpapers("b", 3)
+
+        val changed = underTest.applyPackageChange(context, "b", /* removed= */ false)
+
+        assertThat(changed).isTrue()
+        assertThat(ids(underTest)).containsExactly("a/0", "b/0", "b/1", "b/2", "c/0").inOrder()
+        assertThat(underTest.containsThirdParty("b")).isTrue()
+    }
+
+    @Test
+    fun applyPackageChange_unknownPackageWithoutWallpapers_changesNothing() {
+        val underTest = createCategory("a" to 1)
+
+        val changed = underTest.applyPackageChange(context, "z", /* removed= */ false)
+
+        assertThat(changed).isFalse()
+        assertThat(ids(underTest)).containsExactly("a/0")
+    }
+
+    @Test
+    fun applyPackageChange_requestedTwiceBeforeApplied_resolvesOnce() {
+        val underTest = createCategory("a" to 1)
+        installed["a"] = createWallpapers("a", 2)
+        val applied = CountDownLatch(2)
+        val results = mutableListOf<Boolean>()
+        // Holds the package change thread until both requests are queued.
+        val queued = CountDownLatch(1)
+        underTest.applyPackageChange(context, "other", /* removed= */ true) { queued.await() }
+
+        repeat(2) {
+            underTest.applyPackageChange(context, "a", /* removed= */ false) { changed ->
+                synchronized(results) { results.add(changed) }
+                applied.countDown()
+            }
+        }
+        queued.countDown()
+
+        assertThat(applied.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue()
+        assertThat(results).containsExactly(true, true)
+        assertThat(resolveCount).isEqualTo(1)
+        assertThat(ids(underTest)).containsExactly("a/0", "a/1").inOrder()
+    }
+
+    /** Creates a category with the given number of wallpapers from each package, in order. */
+    private fun createCategory(
+        vararg packages: Pair<String, Int>
+    ): ThirdPartyLiveWallpaperCategory {
+        return ThirdPartyLiveWallpaperCategory(
+            "Live wallpapers",
+            "live_wallpapers",
+            packages.flatMap { (packageName, count) -> createWallpapers(packageName, count) },
+            /* priority= */ 0,
+            /* excludedLiveWallpaperPackageNames= */ null,
+            resolver,
+        )
+    }
+
+    private fun createWallpapers(packageName: String, count: Int): List<WallpaperInfo> {
+        return (0 until count).map {
+            TestStaticWallpaperInfo(TestStaticWallpaperInfo.COLOR_DEFAULT, "$packageName/$it")
+        }
+    }
+
+    private fun ids(category: ThirdPartyLiveWallpaperCategory): List<String> {
+        return category.unmodifiableWallpapers.map { it.wallpaperId }
+    }
+
+    companion object {
+        private const val TIMEOUT_SECONDS = 5L
+    }
+}
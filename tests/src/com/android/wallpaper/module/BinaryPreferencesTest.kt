@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class BinaryPreferencesTest {
+
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    @Test
+    fun commit_persistsEveryType() {
+        val file = File(tempFolder.root, "prefs")
+        BinaryPreferences(file)
+            .edit()
+            .putString("string", "value")
+            .putInt("int", 42)
+            .putLong("long", Long.MAX_VALUE)
+            .putFloat("float", 1.5f)
+            .putBoolean("boolean", true)
+            .putStringSet("set", setOf("a", "b"))
+            .commit()
+
+        val underTest = BinaryPreferences(file)
+
+        assertThat(underTest.getString("string", null)).isEqualTo("value")
+        assertThat(underTest.getInt("int", 0)).isEqualTo(42)
+        assertThat(underTest.getLong("long", 0)).isEqualTo(Long.MAX_VALUE)
+        assertThat(underTest.getFloat("float", 0f)).isEqualTo(1.5f)
+        assertThat(underTest.getBoolean("boolean", false)).isTrue()
+        assertThat(underTest.getStringSet("set", null)).containsExactly("a", "b")
+    }
+
+    @Test
+    fun remove_andNullString_dropKeys() {
+        val file = File(tempFolder.root, "prefs")
+        val underTest = BinaryPreferences(file)
+        underTest.edit().putString("a", "1").putString("b", "2").commit()
+
+        underTest.edit().remove("a").putString("b", null).commit()
+
+        assertThat(underTest.contains("a")).isFalse()
+        assertThat(underTest.contains("b")).isFalse()
+        assertThat(BinaryPreferences(file).isEmpty).isTrue()
+    }
+
+    @Test
+    fun corruptFile_startsEmpty() {
+        val file = File(tempFolder.root, "prefs")
+        file.writeText("<map><string name=\"a\">1</string></map>")
+
+        val underTest = BinaryPreferences(file)
+
+        assertThat(underTest.isEmpty).isTrue()
+        underTest.edit().putInt("a", 1).commit()
+        assertThat(BinaryPreferences(file).getInt("a", 0)).isEqualTo(1)
+    }
+
+    @Test
+    fun migrateFrom_copiesLegacyValues_andCreatesFileWhenEmpty() {
+        val context: Context = InstrumentationRegistry.getInstrumentation().targetContext
+        val legacy = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE)
+        legacy.edit().clear().putString("a", "1").putLong("b", 2L).commit()
+        val file = File(tempFolder.root, "prefs")
+
+        BinaryPreferences(file).migrateFrom(legacy)
+
+        val migrated = BinaryPreferences(file)
+        assertThat(migrated.getString("a", null)).isEqualTo("1")
+        assertThat(migrated.getLong("b", 0)).isEqualTo(2L)
+
+        legacy.edit().clear().commit()
+        val emptyFile = File(tempFolder.root, "empty")
+        BinaryPreferences(emptyFile).migrateFrom(legacy)
+        assertThat(emptyFile.exists()).isTrue()
+        context.deleteSharedPreferences(LEGACY_PREFS_NAME)
+    }
+
+    companion object {
+        private const val LEGACY_PREFS_NAME = "binary-preferences-test"
+    }
+}
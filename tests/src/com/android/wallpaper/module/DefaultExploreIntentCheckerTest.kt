@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Intent
+import android.content.IntentFilter
+import android.content.pm.ResolveInfo
+import android.net.Uri
+import android.os.PatternMatcher
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class DefaultExploreIntentCheckerTest {
+
+    private var queries = 0
+    private val pendingTasks = ArrayDeque<Runnable>()
+    private val results = mutableMapOf<Uri, Intent?>()
+
+    /** A browser handling every https uri, and an app only handling "/open" on one host. */
+    private val underTest =
+        DefaultExploreIntentChecker(
+            { intent, _ ->
+                queries++
+                val uri = intent.data!!
+                when {
+                    uri.host == APP_HOST && uri.path!!.startsWith("/open") ->
+                        listOf(resolveInfo(appFilter()))
+                    uri.host == APP_HOST -> emptyList()
+                    uri.scheme == "https" -> listOf(resolveInfo(browserFilter()))
+                    else -> emptyList()
+                }
+            },
+            { pendingTasks.addLast(it) },
+            { it.run() },
+        )
+
+    @Test
+    fun fetch_500UrisAcross5Hosts_queriesOncePerHost() {
+        val uris = (0 until URI_COUNT).map { Uri.parse("https://host${it % 5}.example/w/$it") }
+
+        uris.forEach { fetch(it) }
+        runPendingTasks()
+
+        assertThat(queries).isEqualTo(5)
+        assertThat(results).hasSize(URI_COUNT)
+        assertThat(results.values.all { it != null && it.action == Intent.ACTION_VIEW }).isTrue()
+        assertThat(results[uris[42]]!!.data).isEqualTo(uris[42])
+    }
+
+    @Test
+    fun fetch_cachedUris_answeredWithoutQuerying() {
+        val uris = (0 until URI_COUNT).map { Uri.parse("https://host${it % 5}.example/w/$it") }
+        uris.forEach { fetch(it) }
+        runPendingTasks()
+        results.clear()
+        queries = 0
+
+        uris.forEach { fetch(it) }
+        fetch(Uri.parse("https://host0.example/never/seen"))
+
+        assertThat(pendingTasks).isEmpty()
+        assertThat(queries).isEqualTo(0)
+        assertThat(results).hasSize(URI_COUNT + 1)
+    }
+
+    @Test
+    fun fetch_pathSpecificHandler_queriesEachUri() {
+        val handled = Uri.parse("https://$APP_HOST/open/1")
+        val unhandled = Uri.parse("https://$APP_HOST/other/1")
+        val handledToo = Uri.parse("https://$APP_HOST/open/2")
+
+        fetch(handled)
+        fetch(unhandled)
+        fetch(handledToo)
+        runPendingTasks()
+
+        assertThat(queries).isEqualTo(3)
+        assertThat(results[handled]).isNotNull()
+        assertThat(results[unhandled]).isNull()
+        assertThat(results[handledToo]).isNotNull()
+    }
+
+    @Test
+    fun invalidate_dropsCachedResults() {
+        val uri = Uri.parse("https://host0.example/w/1")
+        fetch(uri)
+        runPendingTasks()
+
+        underTest.invalidate()
+        fetch(uri)
+        runPendingTasks()
+
+        assertThat(queries).isEqualTo(2)
+    }
+
+    @Test
+    fun invalidate_duringBatch_doesNotCacheItsResults() {
+        val uri = Uri.parse("https://host0.example/w/1")
+        fetch(uri)
+        val batch = pendingTasks.removeFirst()
+
+        underTest.invalidate()
+        batch.run()
+        fetch(uri)
+        runPendingTasks()
+
+        assertThat(queries).isEqualTo(2)
+    }
+
+    private fun fetch(uri: Uri) {
+        underTest.fetchValidActionViewIntent(uri) { results[uri] = it }
+    }
+
+    private fun runPendingTasks() {
+        while (pendingTasks.isNotEmpty()) {
+            pendingTasks.removeFirst().run()
+        }
+    }
+
+    private fun resolveInfo(intentFilter: IntentFilter) =
+        ResolveInfo().apply { filter = intentFilter }
+
+    private fun browserFilter() =
+        IntentFilter(Intent.ACTION_VIEW).apply {
+            addCategory(Intent.CATEGORY_BROWSABLE)
+            addDataScheme("https")
+        }
+
+    private fun appFilter() =
+        IntentFilter(Intent.ACTION_VIEW).apply {
+            addDataScheme("https")
+            addDataAuthority(APP_HOST, null)
+            addDataPath("/open", PatternMatcher.PATTERN_PREFIX)
+        }
+
+    private companion object {
+        const val URI_COUNT = 500
+        const val APP_HOST = "app.example"
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.util.Log
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class LegacyPartnerWallpaperIndexTest {
+
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    private var scanCount = 0
+    private val scanner =
+        LegacyPartnerWallpaperIndex.Scanner { directory ->
+            scanCount++
+            LegacyPartnerWallpaperIndex.scan(directory)
+        }
+
+    private lateinit var directory: File
+    private lateinit var prefs: BinaryPreferences
+
+    @Before
+    fun setUp() {
+        directory = tempFolder.newFolder("legacy")
+        // 100 wallpapers, each with its thumbnail, and a directory that must be skipped.
+        repeat(WALLPAPER_COUNT) { index ->
+            File(directory, "wallpaper$index.jpg").writeBytes(ByteArray(16))
+            File(directory, "wallpaper${index}_small.jpg").writeBytes(ByteArray(4))
+        }
+        File(directory, "nested").mkdir()
+        prefs = BinaryPreferences(File(tempFolder.root, "index"))
+    }
+
+    @Test
+    fun getFullNames_200Files_listsFullSizeWallpapersOnly() {
+        val startNanos = System.nanoTime()
+        val fullNames = LegacyPartnerWallpaperIndex(prefs, directory, STAMP, scanner).fullNames
+        Log.i(TAG, "Scanned $FILE_COUNT files in ${(System.nanoTime() - startNanos) / 1000}us")
+
+        assertThat(fullNames).hasSize(WALLPAPER_COUNT)
+        assertThat(fullNames)
+            .containsExactlyElementsIn((0 until WALLPAPER_COUNT).map { "wallpaper$it.jpg" })
+        assertThat(fullNames.map { LegacyPartnerWallpaperIndex.getThumbnailName(it) })
+            .containsExactlyElementsIn((0 until WALLPAPER_COUNT).map { "wallpaper${it}_small.jpg" })
+    }
+
+    @Test
+    fun getFullNames_sameStamp_reusesStoredList() {
+        val scanned = LegacyPartnerWallpaperIndex(prefs, directory, STAMP, scanner).fullNames
+
+        val startNanos = System.nanoTime()
+        val indexed = LegacyPartnerWallpaperIndex(prefs, directory, STAMP, scanner).fullNames
+        val elapsedMicros = (System.nanoTime() - startNanos) / 1000
+        Log.i(TAG, "Read ${indexed.size} indexed names in ${elapsedMicros}us")
+
+        assertThat(indexed).containsExactlyElementsIn(scanned).inOrder()
+        assertThat(scanCount).isEqualTo(1)
+    }
+
+    @Test
+    fun getFullNames_newStamp_scansAgain() {
+        LegacyPartnerWallpaperIndex(prefs, directory, STAMP, scanner).fullNames
+        File(directory, "added.png").writeBytes(ByteArray(16))
+
+        val fullNames = LegacyPartnerWallpaperIndex(prefs, directory, "2:1", scanner).fullNames
+
+        assertThat(fullNames).hasSize(WALLPAPER_COUNT + 1)
+        assertThat(fullNames).contains("added.png")
+        assertThat(scanCount).isEqualTo(2)
+    }
+
+    @Test
+    fun getFullNames_calledTwice_scansOnce() {
+        val underTest = LegacyPartnerWallpaperIndex(/* prefs= */ null, directory, STAMP, scanner)
+
+        underTest.fullNames
+        underTest.fullNames
+
+        assertThat(scanCount).isEqualTo(1)
+    }
+
+    @Test
+    fun getThumbnailName_withoutExtension_appendsSuffix() {
+        assertThat(LegacyPartnerWallpaperIndex.getThumbnailName("beach")).isEqualTo("beach_small")
+        assertThat(LegacyPartnerWallpaperIndex.getThumbnailName("beach.tar.png"))
+            .isEqualTo("beach.tar_small.png")
+    }
+
+    private companion object {
+        const val TAG = "LegacyPartnerWallpaperIndexTest"
+        const val WALLPAPER_COUNT = 100
+        const val FILE_COUNT = 2 * WALLPAPER_COUNT
+        const val STAMP = "1:1"
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Intent
+import android.content.pm.ActivityInfo
+import android.content.pm.PackageManager
+import android.content.pm.ResolveInfo
+import android.content.pm.ServiceInfo
+import android.service.wallpaper.WallpaperService
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+
+@SmallTest
+@RunWith(JUnit4::class)
+class PackageResolveCacheTest {
+
+    private val packageManager: PackageManager = mock(PackageManager::class.java)
+    private val livePackages = (0 until EVENT_COUNT step 5).map { "live.$it" }.toSet()
+    private val activityPackages = setOf("picker.0")
+
+    private lateinit var underTest: PackageResolveCache
+
+    @Before
+    fun setUp() {
+        `when`(packageManager.queryIntentServices(any(Intent::class.java), anyInt())).thenAnswer {
+            resolve(it.getArgument(0), livePackages) { packageName ->
+                ResolveInfo().apply {
+                    serviceInfo = ServiceInfo().also { it.packageName = packageName }
+                }
+            }
+        }
+        `when`(packageManager.queryIntentActivities(any(Intent::class.java), anyInt())).thenAnswer {
+            resolve(it.getArgument(0), activityPackages) { packageName ->
+                ResolveInfo().apply {
+                    activityInfo = ActivityInfo().also { it.packageName = packageName }
+                }
+            }
+        }
+        underTest = PackageResolveCache(packageManager)
+    }
+
+    @Test
+    fun getValidPackages_burstOfEvents_queriesOncePerAction() {
+        val burst = Array(EVENT_COUNT) { if (it % 5 == 0) "live.$it" else "other.$it" }
+
+        // Two listeners observing the same action see the same burst.
+        repeat(2) {
+            assertThat(underTest.getValidPackages(ACTION, burst))
+                .containsExactlyElementsIn(livePackages)
+        }
+
+        // One service query and one activity query, instead of two per package and listener.
+        assertThat(underTest.packageManagerCallCount).isEqualTo(2)
+        assertThat(underTest.cacheHitCount).isEqualTo(EVENT_COUNT)
+    }
+
+    @Test
+    fun isValidPackage_cached_doesNotQueryAgain() {
+        assertThat(underTest.isValidPackage(ACTION, "live.0")).isTrue()
+        assertThat(underTest.isValidPackage(ACTION, "picker.0")).isTrue()
+        assertThat(underTest.isValidPackage(ACTION, "other.1")).isFalse()
+        val calls = underTest.packageManagerCallCount
+
+        assertThat(underTest.isValidPackage(ACTION, "live.0")).isTrue()
+        assertThat(underTest.isValidPackage(ACTION, "picker.0")).isTrue()
+        assertThat(underTest.isValidPackage(ACTION, "other.1")).isFalse()
+
+        // A service match needs 1 query, the others need 2.
+        assertThat(calls).isEqualTo(5)
+        assertThat(underTest.packageManagerCallCount).isEqualTo(calls)
+    }
+
+    @Test
+    fun invalidate_queriesPackageAgain() {
+        underTest.isValidPackage(ACTION, "live.0")
+
+        underTest.invalidate("live.0")
+        underTest.isValidPackage(ACTION, "live.0")
+
+        assertThat(underTest.packageManagerCallCount).isEqualTo(2)
+        assertThat(underTest.cacheHitCount).isEqualTo(0)
+    }
+
+    private fun resolve(
+        intent: Intent,
+        packages: Set<String>,
+        toResolveInfo: (String) -> ResolveInfo,
+    ): List<ResolveInfo> {
+        return packages.filter { intent.getPackage() == null || it == intent.getPackage() }
+            .map(toResolveInfo)
+    }
+
+    companion object {
+        private const val ACTION = WallpaperService.SERVICE_INTERFACE
+        private const val EVENT_COUNT = 50
+    }
+}
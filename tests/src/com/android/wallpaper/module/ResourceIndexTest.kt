@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import android.content.ContextWrapper
+import android.content.pm.PackageManager
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class ResourceIndexTest {
+
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    private val resolved = mutableListOf<String>()
+    private val resolver =
+        ResourceIndex.IdentifierResolver { name, type ->
+            resolved.add("$type/$name")
+            RESOURCE_IDS["$type/$name"] ?: 0
+        }
+
+    private lateinit var prefs: BinaryPreferences
+
+    @Before
+    fun setUp() {
+        prefs = BinaryPreferences(File(tempFolder.root, "index"))
+    }
+
+    @Test
+    fun getIdentifier_resolvesEachNameOnce() {
+        val underTest = ResourceIndex(prefs, STAMP, resolver)
+
+        repeat(3) {
+            assertThat(underTest.getIdentifier("beach", "drawable")).isEqualTo(BEACH_ID)
+            assertThat(underTest.getIdentifier("beach_subtitle1", "string")).isEqualTo(0)
+        }
+
+        assertThat(resolved).containsExactly("drawable/beach", "string/beach_subtitle1")
+    }
+
+    @Test
+    fun getIdentifier_sameVersion_reusesStoredIds() {
+        ResourceIndex(prefs, STAMP, resolver).getIdentifier("beach", "drawable")
+        resolved.clear()
+
+        val underTest = ResourceIndex(prefs, STAMP, resolver)
+
+        assertThat(underTest.getIdentifier("beach", "drawable")).isEqualTo(BEACH_ID)
+        assertThat(resolved).isEmpty()
+    }
+
+    @Test
+    fun getIdentifier_newVersion_resolvesAgain() {
+        ResourceIndex(prefs, STAMP, resolver).getIdentifier("beach", "drawable")
+        resolved.clear()
+
+        val underTest = ResourceIndex(prefs, "2:0", resolver)
+
+        assertThat(underTest.getIdentifier("beach", "drawable")).isEqualTo(BEACH_ID)
+        assertThat(resolved).containsExactly("drawable/beach")
+    }
+
+    @Test
+    fun getIdentifier_sameNameDifferentType_resolvedSeparately() {
+        val underTest = ResourceIndex(prefs, STAMP, resolver)
+
+        assertThat(underTest.getIdentifier("beach", "drawable")).isEqualTo(BEACH_ID)
+        assertThat(underTest.getIdentifier("beach", "string")).isEqualTo(BEACH_TITLE_ID)
+    }
+
+    @Test
+    fun get_calledAgain_reusesIndexWithoutLookingUpPackage() {
+        val context = CountingContext(InstrumentationRegistry.getInstrumentation().targetContext)
+        val packageName = context.packageName
+        ResourceIndex.invalidate(packageName)
+
+        val first = ResourceIndex.get(context, packageName, context.resources)
+        val second = ResourceIndex.get(context, packageName, context.resources)
+
+        assertThat(second).isSameInstanceAs(first)
+        assertThat(context.packageManagerCalls).isEqualTo(1)
+    }
+
+    @Test
+    fun get_afterInvalidate_looksUpPackageAgain() {
+        val context = CountingContext(InstrumentationRegistry.getInstrumentation().targetContext)
+        val packageName = context.packageName
+        ResourceIndex.invalidate(packageName)
+        ResourceIndex.get(context, packageName, context.resources)
+        ResourceIndex.invalidate(packageName)
+
+        ResourceIndex.get(context, packageName, context.resources)
+
+        assertThat(context.packageManagerCalls).isEqualTo(2)
+    }
+
+    /** Counts the lookups of the package manager, each of which is followed by an IPC. */
+    private class CountingContext(base: Context) : ContextWrapper(base) {
+        var packageManagerCalls = 0
+
+        override fun getApplicationContext(): Context = this
+
+        override fun getPackageManager(): PackageManager {
+            packageManagerCalls++
+            return super.getPackageManager()
+        }
+    }
+
+    private companion object {
+        const val STAMP = "1:0"
+        const val BEACH_ID = 0x7f080001
+        const val BEACH_TITLE_ID = 0x7f100001
+        val RESOURCE_IDS = mapOf("drawable/beach" to BEACH_ID, "string/beach" to BEACH_TITLE_ID)
+    }
+}
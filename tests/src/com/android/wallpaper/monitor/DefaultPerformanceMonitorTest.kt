@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.monitor
+
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.util.concurrent.TimeUnit
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class DefaultPerformanceMonitorTest {
+
+    @Test
+    fun dump_reportsAggregates() {
+        val underTest = DefaultPerformanceMonitor(/* enabled= */ true)
+
+        underTest.recordDuration(PerformanceMonitor.TIMER_CROP, TimeUnit.MILLISECONDS.toNanos(10))
+        underTest.recordDuration(PerformanceMonitor.TIMER_CROP, TimeUnit.MILLISECONDS.toNanos(30))
+        underTest.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE, true)
+        underTest.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE, true)
+        underTest.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE, true)
+        underTest.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE, false)
+        underTest.recordTaskQueued(PerformanceMonitor.EXECUTOR_BITMAP_CROPPER)
+        underTest.recordTaskQueued(PerformanceMonitor.EXECUTOR_BITMAP_CROPPER)
+        underTest.recordTaskStarted(PerformanceMonitor.EXECUTOR_BITMAP_CROPPER)
+        underTest.recordBitmapAllocated(100)
+        underTest.recordBitmapAllocated(50)
+
+        val report = dump(underTest)
+
+        assertThat(report).contains("Crop: 2, 20.0, 30.0")
+        assertThat(report).contains("Glide: 3, 1, 0.75")
+        assertThat(report).contains("BitmapCropper: 1, 2")
+        assertThat(report).contains("Bitmaps allocated: 2, 150 bytes")
+    }
+
+    @Test
+    fun timer_recordsElapsedTime() {
+        val underTest = DefaultPerformanceMonitor(/* enabled= */ true)
+
+        val token = underTest.startTimer(PerformanceMonitor.TIMER_APPLY)
+        underTest.stopTimer(PerformanceMonitor.TIMER_APPLY, token)
+
+        assertThat(token).isNotEqualTo(PerformanceMonitor.NO_TIMER)
+        assertThat(dump(underTest)).contains("Apply: 1,")
+    }
+
+    @Test
+    fun canceledTimer_recordsNothing() {
+        val underTest = DefaultPerformanceMonitor(/* enabled= */ true)
+
+        val token = underTest.startTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH)
+        underTest.cancelTimer(PerformanceMonitor.TIMER_CATEGORY_FETCH, token)
+
+        assertThat(dump(underTest)).doesNotContain("CategoryFetch: 1,")
+    }
+
+    @Test
+    fun disabled_recordsNothing() {
+        val underTest = DefaultPerformanceMonitor(/* enabled= */ false)
+
+        underTest.recordCacheLookup(PerformanceMonitor.CACHE_GLIDE, true)
+        underTest.recordTaskStarted(PerformanceMonitor.EXECUTOR_ASSET_DECODE)
+        underTest.recordBitmapAllocated(100)
+
+        val report = dump(underTest)
+
+        assertThat(report).contains("disabled")
+        assertThat(report).doesNotContain("Glide")
+    }
+
+    private fun dump(monitor: PerformanceMonitor): String {
+        val writer = StringWriter()
+        PrintWriter(writer).use { monitor.dump(it) }
+        return writer.toString()
+    }
+}
@@ -24,6 +24,7 @@ import com.android.wallpaper.testing.TestWallpaperPreferences
 import com.android.wallpaper.testing.collectLastValue
 import com.google.common.truth.Truth.assertThat
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.test.StandardTestDispatcher
 import kotlinx.coroutines.test.TestScope
@@ -204,4 +205,29 @@ class WallpaperRepositoryTest {
             assertThat(selectedLockWallpaperId())
                 .isEqualTo(FakeWallpaperClient.INITIAL_RECENT_WALLPAPERS[2].wallpaperId)
         }
+
+    @Test
+    fun loadThumbnail_concurrentRequestsShareOneLoad() =
+        testScope.runTest {
+            val wallpaperId = FakeWallpaperClient.INITIAL_RECENT_WALLPAPERS[0].wallpaperId
+            val first = async { underTest.loadThumbnail(wallpaperId, lastUpdatedTimestamp = 1L) }
+            val second = async { underTest.loadThumbnail(wallpaperId, lastUpdatedTimestamp = 1L) }
+
+            assertThat(first.await()).isNotNull()
+            assertThat(second.await()).isSameInstanceAs(first.await())
+            assertThat(client.loadThumbnailCount).isEqualTo(1)
+        }
+
+    @Test
+    fun loadThumbnail_servesFromCacheUntilTimestampChanges() =
+        testScope.runTest {
+            val wallpaperId = FakeWallpaperClient.INITIAL_RECENT_WALLPAPERS[0].wallpaperId
+            val thumbnail = underTest.loadThumbnail(wallpaperId, lastUpdatedTimestamp = 1L)
+            assertThat(underTest.loadThumbnail(wallpaperId, lastUpdatedTimestamp = 1L))
+                .isSameInstanceAs(thumbnail)
+            assertThat(client.loadThumbnailCount).isEqualTo(1)
+
+            underTest.loadThumbnail(wallpaperId, lastUpdatedTimestamp = 2L)
+            assertThat(client.loadThumbnailCount).isEqualTo(2)
+        }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.picker.customization.data.repository
+
+import android.graphics.Bitmap
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class WallpaperThumbnailCacheTest {
+
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    @Test
+    fun memoryTier_evictsByBytes() {
+        val bitmapBytes = createBitmap().allocationByteCount
+        val underTest = WallpaperThumbnailCache(memoryBudgetBytes = bitmapBytes * 2)
+
+        underTest.put("a", 1L, createBitmap())
+        underTest.put("b", 1L, createBitmap())
+        underTest.put("c", 1L, createBitmap())
+
+        assertThat(underTest.getFromMemory("a", 1L)).isNull()
+        assertThat(underTest.getFromMemory("b", 1L)).isNotNull()
+        assertThat(underTest.getFromMemory("c", 1L)).isNotNull()
+    }
+
+    @Test
+    fun memoryTier_missesOnStaleTimestamp() {
+        val underTest = WallpaperThumbnailCache()
+
+        underTest.put("a", 1L, createBitmap())
+
+        assertThat(underTest.getFromMemory("a", 2L)).isNull()
+    }
+
+    @Test
+    fun diskTier_survivesNewInstance() {
+        val directory = File(tempFolder.root, "thumbnails")
+        WallpaperThumbnailCache(diskDirectory = directory).put("a/b", 1L, createBitmap())
+
+        val underTest = WallpaperThumbnailCache(diskDirectory = directory)
+
+        assertThat(underTest.getFromMemory("a/b", 1L)).isNull()
+        val fromDisk = underTest.getFromDisk("a/b", 1L)
+        assertThat(fromDisk).isNotNull()
+        assertThat(fromDisk!!.width).isEqualTo(SIZE)
+        assertThat(underTest.getFromMemory("a/b", 1L)).isSameInstanceAs(fromDisk)
+    }
+
+    @Test
+    fun diskTier_replacesOlderVersion() {
+        val directory = File(tempFolder.root, "thumbnails")
+        val underTest = WallpaperThumbnailCache(diskDirectory = directory)
+
+        underTest.put("a", 1L, createBitmap())
+        underTest.put("a", 2L, createBitmap())
+
+        assertThat(directory.listFiles()).hasLength(1)
+        assertThat(underTest.getFromDisk("a", 1L)).isNull()
+        assertThat(underTest.getFromDisk("a", 2L)).isNotNull()
+    }
+
+    private fun createBitmap(): Bitmap {
+        return Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888)
+    }
+
+    companion object {
+        private const val SIZE = 16
+    }
+}
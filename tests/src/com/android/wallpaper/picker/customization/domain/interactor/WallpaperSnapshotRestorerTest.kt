@@ -133,7 +133,45 @@ class WallpaperSnapshotRestorerTest {
                 .isEqualTo(INITIAL_LOCK_WALLPAPERS[4])
         }
 
+    @Test
+    fun restore_sameWallpaperOnBothScreens_appliesItOnce() =
+        testScope.runTest {
+            wallpaperClient.setRecentWallpapers(
+                buildMap {
+                    put(WallpaperDestination.HOME, SHARED_WALLPAPERS)
+                    put(WallpaperDestination.LOCK, SHARED_WALLPAPERS)
+                }
+            )
+            underTest.setUpSnapshotRestorer(store)
+            runCurrent()
+            setOnBothScreens(SHARED_WALLPAPERS[1])
+            val snapshot = storedSnapshots.last()
+            setOnBothScreens(SHARED_WALLPAPERS[2])
+            val setWallpaperCount = wallpaperClient.setWallpaperCount
+
+            underTest.restoreToSnapshot(snapshot)
+
+            assertThat(wallpaperClient.setWallpaperCount).isEqualTo(setWallpaperCount + 1)
+            assertThat(wallpaperClient.getCurrentWallpaper(destination = WallpaperDestination.HOME))
+                .isEqualTo(SHARED_WALLPAPERS[1])
+            assertThat(wallpaperClient.getCurrentWallpaper(destination = WallpaperDestination.LOCK))
+                .isEqualTo(SHARED_WALLPAPERS[1])
+        }
+
+    private suspend fun TestScope.setOnBothScreens(wallpaper: WallpaperModel) {
+        listOf(WallpaperDestination.HOME, WallpaperDestination.LOCK).forEach { destination ->
+            wallpaperClient.setWallpaper(
+                destination = destination,
+                wallpaperId = wallpaper.wallpaperId,
+                onDone = {},
+            )
+            runCurrent()
+        }
+    }
+
     companion object {
+        private val SHARED_WALLPAPERS =
+            (0..3).map { index -> WallpaperModel(wallpaperId = "S$index", placeholderColor = 0) }
         private val INITIAL_HOME_WALLPAPERS =
             (0..5).map { index -> WallpaperModel(wallpaperId = "H$index", placeholderColor = 0) }
         private val INITIAL_LOCK_WALLPAPERS =
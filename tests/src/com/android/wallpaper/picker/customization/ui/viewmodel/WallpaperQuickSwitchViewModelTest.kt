@@ -29,6 +29,7 @@ import com.google.common.truth.Truth.assertThat
 import com.google.common.truth.Truth.assertWithMessage
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.test.StandardTestDispatcher
 import kotlinx.coroutines.test.TestScope
 import kotlinx.coroutines.test.resetMain
@@ -179,6 +180,66 @@ class WallpaperQuickSwitchViewModelTest {
             )
         }
 
+    @Test
+    fun `selection change only emits for affected options`() =
+        testScope.runTest {
+            var optionsEmissions = 0
+            backgroundScope.launch { underTest.options.collect { optionsEmissions++ } }
+            runCurrent()
+            val stateEmissions = mutableMapOf<String, Int>()
+            FakeWallpaperClient.INITIAL_RECENT_WALLPAPERS.forEach { model ->
+                val state = checkNotNull(underTest.optionState(model.wallpaperId))
+                backgroundScope.launch {
+                    state.collect {
+                        stateEmissions[model.wallpaperId] =
+                            (stateEmissions[model.wallpaperId] ?: 0) + 1
+                    }
+                }
+            }
+            runCurrent()
+            val options = collectLastValue(underTest.options)
+
+            val onSelected = collectLastValue(checkNotNull(options()?.get(2)).onSelected)
+            onSelected()?.invoke()
+            runCurrent()
+
+            // The previously selected and the newly selected options change, the one in between
+            // only has its initial state.
+            assertThat(stateEmissions["zero"]).isAtLeast(2)
+            assertThat(stateEmissions["one"]).isEqualTo(1)
+            assertThat(stateEmissions["two"]).isAtLeast(2)
+            // Reordering the same wallpapers doesn't produce new options.
+            assertThat(optionsEmissions).isEqualTo(1)
+        }
+
+    @Test
+    fun `options start in the state of the current selection`() =
+        testScope.runTest {
+            val initialStates = mutableListOf<WallpaperQuickSwitchViewModel.OptionState>()
+            backgroundScope.launch {
+                underTest.options.collect {
+                    initialStates.add(checkNotNull(underTest.optionState("zero")).value)
+                }
+            }
+            runCurrent()
+
+            // The selected option doesn't start small and then grow.
+            assertThat(initialStates.first().isLarge).isTrue()
+        }
+
+    @Test
+    fun `options with the same state share it`() =
+        testScope.runTest {
+            collectLastValue(underTest.options)()
+
+            val one = checkNotNull(underTest.optionState("one")).value
+            val two = checkNotNull(underTest.optionState("two")).value
+
+            // States are shared rather than allocated per option and per update.
+            assertThat(one).isSameInstanceAs(two)
+            assertThat(one).isNotEqualTo(checkNotNull(underTest.optionState("zero")).value)
+        }
+
     private fun expectations(
         models: List<WallpaperModel> = FakeWallpaperClient.INITIAL_RECENT_WALLPAPERS,
         selectedIndex: Int = 0,
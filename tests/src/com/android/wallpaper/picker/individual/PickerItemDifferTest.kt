@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.picker.individual
+
+import androidx.recyclerview.widget.ListUpdateCallback
+import androidx.test.filters.SmallTest
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.picker.individual.IndividualPickerFragment2.PickerItem
+import com.android.wallpaper.testing.TestLiveWallpaperInfo
+import com.android.wallpaper.testing.TestStaticWallpaperInfo
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class PickerItemDifferTest {
+
+    private val wallpapers: List<WallpaperInfo> =
+        (0 until ITEM_COUNT + INSERTED_COUNT).map {
+            TestStaticWallpaperInfo(TestStaticWallpaperInfo.COLOR_DEFAULT, "wallpaper-$it")
+        }
+
+    @Test
+    fun calculateDiff_sameContent_emitsNothing() {
+        val oldItems = createItems(wallpapers.take(ITEM_COUNT))
+        val newItems = createItems(wallpapers.take(ITEM_COUNT))
+
+        val ops = dispatch(oldItems, newItems)
+
+        assertThat(ops.inserted + ops.removed + ops.moved + ops.changed).isEqualTo(0)
+    }
+
+    @Test
+    fun calculateDiff_largeList_emitsOnlyPreciseOps() {
+        val oldItems = createItems(wallpapers.take(ITEM_COUNT))
+        val newWallpapers = wallpapers.take(ITEM_COUNT).toMutableList()
+        // Remove a few wallpapers, add a few new ones and move one to the end.
+        repeat(REMOVED_COUNT) { newWallpapers.removeAt(it * 400) }
+        newWallpapers.addAll(1000, wallpapers.takeLast(INSERTED_COUNT))
+        newWallpapers.add(newWallpapers.removeAt(42))
+        val appliedIds = setOf("wallpaper-7", "wallpaper-3000")
+        val retitledIds = setOf("wallpaper-11", "wallpaper-2500", "wallpaper-4999")
+        val newItems =
+            createItems(newWallpapers) { wallpaper ->
+                PickerItem.WallpaperItem(
+                    wallpaper,
+                    isApplied = wallpaper.wallpaperId in appliedIds,
+                    contentHash = if (wallpaper.wallpaperId in retitledIds) 1 else 0,
+                )
+            }
+
+        val ops = dispatch(oldItems, newItems)
+
+        assertThat(ops.inserted).isEqualTo(INSERTED_COUNT)
+        assertThat(ops.removed).isEqualTo(REMOVED_COUNT)
+        assertThat(ops.moved).isEqualTo(1)
+        assertThat(ops.changed).isEqualTo(appliedIds.size + retitledIds.size)
+        // notifyDataSetChanged() re-binds every item; the diff only re-binds new and changed ones.
+        val reboundWithDiff = ops.inserted + ops.changed
+        assertThat(reboundWithDiff).isEqualTo(15)
+        assertThat(reboundWithDiff).isLessThan(newItems.size / 100)
+        // Replaying the ops on the old list yields the new list.
+        assertThat(ops.replayed.filterNotNull())
+            .containsExactlyElementsIn(newItems.map { key(it) }.filter { it in ops.oldKeys })
+            .inOrder()
+        assertThat(ops.replayed.count { it == null }).isEqualTo(INSERTED_COUNT)
+    }
+
+    @Test
+    fun calculateDiff_headerRenamed_replacesHeader() {
+        val oldItems = listOf(PickerItem.FirstHeaderItem("a"), PickerItem.HeaderItem("b"))
+        val newItems = listOf(PickerItem.FirstHeaderItem("a"), PickerItem.HeaderItem("c"))
+
+        val ops = dispatch(oldItems, newItems)
+
+        assertThat(ops.inserted).isEqualTo(1)
+        assertThat(ops.removed).isEqualTo(1)
+        assertThat(ops.changed).isEqualTo(0)
+    }
+
+    @Test
+    fun calculateDiff_newStaticInstance_updatesWallpaperOnly() {
+        val oldItems = createItems(wallpapers.take(1))
+        val newItems = createItems(listOf(TestStaticWallpaperInfo(COLOR, "wallpaper-0")))
+
+        val ops = dispatch(oldItems, newItems)
+
+        assertThat(ops.inserted + ops.removed + ops.moved).isEqualTo(0)
+        assertThat(ops.changed).isEqualTo(1)
+        assertThat(ops.payloads).containsExactly(PickerItemDiffer.PAYLOAD_WALLPAPER)
+    }
+
+    @Test
+    fun calculateDiff_newLiveInstance_rebindsTile() {
+        val oldItems = createItems(listOf(TestLiveWallpaperInfo(COLOR, null, LIVE_ID)))
+        val newItems = createItems(listOf(TestLiveWallpaperInfo(COLOR, null, LIVE_ID)))
+
+        val ops = dispatch(oldItems, newItems)
+
+        assertThat(ops.inserted + ops.removed + ops.moved).isEqualTo(0)
+        assertThat(ops.changed).isEqualTo(1)
+        assertThat(ops.payloads).containsExactly(null)
+    }
+
+    /** Builds a list of the given wallpapers under a single header. */
+    private fun createItems(
+        wallpapers: List<WallpaperInfo>,
+        toItem: (WallpaperInfo) -> PickerItem = { PickerItem.WallpaperItem(it, false) },
+    ): List<PickerItem> {
+        return listOf(PickerItem.FirstHeaderItem(HEADER_TITLE)) + wallpapers.map(toItem)
+    }
+
+    private fun dispatch(oldItems: List<PickerItem>, newItems: List<PickerItem>): RecordedOps {
+        val ops = RecordedOps(oldItems.map { key(it) })
+        PickerItemDiffer.calculateDiff(oldItems, newItems).dispatchUpdatesTo(ops)
+        return ops
+    }
+
+    private fun key(item: PickerItem): String {
+        return when (item) {
+            is PickerItem.WallpaperItem -> checkNotNull(item.wallpaperInfo.wallpaperId)
+            else -> item.title.toString()
+        }
+    }
+
+    private class RecordedOps(val oldKeys: List<String>) : ListUpdateCallback {
+        var inserted = 0
+        var removed = 0
+        var moved = 0
+        var changed = 0
+        val payloads: MutableList<Any?> = mutableListOf()
+        /** The old keys with the ops applied; inserted items are `null`. */
+        val replayed: MutableList<String?> = oldKeys.toMutableList()
+
+        override fun onInserted(position: Int, count: Int) {
+            inserted += count
+            repeat(count) { replayed.add(position, null) }
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            removed += count
+            repeat(count) { replayed.removeAt(position) }
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            moved++
+            replayed.add(toPosition, replayed.removeAt(fromPosition))
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            changed += count
+            payloads.add(payload)
+        }
+    }
+
+    companion object {
+        private const val ITEM_COUNT = 5_000
+        private const val INSERTED_COUNT = 10
+        private const val REMOVED_COUNT = 10
+        private const val HEADER_TITLE = "header"
+        private const val COLOR = TestStaticWallpaperInfo.COLOR_DEFAULT
+        private const val LIVE_ID = "live-wallpaper"
+    }
+}
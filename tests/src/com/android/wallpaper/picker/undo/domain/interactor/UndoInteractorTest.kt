@@ -20,12 +20,15 @@ package com.android.wallpaper.picker.undo.domain.interactor
 import androidx.test.filters.SmallTest
 import com.android.wallpaper.picker.undo.data.repository.UndoRepository
 import com.android.wallpaper.testing.FAKE_RESTORERS
+import com.android.wallpaper.testing.FakeSnapshotRestorer
 import com.android.wallpaper.testing.collectLastValue
 import com.android.wallpaper.testing.snapshot
 import com.google.common.truth.Truth.assertThat
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.test.StandardTestDispatcher
 import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.currentTime
+import kotlinx.coroutines.test.runCurrent
 import kotlinx.coroutines.test.runTest
 import org.junit.Before
 import org.junit.Test
@@ -79,4 +82,50 @@ class UndoInteractorTest {
             assertThat(FAKE_RESTORERS[2]?.restored).isEqualTo(snapshot(2, 0))
             assertThat(FAKE_RESTORERS[3]?.restored).isNull()
         }
+
+    @Test
+    fun `revert all - restores areas concurrently and completes once all are restored`() =
+        testScope.runTest {
+            val restorers =
+                (1..3).associateWith { ownerId ->
+                    FakeSnapshotRestorer(ownerId, restoreDelayMillis = RESTORE_DELAY_MILLIS)
+                }
+            val interactor =
+                UndoInteractor(
+                    scope = backgroundScope,
+                    repository = UndoRepository(),
+                    restorerByOwnerId = restorers,
+                )
+            interactor.startSession()
+            runCurrent()
+            restorers.values.forEach { it.update(1) }
+
+            val startTime = currentTime
+            val job = interactor.revertAll()
+            runCurrent()
+            assertThat(job.isCompleted).isFalse()
+            assertThat(restorers.values.map { it.restored }).containsExactly(null, null, null)
+
+            job.join()
+            assertThat(currentTime - startTime).isEqualTo(RESTORE_DELAY_MILLIS)
+            restorers.forEach { (ownerId, restorer) ->
+                assertThat(restorer.restored).isEqualTo(snapshot(ownerId, 0))
+            }
+        }
+
+    @Test
+    fun `revert all - nothing dirty - completes right away`() =
+        testScope.runTest {
+            underTest.startSession()
+            runCurrent()
+
+            val job = underTest.revertAll()
+            runCurrent()
+
+            assertThat(job.isCompleted).isTrue()
+        }
+
+    companion object {
+        private const val RESTORE_DELAY_MILLIS = 500L
+    }
 }
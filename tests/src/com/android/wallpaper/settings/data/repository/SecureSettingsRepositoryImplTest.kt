@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.settings.data.repository
+
+import androidx.test.filters.SmallTest
+import com.android.wallpaper.testing.FakeSecureSettingsClient
+import com.android.wallpaper.testing.collectLastValue
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@SmallTest
+@RunWith(JUnit4::class)
+class SecureSettingsRepositoryImplTest {
+
+    private lateinit var client: FakeSecureSettingsClient
+    private lateinit var underTest: SecureSettingsRepositoryImpl
+
+    private lateinit var testScope: TestScope
+
+    @Before
+    fun setUp() {
+        val testDispatcher = StandardTestDispatcher()
+        testScope = TestScope(testDispatcher)
+        client = FakeSecureSettingsClient()
+        client.setValue(SETTING, "1")
+
+        underTest =
+            SecureSettingsRepositoryImpl(
+                client = client,
+                scope = testScope.backgroundScope,
+                backgroundDispatcher = testDispatcher,
+            )
+    }
+
+    @Test
+    fun intSetting_manyCollectors_shareOneObserverAndOneReadPerChange() =
+        testScope.runTest {
+            val values =
+                (0 until COLLECTOR_COUNT).map { collectLastValue(underTest.intSetting(SETTING)) }
+            runCurrent()
+
+            assertThat(client.registrationCount).isEqualTo(1)
+            assertThat(client.readCount).isEqualTo(1)
+            assertThat(values.map { it() }).containsExactly(1, 1, 1, 1, 1)
+
+            client.setValue(SETTING, "2")
+            runCurrent()
+
+            assertThat(client.registrationCount).isEqualTo(1)
+            assertThat(client.readCount).isEqualTo(2)
+            assertThat(values.map { it() }).containsExactly(2, 2, 2, 2, 2)
+        }
+
+    @Test
+    fun intSetting_differentDefaultValues_shareOneObserver() =
+        testScope.runTest {
+            val withDefault0 = collectLastValue(underTest.intSetting(OTHER_SETTING, 0))
+            val withDefault7 = collectLastValue(underTest.intSetting(OTHER_SETTING, 7))
+            runCurrent()
+
+            assertThat(withDefault0()).isEqualTo(0)
+            assertThat(withDefault7()).isEqualTo(7)
+            assertThat(client.registrationCount).isEqualTo(1)
+            assertThat(client.readCount).isEqualTo(1)
+        }
+
+    @Test
+    fun getAll_observedSettings_readsNothing() =
+        testScope.runTest {
+            collectLastValue(underTest.intSetting(SETTING))
+            collectLastValue(underTest.intSetting(OTHER_SETTING))
+            runCurrent()
+            val readCount = client.readCount
+
+            val values = underTest.getAll(mapOf(SETTING to 0, OTHER_SETTING to 5))
+
+            assertThat(values).containsExactly(SETTING, 1, OTHER_SETTING, 5)
+            assertThat(client.readCount).isEqualTo(readCount)
+        }
+
+    @Test
+    fun getAll_unobservedSettings_readsEachOnce() =
+        testScope.runTest {
+            val values = underTest.getAll(mapOf(SETTING to 0, OTHER_SETTING to 5))
+
+            assertThat(values).containsExactly(SETTING, 1, OTHER_SETTING, 5)
+            assertThat(client.readCount).isEqualTo(2)
+            assertThat(client.registrationCount).isEqualTo(0)
+        }
+
+    @Test
+    fun intSetting_lastCollectorGone_unregistersAndDropsCache() =
+        testScope.runTest {
+            val jobs =
+                (0 until COLLECTOR_COUNT).map {
+                    backgroundScope.launch { underTest.intSetting(SETTING).collect {} }
+                }
+            runCurrent()
+            assertThat(client.observerCount).isEqualTo(1)
+
+            jobs.forEach { it.cancel() }
+            runCurrent()
+            assertThat(client.observerCount).isEqualTo(0)
+
+            val readCount = client.readCount
+            assertThat(underTest.get(SETTING)).isEqualTo(1)
+            assertThat(client.readCount).isEqualTo(readCount + 1)
+        }
+
+    @Test
+    fun set_observedSetting_doesNotServeStaleValue() =
+        testScope.runTest {
+            val value = collectLastValue(underTest.intSetting(SETTING))
+            runCurrent()
+
+            underTest.set(SETTING, 3)
+
+            assertThat(underTest.get(SETTING)).isEqualTo(3)
+            assertThat(value()).isEqualTo(3)
+        }
+
+    companion object {
+        private const val SETTING = "setting"
+        private const val OTHER_SETTING = "other_setting"
+        private const val COLLECTOR_COUNT = 5
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.testing
+
+import android.database.ContentObserver
+import com.android.wallpaper.settings.data.repository.SecureSettingsClient
+
+/** Keeps settings in memory and counts the calls that would be IPCs to the settings provider. */
+class FakeSecureSettingsClient : SecureSettingsClient {
+
+    private val values = mutableMapOf<String, String?>()
+    private val observers = mutableMapOf<ContentObserver, String>()
+
+    var registrationCount = 0
+        private set
+    var readCount = 0
+        private set
+
+    val observerCount: Int
+        get() = observers.size
+
+    override fun registerObserver(name: String, observer: ContentObserver) {
+        registrationCount++
+        observers[observer] = name
+    }
+
+    override fun unregisterObserver(observer: ContentObserver) {
+        observers.remove(observer)
+    }
+
+    override fun getString(name: String): String? {
+        readCount++
+        return values[name]
+    }
+
+    override fun putInt(name: String, value: Int) {
+        setValue(name, value.toString())
+    }
+
+    /** Changes a setting, as another process would, and notifies its observers. */
+    fun setValue(name: String, value: String?) {
+        values[name] = value
+        observers.filterValues { it == name }.keys.forEach { it.onChange(false) }
+    }
+}
@@ -37,6 +37,12 @@ class FakeWallpaperClient : WallpaperClient {
             }
         )
     private var isPaused = false
+    /** Number of times [loadThumbnail] was invoked. */
+    var loadThumbnailCount = 0
+        private set
+    /** Number of times [setWallpaper] applied a wallpaper. */
+    var setWallpaperCount = 0
+        private set
     private var deferred = mutableListOf<(suspend () -> Unit)>()
 
     fun setRecentWallpapers(
@@ -85,19 +91,29 @@ class FakeWallpaperClient : WallpaperClient {
         if (isPaused) {
             deferred.add { setWallpaper(destination, wallpaperId, onDone) }
         } else {
+            setWallpaperCount++
+            val destinations =
+                if (destination == WallpaperDestination.BOTH) {
+                    listOf(WallpaperDestination.HOME, WallpaperDestination.LOCK)
+                } else {
+                    listOf(destination)
+                }
             _recentWallpapers.value =
                 _recentWallpapers.value.toMutableMap().apply {
-                    this[destination] =
-                        _recentWallpapers.value[destination]?.sortedBy {
-                            it.wallpaperId != wallpaperId
-                        }
-                            ?: error("No wallpapers for screen $destination")
+                    destinations.forEach { screen ->
+                        this[screen] =
+                            _recentWallpapers.value[screen]?.sortedBy {
+                                it.wallpaperId != wallpaperId
+                            }
+                                ?: error("No wallpapers for screen $screen")
+                    }
                 }
             onDone.invoke()
         }
     }
 
     override suspend fun loadThumbnail(wallpaperId: String): Bitmap? {
+        loadThumbnailCount++
         return Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888)
     }
 
@@ -175,7 +175,7 @@ open class TestInjector : Injector {
         return partnerProvider ?: TestPartnerProvider().also { partnerProvider = it }
     }
 
-    override fun getPerformanceMonitor(): PerformanceMonitor? {
+    override fun getPerformanceMonitor(): PerformanceMonitor {
         return performanceMonitor ?: TestPerformanceMonitor().also { performanceMonitor = it }
     }
 
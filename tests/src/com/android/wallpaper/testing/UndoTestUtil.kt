@@ -20,6 +20,7 @@ package com.android.wallpaper.testing
 import com.android.wallpaper.picker.undo.domain.interactor.SnapshotRestorer
 import com.android.wallpaper.picker.undo.domain.interactor.SnapshotStore
 import com.android.wallpaper.picker.undo.shared.model.RestorableSnapshot
+import kotlinx.coroutines.delay
 
 val FAKE_RESTORERS =
     mapOf(
@@ -39,6 +40,7 @@ fun snapshot(ownerId: Int, version: Int): RestorableSnapshot {
 
 class FakeSnapshotRestorer(
     private val ownerId: Int,
+    private val restoreDelayMillis: Long = 0,
 ) : SnapshotRestorer {
     private lateinit var store: SnapshotStore
     var restored: RestorableSnapshot? = null
@@ -59,6 +61,7 @@ class FakeSnapshotRestorer(
     }
 
     override suspend fun restoreToSnapshot(snapshot: RestorableSnapshot) {
+        delay(restoreDelayMillis)
         restored = snapshot
     }
 }
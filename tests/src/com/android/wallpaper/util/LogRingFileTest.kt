@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.wallpaper.util
+
+import androidx.test.filters.SmallTest
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@SmallTest
+@RunWith(JUnit4::class)
+class LogRingFileTest {
+
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    @Test
+    fun append_wrapsAroundOnceFull_andFileSizeStaysCapped() {
+        val file = File(tempFolder.root, "logs.bin")
+        LogRingFile.open(file, CAPACITY).use { underTest ->
+            repeat(CAPACITY + 3) { underTest.append(it.toLong(), 'E', "tag", "message $it") }
+        }
+        val cappedSize = file.length()
+
+        val messages = readMessages(file)
+
+        assertThat(messages).hasSize(CAPACITY)
+        assertThat(messages.first()).isEqualTo("message 3")
+        assertThat(messages.last()).isEqualTo("message ${CAPACITY + 2}")
+        assertThat(file.length()).isEqualTo(cappedSize)
+    }
+
+    @Test
+    fun dropOlderThan_keepsOnlyNewerRecords() {
+        val file = File(tempFolder.root, "logs.bin")
+        LogRingFile.open(file, CAPACITY).use { underTest ->
+            repeat(CAPACITY + 2) { underTest.append(it * 10L, 'E', "tag", "message $it") }
+
+            underTest.dropOlderThan(55L)
+
+            assertThat(underTest.size()).isEqualTo(CAPACITY + 2 - 6)
+        }
+
+        assertThat(readMessages(file).first()).isEqualTo("message 6")
+    }
+
+    @Test
+    fun dropOlderThan_clockWentBack_keepsRecordsLoggedAfterwards() {
+        val file = File(tempFolder.root, "logs.bin")
+        LogRingFile.open(file, CAPACITY).use { underTest ->
+            // The clock went back after the second record.
+            listOf(100L, 200L, 50L, 60L, 70L).forEach {
+                underTest.append(it, 'E', "tag", "message $it")
+            }
+
+            underTest.dropOlderThan(150L)
+
+            assertThat(underTest.size()).isEqualTo(4)
+        }
+
+        assertThat(readMessages(file).first()).isEqualTo("message 200")
+    }
+
+    @Test
+    fun append_truncatesLongMessages() {
+        val file = File(tempFolder.root, "logs.bin")
+        val longMessage = "x".repeat(LogRingFile.RECORD_SIZE * 2)
+        LogRingFile.open(file, CAPACITY).use { it.append(0L, 'E', "tag", longMessage) }
+
+        val messages = readMessages(file)
+
+        assertThat(messages.single().length).isEqualTo(LogRingFile.MAX_PAYLOAD_SIZE - 3)
+    }
+
+    private fun readMessages(file: File): List<String> {
+        return buildList {
+            LogRingFile.open(file, CAPACITY).use { ringFile ->
+                ringFile.read { record -> add(record.mMessage) }
+            }
+        }
+    }
+
+    companion object {
+        private const val CAPACITY = 8
+    }
+}